@@ -18,6 +18,11 @@
 
 import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.java.AbstractQueryableTable;
+import org.apache.calcite.adapter.vector.Column.IntColumn;
+import org.apache.calcite.adapter.vector.Column.Kind;
+import org.apache.calcite.adapter.vector.Column.LongColumn;
+import org.apache.calcite.adapter.vector.ColumnBatch;
+import org.apache.calcite.adapter.vector.VectorTable;
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
@@ -29,6 +34,7 @@
 import org.apache.calcite.rel.RelCollations;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rel.type.RelProtoDataType;
 import org.apache.calcite.schema.ScannableTable;
 import org.apache.calcite.schema.SchemaPlus;
@@ -46,6 +52,7 @@
 import java.lang.reflect.Type;
 import java.util.AbstractList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 
@@ -55,7 +62,8 @@
  * values in the column; see {@link Representation} and
  * {@link RepresentationType}.
  */
-class ArrayTable extends AbstractQueryableTable implements ScannableTable {
+class ArrayTable extends AbstractQueryableTable
+    implements ScannableTable, VectorTable {
   private final RelProtoDataType protoRowType;
   private final Supplier<Content> supplier;
 
@@ -91,6 +99,21 @@ public Enumerator<Object[]> enumerator() {
     };
   }
 
+  public Enumerable<ColumnBatch> batches(DataContext root) {
+    final ImmutableList.Builder<Kind> builder = ImmutableList.builder();
+    for (RelDataTypeField field
+        : getRowType(root.getTypeFactory()).getFieldList()) {
+      builder.add(Kind.of(field.getType()));
+    }
+    final List<Kind> kinds = builder.build();
+    return new AbstractEnumerable<ColumnBatch>() {
+      public Enumerator<ColumnBatch> enumerator() {
+        final Content content = supplier.get();
+        return content.batchEnumerator(kinds, ColumnBatch.DEFAULT_CAPACITY);
+      }
+    };
+  }
+
   public <T> Queryable<T> asQueryable(final QueryProvider queryProvider,
       SchemaPlus schema, String tableName) {
     return new AbstractTableQueryable<T>(queryProvider, schema, this,
@@ -832,6 +855,13 @@ public Enumerator<Object[]> arrayEnumerator() {
       return new ArrayEnumerator(size, columns);
     }
 
+    /** Returns an enumerator over batches of rows, each column held as the
+     * given kind of {@link org.apache.calcite.adapter.vector.Column}. */
+    public Enumerator<ColumnBatch> batchEnumerator(List<Kind> kinds,
+        int capacity) {
+      return new BatchEnumerator(size, columns, kinds, capacity);
+    }
+
     /** Enumerator over a table with a single column; each element
      * returned is an object. */
     private static class ObjectEnumerator implements Enumerator<Object> {
@@ -894,6 +924,92 @@ public void reset() {
       public void close() {
       }
     }
+
+    /** Enumerator over a table that returns batches of rows. Values held in
+     * arrays of primitives or bit-sliced arrays are copied into the batch's
+     * columns without being boxed. */
+    private static class BatchEnumerator implements Enumerator<ColumnBatch> {
+      final int rowCount;
+      final List<Column> columns;
+      final List<Kind> kinds;
+      final int capacity;
+      int start;
+      ColumnBatch current;
+
+      public BatchEnumerator(int rowCount, List<Column> columns,
+          List<Kind> kinds, int capacity) {
+        this.rowCount = rowCount;
+        this.columns = columns;
+        this.kinds = kinds;
+        this.capacity = capacity;
+      }
+
+      public ColumnBatch current() {
+        return current;
+      }
+
+      public boolean moveNext() {
+        if (start >= rowCount) {
+          return false;
+        }
+        final int n = Math.min(capacity, rowCount - start);
+        final org.apache.calcite.adapter.vector.Column[] vectorColumns =
+            new org.apache.calcite.adapter.vector.Column[columns.size()];
+        for (int j = 0; j < vectorColumns.length; j++) {
+          vectorColumns[j] = copy(columns.get(j), kinds.get(j), start, n);
+        }
+        current = new ColumnBatch(n, Arrays.asList(vectorColumns), null, n);
+        start += n;
+        return true;
+      }
+
+      public void reset() {
+        start = 0;
+      }
+
+      public void close() {
+      }
+
+      /** Copies {@code n} values of a column, starting at {@code start}. */
+      private static org.apache.calcite.adapter.vector.Column copy(
+          Column column, Kind kind, int start, int n) {
+        final Object dataSet = column.dataSet;
+        switch (column.representation.getType()) {
+        case PRIMITIVE_ARRAY:
+          final org.apache.calcite.adapter.vector.Column vectorColumn =
+              org.apache.calcite.adapter.vector.Column.copyOf(dataSet, kind,
+                  start, n);
+          if (vectorColumn != null) {
+            return vectorColumn;
+          }
+          break;
+        case BIT_SLICED_PRIMITIVE_ARRAY:
+          // Same value as getObject, which decodes into an int, but unboxed.
+          switch (kind) {
+          case INT:
+            final int[] ints = new int[n];
+            for (int i = 0; i < n; i++) {
+              ints[i] = column.representation.getInt(dataSet, start + i);
+            }
+            return new IntColumn(ints, new BitSet());
+          case LONG:
+            final long[] longs = new long[n];
+            for (int i = 0; i < n; i++) {
+              longs[i] = column.representation.getInt(dataSet, start + i);
+            }
+            return new LongColumn(longs, new BitSet());
+          }
+          break;
+        }
+        final org.apache.calcite.adapter.vector.Column vectorColumn =
+            org.apache.calcite.adapter.vector.Column.create(kind, n);
+        for (int i = 0; i < n; i++) {
+          vectorColumn.set(i,
+              column.representation.getObject(dataSet, start + i));
+        }
+        return vectorColumn;
+      }
+    }
   }
 }
 
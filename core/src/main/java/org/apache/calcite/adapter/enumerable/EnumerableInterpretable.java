@@ -17,32 +17,47 @@
 package org.apache.calcite.adapter.enumerable;
 
 import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.avatica.Helper;
 import org.apache.calcite.interpreter.InterpretableConvention;
 import org.apache.calcite.interpreter.InterpretableRel;
 import org.apache.calcite.interpreter.Interpreter;
 import org.apache.calcite.interpreter.Node;
-import org.apache.calcite.interpreter.Row;
-import org.apache.calcite.interpreter.Sink;
 import org.apache.calcite.jdbc.CalcitePrepare;
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.tree.ClassDeclaration;
+import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.FieldDeclaration;
+import org.apache.calcite.linq4j.tree.MemberDeclaration;
+import org.apache.calcite.linq4j.tree.Visitor;
 import org.apache.calcite.plan.ConventionTraitDef;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.prepare.CalcitePrepareImpl;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.convert.ConverterImpl;
+import org.apache.calcite.rex.RexDynamicParam;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgram;
 import org.apache.calcite.runtime.ArrayBindable;
 import org.apache.calcite.runtime.Bindable;
+import org.apache.calcite.runtime.Enumerables;
 import org.apache.calcite.runtime.Hook;
 import org.apache.calcite.runtime.Typed;
 import org.apache.calcite.runtime.Utilities;
+import org.apache.calcite.util.NlsString;
 import org.apache.calcite.util.Util;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.compiler.CompilerFactoryFactory;
 import org.codehaus.commons.compiler.IClassBodyEvaluator;
@@ -50,8 +65,14 @@
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Relational expression that converts an enumerable input to interpretable
@@ -62,6 +83,31 @@
  */
 public class EnumerableInterpretable extends ConverterImpl
     implements InterpretableRel {
+  /** Maximum number of classes kept by the cache of compiled code. Set
+   * system property "calcite.bindable.cache.maxSize" to change it, or to 0
+   * to compile every statement. */
+  private static final int BINDABLE_CACHE_MAX_SIZE =
+      Integer.getInteger("calcite.bindable.cache.maxSize", 1000);
+
+  /** Whether literals in projections and filters become parameters of the
+   * generated code, rather than constants in it. Statements that differ
+   * only in those literals then generate the same code, and share a
+   * compiled class; but the code cannot fold them, and unboxes each one as
+   * it is used. Set system property "calcite.bindable.hoistLiterals" to
+   * enable. */
+  private static final boolean HOIST_LITERALS =
+      Util.getBooleanProperty("calcite.bindable.hoistLiterals");
+
+  /** Classes compiled from generated code, keyed by the code and by the
+   * interfaces they implement. The cache holds classes rather than
+   * bindables because a bindable keeps the data context of its last
+   * {@code bind}, and so cannot be shared by statements. */
+  private static final Cache<List<Object>, Class> BINDABLE_CACHE =
+      CacheBuilder.newBuilder()
+          .maximumSize(BINDABLE_CACHE_MAX_SIZE)
+          .recordStats()
+          .build();
+
   protected EnumerableInterpretable(RelOptCluster cluster, RelNode input) {
     super(cluster, ConventionTraitDef.INSTANCE,
         cluster.traitSetOf(InterpretableConvention.INSTANCE), input);
@@ -85,6 +131,9 @@ public Node implement(final InterpreterImplementor implementor) {
   public static Bindable toBindable(Map<String, Object> parameters,
       CalcitePrepare.SparkHandler spark, EnumerableRel rel,
       EnumerableRel.Prefer prefer) {
+    if (HOIST_LITERALS && (spark == null || !spark.enabled())) {
+      rel = (EnumerableRel) hoistLiterals(rel, parameters);
+    }
     EnumerableRelImplementor relImplementor =
         new EnumerableRelImplementor(rel.getCluster().getRexBuilder(),
             parameters);
@@ -116,8 +165,50 @@ static ArrayBindable getArrayBindable(ClassDeclaration expr, String s,
     return box(bindable);
   }
 
-  static Bindable getBindable(ClassDeclaration expr, String s, int fieldCount)
-      throws CompileException, IOException {
+  /** Returns the hit, miss and eviction counts of the cache of compiled
+   * code. */
+  public static CacheStats getBindableCacheStats() {
+    return BINDABLE_CACHE.stats();
+  }
+
+  static Bindable getBindable(final ClassDeclaration expr, final String s,
+      final int fieldCount) throws CompileException, IOException {
+    final Class clazz;
+    if (hasMutableStaticField(expr)) {
+      // The field would be shared by the statements that use the class.
+      clazz = compile(expr, s, fieldCount);
+    } else {
+      try {
+        clazz = BINDABLE_CACHE.get(ImmutableList.<Object>of(s, fieldCount == 1),
+            new Callable<Class>() {
+              public Class call() throws Exception {
+                return compile(expr, s, fieldCount);
+              }
+            });
+      } catch (ExecutionException e) {
+        Throwables.propagateIfInstanceOf(e.getCause(), CompileException.class);
+        Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+        throw Throwables.propagate(e.getCause());
+      }
+    }
+    return fieldCount == 1
+        ? new CompiledBindable<Object>(clazz)
+        : new CompiledArrayBindable(clazz);
+  }
+
+  /** Returns whether a generated class, or a class nested in it, declares a
+   * static field that is not final. Constants that the code generator hoists
+   * into static final fields are the same for every statement that generates
+   * the same code. */
+  private static boolean hasMutableStaticField(ClassDeclaration expr) {
+    final MutableStaticFieldFinder finder = new MutableStaticFieldFinder();
+    expr.accept(finder);
+    return finder.found;
+  }
+
+  /** Compiles generated code into a class. */
+  private static Class compile(ClassDeclaration expr, String s,
+      int fieldCount) throws CompileException, IOException {
     ICompilerFactory compilerFactory;
     try {
       compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
@@ -137,7 +228,159 @@ static Bindable getBindable(ClassDeclaration expr, String s, int fieldCount)
       // Add line numbers to the generated janino class
       cbe.setDebuggingInformation(true, true, true);
     }
-    return (Bindable) cbe.createInstance(new StringReader(s));
+    cbe.cook(new StringReader(s));
+    return cbe.getClazz();
+  }
+
+  /** Visitor that finds static fields that are not final. */
+  private static class MutableStaticFieldFinder extends Visitor {
+    boolean found;
+
+    @Override public MemberDeclaration visit(FieldDeclaration fieldDeclaration,
+        Expression initializer) {
+      if ((fieldDeclaration.modifier & (Modifier.STATIC | Modifier.FINAL))
+          == Modifier.STATIC) {
+        found = true;
+      }
+      return super.visit(fieldDeclaration, initializer);
+    }
+  }
+
+  /** Bindable that creates an instance of a compiled class each time it is
+   * bound.
+   *
+   * <p>The generated code keeps the data context of {@code bind} in a field,
+   * which its enumerators read as they run; so an instance cannot be shared
+   * by executions that overlap, such as two open result sets of the same
+   * prepared statement. */
+  private static class CompiledBindable<T> implements Bindable<T>, Typed {
+    private final Class clazz;
+    private final Type elementType;
+
+    CompiledBindable(Class clazz) {
+      this.clazz = clazz;
+      this.elementType = ((Typed) newInstance()).getElementType();
+    }
+
+    private Bindable<T> newInstance() {
+      try {
+        //noinspection unchecked
+        return (Bindable<T>) clazz.newInstance();
+      } catch (InstantiationException | IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    public Type getElementType() {
+      return elementType;
+    }
+
+    public Enumerable<T> bind(DataContext dataContext) {
+      return newInstance().bind(dataContext);
+    }
+  }
+
+  /** Bindable that creates an instance of a compiled class whose rows are
+   * arrays each time it is bound. */
+  private static class CompiledArrayBindable
+      extends CompiledBindable<Object[]> implements ArrayBindable {
+    CompiledArrayBindable(Class clazz) {
+      super(clazz);
+    }
+
+    @Override public Class<Object[]> getElementType() {
+      return Object[].class;
+    }
+  }
+
+  /** Replaces literals in the programs of the {@link EnumerableCalc}s of a
+   * tree with dynamic parameters, and puts their values into a map of
+   * parameters.
+   *
+   * <p>A hoisted literal has a negative index, -1 for the first, -2 for the
+   * next, and so on, so that it does not clash with parameters of the
+   * statement; the generated code reads it as {@code root.get("?-1")}. */
+  static RelNode hoistLiterals(RelNode rel, Map<String, Object> parameters) {
+    final List<RelNode> inputs = new ArrayList<>();
+    boolean changed = false;
+    for (RelNode input : rel.getInputs()) {
+      final RelNode input2 = hoistLiterals(input, parameters);
+      inputs.add(input2);
+      changed |= input2 != input;
+    }
+    if (rel instanceof EnumerableCalc) {
+      final EnumerableCalc calc = (EnumerableCalc) rel;
+      final RexProgram program = hoistLiterals(calc.getProgram(),
+          (JavaTypeFactory) calc.getCluster().getTypeFactory(), parameters);
+      if (changed || program != calc.getProgram()) {
+        return calc.copy(calc.getTraitSet(), inputs.get(0), program);
+      }
+    }
+    return changed ? rel.copy(rel.getTraitSet(), inputs) : rel;
+  }
+
+  private static RexProgram hoistLiterals(RexProgram program,
+      JavaTypeFactory typeFactory, Map<String, Object> parameters) {
+    final List<RexNode> exprs = new ArrayList<>(program.getExprList());
+    boolean changed = false;
+    for (int i = 0; i < exprs.size(); i++) {
+      if (!(exprs.get(i) instanceof RexLiteral)) {
+        continue;
+      }
+      final RexLiteral literal = (RexLiteral) exprs.get(i);
+      final Object value = hoistedValue(literal, typeFactory);
+      if (value == null) {
+        continue;
+      }
+      int index = -1;
+      while (parameters.containsKey("?" + index)) {
+        --index;
+      }
+      parameters.put("?" + index, value);
+      exprs.set(i, new RexDynamicParam(literal.getType(), index));
+      changed = true;
+    }
+    if (!changed) {
+      return program;
+    }
+    return new RexProgram(program.getInputRowType(), exprs,
+        program.getProjectList(), program.getCondition(),
+        program.getOutputRowType());
+  }
+
+  /** Returns the value of a literal as the generated code would read a
+   * parameter of the same type, or null if the literal is not to be
+   * hoisted. */
+  private static Object hoistedValue(RexLiteral literal,
+      JavaTypeFactory typeFactory) {
+    final Comparable value = literal.getValue();
+    if (value == null) {
+      return null;
+    }
+    switch (literal.getType().getSqlTypeName()) {
+    case CHAR:
+    case VARCHAR:
+      return ((NlsString) value).getValue();
+    case TINYINT:
+      return ((BigDecimal) value).byteValue();
+    case SMALLINT:
+      return ((BigDecimal) value).shortValue();
+    case INTEGER:
+      return ((BigDecimal) value).intValue();
+    case BIGINT:
+      return ((BigDecimal) value).longValue();
+    case REAL:
+      return ((BigDecimal) value).floatValue();
+    case FLOAT:
+    case DOUBLE:
+      return ((BigDecimal) value).doubleValue();
+    case DECIMAL:
+      return typeFactory.getJavaClass(literal.getType()) == BigDecimal.class
+          ? value
+          : null;
+    default:
+      return null;
+    }
   }
 
   /** Converts a bindable over scalar values into an array bindable, with each
@@ -183,21 +426,13 @@ public void close() {
    *
    * <p>From the interpreter's perspective, it is a leaf node. */
   private static class EnumerableNode implements Node {
-    private final Enumerable<Object[]> enumerable;
-    private final Sink sink;
-
     public EnumerableNode(Enumerable<Object[]> enumerable,
         Interpreter interpreter, EnumerableInterpretable rel) {
-      this.enumerable = enumerable;
-      this.sink = interpreter.sink(rel);
+      interpreter.enumerable(rel, Enumerables.toRow(enumerable));
     }
 
     public void run() throws InterruptedException {
-      final Enumerator<Object[]> enumerator = enumerable.enumerator();
-      while (enumerator.moveNext()) {
-        Object[] values = enumerator.current();
-        sink.send(Row.of(values));
-      }
+      // Rows are read from the enumerable.
     }
   }
 }
@@ -25,11 +25,18 @@
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.runtime.ExternalSort;
+import org.apache.calcite.runtime.Hook;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.Pair;
 
 /** Implementation of {@link org.apache.calcite.rel.core.Sort} in
- * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}. */
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}.
+ *
+ * <p>Sorts in memory, unless system property "calcite.sort.memoryBudget"
+ * is set, or a handler of {@link Hook#SORT_MEMORY_BUDGET} sets a budget, in
+ * which case it uses {@link ExternalSort} to write sorted runs to temporary
+ * files when the rows exceed that many bytes. */
 public class EnumerableSort extends Sort implements EnumerableRel {
   /**
    * Creates an EnumerableSort.
@@ -68,27 +75,56 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     final BlockBuilder builder = new BlockBuilder();
     final EnumerableRel child = (EnumerableRel) getInput();
     final Result result = implementor.visitChild(this, 0, child, pref);
+    final long memoryBudget = ExternalSort.memoryBudget();
+    // Rows that may be written to disk must be scalars, arrays or lists, not
+    // instances of synthetic classes.
+    final JavaRowFormat format =
+        memoryBudget > 0 && result.format == JavaRowFormat.CUSTOM
+            ? JavaRowFormat.ARRAY
+            : result.format;
     final PhysType physType =
         PhysTypeImpl.of(
             implementor.getTypeFactory(),
             getRowType(),
-            result.format);
+            format);
     Expression childExp =
         builder.append("child", result.block);
 
     PhysType inputPhysType = result.physType;
+    if (format != result.format) {
+      final PhysType arrayPhysType =
+          PhysTypeImpl.of(
+              implementor.getTypeFactory(),
+              child.getRowType(),
+              format);
+      childExp =
+          builder.append("rows",
+              inputPhysType.convertTo(childExp, arrayPhysType));
+      inputPhysType = arrayPhysType;
+    }
     final Pair<Expression, Expression> pair =
         inputPhysType.generateCollationKey(
             collation.getFieldCollations());
 
-    builder.add(
-        Expressions.return_(null,
-            Expressions.call(childExp,
-                BuiltInMethod.ORDER_BY.method,
-                Expressions.list(
-                    builder.append("keySelector", pair.left))
-                    .appendIfNotNull(
-                        builder.appendIfNotNull("comparator", pair.right)))));
+    if (memoryBudget > 0) {
+      builder.add(
+          Expressions.return_(null,
+              Expressions.call(BuiltInMethod.EXTERNAL_SORT.method,
+                  childExp,
+                  builder.append("keySelector", pair.left),
+                  builder.append("comparator", pair.right),
+                  Expressions.constant(memoryBudget))));
+    } else {
+      builder.add(
+          Expressions.return_(null,
+              Expressions.call(childExp,
+                  BuiltInMethod.ORDER_BY.method,
+                  Expressions.list(
+                      builder.append("keySelector", pair.left))
+                      .appendIfNotNull(
+                          builder.appendIfNotNull("comparator",
+                              pair.right)))));
+    }
     return implementor.result(physType, builder.toBlock());
   }
 }
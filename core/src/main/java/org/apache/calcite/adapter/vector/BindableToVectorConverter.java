@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.interpreter.BindableConvention;
+import org.apache.calcite.interpreter.BindableRel;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.plan.ConventionTraitDef;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterImpl;
+import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.type.RelDataTypeField;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Relational expression that packs the rows of a bindable relational
+ * expression, such as a scan, into {@link ColumnBatch column batches}.
+ */
+public class BindableToVectorConverter extends ConverterImpl
+    implements VectorRel {
+  /** Creates a BindableToVectorConverter. */
+  protected BindableToVectorConverter(RelOptCluster cluster,
+      RelTraitSet traits, RelNode input) {
+    super(cluster, ConventionTraitDef.INSTANCE, traits, input);
+  }
+
+  @Override public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+    return new BindableToVectorConverter(getCluster(), traitSet,
+        sole(inputs));
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner) {
+    return super.computeSelfCost(planner)
+        .multiplyBy(VectorConvention.CONVERTER_COST_MULTIPLIER);
+  }
+
+  public Enumerable<ColumnBatch> batches(DataContext dataContext) {
+    final ImmutableList.Builder<Column.Kind> kinds = ImmutableList.builder();
+    for (RelDataTypeField field : getRowType().getFieldList()) {
+      kinds.add(Column.Kind.of(field.getType()));
+    }
+    return ColumnBatch.fromRows(((BindableRel) getInput()).bind(dataContext),
+        kinds.build(), ColumnBatch.DEFAULT_CAPACITY);
+  }
+
+  /** Rule that converts any bindable relational expression to vector
+   * convention. */
+  public static class BindableToVectorConverterRule extends ConverterRule {
+    public static final BindableToVectorConverterRule INSTANCE =
+        new BindableToVectorConverterRule();
+
+    private BindableToVectorConverterRule() {
+      super(RelNode.class, BindableConvention.INSTANCE,
+          VectorConvention.INSTANCE, "BindableToVectorConverterRule");
+    }
+
+    @Override public RelNode convert(RelNode rel) {
+      return new BindableToVectorConverter(rel.getCluster(),
+          rel.getTraitSet().replace(VectorConvention.INSTANCE), rel);
+    }
+  }
+}
+
+// End BindableToVectorConverter.java
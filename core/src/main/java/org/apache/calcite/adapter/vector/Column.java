@@ -0,0 +1,406 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.rel.type.RelDataType;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Values of one field for each row of a {@link ColumnBatch}.
+ *
+ * <p>Values of numeric and boolean types are held in a primitive array, and
+ * whether each value is null in a bit set, so that operators can process a
+ * column in a tight loop without boxing. The array element of a null value
+ * is undefined, typically zero.
+ *
+ * <p>Columns are not modified once their batch has been built.
+ */
+public abstract class Column {
+  /** Number of values. */
+  public final int size;
+
+  /** Set bits are the positions of null values. */
+  public final BitSet nulls;
+
+  protected Column(int size, BitSet nulls) {
+    this.size = size;
+    this.nulls = nulls;
+  }
+
+  /** Creates an empty column of a given kind, to be populated by
+   * {@link #set(int, Object)}. */
+  public static Column create(Kind kind, int size) {
+    final BitSet nulls = new BitSet(size);
+    switch (kind) {
+    case INT:
+      return new IntColumn(new int[size], nulls);
+    case LONG:
+      return new LongColumn(new long[size], nulls);
+    case DOUBLE:
+      return new DoubleColumn(new double[size], nulls);
+    case BOOLEAN:
+      return new BooleanColumn(new boolean[size], nulls);
+    default:
+      return new ObjectColumn(new Object[size], nulls);
+    }
+  }
+
+  /** Creates a column whose values are all the same. */
+  public static Column constant(Kind kind, Object value, int size) {
+    final Column column = create(kind, size);
+    if (value == null) {
+      column.nulls.set(0, size);
+    } else {
+      for (int i = 0; i < size; i++) {
+        column.set(i, value);
+      }
+    }
+    return column;
+  }
+
+  /** Creates a column by copying {@code n} values, starting at
+   * {@code start}, from an array of primitives, widening them if necessary;
+   * returns null if the array cannot be copied to a column of the given
+   * kind. */
+  public static Column copyOf(Object array, Kind kind, int start, int n) {
+    switch (kind) {
+    case INT:
+      final int[] ints = new int[n];
+      if (array instanceof int[]) {
+        System.arraycopy(array, start, ints, 0, n);
+      } else if (array instanceof short[]) {
+        final short[] shorts = (short[]) array;
+        for (int i = 0; i < n; i++) {
+          ints[i] = shorts[start + i];
+        }
+      } else if (array instanceof byte[]) {
+        final byte[] bytes = (byte[]) array;
+        for (int i = 0; i < n; i++) {
+          ints[i] = bytes[start + i];
+        }
+      } else {
+        return null;
+      }
+      return new IntColumn(ints, new BitSet());
+    case LONG:
+      final long[] longs = new long[n];
+      if (array instanceof long[]) {
+        System.arraycopy(array, start, longs, 0, n);
+      } else if (array instanceof int[]) {
+        final int[] ints2 = (int[]) array;
+        for (int i = 0; i < n; i++) {
+          longs[i] = ints2[start + i];
+        }
+      } else if (array instanceof short[]) {
+        final short[] shorts = (short[]) array;
+        for (int i = 0; i < n; i++) {
+          longs[i] = shorts[start + i];
+        }
+      } else if (array instanceof byte[]) {
+        final byte[] bytes = (byte[]) array;
+        for (int i = 0; i < n; i++) {
+          longs[i] = bytes[start + i];
+        }
+      } else {
+        return null;
+      }
+      return new LongColumn(longs, new BitSet());
+    case DOUBLE:
+      if (array instanceof double[]) {
+        final double[] doubles = new double[n];
+        System.arraycopy(array, start, doubles, 0, n);
+        return new DoubleColumn(doubles, new BitSet());
+      }
+      return null;
+    default:
+      return null;
+    }
+  }
+
+  /** Returns the kind of values held. */
+  public abstract Kind kind();
+
+  /** Returns whether the value at a position is null. */
+  public boolean isNull(int i) {
+    return nulls.get(i);
+  }
+
+  /** Returns the value at a position, boxed, or null. */
+  public abstract Object get(int i);
+
+  /** Sets the value at a position, unboxing it if necessary. */
+  public abstract void set(int i, Object value);
+
+  /** Returns this column converted to a given numeric kind. */
+  public Column convert(Kind kind) {
+    if (kind == kind()) {
+      return this;
+    }
+    final Column column = create(kind, size);
+    column.nulls.or(nulls);
+    for (int i = 0; i < size; i++) {
+      if (!nulls.get(i)) {
+        column.set(i, get(i));
+      }
+    }
+    return column;
+  }
+
+  /** Kind of values in a column, which determines how it stores them. */
+  public enum Kind {
+    INT, LONG, DOUBLE, BOOLEAN, OBJECT;
+
+    /** Returns the kind of column that holds values of a given type. */
+    public static Kind of(RelDataType type) {
+      switch (type.getSqlTypeName()) {
+      case INTEGER:
+        return INT;
+      case BIGINT:
+        return LONG;
+      case DOUBLE:
+        return DOUBLE;
+      case BOOLEAN:
+        return BOOLEAN;
+      default:
+        return OBJECT;
+      }
+    }
+
+    /** Returns whether values of this kind are numbers held in a primitive
+     * array. */
+    public boolean isNumeric() {
+      return this == INT || this == LONG || this == DOUBLE;
+    }
+
+    /** Returns the kind that can hold the values of both of two numeric
+     * kinds. */
+    public static Kind widest(Kind kind0, Kind kind1) {
+      return kind0.compareTo(kind1) >= 0 ? kind0 : kind1;
+    }
+  }
+
+  /** Column of {@code int} values. */
+  public static class IntColumn extends Column {
+    public final int[] values;
+
+    public IntColumn(int[] values, BitSet nulls) {
+      super(values.length, nulls);
+      this.values = values;
+    }
+
+    public Kind kind() {
+      return Kind.INT;
+    }
+
+    public Object get(int i) {
+      return nulls.get(i) ? null : (Object) values[i];
+    }
+
+    public void set(int i, Object value) {
+      if (value == null) {
+        nulls.set(i);
+      } else {
+        values[i] = ((Number) value).intValue();
+      }
+    }
+
+    @Override public Column convert(Kind kind) {
+      switch (kind) {
+      case LONG:
+        final long[] longs = new long[size];
+        for (int i = 0; i < size; i++) {
+          longs[i] = values[i];
+        }
+        return new LongColumn(longs, nulls);
+      case DOUBLE:
+        final double[] doubles = new double[size];
+        for (int i = 0; i < size; i++) {
+          doubles[i] = values[i];
+        }
+        return new DoubleColumn(doubles, nulls);
+      default:
+        return super.convert(kind);
+      }
+    }
+
+    @Override public String toString() {
+      return Arrays.toString(values);
+    }
+  }
+
+  /** Column of {@code long} values. */
+  public static class LongColumn extends Column {
+    public final long[] values;
+
+    public LongColumn(long[] values, BitSet nulls) {
+      super(values.length, nulls);
+      this.values = values;
+    }
+
+    public Kind kind() {
+      return Kind.LONG;
+    }
+
+    public Object get(int i) {
+      return nulls.get(i) ? null : (Object) values[i];
+    }
+
+    public void set(int i, Object value) {
+      if (value == null) {
+        nulls.set(i);
+      } else {
+        values[i] = ((Number) value).longValue();
+      }
+    }
+
+    @Override public Column convert(Kind kind) {
+      switch (kind) {
+      case INT:
+        final int[] ints = new int[size];
+        for (int i = 0; i < size; i++) {
+          ints[i] = (int) values[i];
+        }
+        return new IntColumn(ints, nulls);
+      case DOUBLE:
+        final double[] doubles = new double[size];
+        for (int i = 0; i < size; i++) {
+          doubles[i] = values[i];
+        }
+        return new DoubleColumn(doubles, nulls);
+      default:
+        return super.convert(kind);
+      }
+    }
+
+    @Override public String toString() {
+      return Arrays.toString(values);
+    }
+  }
+
+  /** Column of {@code double} values. */
+  public static class DoubleColumn extends Column {
+    public final double[] values;
+
+    public DoubleColumn(double[] values, BitSet nulls) {
+      super(values.length, nulls);
+      this.values = values;
+    }
+
+    public Kind kind() {
+      return Kind.DOUBLE;
+    }
+
+    public Object get(int i) {
+      return nulls.get(i) ? null : (Object) values[i];
+    }
+
+    public void set(int i, Object value) {
+      if (value == null) {
+        nulls.set(i);
+      } else {
+        values[i] = ((Number) value).doubleValue();
+      }
+    }
+
+    @Override public Column convert(Kind kind) {
+      switch (kind) {
+      case INT:
+        final int[] ints = new int[size];
+        for (int i = 0; i < size; i++) {
+          ints[i] = (int) values[i];
+        }
+        return new IntColumn(ints, nulls);
+      case LONG:
+        final long[] longs = new long[size];
+        for (int i = 0; i < size; i++) {
+          longs[i] = (long) values[i];
+        }
+        return new LongColumn(longs, nulls);
+      default:
+        return super.convert(kind);
+      }
+    }
+
+    @Override public String toString() {
+      return Arrays.toString(values);
+    }
+  }
+
+  /** Column of {@code boolean} values. */
+  public static class BooleanColumn extends Column {
+    public final boolean[] values;
+
+    public BooleanColumn(boolean[] values, BitSet nulls) {
+      super(values.length, nulls);
+      this.values = values;
+    }
+
+    public Kind kind() {
+      return Kind.BOOLEAN;
+    }
+
+    public Object get(int i) {
+      return nulls.get(i) ? null : (Object) values[i];
+    }
+
+    public void set(int i, Object value) {
+      if (value == null) {
+        nulls.set(i);
+      } else {
+        values[i] = (Boolean) value;
+      }
+    }
+
+    @Override public String toString() {
+      return Arrays.toString(values);
+    }
+  }
+
+  /** Column of values of any other type, such as strings, held as
+   * objects. */
+  public static class ObjectColumn extends Column {
+    public final Object[] values;
+
+    public ObjectColumn(Object[] values, BitSet nulls) {
+      super(values.length, nulls);
+      this.values = values;
+    }
+
+    public Kind kind() {
+      return Kind.OBJECT;
+    }
+
+    public Object get(int i) {
+      return values[i];
+    }
+
+    public void set(int i, Object value) {
+      values[i] = value;
+      if (value == null) {
+        nulls.set(i);
+      }
+    }
+
+    @Override public String toString() {
+      return Arrays.toString(values);
+    }
+  }
+}
+
+// End Column.java
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Batch of rows, held as one {@link Column} per field.
+ *
+ * <p>A batch may have a selection vector, the ascending positions of the
+ * rows that are in the batch. A filter sets the selection vector rather than
+ * copying the rows that pass. If there is no selection vector, every row is
+ * in the batch.
+ */
+public class ColumnBatch {
+  /** Default number of rows in a batch. Large enough to amortize the cost
+   * of dispatching an operator over many rows, small enough that the columns
+   * of a batch fit in the processor cache. */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final int size;
+  private final ImmutableList<Column> columns;
+  private final int[] selection;
+  private final int selectedCount;
+
+  /**
+   * Creates a ColumnBatch.
+   *
+   * @param size Number of rows in each column
+   * @param columns Columns
+   * @param selection Ascending positions of the rows in the batch, or null if
+   *                  all rows are in the batch
+   * @param selectedCount Number of rows in the batch; if there is a selection
+   *                      vector, the number of its elements that are used
+   */
+  public ColumnBatch(int size, List<Column> columns, int[] selection,
+      int selectedCount) {
+    this.size = size;
+    this.columns = ImmutableList.copyOf(columns);
+    this.selection = selection;
+    this.selectedCount = selectedCount;
+    assert selection != null || selectedCount == size;
+    for (Column column : columns) {
+      assert column.size == size;
+    }
+  }
+
+  /** Returns the number of rows in each column, including those not
+   * selected. */
+  public int getSize() {
+    return size;
+  }
+
+  /** Returns the number of rows in the batch. */
+  public int getSelectedCount() {
+    return selectedCount;
+  }
+
+  /** Returns the selection vector, or null if all rows are in the batch. */
+  public int[] getSelection() {
+    return selection;
+  }
+
+  public List<Column> getColumns() {
+    return columns;
+  }
+
+  public Column getColumn(int i) {
+    return columns.get(i);
+  }
+
+  /** Returns the position in the columns of the {@code i}th row of the
+   * batch. */
+  public int position(int i) {
+    return selection == null ? i : selection[i];
+  }
+
+  /** Returns the {@code i}th row of the batch, boxing its values. */
+  public Object[] getRow(int i) {
+    final int p = position(i);
+    final Object[] values = new Object[columns.size()];
+    for (int j = 0; j < values.length; j++) {
+      values[j] = columns.get(j).get(p);
+    }
+    return values;
+  }
+
+  /** Packs a sequence of rows into batches.
+   *
+   * @param rows Rows
+   * @param kinds Kind of each column
+   * @param capacity Maximum number of rows in a batch
+   */
+  public static Enumerable<ColumnBatch> fromRows(
+      final Enumerable<Object[]> rows, final List<Column.Kind> kinds,
+      final int capacity) {
+    return new AbstractEnumerable<ColumnBatch>() {
+      public Enumerator<ColumnBatch> enumerator() {
+        final Enumerator<Object[]> enumerator = rows.enumerator();
+        return new Enumerator<ColumnBatch>() {
+          ColumnBatch current;
+          boolean done;
+
+          public ColumnBatch current() {
+            return current;
+          }
+
+          public boolean moveNext() {
+            if (done) {
+              return false;
+            }
+            final Column[] columns = new Column[kinds.size()];
+            for (int j = 0; j < columns.length; j++) {
+              columns[j] = Column.create(kinds.get(j), capacity);
+            }
+            int n = 0;
+            while (n < capacity && enumerator.moveNext()) {
+              final Object[] row = enumerator.current();
+              for (int j = 0; j < columns.length; j++) {
+                columns[j].set(n, row[j]);
+              }
+              ++n;
+            }
+            if (n < capacity) {
+              done = true;
+              if (n == 0) {
+                return false;
+              }
+              for (int j = 0; j < columns.length; j++) {
+                columns[j] = truncate(columns[j], n);
+              }
+            }
+            current = new ColumnBatch(n, ImmutableList.copyOf(columns), null,
+                n);
+            return true;
+          }
+
+          public void reset() {
+            enumerator.reset();
+            done = false;
+          }
+
+          public void close() {
+            enumerator.close();
+          }
+        };
+      }
+    };
+  }
+
+  /** Returns a column whose values are the first {@code n} values of
+   * another. */
+  private static Column truncate(Column column, int n) {
+    final Column column2 = Column.create(column.kind(), n);
+    for (int i = 0; i < n; i++) {
+      column2.set(i, column.get(i));
+    }
+    return column2;
+  }
+
+  /** Returns the rows of a sequence of batches, boxing their values. */
+  public static Enumerable<Object[]> toRows(
+      final Enumerable<ColumnBatch> batches) {
+    return new AbstractEnumerable<Object[]>() {
+      public Enumerator<Object[]> enumerator() {
+        final Enumerator<ColumnBatch> enumerator = batches.enumerator();
+        return new Enumerator<Object[]>() {
+          ColumnBatch batch;
+          int i;
+          Object[] current;
+
+          public Object[] current() {
+            return current;
+          }
+
+          public boolean moveNext() {
+            while (batch == null || i >= batch.getSelectedCount()) {
+              if (!enumerator.moveNext()) {
+                return false;
+              }
+              batch = enumerator.current();
+              i = 0;
+            }
+            current = batch.getRow(i++);
+            return true;
+          }
+
+          public void reset() {
+            enumerator.reset();
+            batch = null;
+          }
+
+          public void close() {
+            enumerator.close();
+          }
+        };
+      }
+    };
+  }
+}
+
+// End ColumnBatch.java
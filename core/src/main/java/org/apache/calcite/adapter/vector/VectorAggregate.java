@@ -0,0 +1,547 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.vector.Column.DoubleColumn;
+import org.apache.calcite.adapter.vector.Column.IntColumn;
+import org.apache.calcite.adapter.vector.Column.Kind;
+import org.apache.calcite.adapter.vector.Column.LongColumn;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.sql.SqlAggFunction;
+import org.apache.calcite.sql.fun.SqlCountAggFunction;
+import org.apache.calcite.sql.fun.SqlMinMaxAggFunction;
+import org.apache.calcite.sql.fun.SqlSumAggFunction;
+import org.apache.calcite.sql.fun.SqlSumEmptyIsZeroAggFunction;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of {@link org.apache.calcite.rel.core.Aggregate} in
+ * {@link VectorConvention vector calling convention}, that groups rows in a
+ * hash table.
+ *
+ * <p>It reads every batch of its input before it returns any output. It
+ * implements {@code COUNT}, and {@code SUM}, {@code $SUM0}, {@code MIN} and
+ * {@code MAX} of numeric values, accumulating in primitive arrays indexed by
+ * group. If there is a single key of type {@code INTEGER} or
+ * {@code BIGINT}, it finds groups using an open-addressing hash table of
+ * primitive keys.
+ */
+public class VectorAggregate extends Aggregate implements VectorRel {
+  /** Creates a VectorAggregate. */
+  public VectorAggregate(RelOptCluster cluster, RelTraitSet traitSet,
+      RelNode input, boolean indicator, ImmutableBitSet groupSet,
+      List<ImmutableBitSet> groupSets, List<AggregateCall> aggCalls) {
+    super(cluster, traitSet, input, indicator, groupSet, groupSets, aggCalls);
+    assert getConvention() instanceof VectorConvention;
+    assert canImplement(this);
+  }
+
+  @Override public VectorAggregate copy(RelTraitSet traitSet, RelNode input,
+      boolean indicator, ImmutableBitSet groupSet,
+      List<ImmutableBitSet> groupSets, List<AggregateCall> aggCalls) {
+    return new VectorAggregate(getCluster(), traitSet, input, indicator,
+        groupSet, groupSets, aggCalls);
+  }
+
+  /** Returns whether an aggregate can be evaluated over column batches. */
+  public static boolean canImplement(Aggregate aggregate) {
+    if (aggregate.getGroupType() != Group.SIMPLE) {
+      return false;
+    }
+    final RelDataType inputRowType = aggregate.getInput().getRowType();
+    for (AggregateCall aggCall : aggregate.getAggCallList()) {
+      final Op op = Op.of(aggCall.getAggregation());
+      if (op == null
+          || aggCall.isDistinct()
+          || aggCall.filterArg >= 0
+          || !Kind.of(aggCall.getType()).isNumeric()) {
+        return false;
+      }
+      if (op != Op.COUNT) {
+        if (aggCall.getArgList().size() != 1) {
+          return false;
+        }
+        final int arg = aggCall.getArgList().get(0);
+        if (!Kind.of(inputRowType.getFieldList().get(arg).getType())
+            .isNumeric()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner) {
+    return super.computeSelfCost(planner)
+        .multiplyBy(VectorConvention.COST_MULTIPLIER);
+  }
+
+  public Enumerable<ColumnBatch> batches(final DataContext dataContext) {
+    return new AbstractEnumerable<ColumnBatch>() {
+      public Enumerator<ColumnBatch> enumerator() {
+        return Linq4j.enumerator(aggregateBatches(dataContext));
+      }
+    };
+  }
+
+  /** Reads all batches of the input, and returns the batches of the
+   * result. */
+  private List<ColumnBatch> aggregateBatches(DataContext dataContext) {
+    final List<Integer> keys = groupSet.asList();
+    final List<Kind> keyKinds = Lists.newArrayList();
+    for (int key : keys) {
+      keyKinds.add(
+          Kind.of(getInput().getRowType().getFieldList().get(key).getType()));
+    }
+    final Grouper grouper;
+    if (keys.isEmpty()) {
+      grouper = new EmptyGrouper();
+    } else if (keys.size() == 1
+        && (keyKinds.get(0) == Kind.INT || keyKinds.get(0) == Kind.LONG)) {
+      grouper = new LongGrouper(keys.get(0));
+    } else {
+      grouper = new ObjectGrouper(keys);
+    }
+    final List<Accumulator> accumulators = Lists.newArrayList();
+    for (AggregateCall aggCall : aggCalls) {
+      accumulators.add(new Accumulator(aggCall, getInput().getRowType()));
+    }
+
+    int[] groups = new int[ColumnBatch.DEFAULT_CAPACITY];
+    final Enumerator<ColumnBatch> enumerator =
+        ((VectorRel) getInput()).batches(dataContext).enumerator();
+    try {
+      while (enumerator.moveNext()) {
+        final ColumnBatch batch = enumerator.current();
+        if (groups.length < batch.getSelectedCount()) {
+          groups = new int[batch.getSelectedCount()];
+        }
+        grouper.group(batch, groups);
+        for (Accumulator accumulator : accumulators) {
+          accumulator.add(batch, groups, grouper.groupCount());
+        }
+      }
+    } finally {
+      enumerator.close();
+    }
+
+    final int groupCount = grouper.groupCount();
+    final List<ColumnBatch> batches = Lists.newArrayList();
+    for (int start = 0; start < groupCount;
+         start += ColumnBatch.DEFAULT_CAPACITY) {
+      final int end = Math.min(groupCount,
+          start + ColumnBatch.DEFAULT_CAPACITY);
+      final List<Column> columns = Lists.newArrayList();
+      for (int i = 0; i < keys.size(); i++) {
+        columns.add(grouper.keys(i, keyKinds.get(i), start, end));
+      }
+      for (Accumulator accumulator : accumulators) {
+        columns.add(accumulator.result(start, end));
+      }
+      batches.add(new ColumnBatch(end - start, columns, null, end - start));
+    }
+    return batches;
+  }
+
+  /** Aggregate function that can be evaluated over column batches. */
+  private enum Op {
+    COUNT, SUM, SUM0, MIN, MAX;
+
+    /** Returns the operation that implements an aggregate function, or
+     * null. */
+    static Op of(SqlAggFunction aggregation) {
+      if (aggregation instanceof SqlCountAggFunction) {
+        return COUNT;
+      } else if (aggregation instanceof SqlSumAggFunction) {
+        return SUM;
+      } else if (aggregation instanceof SqlSumEmptyIsZeroAggFunction) {
+        return SUM0;
+      } else if (aggregation instanceof SqlMinMaxAggFunction) {
+        return ((SqlMinMaxAggFunction) aggregation).isMin() ? MIN : MAX;
+      } else {
+        return null;
+      }
+    }
+  }
+
+  /** Assigns each row of a batch to a group. Groups are numbered densely,
+   * in the order that they are first seen. */
+  private abstract static class Grouper {
+    /** Writes the group of the {@code i}th row of a batch to
+     * {@code groups[i]}. */
+    abstract void group(ColumnBatch batch, int[] groups);
+
+    /** Returns the number of groups seen so far. */
+    abstract int groupCount();
+
+    /** Returns a column of the values of the {@code i}th key for the groups
+     * numbered from {@code start} to {@code end} - 1. */
+    abstract Column keys(int i, Kind kind, int start, int end);
+  }
+
+  /** Grouper for an aggregate that has no keys, and therefore exactly one
+   * group, even if the input is empty. */
+  private static class EmptyGrouper extends Grouper {
+    void group(ColumnBatch batch, int[] groups) {
+      Arrays.fill(groups, 0, batch.getSelectedCount(), 0);
+    }
+
+    int groupCount() {
+      return 1;
+    }
+
+    Column keys(int i, Kind kind, int start, int end) {
+      throw new AssertionError();
+    }
+  }
+
+  /** Grouper for a single key of type {@code INTEGER} or {@code BIGINT}.
+   * Finds groups in an open-addressing hash table of {@code long} values,
+   * with linear probing; null values form a group of their own. */
+  private static class LongGrouper extends Grouper {
+    private final int field;
+    /** Hash table: keys, and group of each slot, or -1 if empty. */
+    private long[] slotKeys = new long[1024];
+    private int[] slotGroups = filled(new int[1024], -1);
+    /** Key of each group. */
+    private long[] groupKeys = new long[1024];
+    private int groupCount;
+    private int nullGroup = -1;
+
+    LongGrouper(int field) {
+      this.field = field;
+    }
+
+    private static int[] filled(int[] ints, int value) {
+      Arrays.fill(ints, value);
+      return ints;
+    }
+
+    void group(ColumnBatch batch, int[] groups) {
+      final Column column = batch.getColumn(field);
+      final int[] ints = column instanceof IntColumn
+          ? ((IntColumn) column).values
+          : null;
+      final long[] longs = ints == null
+          ? ((LongColumn) column.convert(Kind.LONG)).values
+          : null;
+      final BitSet nulls = column.nulls;
+      final boolean hasNulls = !nulls.isEmpty();
+      final int[] selection = batch.getSelection();
+      final int n = batch.getSelectedCount();
+      for (int i = 0; i < n; i++) {
+        final int p = selection == null ? i : selection[i];
+        if (hasNulls && nulls.get(p)) {
+          if (nullGroup < 0) {
+            nullGroup = newGroup(0L);
+          }
+          groups[i] = nullGroup;
+        } else {
+          groups[i] = find(ints != null ? ints[p] : longs[p]);
+        }
+      }
+    }
+
+    /** Returns the group of a key, creating one if it is not present. */
+    private int find(long key) {
+      final int mask = slotKeys.length - 1;
+      int slot = hash(key) & mask;
+      for (;;) {
+        final int group = slotGroups[slot];
+        if (group < 0) {
+          final int newGroup = newGroup(key);
+          slotKeys[slot] = key;
+          slotGroups[slot] = newGroup;
+          if (groupCount * 2 > slotKeys.length) {
+            rehash();
+          }
+          return newGroup;
+        }
+        if (slotKeys[slot] == key) {
+          return group;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    private int newGroup(long key) {
+      if (groupCount == groupKeys.length) {
+        groupKeys = Arrays.copyOf(groupKeys, groupCount * 2);
+      }
+      groupKeys[groupCount] = key;
+      return groupCount++;
+    }
+
+    /** Doubles the size of the hash table. */
+    private void rehash() {
+      final long[] oldKeys = slotKeys;
+      final int[] oldGroups = slotGroups;
+      slotKeys = new long[oldKeys.length * 2];
+      slotGroups = filled(new int[oldKeys.length * 2], -1);
+      final int mask = slotKeys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldGroups[i] >= 0) {
+          int slot = hash(oldKeys[i]) & mask;
+          while (slotGroups[slot] >= 0) {
+            slot = (slot + 1) & mask;
+          }
+          slotKeys[slot] = oldKeys[i];
+          slotGroups[slot] = oldGroups[i];
+        }
+      }
+    }
+
+    /** Spreads the bits of a key, so that consecutive keys do not occupy
+     * consecutive slots. */
+    private static int hash(long key) {
+      final long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+
+    int groupCount() {
+      return groupCount;
+    }
+
+    Column keys(int i, Kind kind, int start, int end) {
+      final LongColumn column =
+          new LongColumn(Arrays.copyOfRange(groupKeys, start, end),
+              new BitSet());
+      if (nullGroup >= start && nullGroup < end) {
+        column.nulls.set(nullGroup - start);
+      }
+      return column.convert(kind);
+    }
+  }
+
+  /** Grouper for any keys. Boxes the key values of each row, and finds
+   * groups in a {@link java.util.HashMap}. */
+  private static class ObjectGrouper extends Grouper {
+    private final List<Integer> fields;
+    private final Map<List<Object>, Integer> map = Maps.newHashMap();
+    private final List<Object[]> groupKeys = Lists.newArrayList();
+
+    ObjectGrouper(List<Integer> fields) {
+      this.fields = fields;
+    }
+
+    void group(ColumnBatch batch, int[] groups) {
+      final int n = batch.getSelectedCount();
+      for (int i = 0; i < n; i++) {
+        final int p = batch.position(i);
+        final Object[] values = new Object[fields.size()];
+        for (int j = 0; j < values.length; j++) {
+          values[j] = batch.getColumn(fields.get(j)).get(p);
+        }
+        final List<Object> key = Arrays.asList(values);
+        Integer group = map.get(key);
+        if (group == null) {
+          group = groupKeys.size();
+          map.put(key, group);
+          groupKeys.add(values);
+        }
+        groups[i] = group;
+      }
+    }
+
+    int groupCount() {
+      return groupKeys.size();
+    }
+
+    Column keys(int i, Kind kind, int start, int end) {
+      final Column column = Column.create(kind, end - start);
+      for (int group = start; group < end; group++) {
+        column.set(group - start, groupKeys.get(group)[i]);
+      }
+      return column;
+    }
+  }
+
+  /** Computes one aggregate function for each group. Holds, in arrays
+   * indexed by group, the number of values seen, and the sum, minimum or
+   * maximum of those values as {@code long} or {@code double}. */
+  private static class Accumulator {
+    private final Op op;
+    private final List<Integer> args;
+    private final Kind kind;
+    private long[] counts = new long[0];
+    private long[] longs = new long[0];
+    private double[] doubles = new double[0];
+    private final boolean isDouble;
+
+    Accumulator(AggregateCall aggCall, RelDataType inputRowType) {
+      this.op = Op.of(aggCall.getAggregation());
+      this.args = aggCall.getArgList();
+      this.kind = Kind.of(aggCall.getType());
+      this.isDouble = op != Op.COUNT
+          && Kind.of(inputRowType.getFieldList().get(args.get(0)).getType())
+          == Kind.DOUBLE;
+    }
+
+    /** Accumulates the rows of a batch, whose groups are in
+     * {@code groups}. */
+    void add(ColumnBatch batch, int[] groups, int groupCount) {
+      if (counts.length < groupCount) {
+        final int length = Math.max(groupCount, counts.length * 2);
+        counts = Arrays.copyOf(counts, length);
+        if (op != Op.COUNT) {
+          longs = Arrays.copyOf(longs, length);
+          doubles = Arrays.copyOf(doubles, length);
+        }
+      }
+      final int[] selection = batch.getSelection();
+      final int n = batch.getSelectedCount();
+      if (op == Op.COUNT) {
+        count(batch, groups);
+        return;
+      }
+      final Column column = batch.getColumn(args.get(0));
+      final BitSet nulls = column.nulls;
+      final boolean hasNulls = !nulls.isEmpty();
+      if (isDouble) {
+        final double[] values =
+            ((DoubleColumn) column.convert(Kind.DOUBLE)).values;
+        for (int i = 0; i < n; i++) {
+          final int p = selection == null ? i : selection[i];
+          if (hasNulls && nulls.get(p)) {
+            continue;
+          }
+          final int g = groups[i];
+          final double v = values[p];
+          switch (op) {
+          case MIN:
+            if (counts[g] == 0 || v < doubles[g]) {
+              doubles[g] = v;
+            }
+            break;
+          case MAX:
+            if (counts[g] == 0 || v > doubles[g]) {
+              doubles[g] = v;
+            }
+            break;
+          default:
+            doubles[g] += v;
+          }
+          ++counts[g];
+        }
+      } else {
+        final int[] ints = column instanceof IntColumn
+            ? ((IntColumn) column).values
+            : null;
+        final long[] values = ints == null
+            ? ((LongColumn) column.convert(Kind.LONG)).values
+            : null;
+        for (int i = 0; i < n; i++) {
+          final int p = selection == null ? i : selection[i];
+          if (hasNulls && nulls.get(p)) {
+            continue;
+          }
+          final int g = groups[i];
+          final long v = ints != null ? ints[p] : values[p];
+          switch (op) {
+          case MIN:
+            if (counts[g] == 0 || v < longs[g]) {
+              longs[g] = v;
+            }
+            break;
+          case MAX:
+            if (counts[g] == 0 || v > longs[g]) {
+              longs[g] = v;
+            }
+            break;
+          default:
+            longs[g] += v;
+          }
+          ++counts[g];
+        }
+      }
+    }
+
+    /** Counts the rows of a batch in which no argument is null. */
+    private void count(ColumnBatch batch, int[] groups) {
+      final int n = batch.getSelectedCount();
+      if (args.isEmpty()) {
+        for (int i = 0; i < n; i++) {
+          ++counts[groups[i]];
+        }
+        return;
+      }
+      final BitSet nulls = new BitSet();
+      for (int arg : args) {
+        nulls.or(batch.getColumn(arg).nulls);
+      }
+      final boolean hasNulls = !nulls.isEmpty();
+      for (int i = 0; i < n; i++) {
+        if (!hasNulls || !nulls.get(batch.position(i))) {
+          ++counts[groups[i]];
+        }
+      }
+    }
+
+    /** Returns the values of the aggregate function for the groups numbered
+     * from {@code start} to {@code end} - 1. */
+    Column result(int start, int end) {
+      if (counts.length < end) {
+        // Groups that were created after the last batch in which this
+        // function saw a value, or an aggregate whose input is empty.
+        counts = Arrays.copyOf(counts, end);
+        longs = Arrays.copyOf(longs, end);
+        doubles = Arrays.copyOf(doubles, end);
+      }
+      final BitSet nulls = new BitSet();
+      final Column column;
+      switch (op) {
+      case COUNT:
+        column = new LongColumn(Arrays.copyOfRange(counts, start, end), nulls);
+        break;
+      default:
+        if (op != Op.SUM0) {
+          for (int g = start; g < end; g++) {
+            if (counts[g] == 0) {
+              nulls.set(g - start);
+            }
+          }
+        }
+        column = isDouble
+            ? new DoubleColumn(Arrays.copyOfRange(doubles, start, end), nulls)
+            : new LongColumn(Arrays.copyOfRange(longs, start, end), nulls);
+      }
+      return column.convert(kind);
+    }
+  }
+}
+
+// End VectorAggregate.java
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Predicate1;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Calc;
+import org.apache.calcite.rex.RexProgram;
+
+/**
+ * Implementation of {@link org.apache.calcite.rel.core.Calc} in
+ * {@link VectorConvention vector calling convention}.
+ *
+ * <p>Evaluates its program over each input batch using
+ * {@link VectorExpressions}. Batches that no row survives are dropped.
+ */
+public class VectorCalc extends Calc implements VectorRel {
+  /** Creates a VectorCalc.
+   *
+   * <p>Use {@link #create} unless you know what you're doing. */
+  public VectorCalc(RelOptCluster cluster, RelTraitSet traitSet,
+      RelNode input, RexProgram program) {
+    super(cluster, traitSet, input, program);
+    assert getConvention() instanceof VectorConvention;
+    assert VectorExpressions.canImplement(program);
+  }
+
+  /** Creates a VectorCalc. */
+  public static VectorCalc create(RelNode input, RexProgram program) {
+    final RelOptCluster cluster = input.getCluster();
+    final RelTraitSet traitSet =
+        cluster.traitSetOf(VectorConvention.INSTANCE);
+    return new VectorCalc(cluster, traitSet, input, program);
+  }
+
+  @Override public VectorCalc copy(RelTraitSet traitSet, RelNode input,
+      RexProgram program) {
+    return new VectorCalc(getCluster(), traitSet, input, program);
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner) {
+    return super.computeSelfCost(planner)
+        .multiplyBy(VectorConvention.COST_MULTIPLIER);
+  }
+
+  public Enumerable<ColumnBatch> batches(DataContext dataContext) {
+    final Function1<ColumnBatch, ColumnBatch> function =
+        VectorExpressions.compile(program);
+    return ((VectorRel) getInput()).batches(dataContext)
+        .select(function)
+        .where(
+            new Predicate1<ColumnBatch>() {
+              public boolean apply(ColumnBatch batch) {
+                return batch.getSelectedCount() > 0;
+              }
+            });
+  }
+}
+
+// End VectorCalc.java
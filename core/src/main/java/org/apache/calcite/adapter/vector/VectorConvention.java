@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.ConventionTraitDef;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTrait;
+import org.apache.calcite.plan.RelTraitDef;
+
+/**
+ * Calling convention whose relational expressions exchange
+ * {@link ColumnBatch column batches} rather than one row at a time.
+ *
+ * <p>A relational expression in this convention implements
+ * {@link VectorRel}. Rows enter the convention through a
+ * {@link VectorTableScan} of a {@link VectorTable} or a
+ * {@link BindableToVectorConverter}, and leave it through a
+ * {@link VectorToEnumerableConverter}.
+ */
+public enum VectorConvention implements Convention {
+  INSTANCE;
+
+  /** Cost of a vector node versus implementing an equivalent node in a
+   * "typical" calling convention. */
+  public static final double COST_MULTIPLIER = 0.5d;
+
+  /** Cost of converting rows to or from column batches, relative to a
+   * typical node. Converting into vector convention and straight back costs
+   * more than the
+   * {@link org.apache.calcite.adapter.enumerable.EnumerableInterpreter} that
+   * would otherwise read a bindable input, so batches are only made for
+   * vector nodes to work on. */
+  public static final double CONVERTER_COST_MULTIPLIER = 0.3d;
+
+  @Override public String toString() {
+    return getName();
+  }
+
+  public Class getInterface() {
+    return VectorRel.class;
+  }
+
+  public String getName() {
+    return "VECTOR";
+  }
+
+  public RelTraitDef getTraitDef() {
+    return ConventionTraitDef.INSTANCE;
+  }
+
+  public boolean satisfies(RelTrait trait) {
+    return this == trait;
+  }
+
+  public void register(RelOptPlanner planner) {}
+}
+
+// End VectorConvention.java
@@ -0,0 +1,505 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.adapter.vector.Column.BooleanColumn;
+import org.apache.calcite.adapter.vector.Column.DoubleColumn;
+import org.apache.calcite.adapter.vector.Column.IntColumn;
+import org.apache.calcite.adapter.vector.Column.Kind;
+import org.apache.calcite.adapter.vector.Column.LongColumn;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexLocalRef;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgram;
+import org.apache.calcite.sql.SqlKind;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Evaluates the expressions of a {@link RexProgram} over
+ * {@link ColumnBatch column batches}.
+ *
+ * <p>Each expression of the program is evaluated for all rows of a batch in
+ * one loop over primitive arrays. Expressions are evaluated for rows that an
+ * earlier filter has removed, too; that is cheaper than testing the selection
+ * vector for each value, and is safe because none of the supported operators
+ * can fail. The program's condition then narrows the selection vector.
+ *
+ * <p>Supported are references to input fields, literals, arithmetic
+ * ({@code +}, {@code -}, {@code *}) and comparisons on INTEGER, BIGINT and
+ * DOUBLE values, {@code AND}, {@code OR}, {@code NOT}, {@code IS NULL},
+ * {@code IS NOT NULL}, and casts between numeric types. Other fields, such as
+ * strings, can be passed through but not computed on. See
+ * {@link #canImplement(RexProgram)}.
+ */
+public class VectorExpressions {
+  private VectorExpressions() {}
+
+  /** Returns whether every expression in a program can be evaluated over
+   * column batches. */
+  public static boolean canImplement(RexProgram program) {
+    if (program.containsAggs()) {
+      return false;
+    }
+    for (RexNode expr : program.getExprList()) {
+      if (!canImplement(expr)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean canImplement(RexNode expr) {
+    if (expr instanceof RexInputRef) {
+      return true;
+    }
+    if (expr instanceof RexLiteral) {
+      return Kind.of(expr.getType()) != Kind.OBJECT
+          || RexLiteral.isNullLiteral(expr);
+    }
+    if (!(expr instanceof RexCall)) {
+      return false;
+    }
+    final RexCall call = (RexCall) expr;
+    final Kind kind = Kind.of(call.getType());
+    switch (call.getKind()) {
+    case PLUS:
+    case MINUS:
+    case TIMES:
+    case MINUS_PREFIX:
+    case CAST:
+      return kind.isNumeric() && allOperands(call, null);
+    case EQUALS:
+    case NOT_EQUALS:
+    case LESS_THAN:
+    case LESS_THAN_OR_EQUAL:
+    case GREATER_THAN:
+    case GREATER_THAN_OR_EQUAL:
+      return allOperands(call, null);
+    case AND:
+    case OR:
+    case NOT:
+      return allOperands(call, Kind.BOOLEAN);
+    case IS_NULL:
+    case IS_NOT_NULL:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /** Returns whether all operands of a call are of a given kind, or, if
+   * {@code kind} is null, are numeric. */
+  private static boolean allOperands(RexCall call, Kind kind) {
+    for (RexNode operand : call.getOperands()) {
+      final Kind operandKind = Kind.of(operand.getType());
+      if (kind == null ? !operandKind.isNumeric() : operandKind != kind) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Compiles a program into a function that computes an output batch from
+   * an input batch.
+   *
+   * <p>The program must satisfy {@link #canImplement(RexProgram)}. The output
+   * batch has the same rows as the input batch, with the program's condition
+   * applied to its selection vector. */
+  public static Function1<ColumnBatch, ColumnBatch> compile(
+      RexProgram program) {
+    assert canImplement(program) : program;
+    final List<RexNode> exprs = program.getExprList();
+    final Op[] ops = new Op[exprs.size()];
+    for (int i = 0; i < ops.length; i++) {
+      ops[i] = op(exprs.get(i));
+    }
+    final List<RexLocalRef> projectList = program.getProjectList();
+    final int[] projects = new int[projectList.size()];
+    for (int i = 0; i < projects.length; i++) {
+      projects[i] = projectList.get(i).getIndex();
+    }
+    final int condition = program.getCondition() == null
+        ? -1
+        : program.getCondition().getIndex();
+    return new Function1<ColumnBatch, ColumnBatch>() {
+      public ColumnBatch apply(ColumnBatch batch) {
+        final Column[] locals = new Column[ops.length];
+        for (int i = 0; i < ops.length; i++) {
+          locals[i] = ops[i].evaluate(batch, locals);
+        }
+        int[] selection = batch.getSelection();
+        int selectedCount = batch.getSelectedCount();
+        if (condition >= 0) {
+          final BooleanColumn c = (BooleanColumn) locals[condition];
+          final int[] selection2 = new int[selectedCount];
+          int n = 0;
+          for (int j = 0; j < selectedCount; j++) {
+            final int p = selection == null ? j : selection[j];
+            if (c.values[p] && !c.nulls.get(p)) {
+              selection2[n++] = p;
+            }
+          }
+          selection = selection2;
+          selectedCount = n;
+        }
+        final ImmutableList.Builder<Column> columns = ImmutableList.builder();
+        for (int project : projects) {
+          columns.add(locals[project]);
+        }
+        return new ColumnBatch(batch.getSize(), columns.build(), selection,
+            selectedCount);
+      }
+    };
+  }
+
+  /** Computes the column of an expression from the columns of the input
+   * batch and of the expressions before it in the program. */
+  private interface Op {
+    Column evaluate(ColumnBatch batch, Column[] locals);
+  }
+
+  private static Op op(RexNode expr) {
+    if (expr instanceof RexInputRef) {
+      final int index = ((RexInputRef) expr).getIndex();
+      return new Op() {
+        public Column evaluate(ColumnBatch batch, Column[] locals) {
+          return batch.getColumn(index);
+        }
+      };
+    }
+    final Kind kind = Kind.of(expr.getType());
+    if (expr instanceof RexLiteral) {
+      final Object value = ((RexLiteral) expr).getValue();
+      return new Op() {
+        public Column evaluate(ColumnBatch batch, Column[] locals) {
+          return Column.constant(kind, value, batch.getSize());
+        }
+      };
+    }
+    final RexCall call = (RexCall) expr;
+    final SqlKind sqlKind = call.getKind();
+    final int[] operands = new int[call.getOperands().size()];
+    for (int i = 0; i < operands.length; i++) {
+      operands[i] = ((RexLocalRef) call.getOperands().get(i)).getIndex();
+    }
+    switch (sqlKind) {
+    case PLUS:
+    case MINUS:
+    case TIMES:
+      return new Op() {
+        public Column evaluate(ColumnBatch batch, Column[] locals) {
+          return arithmetic(sqlKind, kind,
+              locals[operands[0]].convert(kind),
+              locals[operands[1]].convert(kind));
+        }
+      };
+    case MINUS_PREFIX:
+      return new Op() {
+        public Column evaluate(ColumnBatch batch, Column[] locals) {
+          return negate(locals[operands[0]].convert(kind));
+        }
+      };
+    case CAST:
+      return new Op() {
+        public Column evaluate(ColumnBatch batch, Column[] locals) {
+          return locals[operands[0]].convert(kind);
+        }
+      };
+    case EQUALS:
+    case NOT_EQUALS:
+    case LESS_THAN:
+    case LESS_THAN_OR_EQUAL:
+    case GREATER_THAN:
+    case GREATER_THAN_OR_EQUAL:
+      return new Op() {
+        public Column evaluate(ColumnBatch batch, Column[] locals) {
+          final Column c0 = locals[operands[0]];
+          final Column c1 = locals[operands[1]];
+          final Kind kind = Kind.widest(c0.kind(), c1.kind()) == Kind.DOUBLE
+              ? Kind.DOUBLE
+              : Kind.LONG;
+          return compare(sqlKind, c0.convert(kind), c1.convert(kind));
+        }
+      };
+    case AND:
+    case OR:
+      return new Op() {
+        public Column evaluate(ColumnBatch batch, Column[] locals) {
+          return andOr(sqlKind == SqlKind.AND, batch.getSize(), locals,
+              operands);
+        }
+      };
+    case NOT:
+      return new Op() {
+        public Column evaluate(ColumnBatch batch, Column[] locals) {
+          final BooleanColumn c = (BooleanColumn) locals[operands[0]];
+          final boolean[] values = new boolean[c.size];
+          for (int i = 0; i < values.length; i++) {
+            values[i] = !c.values[i];
+          }
+          return new BooleanColumn(values, c.nulls);
+        }
+      };
+    case IS_NULL:
+    case IS_NOT_NULL:
+      return new Op() {
+        public Column evaluate(ColumnBatch batch, Column[] locals) {
+          final Column c = locals[operands[0]];
+          final boolean isNull = sqlKind == SqlKind.IS_NULL;
+          final boolean[] values = new boolean[c.size];
+          for (int i = 0; i < values.length; i++) {
+            values[i] = c.nulls.get(i) == isNull;
+          }
+          return new BooleanColumn(values, new BitSet());
+        }
+      };
+    default:
+      throw new AssertionError("cannot implement " + expr);
+    }
+  }
+
+  /** Returns the union of the null positions of two columns. */
+  private static BitSet nulls(Column c0, Column c1) {
+    if (c1.nulls.isEmpty()) {
+      return c0.nulls;
+    }
+    if (c0.nulls.isEmpty()) {
+      return c1.nulls;
+    }
+    final BitSet nulls = (BitSet) c0.nulls.clone();
+    nulls.or(c1.nulls);
+    return nulls;
+  }
+
+  private static Column arithmetic(SqlKind sqlKind, Kind kind, Column c0,
+      Column c1) {
+    final int n = c0.size;
+    final BitSet nulls = nulls(c0, c1);
+    switch (kind) {
+    case INT: {
+      final int[] a = ((IntColumn) c0).values;
+      final int[] b = ((IntColumn) c1).values;
+      final int[] r = new int[n];
+      switch (sqlKind) {
+      case PLUS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] + b[i];
+        }
+        break;
+      case MINUS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] - b[i];
+        }
+        break;
+      default:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] * b[i];
+        }
+      }
+      return new IntColumn(r, nulls);
+    }
+    case LONG: {
+      final long[] a = ((LongColumn) c0).values;
+      final long[] b = ((LongColumn) c1).values;
+      final long[] r = new long[n];
+      switch (sqlKind) {
+      case PLUS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] + b[i];
+        }
+        break;
+      case MINUS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] - b[i];
+        }
+        break;
+      default:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] * b[i];
+        }
+      }
+      return new LongColumn(r, nulls);
+    }
+    default: {
+      final double[] a = ((DoubleColumn) c0).values;
+      final double[] b = ((DoubleColumn) c1).values;
+      final double[] r = new double[n];
+      switch (sqlKind) {
+      case PLUS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] + b[i];
+        }
+        break;
+      case MINUS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] - b[i];
+        }
+        break;
+      default:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] * b[i];
+        }
+      }
+      return new DoubleColumn(r, nulls);
+    }
+    }
+  }
+
+  private static Column negate(Column c) {
+    final int n = c.size;
+    switch (c.kind()) {
+    case INT: {
+      final int[] a = ((IntColumn) c).values;
+      final int[] r = new int[n];
+      for (int i = 0; i < n; i++) {
+        r[i] = -a[i];
+      }
+      return new IntColumn(r, c.nulls);
+    }
+    case LONG: {
+      final long[] a = ((LongColumn) c).values;
+      final long[] r = new long[n];
+      for (int i = 0; i < n; i++) {
+        r[i] = -a[i];
+      }
+      return new LongColumn(r, c.nulls);
+    }
+    default: {
+      final double[] a = ((DoubleColumn) c).values;
+      final double[] r = new double[n];
+      for (int i = 0; i < n; i++) {
+        r[i] = -a[i];
+      }
+      return new DoubleColumn(r, c.nulls);
+    }
+    }
+  }
+
+  /** Compares two columns, which are both LONG or both DOUBLE. */
+  private static Column compare(SqlKind sqlKind, Column c0, Column c1) {
+    final int n = c0.size;
+    final boolean[] r = new boolean[n];
+    if (c0.kind() == Kind.LONG) {
+      final long[] a = ((LongColumn) c0).values;
+      final long[] b = ((LongColumn) c1).values;
+      switch (sqlKind) {
+      case EQUALS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] == b[i];
+        }
+        break;
+      case NOT_EQUALS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] != b[i];
+        }
+        break;
+      case LESS_THAN:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] < b[i];
+        }
+        break;
+      case LESS_THAN_OR_EQUAL:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] <= b[i];
+        }
+        break;
+      case GREATER_THAN:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] > b[i];
+        }
+        break;
+      default:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] >= b[i];
+        }
+      }
+    } else {
+      final double[] a = ((DoubleColumn) c0).values;
+      final double[] b = ((DoubleColumn) c1).values;
+      switch (sqlKind) {
+      case EQUALS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] == b[i];
+        }
+        break;
+      case NOT_EQUALS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] != b[i];
+        }
+        break;
+      case LESS_THAN:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] < b[i];
+        }
+        break;
+      case LESS_THAN_OR_EQUAL:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] <= b[i];
+        }
+        break;
+      case GREATER_THAN:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] > b[i];
+        }
+        break;
+      default:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] >= b[i];
+        }
+      }
+    }
+    return new BooleanColumn(r, nulls(c0, c1));
+  }
+
+  /** Evaluates AND or OR, with SQL's three-valued logic: for AND, the result
+   * is false if any operand is false, otherwise unknown if any operand is
+   * unknown; OR is the converse. */
+  private static Column andOr(boolean and, int n, Column[] locals,
+      int[] operands) {
+    // For AND, whether a false operand has been seen; for OR, a true one.
+    final boolean[] decided = new boolean[n];
+    final BitSet nulls = new BitSet(n);
+    for (int operand : operands) {
+      final BooleanColumn c = (BooleanColumn) locals[operand];
+      for (int i = 0; i < n; i++) {
+        if (c.values[i] != and && !c.nulls.get(i)) {
+          decided[i] = true;
+        }
+      }
+      nulls.or(c.nulls);
+    }
+    final boolean[] r = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      if (decided[i]) {
+        r[i] = !and;
+        nulls.clear(i);
+      } else {
+        r[i] = and;
+      }
+    }
+    return new BooleanColumn(r, nulls);
+  }
+}
+
+// End VectorExpressions.java
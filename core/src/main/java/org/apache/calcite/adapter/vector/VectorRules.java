@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.logical.LogicalAggregate;
+import org.apache.calcite.rel.logical.LogicalCalc;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalProject;
+import org.apache.calcite.rex.RexProgram;
+import org.apache.calcite.rex.RexProgramBuilder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Rules and utilities pertaining to {@link VectorConvention}.
+ */
+public class VectorRules {
+  private VectorRules() {}
+
+  public static final RelOptRule VECTOR_CALC_RULE = new VectorCalcRule();
+
+  public static final RelOptRule VECTOR_FILTER_RULE = new VectorFilterRule();
+
+  public static final RelOptRule VECTOR_PROJECT_RULE =
+      new VectorProjectRule();
+
+  public static final RelOptRule VECTOR_AGGREGATE_RULE =
+      new VectorAggregateRule();
+
+  /** All rules that convert relational expressions to and from vector
+   * convention. */
+  public static final ImmutableList<RelOptRule> RULES =
+      ImmutableList.of(
+          VECTOR_CALC_RULE,
+          VECTOR_FILTER_RULE,
+          VECTOR_PROJECT_RULE,
+          VECTOR_AGGREGATE_RULE,
+          VectorTableScan.VectorTableScanRule.INSTANCE,
+          BindableToVectorConverter.BindableToVectorConverterRule.INSTANCE,
+          VectorToEnumerableConverter.VectorToEnumerableConverterRule
+              .INSTANCE);
+
+  /** Creates a {@link VectorCalc} whose input is converted to vector
+   * convention, or returns null if the program cannot be evaluated over
+   * column batches. */
+  private static RelNode calc(RelNode input, RexProgram program) {
+    if (!VectorExpressions.canImplement(program)) {
+      return null;
+    }
+    return VectorCalc.create(vectorInput(input), program);
+  }
+
+  /** Converts an input to vector convention. Calcs and aggregates do not
+   * require their input to be sorted, and do not claim that their output is
+   * sorted, so the input is requested without a collation. */
+  private static RelNode vectorInput(RelNode input) {
+    return ConverterRule.convert(input,
+        input.getCluster().traitSetOf(VectorConvention.INSTANCE));
+  }
+
+  /** Rule that converts a {@link LogicalCalc} to vector convention. */
+  private static class VectorCalcRule extends ConverterRule {
+    VectorCalcRule() {
+      super(LogicalCalc.class, Convention.NONE, VectorConvention.INSTANCE,
+          "VectorCalcRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final LogicalCalc calc = (LogicalCalc) rel;
+      return calc(calc.getInput(), calc.getProgram());
+    }
+  }
+
+  /** Rule that converts a {@link LogicalFilter} to a {@link VectorCalc}. */
+  private static class VectorFilterRule extends ConverterRule {
+    VectorFilterRule() {
+      super(LogicalFilter.class, Convention.NONE, VectorConvention.INSTANCE,
+          "VectorFilterRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final LogicalFilter filter = (LogicalFilter) rel;
+      final RelNode input = filter.getInput();
+      final RexProgramBuilder programBuilder =
+          new RexProgramBuilder(input.getRowType(),
+              filter.getCluster().getRexBuilder());
+      programBuilder.addIdentity();
+      programBuilder.addCondition(filter.getCondition());
+      return calc(input, programBuilder.getProgram());
+    }
+  }
+
+  /** Rule that converts a {@link LogicalProject} to a {@link VectorCalc}. */
+  private static class VectorProjectRule extends ConverterRule {
+    VectorProjectRule() {
+      super(LogicalProject.class, Convention.NONE, VectorConvention.INSTANCE,
+          "VectorProjectRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final LogicalProject project = (LogicalProject) rel;
+      final RelNode input = project.getInput();
+      final RexProgram program =
+          RexProgram.create(input.getRowType(), project.getProjects(), null,
+              project.getRowType(), project.getCluster().getRexBuilder());
+      return calc(input, program);
+    }
+  }
+
+  /** Rule that converts a {@link LogicalAggregate} to a
+   * {@link VectorAggregate}. */
+  private static class VectorAggregateRule extends ConverterRule {
+    VectorAggregateRule() {
+      super(LogicalAggregate.class, Convention.NONE,
+          VectorConvention.INSTANCE, "VectorAggregateRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final LogicalAggregate agg = (LogicalAggregate) rel;
+      if (!VectorAggregate.canImplement(agg)) {
+        return null;
+      }
+      return new VectorAggregate(agg.getCluster(),
+          agg.getTraitSet().replace(VectorConvention.INSTANCE),
+          vectorInput(agg.getInput()), agg.indicator, agg.getGroupSet(), agg.getGroupSets(),
+          agg.getAggCallList());
+    }
+  }
+}
+
+// End VectorRules.java
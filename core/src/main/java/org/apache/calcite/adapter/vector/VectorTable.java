@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.schema.Table;
+
+/**
+ * Table whose rows can be read as {@link ColumnBatch column batches}
+ * without being boxed, and can therefore be scanned by a
+ * {@link VectorTableScan}.
+ */
+public interface VectorTable extends Table {
+  /** Returns the rows of this table, as a sequence of batches whose columns
+   * have the kinds given by {@link Column.Kind#of} for the fields of the
+   * table's row type.
+   *
+   * @param root Execution context
+   * @return Batches of rows
+   */
+  Enumerable<ColumnBatch> batches(DataContext root);
+}
+
+// End VectorTable.java
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.enumerable.EnumerableTableScan;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelCollationTraitDef;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalTableScan;
+import org.apache.calcite.schema.Table;
+
+import com.google.common.base.Supplier;
+
+import java.util.List;
+
+/**
+ * Relational expression that reads the {@link ColumnBatch column batches}
+ * of a {@link VectorTable}.
+ *
+ * <p>Unlike a {@link BindableToVectorConverter} over a scan, it does not
+ * create a row, or box a value, for each row of the table.
+ */
+public class VectorTableScan extends TableScan implements VectorRel {
+  /** Creates a VectorTableScan.
+   *
+   * <p>Use {@link #create} unless you know what you're doing. */
+  protected VectorTableScan(RelOptCluster cluster, RelTraitSet traitSet,
+      RelOptTable table) {
+    super(cluster, traitSet, table);
+    assert getConvention() instanceof VectorConvention;
+    assert table.unwrap(VectorTable.class) != null;
+  }
+
+  /** Creates a VectorTableScan. Its batches have the rows in the same
+   * order as the table, so it has the table's collations. */
+  public static VectorTableScan create(RelOptCluster cluster,
+      RelOptTable relOptTable) {
+    final Table table = relOptTable.unwrap(Table.class);
+    final RelTraitSet traitSet =
+        cluster.traitSetOf(VectorConvention.INSTANCE)
+            .replaceIfs(RelCollationTraitDef.INSTANCE,
+                new Supplier<List<RelCollation>>() {
+                  public List<RelCollation> get() {
+                    return table.getStatistic().getCollations();
+                  }
+                });
+    return new VectorTableScan(cluster, traitSet, relOptTable);
+  }
+
+  @Override public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+    assert inputs.isEmpty();
+    return new VectorTableScan(getCluster(), traitSet, table);
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner) {
+    return super.computeSelfCost(planner)
+        .multiplyBy(VectorConvention.COST_MULTIPLIER);
+  }
+
+  public Enumerable<ColumnBatch> batches(DataContext dataContext) {
+    return table.unwrap(VectorTable.class).batches(dataContext);
+  }
+
+  /** Rule that converts a scan of a {@link VectorTable}, as a
+   * {@link LogicalTableScan} or, if the table is queryable, an
+   * {@link EnumerableTableScan}, to a {@link VectorTableScan}. */
+  public static class VectorTableScanRule extends RelOptRule {
+    public static final VectorTableScanRule INSTANCE =
+        new VectorTableScanRule();
+
+    private VectorTableScanRule() {
+      super(operand(TableScan.class, none()), "VectorTableScanRule");
+    }
+
+    @Override public void onMatch(RelOptRuleCall call) {
+      final TableScan scan = call.rel(0);
+      if ((scan instanceof LogicalTableScan
+          || scan instanceof EnumerableTableScan)
+          && scan.getTable().unwrap(VectorTable.class) != null) {
+        call.transformTo(
+            VectorTableScan.create(scan.getCluster(), scan.getTable()));
+      }
+    }
+  }
+}
+
+// End VectorTableScan.java
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.ConventionTraitDef;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterImpl;
+import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.util.BuiltInMethod;
+
+import java.util.List;
+
+/**
+ * Relational expression that converts the {@link ColumnBatch column batches}
+ * of a {@link VectorRel} into rows for the enumerable calling convention.
+ *
+ * <p>The generated code keeps the vector relational expression and, when
+ * executed, asks it for its batches.
+ */
+public class VectorToEnumerableConverter extends ConverterImpl
+    implements EnumerableRel {
+  /** Creates a VectorToEnumerableConverter. */
+  protected VectorToEnumerableConverter(RelOptCluster cluster,
+      RelTraitSet traits, RelNode input) {
+    super(cluster, ConventionTraitDef.INSTANCE, traits, input);
+  }
+
+  @Override public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+    return new VectorToEnumerableConverter(getCluster(), traitSet,
+        sole(inputs));
+  }
+
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner) {
+    return super.computeSelfCost(planner)
+        .multiplyBy(VectorConvention.CONVERTER_COST_MULTIPLIER);
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    // Generate:
+    //   VectorToEnumerableConverter.toRows(root, vectorRel)
+    final BlockBuilder builder = new BlockBuilder();
+    final PhysType physType =
+        PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(),
+            JavaRowFormat.ARRAY);
+    final Expression rows_ = builder.append("rows",
+        Expressions.call(VectorToEnumerableConverter.class, "toRows",
+            implementor.getRootExpression(),
+            implementor.stash((VectorRel) getInput(), VectorRel.class)));
+    final Expression sliced_ =
+        getRowType().getFieldCount() == 1
+            ? Expressions.call(BuiltInMethod.SLICE0.method, rows_)
+            : rows_;
+    builder.add(sliced_);
+    return implementor.result(physType, builder.toBlock());
+  }
+
+  /** Returns the rows of a vector relational expression. Called from
+   * generated code. */
+  public static Enumerable<Object[]> toRows(DataContext dataContext,
+      VectorRel rel) {
+    return ColumnBatch.toRows(rel.batches(dataContext));
+  }
+
+  /** Rule that converts any vector relational expression to enumerable
+   * convention. */
+  public static class VectorToEnumerableConverterRule extends ConverterRule {
+    public static final VectorToEnumerableConverterRule INSTANCE =
+        new VectorToEnumerableConverterRule();
+
+    private VectorToEnumerableConverterRule() {
+      super(RelNode.class, VectorConvention.INSTANCE,
+          EnumerableConvention.INSTANCE, "VectorToEnumerableConverterRule");
+    }
+
+    @Override public RelNode convert(RelNode rel) {
+      return new VectorToEnumerableConverter(rel.getCluster(),
+          rel.getTraitSet().replace(EnumerableConvention.INSTANCE), rel);
+    }
+  }
+}
+
+// End VectorToEnumerableConverter.java
@@ -14,18 +14,13 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-{
-  version: '1.0',
-  defaultSchema: 'testcreateindex',
-  schemas: [
-    {
-      type: 'custom',
-      name: 'testcreateindex',
-      factory: 'org.apache.calcite.adapter.elasticsearch.ElasticsearchSchemaFactory',
-      operand: {
-        host: 'localhost',
-        index: 'testcreateindex'
-      }
-    }
-  ]
-}
+/**
+ * Vectorized calling convention, whose relational expressions exchange
+ * batches of rows stored as columns of primitive arrays.
+ */
+@PackageMarker
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.avatica.util.PackageMarker;
+
+// End package-info.java
@@ -48,6 +48,8 @@ public interface CalciteConnectionConfig extends ConnectionConfig {
   boolean spark();
   /** @see CalciteConnectionProperty#FORCE_DECORRELATE */
   boolean forceDecorrelate();
+  /** @see CalciteConnectionProperty#PLAN_CACHE */
+  boolean planCache();
   /** @see CalciteConnectionProperty#TYPE_SYSTEM */
   <T> T typeSystem(Class<T> typeSystemClass, T defaultTypeSystem);
 }
@@ -93,6 +93,10 @@ public boolean forceDecorrelate() {
         .getBoolean();
   }
 
+  public boolean planCache() {
+    return CalciteConnectionProperty.PLAN_CACHE.wrap(properties).getBoolean();
+  }
+
   public <T> T typeSystem(Class<T> typeSystemClass, T defaultTypeSystem) {
     return CalciteConnectionProperty.TYPE_SYSTEM.wrap(properties)
         .getPlugin(typeSystemClass, defaultTypeSystem);
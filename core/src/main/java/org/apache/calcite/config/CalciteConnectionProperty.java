@@ -81,6 +81,14 @@ public enum CalciteConnectionProperty implements ConnectionProperty {
    * If true (the default), Calcite de-correlates the plan. */
   FORCE_DECORRELATE("forceDecorrelate", Type.BOOLEAN, true, false),
 
+  /** Whether to reuse the result of preparing a SQL statement when the same
+   * statement is prepared again, if the schema has not changed. Default
+   * false. The cache is shared by all connections, and its size is set by
+   * system properties "calcite.plan.cache.maxEntries" and
+   * "calcite.plan.cache.maxBytes". It does not notice changes that a schema
+   * makes to its tables without telling Calcite. */
+  PLAN_CACHE("planCache", Type.BOOLEAN, false, false),
+
   /** Type system. The name of a class that implements
    * {@link org.apache.calcite.rel.type.RelDataTypeSystem} and has a public
    * default constructor or an {@code INSTANCE} constant. */
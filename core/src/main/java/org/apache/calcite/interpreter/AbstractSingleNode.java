@@ -16,23 +16,42 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.rel.SingleRel;
 
 /**
  * An interpreter that takes expects one incoming source relational expression.
  *
+ * <p>The node gives its output as an enumerable. Each time its output is
+ * read, it opens a source on its input and calls {@link #enumerator(Source)},
+ * which computes rows from that source as they are asked for.
+ *
  * @param <T> Type of relational expression
  */
 abstract class AbstractSingleNode<T extends SingleRel> implements Node {
-  protected final Source source;
-  protected final Sink sink;
+  protected final Interpreter interpreter;
   protected final T rel;
 
-  public AbstractSingleNode(Interpreter interpreter, T rel) {
+  public AbstractSingleNode(final Interpreter interpreter, final T rel) {
+    this.interpreter = interpreter;
     this.rel = rel;
-    this.source = interpreter.source(rel, 0);
-    this.sink = interpreter.sink(rel);
+    interpreter.enumerable(rel,
+        new AbstractEnumerable<Row>() {
+          public Enumerator<Row> enumerator() {
+            return AbstractSingleNode.this.enumerator(
+                interpreter.source(rel, 0));
+          }
+        });
+  }
+
+  public void run() throws InterruptedException {
+    // Rows are computed when the enumerator is read.
   }
+
+  /** Returns an enumerator over the output rows, computed from the rows of
+   * a source. Closing the enumerator must close the source. */
+  protected abstract Enumerator<Row> enumerator(Source source);
 }
 
 // End AbstractSingleNode.java
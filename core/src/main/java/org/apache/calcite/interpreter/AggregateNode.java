@@ -26,6 +26,7 @@
 import org.apache.calcite.adapter.enumerable.impl.AggAddContextImpl;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.interpreter.Row.RowBuilder;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
@@ -49,6 +50,7 @@
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -57,7 +59,7 @@
  * {@link org.apache.calcite.rel.core.Aggregate}.
  */
 public class AggregateNode extends AbstractSingleNode<Aggregate> {
-  private final List<Grouping> groups = Lists.newArrayList();
+  private final ImmutableList<ImmutableBitSet> groupSets;
   private final ImmutableBitSet unionGroups;
   private final int outputRowLength;
   private final ImmutableList<AccumulatorFactory> accumulatorFactories;
@@ -72,8 +74,10 @@ public AggregateNode(Interpreter interpreter, Aggregate rel) {
     if (rel.getGroupSets() != null) {
       for (ImmutableBitSet group : rel.getGroupSets()) {
         union = union.union(group);
-        groups.add(new Grouping(group));
       }
+      this.groupSets = rel.getGroupSets();
+    } else {
+      this.groupSets = ImmutableList.of();
     }
 
     this.unionGroups = union;
@@ -88,17 +92,32 @@ public AggregateNode(Interpreter interpreter, Aggregate rel) {
     accumulatorFactories = builder.build();
   }
 
-  public void run() throws InterruptedException {
-    Row r;
-    while ((r = source.receive()) != null) {
-      for (Grouping group : groups) {
-        group.send(r);
-      }
-    }
+  protected Enumerator<Row> enumerator(final Source source) {
+    return new Interpreter.RowEnumerator(source) {
+      Iterator<Row> iterator;
 
-    for (Grouping group : groups) {
-      group.end(sink);
-    }
+      protected Row next() {
+        if (iterator == null) {
+          // Read all input rows before returning the first output row.
+          final List<Grouping> groups = Lists.newArrayList();
+          for (ImmutableBitSet groupSet : groupSets) {
+            groups.add(new Grouping(groupSet));
+          }
+          Row r;
+          while ((r = source.receive()) != null) {
+            for (Grouping group : groups) {
+              group.send(r);
+            }
+          }
+          final List<Row> rows = Lists.newArrayList();
+          for (Grouping group : groups) {
+            group.end(rows);
+          }
+          iterator = rows.iterator();
+        }
+        return iterator.hasNext() ? iterator.next() : null;
+      }
+    };
   }
 
   private AccumulatorFactory getAccumulator(final AggregateCall call) {
@@ -296,7 +315,7 @@ public void send(Row row) {
       accumulators.get(key).send(row);
     }
 
-    public void end(Sink sink) throws InterruptedException {
+    public void end(List<Row> rows) {
       for (Map.Entry<Row, AccumulatorList> e : accumulators.entrySet()) {
         final Row key = e.getKey();
         final AccumulatorList list = e.getValue();
@@ -317,7 +336,7 @@ public void end(Sink sink) throws InterruptedException {
 
         list.end(rb);
 
-        sink.send(rb.build());
+        rows.add(rb.build());
       }
     }
   }
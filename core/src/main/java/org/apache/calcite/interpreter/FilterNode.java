@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.rel.core.Filter;
 
 import com.google.common.collect.ImmutableList;
@@ -26,25 +27,29 @@
  */
 public class FilterNode extends AbstractSingleNode<Filter> {
   private final Scalar condition;
-  private final Context context;
 
   public FilterNode(Interpreter interpreter, Filter rel) {
     super(interpreter, rel);
     this.condition =
         interpreter.compile(ImmutableList.of(rel.getCondition()),
             rel.getRowType());
-    this.context = interpreter.createContext();
   }
 
-  public void run() throws InterruptedException {
-    Row row;
-    while ((row = source.receive()) != null) {
-      context.values = row.getValues();
-      Boolean b = (Boolean) condition.execute(context);
-      if (b != null && b) {
-        sink.send(row);
+  protected Enumerator<Row> enumerator(final Source source) {
+    final Context context = interpreter.createContext();
+    return new Interpreter.RowEnumerator(source) {
+      protected Row next() {
+        Row row;
+        while ((row = source.receive()) != null) {
+          context.values = row.getValues();
+          Boolean b = (Boolean) condition.execute(context);
+          if (b != null && b) {
+            return row;
+          }
+        }
+        return null;
       }
-    }
+    };
   }
 }
 
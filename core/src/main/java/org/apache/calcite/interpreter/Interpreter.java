@@ -41,16 +41,25 @@
 import org.apache.calcite.util.ReflectUtil;
 import org.apache.calcite.util.ReflectiveVisitDispatcher;
 import org.apache.calcite.util.ReflectiveVisitor;
+import org.apache.calcite.util.Util;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.math.BigDecimal;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Interpreter.
@@ -58,16 +67,60 @@
  * <p>Contains the context for interpreting relational expressions. In
  * particular it holds working state while the data flow graph is being
  * assembled.</p>
+ *
+ * <p>Most nodes give their output as an {@link Enumerable} (see
+ * {@link #enumerable(RelNode, Enumerable)}) that computes each row when its
+ * consumer asks for it. Rows flow through a pipeline of such nodes one at a
+ * time, so a filter or project over a large input uses constant memory, and a
+ * query with a LIMIT stops reading its inputs once it has enough rows. Only
+ * nodes that need all of their input, such as sort and aggregate, hold
+ * rows.</p>
+ *
+ * <p>If the interpreter has an executor, the inputs of a node that has
+ * several inputs, such as a join or union, are read at the same time, each
+ * on its own thread into a bounded queue (see {@link #sources(RelNode)}).
+ * The latency of a query over several slow sources is then that of the
+ * slowest source rather than the sum. Set the system property
+ * "calcite.interpreter.parallel" to give every interpreter an executor.</p>
  */
 public class Interpreter extends AbstractEnumerable<Object[]> {
+  /** Whether interpreters created without an explicit executor read the
+   * inputs of joins and unions in parallel. Set by the system property
+   * "calcite.interpreter.parallel"; default false. */
+  public static final boolean PARALLEL =
+      Util.getBooleanProperty("calcite.interpreter.parallel");
+
+  /** Number of rows that an input read in parallel may get ahead of its
+   * consumer. */
+  private static final int PREFETCH_ROWS = 1024;
+
+  /** Row that marks the end of a {@link PrefetchSource}'s queue. */
+  private static final Row END = new Row(new Object[0]);
+
   final Map<RelNode, NodeInfo> nodes = Maps.newLinkedHashMap();
   private final DataContext dataContext;
   private final RelNode rootRel;
   private final Map<RelNode, List<RelNode>> relInputs = Maps.newHashMap();
   protected final ScalarCompiler scalarCompiler;
+  private final ExecutorService executor;
 
   public Interpreter(DataContext dataContext, RelNode rootRel) {
+    this(dataContext, rootRel, PARALLEL ? ExecutorHolder.EXECUTOR : null);
+  }
+
+  /**
+   * Creates an Interpreter.
+   *
+   * @param dataContext Data context
+   * @param rootRel Relational expression to interpret
+   * @param executor Executor that reads the inputs of joins and unions in
+   *                 parallel, or null to read all inputs on the consumer's
+   *                 thread
+   */
+  public Interpreter(DataContext dataContext, RelNode rootRel,
+      ExecutorService executor) {
     this.dataContext = Preconditions.checkNotNull(dataContext);
+    this.executor = executor;
     this.scalarCompiler =
         new JaninoRexCompiler(rootRel.getCluster().getRexBuilder());
     final RelNode rel = optimize(rootRel);
@@ -264,6 +317,40 @@ public Source source(RelNode rel, int ordinal) {
       "Got a sink " + sink + " to which there is no match source type!");
   }
 
+  /**
+   * Returns a source for each input of a relational expression.
+   *
+   * <p>If the interpreter has an executor and there is more than one input,
+   * each input starts to be read, on a thread of the executor, as soon as
+   * this method is called; the thread stays at most a fixed number of rows
+   * ahead of the consumer. Otherwise, an input is not read until its
+   * source is first asked for a row, and then on the consumer's thread.
+   *
+   * <p>Closing a source stops the thread that is reading it.
+   *
+   * @param rel Relational expression
+   * @return List of sources, one per input
+   */
+  public List<Source> sources(RelNode rel) {
+    final int inputCount = getInputCount(rel);
+    final List<Source> sources = Lists.newArrayList();
+    for (int i = 0; i < inputCount; i++) {
+      final Source source = new LazySource(rel, i);
+      sources.add(executor != null && inputCount > 1
+          ? new PrefetchSource(source, PREFETCH_ROWS, executor)
+          : source);
+    }
+    return sources;
+  }
+
+  private int getInputCount(RelNode rel) {
+    final List<RelNode> inputs = relInputs.get(rel);
+    if (inputs != null) {
+      return inputs.size();
+    }
+    return rel.getInputs().size();
+  }
+
   private RelNode getInput(RelNode rel, int ordinal) {
     final List<RelNode> inputs = relInputs.get(rel);
     if (inputs != null) {
@@ -275,9 +362,10 @@ private RelNode getInput(RelNode rel, int ordinal) {
   /**
    * Creates a Sink for a relational expression to write into.
    *
-   * <p>This method is generally called from the constructor of a {@link Node}.
-   * But a constructor could instead call
-   * {@link #enumerable(RelNode, Enumerable)}.
+   * <p>The sink is an unbounded queue, which {@link Node#run()} fills before
+   * the consumer reads any rows. Nodes should prefer to call
+   * {@link #enumerable(RelNode, Enumerable)} from their constructor, so that
+   * rows are computed as they are read.
    *
    * @param rel Relational expression
    * @return Sink
@@ -293,9 +381,11 @@ public Sink sink(RelNode rel) {
   /** Tells the interpreter that a given relational expression wishes to
    * give its output as an enumerable.
    *
-   * <p>This is as opposed to the norm, where a relational expression calls
-   * {@link #sink(RelNode)}, then its {@link Node#run()} method writes into that
-   * sink.
+   * <p>This is as opposed to calling {@link #sink(RelNode)}, then writing
+   * into that sink from the {@link Node#run()} method. A node that gives its
+   * output as an enumerable typically reads its inputs, via
+   * {@link #source(RelNode, int)}, only when its enumerator is read, and its
+   * {@link Node#run()} method does nothing.
    *
    * @param rel Relational expression
    * @param rowEnumerable Contents of relational expression
@@ -400,6 +490,162 @@ public Row receive() {
     }
   }
 
+  /** Source that opens a source on an input of a relational expression
+   * when it is first asked for a row. */
+  private class LazySource implements Source {
+    private final RelNode rel;
+    private final int ordinal;
+    private Source source;
+
+    LazySource(RelNode rel, int ordinal) {
+      this.rel = rel;
+      this.ordinal = ordinal;
+    }
+
+    public Row receive() {
+      if (source == null) {
+        source = source(rel, ordinal);
+      }
+      return source.receive();
+    }
+
+    public void close() {
+      if (source != null) {
+        source.close();
+      }
+    }
+  }
+
+  /** Source that reads the rows of another source on a thread of an
+   * executor, into a bounded queue.
+   *
+   * <p>If the other source throws, the exception is re-thrown to the consumer
+   * after the rows that preceded it. */
+  private static class PrefetchSource implements Source {
+    private final BlockingQueue<Row> queue;
+    private final Future<?> future;
+    private volatile boolean closed;
+    private volatile Throwable throwable;
+    private boolean done;
+
+    PrefetchSource(final Source source, int capacity,
+        ExecutorService executor) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      this.future = executor.submit(
+          new Runnable() {
+            public void run() {
+              try {
+                Row row;
+                while (!closed && (row = source.receive()) != null) {
+                  queue.put(row);
+                }
+              } catch (InterruptedException e) {
+                // Consumer closed the source.
+                return;
+              } catch (Throwable e) {
+                throwable = e;
+              } finally {
+                source.close();
+              }
+              try {
+                queue.put(END);
+              } catch (InterruptedException e) {
+                // Consumer closed the source.
+              }
+            }
+          });
+    }
+
+    public Row receive() {
+      if (done) {
+        return null;
+      }
+      final Row row;
+      try {
+        row = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+      if (row == END) {
+        done = true;
+        if (throwable != null) {
+          throw Throwables.propagate(throwable);
+        }
+        return null;
+      }
+      return row;
+    }
+
+    public void close() {
+      closed = true;
+      future.cancel(true);
+      queue.clear();
+    }
+  }
+
+  /** Holds the executor used by interpreters when {@link #PARALLEL} is set.
+   * Its threads are daemons, and are created as needed, so that a thread
+   * blocked writing to a full queue never starves the thread that would
+   * read from it. */
+  private static class ExecutorHolder {
+    static final ExecutorService EXECUTOR =
+        Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("calcite-interpreter-%d")
+                .build());
+  }
+
+  /** Enumerator that computes each row, typically from rows of its
+   * sources, when it is asked for it.
+   *
+   * <p>Sub-classes implement {@link #next()}. Closing the enumerator closes
+   * the sources. */
+  abstract static class RowEnumerator implements Enumerator<Row> {
+    private final List<Source> sources;
+    private Row current;
+    private boolean done;
+
+    RowEnumerator(Source... sources) {
+      this(Arrays.asList(sources));
+    }
+
+    RowEnumerator(List<Source> sources) {
+      this.sources = sources;
+    }
+
+    /** Returns the next row, or null if there are no more rows. Is not
+     * called again after it has returned null. */
+    protected abstract Row next();
+
+    public Row current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (done) {
+        return false;
+      }
+      current = next();
+      if (current == null) {
+        done = true;
+        return false;
+      }
+      return true;
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      for (Source source : sources) {
+        source.close();
+      }
+    }
+  }
+
   /**
    * Walks over a tree of {@link org.apache.calcite.rel.RelNode} and, for each,
    * creates a {@link org.apache.calcite.interpreter.Node} that can be
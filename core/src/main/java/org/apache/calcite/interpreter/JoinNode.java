@@ -16,11 +16,14 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.rel.core.Join;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -28,48 +31,74 @@
  * {@link org.apache.calcite.rel.core.Join}.
  */
 public class JoinNode implements Node {
-  private final Source leftSource;
-  private final Source rightSource;
-  private final Sink sink;
+  private final Interpreter interpreter;
   private final Join rel;
   private final Scalar condition;
-  private final Context context;
 
   public JoinNode(Interpreter interpreter, Join rel) {
-    this.leftSource = interpreter.source(rel, 0);
-    this.rightSource = interpreter.source(rel, 1);
-    this.sink = interpreter.sink(rel);
+    this.interpreter = interpreter;
     this.condition = interpreter.compile(ImmutableList.of(rel.getCondition()),
         interpreter.combinedRowType(rel.getInputs()));
     this.rel = rel;
-    this.context = interpreter.createContext();
-
+    interpreter.enumerable(rel,
+        new AbstractEnumerable<Row>() {
+          public Enumerator<Row> enumerator() {
+            return JoinNode.this.enumerator();
+          }
+        });
   }
 
   public void run() throws InterruptedException {
-    List<Row> rightList = null;
+    // Rows are computed when the enumerator is read.
+  }
+
+  /** Returns an enumerator that streams the left input and, when it reads
+   * the first left row, reads the whole of the right input into a list.
+   *
+   * <p>If the interpreter is parallel, both inputs start to be read as soon
+   * as the enumerator is created. */
+  private Enumerator<Row> enumerator() {
+    final List<Source> sources = interpreter.sources(rel);
+    final Source leftSource = sources.get(0);
+    final Source rightSource = sources.get(1);
     final int leftCount = rel.getLeft().getRowType().getFieldCount();
     final int rightCount = rel.getRight().getRowType().getFieldCount();
+    final Context context = interpreter.createContext();
     context.values = new Object[rel.getRowType().getFieldCount()];
-    Row left;
-    Row right;
-    while ((left = leftSource.receive()) != null) {
-      System.arraycopy(left.getValues(), 0, context.values, 0, leftCount);
-      if (rightList == null) {
-        rightList = Lists.newArrayList();
-        while ((right = rightSource.receive()) != null) {
-          rightList.add(right);
-        }
-      }
-      for (Row right2 : rightList) {
-        System.arraycopy(right2.getValues(), 0, context.values, leftCount,
-            rightCount);
-        final Boolean execute = (Boolean) condition.execute(context);
-        if (execute != null && execute) {
-          sink.send(Row.asCopy(context.values));
+    return new Interpreter.RowEnumerator(sources) {
+      List<Row> rightList = null;
+      Iterator<Row> rightIterator = null;
+
+      protected Row next() {
+        for (;;) {
+          if (rightIterator != null) {
+            while (rightIterator.hasNext()) {
+              final Row right2 = rightIterator.next();
+              System.arraycopy(right2.getValues(), 0, context.values,
+                  leftCount, rightCount);
+              final Boolean execute = (Boolean) condition.execute(context);
+              if (execute != null && execute) {
+                return Row.asCopy(context.values);
+              }
+            }
+          }
+          final Row left = leftSource.receive();
+          if (left == null) {
+            return null;
+          }
+          System.arraycopy(left.getValues(), 0, context.values, 0, leftCount);
+          if (rightList == null) {
+            rightList = Lists.newArrayList();
+            Row right;
+            while ((right = rightSource.receive()) != null) {
+              rightList.add(right);
+            }
+            rightSource.close();
+          }
+          rightIterator = rightList.iterator();
         }
       }
-    }
+    };
   }
 }
 
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.rel.core.Project;
 
 /**
@@ -24,7 +25,6 @@
  */
 public class ProjectNode extends AbstractSingleNode<Project> {
   private final Scalar scalar;
-  private final Context context;
   private final int projectCount;
 
   public ProjectNode(Interpreter interpreter, Project rel) {
@@ -32,17 +32,22 @@ public ProjectNode(Interpreter interpreter, Project rel) {
     this.projectCount = rel.getProjects().size();
     this.scalar = interpreter.compile(rel.getProjects(),
         rel.getInput().getRowType());
-    this.context = interpreter.createContext();
   }
 
-  public void run() throws InterruptedException {
-    Row row;
-    while ((row = source.receive()) != null) {
-      context.values = row.getValues();
-      Object[] values = new Object[projectCount];
-      scalar.execute(context, values);
-      sink.send(new Row(values));
-    }
+  protected Enumerator<Row> enumerator(final Source source) {
+    final Context context = interpreter.createContext();
+    return new Interpreter.RowEnumerator(source) {
+      protected Row next() {
+        final Row row = source.receive();
+        if (row == null) {
+          return null;
+        }
+        context.values = row.getValues();
+        Object[] values = new Object[projectCount];
+        scalar.execute(context, values);
+        return new Row(values);
+      }
+    };
   }
 }
 
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rex.RexLiteral;
@@ -28,6 +29,7 @@
 import java.math.BigDecimal;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -39,7 +41,7 @@ public SortNode(Interpreter interpreter, Sort rel) {
     super(interpreter, rel);
   }
 
-  public void run() throws InterruptedException {
+  protected Enumerator<Row> enumerator(final Source source) {
     final int offset =
         rel.offset == null
             ? 0
@@ -48,40 +50,52 @@ public void run() throws InterruptedException {
         rel.fetch == null
             ? -1
             : ((BigDecimal) ((RexLiteral) rel.fetch).getValue()).intValue();
-    // In pure limit mode. No sort required.
-    Row row;
-  loop:
     if (rel.getCollation().getFieldCollations().isEmpty()) {
-      for (int i = 0; i < offset; i++) {
-        row = source.receive();
-        if (row == null) {
-          break loop;
-        }
-      }
-      if (fetch >= 0) {
-        for (int i = 0; i < fetch && (row = source.receive()) != null; i++) {
-          sink.send(row);
+      // In pure limit mode. No sort required. Stops reading the source once
+      // "fetch" rows have been returned.
+      return new Interpreter.RowEnumerator(source) {
+        int skipped = 0;
+        int count = 0;
+
+        protected Row next() {
+          for (; skipped < offset; skipped++) {
+            if (source.receive() == null) {
+              return null;
+            }
+          }
+          if (fetch >= 0 && count >= fetch) {
+            return null;
+          }
+          final Row row = source.receive();
+          if (row != null) {
+            ++count;
+          }
+          return row;
         }
-      } else {
-        while ((row = source.receive()) != null) {
-          sink.send(row);
+      };
+    }
+    // Build a sorted collection when the first row is asked for.
+    return new Interpreter.RowEnumerator(source) {
+      Iterator<Row> iterator;
+
+      protected Row next() {
+        if (iterator == null) {
+          final List<Row> list = Lists.newArrayList();
+          Row row;
+          while ((row = source.receive()) != null) {
+            list.add(row);
+          }
+          Collections.sort(list, comparator());
+          final int end = fetch < 0 || offset + fetch > list.size()
+              ? list.size()
+              : offset + fetch;
+          iterator = offset < end
+              ? list.subList(offset, end).iterator()
+              : Collections.<Row>emptyIterator();
         }
+        return iterator.hasNext() ? iterator.next() : null;
       }
-    } else {
-      // Build a sorted collection.
-      final List<Row> list = Lists.newArrayList();
-      while ((row = source.receive()) != null) {
-        list.add(row);
-      }
-      Collections.sort(list, comparator());
-      final int end = fetch < 0 || offset + fetch > list.size()
-          ? list.size()
-          : offset + fetch;
-      for (int i = offset; i < end; i++) {
-        sink.send(list.get(i));
-      }
-    }
-    sink.end();
+    };
   }
 
   private Comparator<Row> comparator() {
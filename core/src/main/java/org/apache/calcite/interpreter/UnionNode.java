@@ -16,11 +16,13 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.rel.core.Union;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -28,30 +30,48 @@
  * {@link org.apache.calcite.rel.core.Union}.
  */
 public class UnionNode implements Node {
-  private final ImmutableList<Source> sources;
-  private final Sink sink;
+  private final Interpreter interpreter;
   private final Union rel;
 
   public UnionNode(Interpreter interpreter, Union rel) {
-    ImmutableList.Builder<Source> builder = ImmutableList.builder();
-    for (int i = 0; i < rel.getInputs().size(); i++) {
-      builder.add(interpreter.source(rel, i));
-    }
-    this.sources = builder.build();
-    this.sink = interpreter.sink(rel);
+    this.interpreter = interpreter;
     this.rel = rel;
+    interpreter.enumerable(rel,
+        new AbstractEnumerable<Row>() {
+          public Enumerator<Row> enumerator() {
+            return UnionNode.this.enumerator();
+          }
+        });
   }
 
   public void run() throws InterruptedException {
+    // Rows are computed when the enumerator is read.
+  }
+
+  /** Returns an enumerator that returns the rows of each input in turn.
+   *
+   * <p>If the interpreter is parallel, all inputs start to be read as soon
+   * as the enumerator is created; otherwise an input is opened only when the
+   * previous one is exhausted. */
+  private Enumerator<Row> enumerator() {
     final Set<Row> rows = rel.all ? null : Sets.<Row>newHashSet();
-    for (Source source : sources) {
-      Row row;
-      while ((row = source.receive()) != null) {
-        if (rows == null || rows.add(row)) {
-          sink.send(row);
+    final List<Source> sources = interpreter.sources(rel);
+    return new Interpreter.RowEnumerator(sources) {
+      int i = 0;
+
+      protected Row next() {
+        for (; i < sources.size(); i++) {
+          final Source source = sources.get(i);
+          Row row;
+          while ((row = source.receive()) != null) {
+            if (rows == null || rows.add(row)) {
+              return row;
+            }
+          }
         }
+        return null;
       }
-    }
+    };
   }
 }
 
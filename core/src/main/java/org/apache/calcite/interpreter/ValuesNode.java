@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.rel.core.Values;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
@@ -30,14 +31,13 @@
  * {@link org.apache.calcite.rel.core.Values}.
  */
 public class ValuesNode implements Node {
-  private final Sink sink;
   private final int fieldCount;
   private final ImmutableList<Row> rows;
 
   public ValuesNode(Interpreter interpreter, Values rel) {
-    this.sink = interpreter.sink(rel);
     this.fieldCount = rel.getRowType().getFieldCount();
     this.rows = createRows(interpreter, rel.getTuples());
+    interpreter.enumerable(rel, Linq4j.asEnumerable(rows));
   }
 
   private ImmutableList<Row> createRows(Interpreter interpreter,
@@ -60,10 +60,7 @@ private ImmutableList<Row> createRows(Interpreter interpreter,
   }
 
   public void run() throws InterruptedException {
-    for (Row row : rows) {
-      sink.send(row);
-    }
-    sink.end();
+    // Rows are read from the enumerable.
   }
 }
 
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.interpreter;
 
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.rel.core.Window;
 
 /**
@@ -27,12 +28,12 @@ public class WindowNode extends AbstractSingleNode<Window> {
     super(interpreter, rel);
   }
 
-  public void run() throws InterruptedException {
-    Row row;
-    while ((row = source.receive()) != null) {
-      sink.send(row);
-    }
-    sink.end();
+  protected Enumerator<Row> enumerator(final Source source) {
+    return new Interpreter.RowEnumerator(source) {
+      protected Row next() {
+        return source.receive();
+      }
+    };
   }
 }
 
@@ -82,6 +82,7 @@ public void setCache(boolean cache) {
     implicitTableCache.enable(now, cache);
     implicitFunctionCache.enable(now, cache);
     this.cache = cache;
+    modified();
   }
 
   protected boolean isCacheEnabled() {
@@ -115,6 +116,7 @@ public CalciteSchema add(String name, Schema schema) {
     final CalciteSchema calciteSchema =
         new CachingCalciteSchema(this, schema, name);
     subSchemaMap.put(name, calciteSchema);
+    modified();
     return calciteSchema;
   }
 
@@ -245,9 +247,11 @@ public T get(long now) {
       if (!CachingCalciteSchema.this.cache) {
         return build();
       }
-      if (checked == Long.MIN_VALUE
-          || schema.contentsHaveChangedSince(checked, now)) {
+      if (checked == Long.MIN_VALUE) {
         t = build();
+      } else if (schema.contentsHaveChangedSince(checked, now)) {
+        t = build();
+        modified();
       }
       checked = now;
       return t;
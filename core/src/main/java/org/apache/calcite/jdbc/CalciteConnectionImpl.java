@@ -88,6 +88,9 @@
   public final JavaTypeFactory typeFactory;
 
   final CalciteSchema rootSchema;
+  /** Whether this connection created its root schema, rather than sharing
+   * another connection's, and so must close the schemas in it. */
+  private final boolean ownsRootSchema;
   final Function0<CalcitePrepare> prepareFactory;
   final CalciteServer server = new CalciteServerImpl();
 
@@ -123,6 +126,7 @@ protected CalciteConnectionImpl(Driver driver, AvaticaFactory factory,
         Preconditions.checkNotNull(rootSchema != null
             ? rootSchema
             : CalciteSchema.createRootSchema(true));
+    this.ownsRootSchema = rootSchema == null;
     Preconditions.checkArgument(this.rootSchema.isRoot(), "must be root schema");
     this.properties.put(InternalProperty.CASE_SENSITIVE, cfg.caseSensitive());
     this.properties.put(InternalProperty.UNQUOTED_CASING, cfg.unquotedCasing());
@@ -151,6 +155,29 @@ void init() {
     }
   }
 
+  /** Called when the connection is closed. If this connection created its
+   * root schema, closes each schema in it that is {@link AutoCloseable},
+   * such as a schema that holds a client of a remote server. */
+  void closeSchemas() {
+    if (ownsRootSchema) {
+      closeSchemas(rootSchema);
+    }
+  }
+
+  private static void closeSchemas(CalciteSchema schema) {
+    for (CalciteSchema subSchema : schema.subSchemaMap.values()) {
+      closeSchemas(subSchema);
+      if (subSchema.schema instanceof AutoCloseable) {
+        try {
+          ((AutoCloseable) subSchema.schema).close();
+        } catch (Exception e) {
+          throw new RuntimeException("While closing schema "
+              + subSchema.name, e);
+        }
+      }
+    }
+  }
+
   @Override public <T> T unwrap(Class<T> iface) throws SQLException {
     if (iface == RelRunner.class) {
       return iface.cast(
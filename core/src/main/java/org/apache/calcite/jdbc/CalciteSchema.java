@@ -86,6 +86,10 @@ public int compare(String o1, String o2) {
   protected final NavigableMap<String, CalciteSchema> subSchemaMap =
       new TreeMap<>(COMPARATOR);
   private ImmutableList<ImmutableList<String>> path;
+  /** Identifies the current state of this schema and its descendants, if
+   * this is a root schema; replaced on each change. See
+   * {@link #getVersion()}. */
+  private volatile Object version = new Object();
 
   CalciteSchema(CalciteSchema parent, Schema schema, String name) {
     this.parent = parent;
@@ -150,6 +154,7 @@ public TableEntry add(String tableName, Table table,
     final TableEntryImpl entry =
         new TableEntryImpl(this, tableName, table, sqls);
     tableMap.put(tableName, entry);
+    modified();
     return entry;
   }
 
@@ -161,6 +166,7 @@ private FunctionEntry add(String name, Function function) {
     if (function.getParameters().isEmpty()) {
       nullaryFunctionMap.put(name, entry);
     }
+    modified();
     return entry;
   }
 
@@ -170,6 +176,7 @@ private LatticeEntry add(String name, Lattice lattice) {
     }
     final LatticeEntryImpl entry = new LatticeEntryImpl(this, name, lattice);
     latticeMap.put(name, entry);
+    modified();
     return entry;
   }
 
@@ -182,6 +189,26 @@ public CalciteSchema root() {
     }
   }
 
+  /** Returns a token that identifies the version of this schema's tree.
+   * A new token, equal only to itself, is created whenever a schema in the
+   * tree changes in a way that Calcite can see: when a table, function,
+   * lattice or sub-schema is defined, the path is set, caching is switched
+   * on or off, or a cached schema finds that its contents have changed.
+   * Information derived from the tree, such as a prepared statement, is
+   * valid while the token stays the same.
+   *
+   * <p>No two trees share a token, so a token identifies the tree too; and
+   * unlike the tree, it holds no references, so a cache may keep it after
+   * the tree is gone. */
+  public Object getVersion() {
+    return root().version;
+  }
+
+  /** Records that this schema has changed. */
+  protected void modified() {
+    root().version = new Object();
+  }
+
   /** Returns whether this is a root schema. */
   public boolean isRoot() {
     return parent == null;
@@ -610,6 +637,7 @@ public <T> T unwrap(Class<T> clazz) {
 
     public void setPath(ImmutableList<ImmutableList<String>> path) {
       CalciteSchema.this.path = path;
+      modified();
     }
 
     public void add(String name, Table table) {
@@ -101,6 +101,11 @@ protected DriverVersion createDriverVersion() {
         }
         connection.init();
       }
+
+      @Override public void onConnectionClose(AvaticaConnection connection) {
+        ((CalciteConnectionImpl) connection).closeSchemas();
+        super.onConnectionClose(connection);
+      }
     };
   }
 
@@ -26,6 +26,7 @@
 import org.apache.calcite.adapter.enumerable.EnumerableRules;
 import org.apache.calcite.adapter.enumerable.RexToLixTranslator;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.adapter.vector.VectorRules;
 import org.apache.calcite.avatica.AvaticaParameter;
 import org.apache.calcite.avatica.ColumnMetaData;
 import org.apache.calcite.avatica.Meta;
@@ -103,6 +104,7 @@
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexProgram;
 import org.apache.calcite.runtime.Bindable;
+import org.apache.calcite.runtime.ExternalSort;
 import org.apache.calcite.runtime.Hook;
 import org.apache.calcite.runtime.Typed;
 import org.apache.calcite.schema.Schemas;
@@ -123,11 +125,16 @@
 import org.apache.calcite.sql2rel.SqlToRelConverter;
 import org.apache.calcite.sql2rel.StandardConvertletTable;
 import org.apache.calcite.tools.Frameworks;
+import org.apache.calcite.util.Holder;
 import org.apache.calcite.util.ImmutableIntList;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 
 import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -176,6 +183,58 @@ public class CalcitePrepareImpl implements CalcitePrepare {
   /** Whether the streaming is enabled. */
   public static final boolean ENABLE_STREAM = true;
 
+  /** Whether filters and projects may be evaluated over column batches, in
+   * vector convention. Set system property "calcite.enable.vector" to
+   * enable, or use {@link Hook#ENABLE_VECTOR} to enable for some
+   * statements. */
+  public static final boolean ENABLE_VECTOR =
+      Util.getBooleanProperty("calcite.enable.vector");
+
+  /** Returns whether to register the rules of the vector convention in a
+   * planner: {@link #ENABLE_VECTOR}, unless a handler of
+   * {@link Hook#ENABLE_VECTOR} changes it. */
+  private static boolean enableVector() {
+    final Holder<Boolean> holder = Holder.of(ENABLE_VECTOR);
+    Hook.ENABLE_VECTOR.run(holder);
+    return holder.get();
+  }
+
+  /** Maximum number of statements in the cache of prepared statements. Set
+   * system property "calcite.plan.cache.maxEntries" to change it. */
+  private static final int PLAN_CACHE_MAX_ENTRIES =
+      Integer.getInteger("calcite.plan.cache.maxEntries", 1000);
+
+  /** Maximum estimated size, in bytes, of the statements in the cache of
+   * prepared statements. Set system property "calcite.plan.cache.maxBytes"
+   * to change it. */
+  private static final long PLAN_CACHE_MAX_BYTES =
+      Long.getLong("calcite.plan.cache.maxBytes", 64L * 1024 * 1024);
+
+  /** Cache of prepared statements, used by connections whose
+   * {@link CalciteConnectionConfig#planCache()} is true. The key contains the
+   * SQL, the version token of the root schema, and everything else that
+   * affects preparation; so when a schema changes, or its connection is
+   * closed, its statements are no longer found, and age out.
+   *
+   * <p>Each statement weighs its estimated size, but no less than
+   * {@link #PLAN_CACHE_MAX_BYTES} / {@link #PLAN_CACHE_MAX_ENTRIES}, so the
+   * cache respects both limits. */
+  private static final Cache<List<Object>, CalciteSignature> PLAN_CACHE =
+      CacheBuilder.newBuilder()
+          .maximumWeight(PLAN_CACHE_MAX_ENTRIES <= 0 ? 0 : PLAN_CACHE_MAX_BYTES)
+          .weigher(
+              new Weigher<List<Object>, CalciteSignature>() {
+                public int weigh(List<Object> key, CalciteSignature value) {
+                  final long minWeight =
+                      PLAN_CACHE_MAX_BYTES / Math.max(PLAN_CACHE_MAX_ENTRIES, 1)
+                      + 1;
+                  return (int) Math.min(Integer.MAX_VALUE,
+                      Math.max(minWeight, estimateSize(value)));
+                }
+              })
+          .recordStats()
+          .build();
+
   private static final Set<String> SIMPLE_SQLS =
       ImmutableSet.of(
           "SELECT 1",
@@ -519,6 +578,12 @@ protected RelOptPlanner createPlanner(
       }
     }
 
+    if (enableVector() && ENABLE_ENUMERABLE) {
+      for (RelOptRule rule : VectorRules.RULES) {
+        planner.addRule(rule);
+      }
+    }
+
     // Change the below to enable constant-reduction.
     if (false) {
       for (RelOptRule rule : CONSTANT_REDUCTION_RULES) {
@@ -554,7 +619,76 @@ public <T> CalciteSignature<T> prepareSql(
       Query<T> query,
       Type elementType,
       long maxRowCount) {
-    return prepare_(context, query, elementType, maxRowCount);
+    final CalciteConnectionConfig config = context.config();
+    if (query.sql == null
+        || !config.planCache()
+        || PLAN_CACHE_MAX_ENTRIES <= 0) {
+      return prepare_(context, query, elementType, maxRowCount);
+    }
+    // The key holds the schema's version token rather than the schema or
+    // the connection's type factory, so that it does not keep a closed
+    // connection's objects alive. The token identifies the root schema, and
+    // each connection has its own root schema and type factory. It also
+    // holds the settings that hooks may change while a statement is
+    // prepared.
+    final List<Object> key = ImmutableList.of(query.sql,
+        context.getRootSchema().getVersion(), context.getDefaultSchemaPath(),
+        elementType, maxRowCount, config.quoting(), config.quotedCasing(),
+        config.unquotedCasing(), config.caseSensitive(),
+        config.defaultNullCollation(), config.materializationsEnabled(),
+        config.forceDecorrelate(), config.spark(), enableVector(),
+        ExternalSort.memoryBudget());
+    //noinspection unchecked
+    CalciteSignature<T> signature = PLAN_CACHE.getIfPresent(key);
+    if (signature == null) {
+      signature = prepare_(context, query, elementType, maxRowCount);
+      if (isCacheable(signature)) {
+        PLAN_CACHE.put(key, signature);
+      }
+    }
+    return signature;
+  }
+
+  /** Returns the hit, miss and eviction counts of the cache of prepared
+   * statements. */
+  public static CacheStats getPlanCacheStats() {
+    return PLAN_CACHE.stats();
+  }
+
+  /** Returns whether a prepared statement can be reused. A DDL statement
+   * cannot, because it does its work while it is being prepared. Nor is a
+   * statement cached whose code uses relational expressions, as the
+   * interpreter does; through their cluster, they would keep the
+   * connection's schema and type factory alive. */
+  private static boolean isCacheable(CalciteSignature signature) {
+    if (signature.statementType == null) {
+      return false;
+    }
+    for (Object o : signature.internalParameters.values()) {
+      if (o instanceof RelNode) {
+        return false;
+      }
+    }
+    switch (signature.statementType) {
+    case CREATE:
+    case DROP:
+    case ALTER:
+    case OTHER_DDL:
+      return false;
+    default:
+      return true;
+    }
+  }
+
+  /** Estimates the memory used by a prepared statement, in bytes. The
+   * compiled code is not counted; it is shared, and cached by
+   * {@link EnumerableInterpretable}. */
+  private static long estimateSize(CalciteSignature signature) {
+    return 1024L
+        + 2L * signature.sql.length()
+        + 512L * signature.columns.size()
+        + 256L * signature.parameters.size()
+        + 128L * signature.internalParameters.size();
   }
 
   <T> CalciteSignature<T> prepare_(
@@ -707,7 +841,8 @@ public Enumerable<T> bind(DataContext dataContext) {
             ImmutableList.<AvaticaParameter>of(),
             ImmutableMap.<String, Object>of(), null,
             ImmutableList.<ColumnMetaData>of(), Meta.CursorFactory.OBJECT,
-            ImmutableList.<RelCollation>of(), -1, bindable);
+            ImmutableList.<RelCollation>of(), -1, bindable,
+            Meta.StatementType.OTHER_DDL);
       }
 
       final CalciteSchema rootSchema = context.getRootSchema();
@@ -0,0 +1,586 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.avatica.util.ByteString;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.util.Holder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sort that holds at most a given number of bytes of rows in memory, and
+ * writes the rest to temporary files.
+ *
+ * <p>Rows are read into a buffer until their estimated size exceeds the
+ * budget; then the buffer is sorted and written to a file, called a run.
+ * When the input is exhausted, the runs and what remains in the buffer are
+ * merged. If there are more than {@link #FAN_IN} runs, groups of them are
+ * first merged into longer runs, so that no more than {@link #FAN_IN} files
+ * are open at a time. If every row fits in the budget, nothing is written.
+ *
+ * <p>Runs are written in a compact binary format. Rows may be scalars,
+ * arrays or lists of values; values may be null, primitive wrappers,
+ * strings, {@link BigDecimal}, {@link ByteString}, arrays and lists, and
+ * other {@link Serializable} objects, which are written using Java
+ * serialization.
+ *
+ * <p>The sort is stable: rows with equal keys are returned in the order
+ * they were read, as {@link Enumerable#orderBy} does.
+ *
+ * <p>The files are deleted when the enumerator is closed or reaches the
+ * end.
+ */
+public class ExternalSort {
+  /** Number of bytes of rows that {@code EnumerableSort} holds in memory
+   * before it writes them to temporary files; 0, the default, sorts
+   * entirely in memory. Set system property "calcite.sort.memoryBudget" to
+   * change it, or use {@link Hook#SORT_MEMORY_BUDGET} to change it for some
+   * statements. */
+  public static final long MEMORY_BUDGET =
+      Long.getLong("calcite.sort.memoryBudget", 0L);
+
+  /** Returns the memory budget of a sort that is being implemented:
+   * {@link #MEMORY_BUDGET}, unless a handler of
+   * {@link Hook#SORT_MEMORY_BUDGET} changes it. */
+  public static long memoryBudget() {
+    final Holder<Long> holder = Holder.of(MEMORY_BUDGET);
+    Hook.SORT_MEMORY_BUDGET.run(holder);
+    return holder.get();
+  }
+
+  /** Maximum number of runs that are merged at once. */
+  static final int FAN_IN = 64;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final byte NULL = 0;
+  private static final byte FALSE = 1;
+  private static final byte TRUE = 2;
+  private static final byte BYTE = 3;
+  private static final byte SHORT = 4;
+  private static final byte CHAR = 5;
+  private static final byte INT = 6;
+  private static final byte LONG = 7;
+  private static final byte FLOAT = 8;
+  private static final byte DOUBLE = 9;
+  private static final byte STRING = 10;
+  private static final byte DECIMAL = 11;
+  private static final byte BYTE_STRING = 12;
+  private static final byte ARRAY = 13;
+  private static final byte LIST = 14;
+  private static final byte SERIALIZED = 15;
+
+  private ExternalSort() {}
+
+  /**
+   * Sorts the elements of a sequence by a key, holding at most
+   * {@code memoryBudget} bytes of them in memory.
+   *
+   * @param source Rows to sort
+   * @param keySelector Extracts the sort key of a row
+   * @param comparator Compares sort keys
+   * @param memoryBudget Estimated number of bytes of rows to hold in memory
+   */
+  public static <TSource, TKey> Enumerable<TSource> orderBy(
+      final Enumerable<TSource> source,
+      final Function1<TSource, TKey> keySelector,
+      final Comparator<TKey> comparator, final long memoryBudget) {
+    final Comparator<TSource> rowComparator =
+        new Comparator<TSource>() {
+          public int compare(TSource o1, TSource o2) {
+            return comparator.compare(keySelector.apply(o1),
+                keySelector.apply(o2));
+          }
+        };
+    return new AbstractEnumerable<TSource>() {
+      public Enumerator<TSource> enumerator() {
+        return sort(source, rowComparator, memoryBudget);
+      }
+    };
+  }
+
+  private static <E> Enumerator<E> sort(Enumerable<E> source,
+      Comparator<E> comparator, long memoryBudget) {
+    final List<Run> runs = new ArrayList<Run>();
+    List<E> buffer = new ArrayList<E>();
+    boolean success = false;
+    try {
+      final Enumerator<E> enumerator = source.enumerator();
+      try {
+        long bytes = 0;
+        while (enumerator.moveNext()) {
+          final E e = enumerator.current();
+          buffer.add(e);
+          bytes += estimateSize(e);
+          if (bytes > memoryBudget) {
+            Collections.sort(buffer, comparator);
+            runs.add(Run.write(buffer.iterator(), buffer.size()));
+            buffer = new ArrayList<E>();
+            bytes = 0;
+          }
+        }
+      } finally {
+        enumerator.close();
+      }
+      Collections.sort(buffer, comparator);
+      if (runs.isEmpty()) {
+        success = true;
+        return Linq4j.enumerator(buffer);
+      }
+      // Leave room for the buffer, which is merged with the runs.
+      while (runs.size() >= FAN_IN) {
+        final List<Run> group = runs.subList(0, FAN_IN);
+        final MergeEnumerator<E> merge =
+            new MergeEnumerator<E>(group, null, comparator);
+        final Run run;
+        try {
+          run = Run.write(merge, merge.count);
+        } finally {
+          merge.close();
+        }
+        group.clear();
+        runs.add(0, run);
+      }
+      final MergeEnumerator<E> merge =
+          new MergeEnumerator<E>(runs, buffer, comparator);
+      success = true;
+      return merge;
+    } catch (IOException e) {
+      throw new RuntimeException("Error while sorting", e);
+    } finally {
+      if (!success) {
+        for (Run run : runs) {
+          run.delete();
+        }
+      }
+    }
+  }
+
+  /** Returns a rough estimate of the number of bytes of heap used by a
+   * row or value. */
+  static long estimateSize(Object o) {
+    if (o == null) {
+      return 4;
+    } else if (o instanceof String) {
+      return 40 + 2 * ((String) o).length();
+    } else if (o instanceof Object[]) {
+      final Object[] values = (Object[]) o;
+      long size = 16 + 4 * values.length;
+      for (Object value : values) {
+        size += estimateSize(value);
+      }
+      return size;
+    } else if (o instanceof List) {
+      final List<?> values = (List<?>) o;
+      long size = 40 + 4 * values.size();
+      for (Object value : values) {
+        size += estimateSize(value);
+      }
+      return size;
+    } else if (o instanceof ByteString) {
+      return 32 + ((ByteString) o).length();
+    } else if (o instanceof BigDecimal) {
+      return 64;
+    } else {
+      return 24;
+    }
+  }
+
+  /** Writes a row or value. */
+  static void write(DataOutputStream out, Object o) throws IOException {
+    if (o == null) {
+      out.writeByte(NULL);
+    } else if (o instanceof Boolean) {
+      out.writeByte((Boolean) o ? TRUE : FALSE);
+    } else if (o instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) o);
+    } else if (o instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) o);
+    } else if (o instanceof String) {
+      final byte[] bytes = ((String) o).getBytes(UTF8);
+      out.writeByte(STRING);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } else if (o instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) o);
+    } else if (o instanceof Object[]) {
+      final Object[] values = (Object[]) o;
+      out.writeByte(ARRAY);
+      out.writeInt(values.length);
+      for (Object value : values) {
+        write(out, value);
+      }
+    } else if (o instanceof BigDecimal) {
+      final BigDecimal decimal = (BigDecimal) o;
+      final byte[] bytes = decimal.unscaledValue().toByteArray();
+      out.writeByte(DECIMAL);
+      out.writeInt(decimal.scale());
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } else if (o instanceof ByteString) {
+      final byte[] bytes = ((ByteString) o).getBytes();
+      out.writeByte(BYTE_STRING);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } else if (o instanceof Short) {
+      out.writeByte(SHORT);
+      out.writeShort((Short) o);
+    } else if (o instanceof Byte) {
+      out.writeByte(BYTE);
+      out.writeByte((Byte) o);
+    } else if (o instanceof Character) {
+      out.writeByte(CHAR);
+      out.writeChar((Character) o);
+    } else if (o instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeFloat((Float) o);
+    } else if (o instanceof List) {
+      // A row in LIST format, or the value of an ARRAY or MULTISET column.
+      // It is read back as a flat list.
+      final List<?> values = (List<?>) o;
+      out.writeByte(LIST);
+      out.writeInt(values.size());
+      for (Object value : values) {
+        write(out, value);
+      }
+    } else if (o instanceof Serializable) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final ObjectOutputStream oos = new ObjectOutputStream(bytes);
+      oos.writeObject(o);
+      oos.close();
+      out.writeByte(SERIALIZED);
+      out.writeInt(bytes.size());
+      bytes.writeTo(out);
+    } else {
+      throw new IllegalArgumentException("Cannot write value of "
+          + o.getClass() + " to sort run");
+    }
+  }
+
+  /** Reads a row or value written by {@link #write}. */
+  static Object read(DataInputStream in) throws IOException {
+    final byte tag = in.readByte();
+    final byte[] bytes;
+    final int n;
+    switch (tag) {
+    case NULL:
+      return null;
+    case FALSE:
+      return false;
+    case TRUE:
+      return true;
+    case BYTE:
+      return in.readByte();
+    case SHORT:
+      return in.readShort();
+    case CHAR:
+      return in.readChar();
+    case INT:
+      return in.readInt();
+    case LONG:
+      return in.readLong();
+    case FLOAT:
+      return in.readFloat();
+    case DOUBLE:
+      return in.readDouble();
+    case STRING:
+      bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return new String(bytes, UTF8);
+    case DECIMAL:
+      final int scale = in.readInt();
+      bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return new BigDecimal(new BigInteger(bytes), scale);
+    case BYTE_STRING:
+      bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return new ByteString(bytes);
+    case ARRAY:
+      n = in.readInt();
+      final Object[] values = new Object[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = read(in);
+      }
+      return values;
+    case LIST:
+      n = in.readInt();
+      final List<Object> list = new ArrayList<Object>(n);
+      for (int i = 0; i < n; i++) {
+        list.add(read(in));
+      }
+      return FlatLists.of(list);
+    case SERIALIZED:
+      bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      final ObjectInputStream ois =
+          new ObjectInputStream(new ByteArrayInputStream(bytes));
+      try {
+        return ois.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+    default:
+      throw new IOException("Unknown tag " + tag + " in sort run");
+    }
+  }
+
+  /** Sorted rows in a temporary file. */
+  private static class Run {
+    final File file;
+    final int count;
+
+    private Run(File file, int count) {
+      this.file = file;
+      this.count = count;
+    }
+
+    /** Writes {@code count} rows, which must be sorted, to a new run. */
+    static <E> Run write(Iterator<E> rows, int count) throws IOException {
+      final File file = File.createTempFile("calcite-sort", ".run");
+      boolean success = false;
+      final DataOutputStream out =
+          new DataOutputStream(
+              new BufferedOutputStream(new FileOutputStream(file), 65536));
+      try {
+        for (int i = 0; i < count; i++) {
+          ExternalSort.write(out, rows.next());
+        }
+        success = true;
+      } finally {
+        out.close();
+        if (!success) {
+          file.delete();
+        }
+      }
+      return new Run(file, count);
+    }
+
+    DataInputStream open() throws IOException {
+      return new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file), 65536));
+    }
+
+    void delete() {
+      file.delete();
+    }
+  }
+
+  /** Source of sorted rows for a merge, and its current row. */
+  private abstract static class Cursor<E> {
+    final int ordinal;
+    E current;
+
+    Cursor(int ordinal) {
+      this.ordinal = ordinal;
+    }
+
+    /** Moves to the next row; returns false if there are no more rows. */
+    abstract boolean advance() throws IOException;
+
+    void close() {}
+  }
+
+  /** Cursor over a run. */
+  private static class RunCursor<E> extends Cursor<E> {
+    private final Run run;
+    private final DataInputStream in;
+    private int remaining;
+
+    RunCursor(int ordinal, Run run) throws IOException {
+      super(ordinal);
+      this.run = run;
+      this.in = run.open();
+      this.remaining = run.count;
+    }
+
+    boolean advance() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+      --remaining;
+      //noinspection unchecked
+      current = (E) read(in);
+      return true;
+    }
+
+    @Override void close() {
+      try {
+        in.close();
+      } catch (IOException e) {
+        // ignore
+      }
+      run.delete();
+    }
+  }
+
+  /** Cursor over rows in memory. */
+  private static class ListCursor<E> extends Cursor<E> {
+    private final Iterator<E> iterator;
+
+    ListCursor(int ordinal, List<E> list) {
+      super(ordinal);
+      this.iterator = list.iterator();
+    }
+
+    boolean advance() {
+      if (!iterator.hasNext()) {
+        return false;
+      }
+      current = iterator.next();
+      return true;
+    }
+  }
+
+  /** Enumerator that merges runs, and perhaps a list of rows in memory that
+   * were read after the runs were written. Deletes the runs when closed.
+   *
+   * <p>It is also an iterator, so that its rows can be written to a longer
+   * run.
+   *
+   * @param <E> Row type */
+  private static class MergeEnumerator<E>
+      implements Enumerator<E>, Iterator<E> {
+    private final PriorityQueue<Cursor<E>> queue;
+    private final List<Cursor<E>> cursors = new ArrayList<Cursor<E>>();
+    final int count;
+    private E current;
+
+    MergeEnumerator(List<Run> runs, List<E> buffer,
+        final Comparator<E> comparator) throws IOException {
+      int count = 0;
+      try {
+        for (Run run : runs) {
+          cursors.add(new RunCursor<E>(cursors.size(), run));
+          count += run.count;
+        }
+      } catch (IOException | RuntimeException e) {
+        for (Cursor<E> cursor : cursors) {
+          cursor.close();
+        }
+        throw e;
+      }
+      if (buffer != null) {
+        cursors.add(new ListCursor<E>(cursors.size(), buffer));
+        count += buffer.size();
+      }
+      this.count = count;
+      // Among equal rows, the one from the earliest source comes first.
+      this.queue = new PriorityQueue<Cursor<E>>(cursors.size(),
+          new Comparator<Cursor<E>>() {
+            public int compare(Cursor<E> c1, Cursor<E> c2) {
+              final int c = comparator.compare(c1.current, c2.current);
+              return c != 0 ? c : c1.ordinal - c2.ordinal;
+            }
+          });
+      boolean success = false;
+      try {
+        for (Cursor<E> cursor : cursors) {
+          if (cursor.advance()) {
+            queue.add(cursor);
+          } else {
+            cursor.close();
+          }
+        }
+        success = true;
+      } finally {
+        if (!success) {
+          close();
+        }
+      }
+    }
+
+    public E current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      final Cursor<E> cursor = queue.poll();
+      if (cursor == null) {
+        close();
+        return false;
+      }
+      current = cursor.current;
+      try {
+        if (cursor.advance()) {
+          queue.add(cursor);
+        } else {
+          cursor.close();
+        }
+      } catch (IOException e) {
+        close();
+        throw new RuntimeException("Error while reading sort run", e);
+      }
+      return true;
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      queue.clear();
+      for (Cursor<E> cursor : cursors) {
+        cursor.close();
+      }
+    }
+
+    public boolean hasNext() {
+      return !queue.isEmpty();
+    }
+
+    public E next() {
+      moveNext();
+      return current;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
+
+// End ExternalSort.java
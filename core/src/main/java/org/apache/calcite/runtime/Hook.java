@@ -62,7 +62,23 @@ public enum Hook {
   /** Called with a query that has been generated to send to a back-end system.
    * The query might be a SQL string (for the JDBC adapter), a list of Mongo
    * pipeline expressions (for the MongoDB adapter), et cetera. */
-  QUERY_PLAN;
+  QUERY_PLAN,
+
+  /** Called with statistics of a query that has been sent to a back-end
+   * system, such as the number of round-trips and the time the back-end
+   * took, when its results have been read. The form of the statistics
+   * depends on the adapter. */
+  QUERY_STATS,
+
+  /** Called with a holder of the memory budget, in bytes, of a sort that is
+   * being implemented; 0 sorts in memory. A handler may change the budget.
+   * See {@link ExternalSort#MEMORY_BUDGET}. */
+  SORT_MEMORY_BUDGET,
+
+  /** Called with a holder of whether to register the rules of the vector
+   * convention in a planner that is being created. A handler may change it.
+   * See {@code CalcitePrepareImpl.ENABLE_VECTOR}. */
+  ENABLE_VECTOR;
 
   private final List<Function<Object, Object>> handlers =
       new CopyOnWriteArrayList<Function<Object, Object>>();
@@ -16,9 +16,11 @@
  */
 package org.apache.calcite.sql.validate;
 
+import org.apache.calcite.linq4j.function.NonDeterministic;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.schema.Function;
 import org.apache.calcite.schema.FunctionParameter;
+import org.apache.calcite.schema.impl.ReflectiveFunctionBase;
 import org.apache.calcite.sql.SqlFunction;
 import org.apache.calcite.sql.SqlFunctionCategory;
 import org.apache.calcite.sql.SqlIdentifier;
@@ -30,6 +32,7 @@
 
 import com.google.common.collect.Lists;
 
+import java.lang.reflect.Method;
 import java.util.List;
 
 /**
@@ -61,6 +64,23 @@ public Function getFunction() {
     return function;
   }
 
+  /** {@inheritDoc}
+   *
+   * <p>A function based on a method is not deterministic if the method or
+   * its class is annotated {@link NonDeterministic}; such calls are not
+   * reduced to constants by the planner.</p> */
+  @Override public boolean isDeterministic() {
+    if (function instanceof ReflectiveFunctionBase) {
+      final Method method = ((ReflectiveFunctionBase) function).method;
+      if (method.isAnnotationPresent(NonDeterministic.class)
+          || method.getDeclaringClass()
+              .isAnnotationPresent(NonDeterministic.class)) {
+        return false;
+      }
+    }
+    return super.isDeterministic();
+  }
+
   @Override public List<String> getParamNames() {
     return Lists.transform(function.getParameters(), FunctionParameter.NAME_FN);
   }
@@ -16,16 +16,24 @@
  */
 package org.apache.calcite.adapter.clone;
 
+import org.apache.calcite.adapter.vector.Column;
+import org.apache.calcite.adapter.vector.ColumnBatch;
 import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
 import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeImpl;
 import org.apache.calcite.rel.type.RelDataTypeSystem;
 
+import com.google.common.collect.ImmutableList;
+
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -353,6 +361,55 @@ public class ArrayTableTest {
         "Column(representation=ObjectArray(ordinal=2), value=[Bill, Sebastian, Theodore, Eric])");
   }
 
+  /** Tests that values are copied into batches, without boxing if they are
+   * held in a bit-sliced array or an array of primitives. */
+  @Test public void testBatches() {
+    final JavaTypeFactoryImpl typeFactory =
+        new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("empid", typeFactory.createType(int.class))
+            .add("delta", typeFactory.createType(int.class))
+            .add("big", typeFactory.createType(long.class))
+            .add("salary", typeFactory.createType(double.class))
+            .add("name", typeFactory.createType(String.class))
+            .build();
+    final Enumerable<Object[]> enumerable =
+        Linq4j.asEnumerable(
+            Arrays.asList(
+                new Object[]{100, -3, 10000000000L, 7.5d, "Bill"},
+                new Object[]{200, 100, -5L, 8.5d, "Eric"},
+                new Object[]{150, 0, 1L, 1.5d, "Sebastian"},
+                new Object[]{160, 7, 2L, 0.5d, "Theodore"},
+                new Object[]{110, -1, 3L, 2.5d, "Hank"}));
+    final ColumnLoader<Object[]> loader =
+        new ColumnLoader<Object[]>(typeFactory, enumerable,
+            RelDataTypeImpl.proto(rowType), null);
+    final ArrayTable.Content content =
+        new ArrayTable.Content(loader.representationValues, loader.size(),
+            ImmutableList.<RelCollation>of());
+    final Enumerator<ColumnBatch> enumerator =
+        content.batchEnumerator(
+            ImmutableList.of(Column.Kind.INT, Column.Kind.INT,
+                Column.Kind.LONG, Column.Kind.DOUBLE, Column.Kind.OBJECT),
+            2);
+    final List<String> batches = new ArrayList<String>();
+    while (enumerator.moveNext()) {
+      final ColumnBatch batch = enumerator.current();
+      assertTrue(batch.getColumn(0) instanceof Column.IntColumn);
+      assertTrue(batch.getColumn(1) instanceof Column.IntColumn);
+      assertTrue(batch.getColumn(2) instanceof Column.LongColumn);
+      assertTrue(batch.getColumn(3) instanceof Column.DoubleColumn);
+      batches.add(batch.getColumns().toString());
+    }
+    assertEquals("[[[100, 110], [-3, -1], [10000000000, 3], [7.5, 2.5], "
+            + "[Bill, Hank]], "
+            + "[[150, 160], [0, 7], [1, 2], [1.5, 0.5], "
+            + "[Sebastian, Theodore]], "
+            + "[[200], [100], [-5], [8.5], [Eric]]]",
+        batches.toString());
+  }
+
   private void checkColumn(ArrayTable.Column x,
       ArrayTable.RepresentationType expectedRepresentationType,
       String expectedString) {
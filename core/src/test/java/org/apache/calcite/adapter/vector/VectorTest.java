@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.vector;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexProgram;
+import org.apache.calcite.rex.RexProgramBuilder;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit test for {@link ColumnBatch} and {@link VectorExpressions}.
+ */
+public class VectorTest {
+  private final RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+  private final RexBuilder rexBuilder = new RexBuilder(typeFactory);
+
+  /** Row type (i INTEGER, d DOUBLE, s VARCHAR), all nullable. */
+  private final RelDataType rowType = typeFactory.builder()
+      .add("i", nullable(SqlTypeName.INTEGER))
+      .add("d", nullable(SqlTypeName.DOUBLE))
+      .add("s", nullable(SqlTypeName.VARCHAR))
+      .build();
+
+  private RelDataType nullable(SqlTypeName typeName) {
+    return typeFactory.createTypeWithNullability(
+        typeFactory.createSqlType(typeName), true);
+  }
+
+  private RexNode inputRef(int i) {
+    return rexBuilder.makeInputRef(rowType.getFieldList().get(i).getType(),
+        i);
+  }
+
+  /** Returns rows {@code (k, k / 2.0, "sk")} for {@code k} from 0 to
+   * {@code n - 1}, except that {@code i} is null if {@code k} is a multiple
+   * of 5. */
+  private static Enumerable<Object[]> rows(int n) {
+    final List<Object[]> rows = new ArrayList<>();
+    for (int k = 0; k < n; k++) {
+      rows.add(new Object[] {k % 5 == 0 ? null : k, k / 2.0, "s" + k});
+    }
+    return Linq4j.asEnumerable(rows);
+  }
+
+  private static List<Column.Kind> kinds() {
+    return ImmutableList.of(Column.Kind.INT, Column.Kind.DOUBLE,
+        Column.Kind.OBJECT);
+  }
+
+  private static List<String> toStrings(Enumerable<Object[]> rows) {
+    final List<String> list = new ArrayList<>();
+    for (Object[] row : rows) {
+      list.add(Arrays.toString(row));
+    }
+    return list;
+  }
+
+  /** Tests that rows survive being packed into batches and unpacked. */
+  @Test public void testRoundTrip() {
+    final Enumerable<ColumnBatch> batches =
+        ColumnBatch.fromRows(rows(10), kinds(), 4);
+    final List<Integer> sizes = new ArrayList<>();
+    for (ColumnBatch batch : batches) {
+      sizes.add(batch.getSelectedCount());
+    }
+    assertThat(sizes, equalTo(Arrays.asList(4, 4, 2)));
+    assertThat(toStrings(ColumnBatch.toRows(batches)),
+        equalTo(toStrings(rows(10))));
+  }
+
+  /** Tests a program with a condition and arithmetic over batches, including
+   * null values and rows removed by the condition. */
+  @Test public void testProgram() {
+    final RexNode i = inputRef(0);
+    final RexNode d = inputRef(1);
+    final RexNode s = inputRef(2);
+    final RexProgramBuilder builder =
+        new RexProgramBuilder(rowType, rexBuilder);
+    // select i * 2 + 1, i - d, s
+    // where (i > 2 and d < 4.5) or i is null
+    builder.addProject(
+        rexBuilder.makeCall(SqlStdOperatorTable.PLUS,
+            rexBuilder.makeCall(SqlStdOperatorTable.MULTIPLY, i,
+                rexBuilder.makeExactLiteral(BigDecimal.valueOf(2))),
+            rexBuilder.makeExactLiteral(BigDecimal.ONE)),
+        "a");
+    builder.addProject(
+        rexBuilder.makeCall(SqlStdOperatorTable.MINUS, i, d), "b");
+    builder.addProject(s, "s");
+    builder.addCondition(
+        rexBuilder.makeCall(SqlStdOperatorTable.OR,
+            rexBuilder.makeCall(SqlStdOperatorTable.AND,
+                rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN, i,
+                    rexBuilder.makeExactLiteral(BigDecimal.valueOf(2))),
+                rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN, d,
+                    rexBuilder.makeApproxLiteral(new BigDecimal("4.5")))),
+            rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL, i)));
+    final RexProgram program = builder.getProgram();
+    assertThat(VectorExpressions.canImplement(program), is(true));
+
+    final Function1<ColumnBatch, ColumnBatch> function =
+        VectorExpressions.compile(program);
+    final Enumerable<ColumnBatch> batches =
+        ColumnBatch.fromRows(rows(12), kinds(), 4).select(function);
+    assertThat(toStrings(ColumnBatch.toRows(batches)),
+        equalTo(
+            Arrays.asList("[null, null, s0]",
+                "[7, 1.5, s3]",
+                "[9, 2.0, s4]",
+                "[null, null, s5]",
+                "[13, 3.0, s6]",
+                "[15, 3.5, s7]",
+                "[17, 4.0, s8]",
+                "[null, null, s10]")));
+  }
+
+  /** Tests that a program that computes on strings cannot be evaluated
+   * over batches. */
+  @Test public void testCannotImplement() {
+    final RexProgramBuilder builder =
+        new RexProgramBuilder(rowType, rexBuilder);
+    builder.addProject(
+        rexBuilder.makeCall(SqlStdOperatorTable.UPPER,
+            inputRef(2)),
+        "u");
+    assertThat(VectorExpressions.canImplement(builder.getProgram()),
+        is(false));
+  }
+}
+
+// End VectorTest.java
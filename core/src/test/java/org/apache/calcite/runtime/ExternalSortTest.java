@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.runtime;
+
+import org.apache.calcite.avatica.util.ByteString;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Functions;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link org.apache.calcite.runtime.ExternalSort}.
+ */
+public class ExternalSortTest {
+  private static final Function1<Object[], Integer> FIRST =
+      new Function1<Object[], Integer>() {
+        public Integer apply(Object[] a0) {
+          return (Integer) a0[0];
+        }
+      };
+
+  private static final Comparator<Integer> NULLS_FIRST =
+      Functions.nullsComparator(true, false);
+
+  /** Returns rows {deptno, name}; many share a deptno, and some deptnos are
+   * null. */
+  private static List<Object[]> rows(int count) {
+    final Random random = new Random(count);
+    final List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i = 0; i < count; i++) {
+      final int deptno = random.nextInt(50);
+      rows.add(new Object[] {deptno == 0 ? null : deptno, "emp" + i});
+    }
+    return rows;
+  }
+
+  private static List<String> toStrings(Enumerable<Object[]> enumerable) {
+    final List<String> list = new ArrayList<String>();
+    final Enumerator<Object[]> enumerator = enumerable.enumerator();
+    try {
+      while (enumerator.moveNext()) {
+        list.add(Arrays.toString(enumerator.current()));
+      }
+    } finally {
+      enumerator.close();
+    }
+    return list;
+  }
+
+  /** Checks that the external sort returns the same rows, in the same order,
+   * as the sort in memory, whether it writes no runs, a few, or so many that
+   * it has to merge them in more than one pass. */
+  @Test public void testSort() {
+    final Enumerable<Object[]> rows = Linq4j.asEnumerable(rows(10000));
+    final List<String> expected =
+        toStrings(rows.orderBy(FIRST, NULLS_FIRST));
+    for (long budget : new long[] {Long.MAX_VALUE, 100000, 2000}) {
+      assertThat(
+          toStrings(ExternalSort.orderBy(rows, FIRST, NULLS_FIRST, budget)),
+          equalTo(expected));
+    }
+  }
+
+  /** Tests an enumerator that is closed before it reaches the end, while
+   * its runs are still open. */
+  @Test public void testClose() {
+    final Enumerable<Object[]> rows = Linq4j.asEnumerable(rows(1000));
+    final Enumerator<Object[]> enumerator =
+        ExternalSort.orderBy(rows, FIRST, NULLS_FIRST, 1000).enumerator();
+    assertThat(enumerator.moveNext(), equalTo(true));
+    assertThat(enumerator.current()[0], equalTo(null));
+    enumerator.close();
+  }
+
+  /** Tests that values of each type are read as they were written. */
+  @Test public void testWriteRead() throws IOException {
+    final Object[] row = {
+      null, true, false, (byte) 1, (short) 2, 'c', 3, 4L, 5.5f, 6.5d,
+      "seven \u00e9", new BigDecimal("-8.125"),
+      new ByteString(new byte[] {9, 10}),
+      new Object[] {11, null}, Arrays.asList(12, "twelve"),
+      new Date(13L),
+    };
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    ExternalSort.write(out, row);
+    ExternalSort.write(out, "end");
+    out.close();
+    final DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertThat(Arrays.deepToString((Object[]) ExternalSort.read(in)),
+        equalTo(Arrays.deepToString(row)));
+    assertThat(ExternalSort.read(in), equalTo((Object) "end"));
+  }
+}
+
+// End ExternalSortTest.java
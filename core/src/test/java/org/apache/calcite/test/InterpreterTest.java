@@ -19,11 +19,20 @@
 import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.interpreter.Interpreter;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.schema.ScannableTable;
 import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.impl.AbstractTable;
 import org.apache.calcite.sql.SqlNode;
 import org.apache.calcite.sql.parser.SqlParser;
+import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.tools.FrameworkConfig;
 import org.apache.calcite.tools.Frameworks;
 import org.apache.calcite.tools.Planner;
@@ -37,6 +46,10 @@
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
@@ -249,6 +262,112 @@ private static void assertRows(Interpreter interpreter,
     final Interpreter interpreter = new Interpreter(dataContext, convert);
     assertRows(interpreter, "[0]", "[10]", "[20]", "[30]");
   }
+
+  /** Tests that a query with LIMIT over a table that never ends returns,
+   * because rows flow through the interpreter as they are read. */
+  @Test public void testInterpretLimitInfiniteTable() throws Exception {
+    rootSchema.add("nums", new InfiniteTable());
+    SqlNode parse =
+        planner.parse("select \"i\" * 2 from \"nums\"\n"
+            + "where \"i\" > 5 limit 3");
+
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.convert(validate);
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    assertRows(interpreter, "[12]", "[14]", "[16]");
+  }
+
+  /** Tests that an interpreter with an executor reads the inputs of a
+   * UNION ALL at the same time. Each table waits until the other has started
+   * to be read, so would fail if the inputs were read one after the other. */
+  @Test public void testInterpretUnionAllParallel() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(2);
+    rootSchema.add("t1", new LatchTable(latch));
+    rootSchema.add("t2", new LatchTable(latch));
+    SqlNode parse =
+        planner.parse("select * from \"t1\"\n"
+            + "union all\n"
+            + "select * from \"t2\"\n");
+
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.convert(validate);
+
+    final ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      final Interpreter interpreter =
+          new Interpreter(dataContext, convert, executor);
+      assertRows(interpreter, "[1]", "[2]", "[1]", "[2]");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Table whose rows are 0, 1, 2, ... without end. */
+  private static class InfiniteTable extends AbstractTable
+      implements ScannableTable {
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+      return typeFactory.builder().add("i", SqlTypeName.INTEGER).build();
+    }
+
+    public Enumerable<Object[]> scan(DataContext root) {
+      return new AbstractEnumerable<Object[]>() {
+        public Enumerator<Object[]> enumerator() {
+          return new Enumerator<Object[]>() {
+            int i = -1;
+
+            public Object[] current() {
+              return new Object[] {i};
+            }
+
+            public boolean moveNext() {
+              ++i;
+              return true;
+            }
+
+            public void reset() {
+              i = -1;
+            }
+
+            public void close() {
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /** Table whose rows are 1 and 2, and which, when it is read, waits until
+   * every table that shares its latch has started to be read. */
+  private static class LatchTable extends AbstractTable
+      implements ScannableTable {
+    private final CountDownLatch latch;
+
+    LatchTable(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+      return typeFactory.builder().add("i", SqlTypeName.INTEGER).build();
+    }
+
+    public Enumerable<Object[]> scan(DataContext root) {
+      return new AbstractEnumerable<Object[]>() {
+        public Enumerator<Object[]> enumerator() {
+          latch.countDown();
+          try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+              throw new IllegalStateException("tables not read in parallel");
+            }
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          return Linq4j.enumerator(
+              Arrays.asList(new Object[] {1}, new Object[] {2}));
+        }
+      };
+    }
+  }
 }
 
 // End InterpreterTest.java
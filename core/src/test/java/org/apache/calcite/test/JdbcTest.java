@@ -16,7 +16,9 @@
  */
 package org.apache.calcite.test;
 
+import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.clone.CloneSchema;
+import org.apache.calcite.adapter.enumerable.EnumerableInterpretable;
 import org.apache.calcite.adapter.generate.RangeTable;
 import org.apache.calcite.adapter.java.AbstractQueryableTable;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
@@ -36,6 +38,8 @@
 import org.apache.calcite.jdbc.CalcitePrepare;
 import org.apache.calcite.jdbc.CalciteSchema;
 import org.apache.calcite.jdbc.Driver;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.Ord;
@@ -47,6 +51,7 @@
 import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.prepare.CalcitePrepareImpl;
 import org.apache.calcite.prepare.Prepare;
+import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.TableModify;
 import org.apache.calcite.rel.logical.LogicalTableModify;
@@ -61,6 +66,7 @@
 import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaFactory;
 import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.TableFactory;
 import org.apache.calcite.schema.TableFunction;
@@ -88,6 +94,7 @@
 import org.apache.calcite.sql.parser.impl.SqlParserImpl;
 import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.util.Bug;
+import org.apache.calcite.util.Holder;
 import org.apache.calcite.util.JsonBuilder;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Smalls;
@@ -95,6 +102,7 @@
 
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
@@ -111,6 +119,7 @@
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.Array;
@@ -2549,6 +2558,295 @@ private void checkNullableTimestamp(CalciteAssert.Config config) {
             + "EXPR$0=2\n");
   }
 
+  /** Tests that a statement that generates the same code as an earlier
+   * statement uses the class compiled for it. */
+  @Test public void testBindableCache() {
+    final String sql = "select \"x\" * 2 as \"y\"\n"
+        + "from (values (3), (4)) as \"t\" (\"x\")";
+    CalciteAssert.that()
+        .query(sql)
+        .returns("y=6\n"
+            + "y=8\n");
+    final CacheStats before = EnumerableInterpretable.getBindableCacheStats();
+    CalciteAssert.that()
+        .query(sql)
+        .returns("y=6\n"
+            + "y=8\n");
+    final CacheStats after = EnumerableInterpretable.getBindableCacheStats();
+    assertThat(after.hitCount() > before.hitCount(), is(true));
+  }
+
+  /** Tests that a statement whose generated code declares constants as
+   * static final fields uses the class compiled for an earlier statement
+   * that generated the same code. */
+  @Test public void testBindableCacheWithConstant() {
+    final String sql = "select \"x\" * 1.5 as \"y\"\n"
+        + "from (values (3), (4)) as \"t\" (\"x\")";
+    CalciteAssert.that()
+        .query(sql)
+        .planContains("static final java.math.BigDecimal")
+        .returns("y=4.5\n"
+            + "y=6.0\n");
+    final CacheStats before = EnumerableInterpretable.getBindableCacheStats();
+    CalciteAssert.that()
+        .query(sql)
+        .returns("y=4.5\n"
+            + "y=6.0\n");
+    final CacheStats after = EnumerableInterpretable.getBindableCacheStats();
+    assertThat(after.hitCount() > before.hitCount(), is(true));
+  }
+
+  /** Tests that a connection whose plan cache is enabled reuses the result
+   * of preparing a statement, and prepares the statement again after the
+   * schema changes. */
+  @Test public void testPlanCache() throws Exception {
+    final Properties info = new Properties();
+    info.setProperty("planCache", "true");
+    final Connection connection =
+        DriverManager.getConnection("jdbc:calcite:", info);
+    final CalciteConnection calciteConnection =
+        connection.unwrap(CalciteConnection.class);
+    final String sql = "select \"x\" * 3 as \"y\"\n"
+        + "from (values (1), (2)) as \"t\" (\"x\")";
+    final Statement statement = connection.createStatement();
+    final CacheStats stats0 = CalcitePrepareImpl.getPlanCacheStats();
+    assertThat(CalciteAssert.toString(statement.executeQuery(sql)),
+        is("y=3\ny=6\n"));
+    assertThat(CalciteAssert.toString(statement.executeQuery(sql)),
+        is("y=3\ny=6\n"));
+    final CacheStats stats1 = CalcitePrepareImpl.getPlanCacheStats();
+    assertThat(stats1.hitCount() - stats0.hitCount(), is(1L));
+    assertThat(stats1.missCount() - stats0.missCount(), is(1L));
+
+    calciteConnection.getRootSchema().add("s", new AbstractSchema());
+    assertThat(CalciteAssert.toString(statement.executeQuery(sql)),
+        is("y=3\ny=6\n"));
+    final CacheStats stats2 = CalcitePrepareImpl.getPlanCacheStats();
+    assertThat(stats2.hitCount() - stats1.hitCount(), is(0L));
+    assertThat(stats2.missCount() - stats1.missCount(), is(1L));
+    connection.close();
+  }
+
+  /** Tests that a statement in the plan cache is not shared with another
+   * connection, and does not keep its connection's schema alive after the
+   * connection is closed. */
+  @Test public void testPlanCacheIsPerConnection() throws Exception {
+    final Properties info = new Properties();
+    info.setProperty("planCache", "true");
+    final String sql = "select \"x\" * 3 as \"y\"\n"
+        + "from (values (1), (2)) as \"t\" (\"x\")";
+    Connection connection = DriverManager.getConnection("jdbc:calcite:", info);
+    final WeakReference<CalciteSchema> rootSchema =
+        new WeakReference<CalciteSchema>(
+            connection.unwrap(CalciteConnection.class).getRootSchema()
+                .unwrap(CalciteSchema.class));
+    final CacheStats stats0 = CalcitePrepareImpl.getPlanCacheStats();
+    assertThat(CalciteAssert.toString(
+            connection.createStatement().executeQuery(sql)),
+        is("y=3\ny=6\n"));
+    connection.close();
+    connection = null;
+
+    final Connection connection2 =
+        DriverManager.getConnection("jdbc:calcite:", info);
+    assertThat(CalciteAssert.toString(
+            connection2.createStatement().executeQuery(sql)),
+        is("y=3\ny=6\n"));
+    connection2.close();
+    final CacheStats stats1 = CalcitePrepareImpl.getPlanCacheStats();
+    assertThat(stats1.hitCount() - stats0.hitCount(), is(0L));
+    assertThat(stats1.missCount() - stats0.missCount(), is(2L));
+
+    for (int i = 0; i < 50 && rootSchema.get() != null; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertThat(rootSchema.get() == null, is(true));
+  }
+
+  /** Tests that a statement prepared while a hook changes how statements
+   * are planned or implemented is not reused without the hook, and the
+   * other way round. */
+  @Test public void testPlanCacheWithHooks() throws Exception {
+    final Properties info = new Properties();
+    info.setProperty("planCache", "true");
+    final Connection connection =
+        DriverManager.getConnection("jdbc:calcite:", info);
+    final String sql = "select \"x\" * 3 as \"y\"\n"
+        + "from (values (1), (2)) as \"t\" (\"x\")\n"
+        + "order by \"y\" desc";
+    final Statement statement = connection.createStatement();
+    final CacheStats stats0 = CalcitePrepareImpl.getPlanCacheStats();
+    assertThat(CalciteAssert.toString(statement.executeQuery(sql)),
+        is("y=6\ny=3\n"));
+    final Hook.Closeable budgetHook = Hook.SORT_MEMORY_BUDGET.addThread(
+        new Function<Holder<Long>, Void>() {
+          public Void apply(Holder<Long> budget) {
+            budget.set(1L);
+            return null;
+          }
+        });
+    try {
+      assertThat(CalciteAssert.toString(statement.executeQuery(sql)),
+          is("y=6\ny=3\n"));
+    } finally {
+      budgetHook.close();
+    }
+    final Hook.Closeable vectorHook = Hook.ENABLE_VECTOR.addThread(
+        new Function<Holder<Boolean>, Void>() {
+          public Void apply(Holder<Boolean> enable) {
+            enable.set(true);
+            return null;
+          }
+        });
+    try {
+      assertThat(CalciteAssert.toString(statement.executeQuery(sql)),
+          is("y=6\ny=3\n"));
+    } finally {
+      vectorHook.close();
+    }
+    final CacheStats stats1 = CalcitePrepareImpl.getPlanCacheStats();
+    assertThat(stats1.hitCount() - stats0.hitCount(), is(0L));
+    assertThat(stats1.missCount() - stats0.missCount(), is(3L));
+
+    assertThat(CalciteAssert.toString(statement.executeQuery(sql)),
+        is("y=6\ny=3\n"));
+    final CacheStats stats2 = CalcitePrepareImpl.getPlanCacheStats();
+    assertThat(stats2.hitCount() - stats1.hitCount(), is(1L));
+    assertThat(stats2.missCount() - stats1.missCount(), is(0L));
+    connection.close();
+  }
+
+  /** Returns the rows of a query, formatted as by
+   * {@link CalciteAssert#toString(ResultSet)}. */
+  private static String rows(CalciteAssert.AssertQuery query) {
+    final StringBuilder buf = new StringBuilder();
+    query.returns(
+        new Function<ResultSet, Void>() {
+          public Void apply(ResultSet resultSet) {
+            try {
+              buf.append(CalciteAssert.toString(resultSet));
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+            return null;
+          }
+        });
+    return buf.toString();
+  }
+
+  /** Tests that a sort whose rows exceed its memory budget, and which
+   * therefore writes them to temporary files, returns the same rows as a
+   * sort in memory. The rows are instances of synthetic classes, some keys
+   * are null, and there are so many runs that they are merged in more than
+   * one pass. */
+  @Test public void testSortSpill() {
+    final String sql = "select e1.\"empid\", e2.\"name\", e3.\"commission\"\n"
+        + "from \"hr\".\"emps\" as e1, \"hr\".\"emps\" as e2,\n"
+        + "  \"hr\".\"emps\" as e3, \"hr\".\"emps\" as e4\n"
+        + "order by e3.\"commission\" desc, e2.\"name\", e1.\"empid\"";
+    final String expected = rows(CalciteAssert.hr().query(sql));
+    assertThat(expected.split("\n").length, is(256));
+    CalciteAssert.hr()
+        .query(sql)
+        .withHook(Hook.SORT_MEMORY_BUDGET,
+            new Function<Holder<Long>, Void>() {
+              public Void apply(Holder<Long> budget) {
+                budget.set(1L);
+                return null;
+              }
+            })
+        .planContains("ExternalSort.orderBy")
+        .returns(expected);
+  }
+
+  /** Tests that filters and projects evaluated over column batches, in
+   * vector convention, return the same rows as when they are evaluated one
+   * row at a time. The table has nulls and more rows than fit in a batch. */
+  @Test public void testVector() {
+    final CalciteAssert.AssertThat with =
+        CalciteAssert.that()
+            .withSchema("s",
+                new AbstractSchema() {
+                  @Override protected Map<String, Table> getTableMap() {
+                    return ImmutableMap.<String, Table>of("numbers",
+                        new NumbersTable(2500));
+                  }
+                });
+    final String sql = "select \"i\" - \"d\" as \"b\", \"s\"\n"
+        + "from \"s\".\"numbers\"\n"
+        + "where (\"i\" > 2 and \"d\" < cast(1000.5 as double))\n"
+        + "or \"i\" is null";
+    final String expected = rows(with.query(sql));
+    assertThat(expected.split("\n").length, is(2098));
+    with.query(sql)
+        .withHook(Hook.ENABLE_VECTOR,
+            new Function<Holder<Boolean>, Void>() {
+              public Void apply(Holder<Boolean> enable) {
+                enable.set(true);
+                return null;
+              }
+            })
+        .explainContains("VectorCalc")
+        .returns(expected);
+  }
+
+  /** Tests that a scan of a table that has been cloned into arrays, and
+   * aggregates over it, evaluated in vector convention return the same rows
+   * as when they are evaluated one row at a time. Covers a grouping key
+   * that is an integer with nulls, a key that is a string, and no key. */
+  @Test public void testVectorAggregate() {
+    final NumbersTable numbers = new NumbersTable(2500);
+    final Table table =
+        CloneSchema.createCloneTable(new JavaTypeFactoryImpl(),
+            Schemas.proto(numbers), ImmutableList.<RelCollation>of(), null,
+            numbers.scan(null));
+    final CalciteAssert.AssertThat with =
+        CalciteAssert.that()
+            .withSchema("s",
+                new AbstractSchema() {
+                  @Override protected Map<String, Table> getTableMap() {
+                    return ImmutableMap.of("numbers", table);
+                  }
+                });
+    final Function<Holder<Boolean>, Void> enableVector =
+        new Function<Holder<Boolean>, Void>() {
+          public Void apply(Holder<Boolean> enable) {
+            enable.set(true);
+            return null;
+          }
+        };
+    final String[] sqls = {
+      "select \"i\", count(*) as c, sum(\"d\") as s, min(\"d\") as m\n"
+          + "from \"s\".\"numbers\"\n"
+          + "where \"d\" < 1000\n"
+          + "group by \"i\"\n"
+          + "order by \"i\"",
+      "select \"s\", count(\"i\") as c, max(\"i\") as m\n"
+          + "from \"s\".\"numbers\"\n"
+          + "group by \"s\"\n"
+          + "order by \"s\"",
+      "select count(*) as c, count(\"i\") as ci, sum(\"i\") as s,\n"
+          + "  min(\"i\") as mi, max(\"d\") as md\n"
+          + "from \"s\".\"numbers\"",
+      "select count(*) as c, sum(\"i\") as s, max(\"d\") as md\n"
+          + "from \"s\".\"numbers\"\n"
+          + "where \"i\" < 0",
+    };
+    for (String sql : sqls) {
+      final String expected = rows(with.query(sql));
+      with.query(sql)
+          .withHook(Hook.ENABLE_VECTOR, enableVector)
+          .explainContains("VectorAggregate")
+          .explainContains("VectorTableScan")
+          .returns(expected);
+    }
+    with.query("select count(*) as c, sum(\"i\") as s, max(\"d\") as md\n"
+        + "from \"s\".\"numbers\"\n"
+        + "where \"i\" < 0")
+        .returns("C=0; S=null; MD=null\n");
+  }
+
   @Test public void testValuesAlias() {
     CalciteAssert.that()
         .query(
@@ -6538,6 +6836,33 @@ public static class MySchema {
     public MyTable2[] mytable2 = { new MyTable2() };
   }
 
+  /** Table of numbers that can be scanned, whose rows have an integer that is
+   * null in every fifth row, a double, and a string. */
+  public static class NumbersTable extends AbstractTable
+      implements ScannableTable {
+    private final int count;
+
+    public NumbersTable(int count) {
+      this.count = count;
+    }
+
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+      return typeFactory.builder()
+          .add("i", SqlTypeName.INTEGER).nullable(true)
+          .add("d", SqlTypeName.DOUBLE)
+          .add("s", SqlTypeName.VARCHAR)
+          .build();
+    }
+
+    public Enumerable<Object[]> scan(DataContext root) {
+      final List<Object[]> rows = new ArrayList<Object[]>();
+      for (int k = 0; k < count; k++) {
+        rows.add(new Object[] {k % 5 == 0 ? null : k, k / 2d, "s" + k});
+      }
+      return Linq4j.asEnumerable(rows);
+    }
+  }
+
 }
 
 // End JdbcTest.java
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.prepare.CalcitePrepareImpl;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.sql.SqlAggFunction;
+import org.apache.calcite.sql.SqlFunctionCategory;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.OperandTypes;
+import org.apache.calcite.sql.type.ReturnTypes;
+import org.apache.calcite.sql.type.SqlTypeUtil;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.Pair;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of {@link org.apache.calcite.rel.core.Aggregate} that
+ * evaluates GROUP BY in Elasticsearch, as nested {@code terms} aggregations
+ * with {@code stats}, {@code value_count}, {@code cardinality} and
+ * {@code percentiles} aggregations inside.
+ *
+ * <p>The aggregate produces rows in
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention}, like
+ * {@link ElasticsearchToEnumerableConverter}; a search request cannot apply
+ * filters or projections to the result of an aggregation, so nothing else
+ * may be pushed down on top of it.</p>
+ */
+public class ElasticsearchAggregate extends Aggregate implements EnumerableRel {
+    public ElasticsearchAggregate(
+            RelOptCluster cluster,
+            RelTraitSet traitSet,
+            RelNode child,
+            boolean indicator,
+            ImmutableBitSet groupSet,
+            List<ImmutableBitSet> groupSets,
+            List<AggregateCall> aggCalls)
+            throws InvalidRelException {
+        super(cluster, traitSet, child, indicator, groupSet, groupSets, aggCalls);
+        // The input may be in another convention; see ElasticsearchRel.
+
+        for (AggregateCall aggCall : aggCalls) {
+            if (aggCall.isDistinct()) {
+                throw new InvalidRelException(
+                        "distinct aggregation not supported");
+            }
+            final String function = function(aggCall);
+            if (aggCall.getArgList().size() > 1 || function == null) {
+                throw new InvalidRelException(
+                        "aggregate function not supported: " + aggCall);
+            }
+            // The stats and percentiles aggregations only handle numbers.
+            if (!function.equals("COUNT") && !function.equals("VALUE_COUNT")
+                    && !function.startsWith("CARDINALITY")
+                    && !SqlTypeUtil.isNumeric(
+                            child.getRowType().getFieldList()
+                                    .get(aggCall.getArgList().get(0)).getType())) {
+                throw new InvalidRelException(
+                        "non-numeric argument not supported: " + aggCall);
+            }
+        }
+        switch (getGroupType()) {
+        case SIMPLE:
+            break;
+        default:
+            throw new InvalidRelException("unsupported group type: "
+                    + getGroupType());
+        }
+        final List<String> names = child.getRowType().getFieldNames();
+        final List<Integer> fields = new ArrayList<Integer>(groupSet.asList());
+        for (AggregateCall aggCall : aggCalls) {
+            fields.addAll(aggCall.getArgList());
+        }
+        for (int field : fields) {
+            if (ElasticsearchEnumerator.ID_FIELD.equals(names.get(field))) {
+                throw new InvalidRelException(
+                        "cannot aggregate on document id");
+            }
+        }
+    }
+
+    @Override
+    public Aggregate copy(RelTraitSet traitSet, RelNode input,
+            boolean indicator, ImmutableBitSet groupSet,
+            List<ImmutableBitSet> groupSets, List<AggregateCall> aggCalls) {
+        try {
+            return new ElasticsearchAggregate(getCluster(), traitSet, input,
+                    indicator, groupSet, groupSets, aggCalls);
+        } catch (InvalidRelException e) {
+            // Semantic error not possible. Must be a bug. Convert to
+            // internal error.
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner) {
+        // Replaces an aggregate, a converter and the transfer of every
+        // matching document.
+        return super.computeSelfCost(planner).multiplyBy(.01);
+    }
+
+    /** Returns the name of the Elasticsearch metric that computes an
+     * aggregate call, or null if there is none. The name of an approximate
+     * metric is followed by its parameters, for example
+     * {@code CARDINALITY:3000} or {@code PERCENTILE:0.95:100.0}. */
+    static String function(AggregateCall aggCall) {
+        final SqlAggFunction aggregation = aggCall.getAggregation();
+        if (aggregation instanceof Metric) {
+            return aggregation.getName();
+        } else if (aggregation == SqlStdOperatorTable.COUNT) {
+            return aggCall.getArgList().isEmpty() ? "COUNT" : "VALUE_COUNT";
+        } else if (aggregation == SqlStdOperatorTable.SUM) {
+            return "SUM";
+        } else if (aggregation == SqlStdOperatorTable.SUM0) {
+            return "SUM0";
+        } else if (aggregation == SqlStdOperatorTable.MIN) {
+            return "MIN";
+        } else if (aggregation == SqlStdOperatorTable.MAX) {
+            return "MAX";
+        } else if (aggregation == SqlStdOperatorTable.AVG) {
+            return "AVG";
+        } else {
+            return null;
+        }
+    }
+
+    /** Creates a call to an approximate metric, with the parameters that
+     * were literal arguments of the original call, or null if they are not
+     * valid.
+     *
+     * @param aggCall Call to {@code APPROX_COUNT_DISTINCT} or
+     *                {@code APPROX_PERCENTILE}
+     * @param parameters Values of the arguments after the first
+     */
+    static AggregateCall metricCall(AggregateCall aggCall,
+            List<Number> parameters) {
+        final String metric =
+                ElasticsearchFunctions.metric(aggCall.getAggregation());
+        final StringBuilder buf = new StringBuilder(metric);
+        if (metric.equals("CARDINALITY")) {
+            final long threshold = parameters.isEmpty()
+                    ? ElasticsearchFunctions.DEFAULT_PRECISION_THRESHOLD
+                    : parameters.get(0).longValue();
+            if (threshold < 0) {
+                return null;
+            }
+            buf.append(':').append(threshold);
+        } else {
+            final double fraction = parameters.get(0).doubleValue();
+            final double compression = parameters.size() < 2
+                    ? ElasticsearchFunctions.DEFAULT_COMPRESSION
+                    : parameters.get(1).doubleValue();
+            if (fraction < 0 || fraction > 1 || compression <= 0) {
+                return null;
+            }
+            buf.append(':').append(fraction).append(':').append(compression);
+        }
+        return AggregateCall.create(new Metric(buf.toString(), aggCall.type),
+                false, aggCall.getArgList().subList(0, 1), -1, aggCall.type,
+                aggCall.name);
+    }
+
+    @Override public RelWriter explainTerms(RelWriter pw) {
+        final ElasticsearchRel.Implementor esImplementor =
+                ElasticsearchRel.Implementor.of(getInput());
+        return super.explainTerms(pw)
+                .itemIf("request",
+                        esImplementor == null
+                                ? null
+                                : esImplementor.elasticsearchTable.describe(
+                                        esImplementor.indices(),
+                                        esImplementor.query(),
+                                        ElasticsearchTable.aggregationBuilders(
+                                                groupFields(esImplementor),
+                                                aggregations(esImplementor))),
+                        esImplementor != null);
+    }
+
+    /** Returns the names of the fields to group by. */
+    private List<String> groupFields(
+            ElasticsearchRel.Implementor esImplementor) {
+        final List<String> groupFields = new ArrayList<String>();
+        for (int group : groupSet) {
+            groupFields.add(esImplementor.fieldNames.get(group));
+        }
+        return groupFields;
+    }
+
+    /** Returns the function and argument of each aggregate call. */
+    private List<Map.Entry<String, String>> aggregations(
+            ElasticsearchRel.Implementor esImplementor) {
+        final List<String> inNames = esImplementor.fieldNames;
+        final List<Map.Entry<String, String>> aggregations =
+                new ArrayList<Map.Entry<String, String>>();
+        for (AggregateCall aggCall : aggCalls) {
+            aggregations.add(
+                    Pair.of(function(aggCall),
+                            aggCall.getArgList().isEmpty()
+                                    ? null
+                                    : inNames.get(aggCall.getArgList().get(0))));
+        }
+        return aggregations;
+    }
+
+    public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+        // Generates a call to "aggregate":
+        //
+        //   ((ElasticsearchTable.ElasticsearchQueryable) schema.getTable("logs"))
+        //       .aggregate(query, ["status"], [("COUNT", null)], fields)
+        final BlockBuilder list = new BlockBuilder();
+        final ElasticsearchRel.Implementor esImplementor =
+                new ElasticsearchRel.Implementor();
+        esImplementor.visitChild(0, getInput());
+        final List<String> groupFields = groupFields(esImplementor);
+        final List<Map.Entry<String, String>> aggregations =
+                aggregations(esImplementor);
+        final RelDataType rowType = getRowType();
+        final PhysType physType =
+                PhysTypeImpl.of(
+                        implementor.getTypeFactory(), rowType,
+                        pref.prefer(JavaRowFormat.ARRAY));
+        final Expression fields =
+                list.append("fields",
+                        ElasticsearchToEnumerableConverter.constantArrayList(
+                                Pair.zip(rowType.getFieldNames(),
+                                        new AbstractList<Class<?>>() {
+                                            @Override
+                                            public Class<?> get(int index) {
+                                                return physType.fieldClass(index);
+                                            }
+
+                                            @Override
+                                            public int size() {
+                                                return rowType.getFieldCount();
+                                            }
+                                        }),
+                                Pair.class));
+        final Expression table =
+                list.append("table",
+                        esImplementor.table.getExpression(
+                                ElasticsearchTable.ElasticsearchQueryable.class));
+        final String query = esImplementor.query();
+        Expression enumerable =
+                list.append("enumerable",
+                        Expressions.call(table,
+                                ElasticsearchMethod.ELASTICSEARCH_QUERYABLE_AGGREGATE.method,
+                                Expressions.constant(esImplementor.indices(),
+                                        String.class),
+                                Expressions.constant(query, String.class),
+                                ElasticsearchToEnumerableConverter.constantArrayList(
+                                        groupFields, String.class),
+                                ElasticsearchToEnumerableConverter.constantArrayList(
+                                        aggregations, Pair.class),
+                                fields));
+        if (CalcitePrepareImpl.DEBUG) {
+            System.out.println("Elasticsearch: " + query + " group by "
+                    + groupFields + " " + aggregations);
+        }
+        Hook.QUERY_PLAN.run(query);
+        list.add(
+                Expressions.return_(null, enumerable));
+        return implementor.result(physType, list.toBlock());
+    }
+
+    /** Aggregate function that an Elasticsearch metric with fixed parameters
+     * computes. Its name, which is the name of the metric followed by the
+     * parameters, distinguishes it from calls with other parameters. */
+    static class Metric extends SqlAggFunction {
+        Metric(String name, RelDataType type) {
+            super(name, null, SqlKind.OTHER_FUNCTION,
+                    ReturnTypes.explicit(type), null, OperandTypes.ANY,
+                    SqlFunctionCategory.USER_DEFINED_FUNCTION, false, false);
+        }
+    }
+}
+
+// End ElasticsearchAggregate.java
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.avatica.util.ByteString;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.rest.RestStatus;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-only collection that indexes the rows added to it as documents of
+ * an Elasticsearch type, using the bulk API.
+ *
+ * <p>Rows are sent in bulk requests of {@code bulkSize} documents, with at
+ * most {@code concurrency} requests in flight. Documents that the cluster
+ * rejects because it is overloaded are sent again, after an exponentially
+ * growing delay, up to {@code maxRetries} times. Any other failure fails
+ * the statement.</p>
+ *
+ * <p>The {@code _id} column is the id of the document; if it is null, the
+ * cluster generates an id. A row whose id already exists replaces the
+ * document, so INSERT behaves as an upsert. Null values are left out of the
+ * document.</p>
+ *
+ * <p>If the type is partitioned by time, each document goes to the index of
+ * its timestamp; see {@link ElasticsearchPartitioning}.</p>
+ *
+ * <p>{@link #size()} sends any remaining rows, waits for every request to
+ * complete, and returns the number of documents written. This is how
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableTableModify} counts
+ * the rows that a statement inserted.</p>
+ */
+class ElasticsearchBulkWriter extends AbstractCollection<Object> {
+    /** Delay before the first retry of a rejected document, in
+     * milliseconds; it doubles on each further retry. */
+    private static final long RETRY_DELAY = 50;
+
+    private final Client client;
+    private final String index;
+    private final String type;
+    private final List<String> columnNames;
+    private final ElasticsearchPartitioning partitioning;
+    private final int bulkSize;
+    private final int concurrency;
+    private final int maxRetries;
+    /** Result cache of the schema, or null. */
+    private final ElasticsearchResultCache cache;
+    private final Semaphore inFlight;
+
+    /** Documents not yet sent. Only used by the thread that adds rows. */
+    private final List<Attempt> pending = new ArrayList<Attempt>();
+    /** Documents that the cluster rejected, to be sent again. */
+    private final Queue<Attempt> rejected = new ConcurrentLinkedQueue<Attempt>();
+    private final AtomicLong written = new AtomicLong();
+    private volatile String failure;
+    /** Whether documents have been written since the last refresh. */
+    private boolean dirty;
+
+    /**
+     * Creates an ElasticsearchBulkWriter.
+     *
+     * @param client Elasticsearch client
+     * @param index Name of the index to write to, and to refresh
+     * @param type Document type
+     * @param columnNames Names of the columns of each row, in order; the
+     *                    {@code _id} column is the document id
+     * @param partitioning How documents are partitioned into indices by
+     *                     time, or null to write every document to
+     *                     {@code index}
+     * @param bulkSize Maximum number of documents per bulk request
+     * @param concurrency Maximum number of bulk requests in flight
+     * @param maxRetries Maximum number of times a rejected document is
+     *                   sent again
+     * @param cache Result cache of the schema, which must see the refresh,
+     *              or null
+     */
+    ElasticsearchBulkWriter(Client client, String index, String type,
+            List<String> columnNames, ElasticsearchPartitioning partitioning,
+            int bulkSize, int concurrency, int maxRetries,
+            ElasticsearchResultCache cache) {
+        this.client = client;
+        this.index = index;
+        this.type = type;
+        this.columnNames = columnNames;
+        this.partitioning = partitioning;
+        this.bulkSize = bulkSize;
+        this.concurrency = concurrency;
+        this.maxRetries = maxRetries;
+        this.cache = cache;
+        this.inFlight = new Semaphore(concurrency);
+    }
+
+    @Override public boolean add(Object row) {
+        checkFailure();
+        pending.add(new Attempt(request(row), 0));
+        if (pending.size() >= bulkSize) {
+            send();
+        }
+        return true;
+    }
+
+    @Override public int size() {
+        flush();
+        return (int) written.get();
+    }
+
+    @Override public Iterator<Object> iterator() {
+        throw new UnsupportedOperationException("write-only collection");
+    }
+
+    /** Converts a row into a request to index a document. */
+    private IndexRequest request(Object row) {
+        final Map<String, Object> source = new LinkedHashMap<String, Object>();
+        String id = null;
+        String index = this.index;
+        for (int i = 0; i < columnNames.size(); i++) {
+            final String name = columnNames.get(i);
+            final Object value = value(row, i);
+            if (ElasticsearchEnumerator.ID_FIELD.equals(name)) {
+                id = value == null ? null : value.toString();
+                continue;
+            }
+            if (partitioning != null && partitioning.field.equals(name)) {
+                if (!(value instanceof Number)) {
+                    throw new IllegalArgumentException("cannot insert a row"
+                            + " without a timestamp in " + name + " into "
+                            + type + ", which is partitioned by time");
+                }
+                index = partitioning.index(((Number) value).longValue());
+            }
+            if (value instanceof ByteString) {
+                source.put(name, ((ByteString) value).toBase64String());
+            } else if (value != null) {
+                source.put(name, value);
+            }
+        }
+        return client.prepareIndex(index, type, id).setSource(source)
+                .request();
+    }
+
+    /** Returns the value of a column of a row. Rows of several columns are
+     * arrays, or records whose public fields are named after the
+     * columns. */
+    private Object value(Object row, int i) {
+        if (row instanceof Object[]) {
+            return ((Object[]) row)[i];
+        }
+        if (columnNames.size() == 1) {
+            return row;
+        }
+        try {
+            return row.getClass().getField(columnNames.get(i)).get(row);
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Sends the pending documents, and any rejected documents, in one bulk
+     * request. Waits first if too many requests are in flight, or if a
+     * document is being retried. */
+    private void send() {
+        final List<Attempt> batch = new ArrayList<Attempt>(pending);
+        pending.clear();
+        int retry = 0;
+        for (Attempt attempt; (attempt = rejected.poll()) != null;) {
+            batch.add(attempt);
+            retry = Math.max(retry, attempt.retry);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (retry > 0) {
+            try {
+                Thread.sleep(RETRY_DELAY << (retry - 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        inFlight.acquireUninterruptibly();
+        dirty = true;
+        final BulkRequestBuilder bulk = client.prepareBulk();
+        for (Attempt attempt : batch) {
+            bulk.add(attempt.request);
+        }
+        bulk.execute(new ActionListener<BulkResponse>() {
+            public void onResponse(BulkResponse response) {
+                try {
+                    for (BulkItemResponse item : response.getItems()) {
+                        if (!item.isFailed()) {
+                            written.incrementAndGet();
+                        } else if (item.getFailure().getStatus()
+                                != RestStatus.TOO_MANY_REQUESTS
+                                || !retry(batch.get(item.getItemId()))) {
+                            failure = item.getFailureMessage();
+                        }
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            }
+
+            public void onFailure(Throwable e) {
+                try {
+                    if (ExceptionsHelper.status(e)
+                            == RestStatus.TOO_MANY_REQUESTS) {
+                        for (Attempt attempt : batch) {
+                            if (!retry(attempt)) {
+                                failure = e.toString();
+                                return;
+                            }
+                        }
+                    } else {
+                        failure = e.toString();
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            }
+        });
+    }
+
+    /** Queues a rejected document to be sent again, unless it has been
+     * retried too often; returns whether it was queued. */
+    private boolean retry(Attempt attempt) {
+        if (attempt.retry >= maxRetries) {
+            return false;
+        }
+        rejected.add(new Attempt(attempt.request, attempt.retry + 1));
+        return true;
+    }
+
+    /** Sends all documents and waits until the cluster has acknowledged
+     * them, then refreshes the index so that they are visible to the next
+     * query. */
+    private void flush() {
+        for (;;) {
+            send();
+            // Wait for every request in flight.
+            inFlight.acquireUninterruptibly(concurrency);
+            inFlight.release(concurrency);
+            checkFailure();
+            if (rejected.isEmpty()) {
+                break;
+            }
+        }
+        if (dirty) {
+            client.admin().indices().prepareRefresh(index).execute()
+                    .actionGet();
+            if (cache != null) {
+                cache.invalidateGenerations();
+            }
+            dirty = false;
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new RuntimeException("Error while writing to Elasticsearch "
+                    + "type " + type + ": " + failure);
+        }
+    }
+
+    /** A document to send, and how many times it has been rejected. */
+    private static class Attempt {
+        final IndexRequest request;
+        final int retry;
+
+        Attempt(IndexRequest request, int retry) {
+            this.request = request;
+            this.retry = retry;
+        }
+    }
+}
+
+// End ElasticsearchBulkWriter.java
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.impl.AbstractTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Table of one row that holds the counters of the result cache of a schema,
+ * so that a query can see whether the cache is used:
+ *
+ * <blockquote><pre>SELECT "hits", "misses" FROM "_cache_stats"</pre></blockquote>
+ *
+ * <p>"hits" and "misses" count the lookups of results; "evictions" the
+ * results dropped to make room or because they expired; "rows" the rows
+ * held; and "stats_requests" the requests for the number of refreshes of
+ * indices, which the cache makes to tell whether a result is current.</p>
+ *
+ * <p>The schema has this table only if it caches results. Its name starts
+ * with an underscore, which the name of a document type cannot.</p>
+ */
+class ElasticsearchCacheStatsTable extends AbstractTable
+        implements ScannableTable {
+    /** Name of the table. */
+    static final String NAME = "_cache_stats";
+
+    private final ElasticsearchResultCache cache;
+
+    ElasticsearchCacheStatsTable(ElasticsearchResultCache cache) {
+        this.cache = cache;
+    }
+
+    public String toString() {
+        return "ElasticsearchCacheStatsTable";
+    }
+
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+        return typeFactory.builder()
+                .add("hits", SqlTypeName.BIGINT)
+                .add("misses", SqlTypeName.BIGINT)
+                .add("evictions", SqlTypeName.BIGINT)
+                .add("rows", SqlTypeName.BIGINT)
+                .add("stats_requests", SqlTypeName.BIGINT)
+                .build();
+    }
+
+    public Enumerable<Object[]> scan(DataContext root) {
+        final CacheStats stats = cache.stats();
+        final Object[] row = {
+            stats.hitCount(), stats.missCount(), stats.evictionCount(),
+            cache.rowCount(), cache.generationReads(),
+        };
+        return Linq4j.singletonEnumerable(row);
+    }
+}
+
+// End ElasticsearchCacheStatsTable.java
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.util.Pair;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the {@link TransportClient}s that Elasticsearch schemas use.
+ *
+ * <p>Schemas that connect to the same addresses with the same settings
+ * share a client, so that a new Calcite connection does not repeat the
+ * handshake with the cluster or start another set of client threads. Each
+ * client counts its users, and is closed when the last one releases
+ * it.</p>
+ */
+class ElasticsearchClientRegistry {
+    /** Default port of the Elasticsearch transport protocol. */
+    static final int DEFAULT_PORT = 9300;
+
+    /** Clients by addresses and settings. */
+    private static final Map<Pair<List<String>, Map<String, String>>, Entry>
+            ENTRIES =
+            new HashMap<Pair<List<String>, Map<String, String>>, Entry>();
+    private static final Map<Client, Entry> BY_CLIENT =
+            new IdentityHashMap<Client, Entry>();
+
+    private ElasticsearchClientRegistry() {}
+
+    /** Returns a client connected to the given addresses, creating one if no
+     * schema holds one already. The caller must call {@link #release} when
+     * it no longer needs the client.
+     *
+     * @param hosts Addresses of cluster nodes, each "host" or "host:port"
+     * @param settings Client settings, such as "cluster.name" and
+     *                 "client.transport.sniff"
+     * @throws RuntimeException if no node can be reached
+     */
+    static synchronized Client acquire(List<String> hosts,
+            Map<String, String> settings) {
+        final Pair<List<String>, Map<String, String>> key =
+                Pair.<List<String>, Map<String, String>>of(
+                        ImmutableList.copyOf(hosts),
+                        ImmutableSortedMap.copyOf(settings));
+        Entry entry = ENTRIES.get(key);
+        if (entry == null) {
+            entry = new Entry(key, connect(hosts, settings));
+            ENTRIES.put(key, entry);
+            BY_CLIENT.put(entry.client, entry);
+        }
+        ++entry.refCount;
+        return entry.client;
+    }
+
+    /** Releases a client obtained from {@link #acquire}, and closes it if no
+     * one else is using it. */
+    static synchronized void release(Client client) {
+        final Entry entry = BY_CLIENT.get(client);
+        if (entry == null) {
+            throw new IllegalArgumentException("client is not registered");
+        }
+        if (--entry.refCount == 0) {
+            ENTRIES.remove(entry.key);
+            BY_CLIENT.remove(client);
+            client.close();
+        }
+    }
+
+    private static TransportClient connect(List<String> hosts,
+            Map<String, String> settings) {
+        final TransportClient client =
+                new TransportClient(
+                        ImmutableSettings.settingsBuilder().put(settings), true);
+        try {
+            for (String host : hosts) {
+                final int colon = host.lastIndexOf(':');
+                client.addTransportAddress(colon < 0
+                        ? new InetSocketTransportAddress(host, DEFAULT_PORT)
+                        : new InetSocketTransportAddress(
+                                host.substring(0, colon),
+                                Integer.parseInt(host.substring(colon + 1))));
+            }
+            if (client.connectedNodes().isEmpty()) {
+                throw new RuntimeException(
+                        "No Elasticsearch node is available at " + hosts);
+            }
+            return client;
+        } catch (RuntimeException e) {
+            client.close();
+            throw e;
+        }
+    }
+
+    /** A client and the number of its users. */
+    private static class Entry {
+        final Pair<List<String>, Map<String, String>> key;
+        final Client client;
+        int refCount;
+
+        Entry(Pair<List<String>, Map<String, String>> key, Client client) {
+            this.key = key;
+            this.client = client;
+        }
+    }
+}
+
+// End ElasticsearchClientRegistry.java
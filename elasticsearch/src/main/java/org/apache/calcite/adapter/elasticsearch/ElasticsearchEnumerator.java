@@ -1,60 +1,166 @@
 package org.apache.calcite.adapter.elasticsearch;
 
-import au.com.bytecode.opencsv.CSVReader;
-import com.mongodb.DBCursor;
-import com.mongodb.DBObject;
-import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.avatica.util.ByteString;
 import org.apache.calcite.avatica.util.DateTimeUtils;
 import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.tree.Primitive;
-import org.apache.calcite.rel.type.RelDataType;
-import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.util.Pair;
-import org.apache.metamodel.DataContext;
-import org.apache.metamodel.data.DataSet;
-import org.apache.metamodel.data.Row;
-import org.apache.metamodel.schema.Table;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
+import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.search.SearchHit;
 
-import java.io.*;
-import java.sql.Types;
-import java.text.ParseException;
-import java.util.*;
-import java.util.zip.GZIPInputStream;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * Created by bylee on 12/8/15.
-*/
+ * Enumerator that reads the documents of an Elasticsearch type, one scroll
+ * page at a time.
+ *
+ * <p>While the rows of one page are consumed, the request for the next page
+ * is already in flight. At most two pages are held in memory, however many
+ * documents match. The scroll context is cleared when the enumerator is
+ * closed.</p>
+ *
+ * <p>If the rows wanted fit in a single page, they are read with one search
+ * and no scroll.</p>
+ */
 class ElasticsearchEnumerator implements Enumerator<Object> {
-    private final DataContext esdc;
-    private final Table table;
-    private DataSet ds;
-    private Row current;
-    private int[] fields;
-
-    public ElasticsearchEnumerator(DataContext esdc, Table table, int[] fields) {
-        this.esdc = esdc;
-        this.table = table;
-        this.ds = esdc.query().from(table).select(table.getColumns()).execute();
-        this.fields = fields;
-    }
+    /** Name of the column that holds the document id. */
+    static final String ID_FIELD = "_id";
+
+    /** Name of the field that holds the relevance of a hit. */
+    static final String SCORE_FIELD = "_score";
+
+    /** Default number of hits fetched from each shard per scroll
+     * round-trip. */
+    static final int BATCH_SIZE = 1000;
+
+    static final TimeValue SCROLL_TIMEOUT = TimeValue.timeValueMinutes(1);
+
+    private static final Logger LOGGER =
+            Logger.getLogger(ElasticsearchEnumerator.class.getName());
+
+    private static final DateTimeFormatter DATE_PARSER =
+            ISODateTimeFormat.dateOptionalTimeParser().withZoneUTC();
 
-    public Object[] current() {
-        Object[] objects = new Object[fields.length];
-        for (int i = 0; i < fields.length; i++) {
-            objects[i] = current.getValue(i);
+    private final Client client;
+    private final Function1<SearchHit, Object> getter;
+    private final ElasticsearchQueryStats stats;
+    private String scrollId;
+    /** Request for the next page, or null if there are no more pages. */
+    private ListenableActionFuture<SearchResponse> next;
+    private SearchHit[] hits;
+    private int hitIndex;
+    /** Number of hits still to skip. */
+    private int skip;
+    /** Number of rows still to return, or -1 if there is no limit. */
+    private int remaining;
+    private Object current;
+
+    /** Creates an ElasticsearchEnumerator.
+     *
+     * @param client Elasticsearch client
+     * @param request Search request, with query, fields and sort but no
+     *                paging
+     * @param sorted Whether the request sorts or scores the hits; if not,
+     *               documents are read in index order, which is cheapest
+     * @param offset Number of hits to skip
+     * @param fetch Maximum number of rows to return, or -1 for all rows
+     * @param fetchSize Number of hits to fetch per page; for an unsorted
+     *                  scroll, per shard
+     * @param getter Converts a hit into a row
+     * @param stats Statistics to which each response is added
+     */
+    public ElasticsearchEnumerator(Client client, SearchRequestBuilder request,
+            boolean sorted, int offset, int fetch, int fetchSize,
+            Function1<SearchHit, Object> getter,
+            ElasticsearchQueryStats stats) {
+        this.client = client;
+        this.getter = getter;
+        this.stats = stats;
+        if (fetch >= 0 && offset + fetch <= fetchSize) {
+            request.setFrom(offset).setSize(fetch);
+            this.skip = 0;
+        } else {
+            request.setScroll(SCROLL_TIMEOUT).setSize(fetchSize);
+            if (!sorted) {
+                // A scan search returns no hits, only the id of the scroll.
+                request.setSearchType(SearchType.SCAN);
+            }
+            this.skip = offset;
         }
-        return objects;
+        this.remaining = fetch;
+        final SearchResponse response = request.execute().actionGet();
+        stats.search(response);
+        this.scrollId = response.getScrollId();
+        this.hits = response.getHits().getHits();
+        this.next = scrollId == null ? null : scroll();
+    }
+
+    /** Starts fetching the page after the current one. */
+    private ListenableActionFuture<SearchResponse> scroll() {
+        return client.prepareSearchScroll(scrollId)
+                .setScroll(SCROLL_TIMEOUT)
+                .execute();
+    }
+
+    public Object current() {
+        return current;
     }
 
     public boolean moveNext() {
         try {
-            if (ds.next()) {
-                current = ds.getRow();
+            for (;;) {
+                if (remaining == 0) {
+                    current = null;
+                    return false;
+                }
+                if (hitIndex == hits.length) {
+                    if (next == null) {
+                        current = null;
+                        return false;
+                    }
+                    final SearchResponse response = next.actionGet();
+                    stats.page(response);
+                    scrollId = response.getScrollId();
+                    hits = response.getHits().getHits();
+                    hitIndex = 0;
+                    if (hits.length == 0) {
+                        next = null;
+                        current = null;
+                        return false;
+                    }
+                    next = scroll();
+                }
+                final SearchHit hit = hits[hitIndex++];
+                if (skip > 0) {
+                    --skip;
+                    continue;
+                }
+                if (remaining > 0) {
+                    --remaining;
+                }
+                current = getter.apply(hit);
                 return true;
-            } else {
-                ds = null;
-                return false;
             }
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -66,9 +172,21 @@ public void reset() {
     }
 
     public void close() {
-        if (ds instanceof DataSet) {
-            ds.close();
+        if (scrollId != null) {
+            // Wait for the reply, so that the request is not lost if the
+            // client is closed next. If it fails, the server releases the
+            // context when the scroll times out.
+            try {
+                client.prepareClearScroll().addScrollId(scrollId).execute()
+                        .actionGet();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Cannot clear scroll", e);
+            }
+            scrollId = null;
         }
+        next = null;
+        hits = new SearchHit[0];
+        hitIndex = 0;
     }
 
     static int[] identityList(int n) {
@@ -78,4 +196,201 @@ static int[] identityList(int n) {
         }
         return integers;
     }
+
+    /** Returns a getter that reads the named fields into an array, without
+     * conversion. */
+    static Function1<SearchHit, Object> listGetter(final List<String> names) {
+        final List<Map.Entry<String, Class<?>>> fields =
+                new ArrayList<Map.Entry<String, Class<?>>>();
+        for (String name : names) {
+            fields.add(Pair.<String, Class<?>>of(name, Object.class));
+        }
+        return new HitDecoder(fields, false);
+    }
+
+    /**
+     * @param fields List of fields to project, and the Java class that each
+     *               value must be converted to
+     */
+    static Function1<SearchHit, Object> getter(
+            List<Map.Entry<String, Class<?>>> fields) {
+        return new HitDecoder(fields, fields.size() == 1);
+    }
+
+    /** Converts hits into rows: the value of a single field, or an array.
+     *
+     * <p>Rather than building a map of each document's {@code _source}, the
+     * decoder parses the source as a stream of tokens, and converts the value
+     * of each wanted field straight into its position in the row, using a
+     * plan computed once per search. Other fields are skipped, and parsing
+     * stops when every wanted field has been read.</p>
+     */
+    static class HitDecoder implements Function1<SearchHit, Object> {
+        /** Java class of each field of the row. */
+        private final Class<?>[] classes;
+        /** Positions in the row of each field of the source. */
+        private final Map<String, int[]> plan = new HashMap<String, int[]>();
+        /** Positions of {@link #ID_FIELD} and {@link #SCORE_FIELD}. */
+        private final int[] idPositions;
+        private final int[] scorePositions;
+        private final boolean singleton;
+
+        HitDecoder(List<Map.Entry<String, Class<?>>> fields, boolean singleton) {
+            assert !singleton || fields.size() == 1;
+            this.singleton = singleton;
+            this.classes = new Class<?>[fields.size()];
+            final List<Integer> ids = new ArrayList<Integer>();
+            final List<Integer> scores = new ArrayList<Integer>();
+            for (int i = 0; i < fields.size(); i++) {
+                final String name = fields.get(i).getKey();
+                classes[i] = fields.get(i).getValue();
+                if (ID_FIELD.equals(name)) {
+                    ids.add(i);
+                } else if (SCORE_FIELD.equals(name)) {
+                    scores.add(i);
+                } else {
+                    final int[] positions = plan.get(name);
+                    plan.put(name, append(positions, i));
+                }
+            }
+            this.idPositions = Ints.toArray(ids);
+            this.scorePositions = Ints.toArray(scores);
+        }
+
+        private static int[] append(int[] positions, int i) {
+            if (positions == null) {
+                return new int[] {i};
+            }
+            final int[] positions2 = Arrays.copyOf(positions,
+                    positions.length + 1);
+            positions2[positions.length] = i;
+            return positions2;
+        }
+
+        public Object apply(SearchHit hit) {
+            final Object[] row = new Object[classes.length];
+            for (int i : idPositions) {
+                row[i] = convert(hit.getId(), classes[i]);
+            }
+            for (int i : scorePositions) {
+                row[i] = convert(hit.getScore(), classes[i]);
+            }
+            if (!plan.isEmpty() && !hit.isSourceEmpty()) {
+                try {
+                    decode(hit.sourceRef(), row);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return singleton ? row[0] : row;
+        }
+
+        /** Reads the wanted top-level fields of a document's source. */
+        private void decode(BytesReference source, Object[] row)
+                throws IOException {
+            final XContentParser parser = XContentHelper.createParser(source);
+            try {
+                if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+                    return;
+                }
+                int remaining = plan.size();
+                while (remaining > 0
+                        && parser.nextToken()
+                                == XContentParser.Token.FIELD_NAME) {
+                    final int[] positions = plan.get(parser.currentName());
+                    final XContentParser.Token token = parser.nextToken();
+                    if (positions == null) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    --remaining;
+                    final Object value = value(parser, token);
+                    for (int i : positions) {
+                        row[i] = convert(value, classes[i]);
+                    }
+                }
+            } finally {
+                parser.close();
+            }
+        }
+
+        /** Reads the value at the current token, in the representation of
+         * {@link SearchHit#getSource()}: objects are maps, arrays are
+         * lists. */
+        private static Object value(XContentParser parser,
+                XContentParser.Token token) throws IOException {
+            switch (token) {
+            case START_OBJECT:
+                return parser.map();
+            case START_ARRAY:
+                final List<Object> list = new ArrayList<Object>();
+                XContentParser.Token token2;
+                while ((token2 = parser.nextToken())
+                        != XContentParser.Token.END_ARRAY) {
+                    list.add(value(parser, token2));
+                }
+                return list;
+            case VALUE_STRING:
+                return parser.text();
+            case VALUE_NUMBER:
+                return parser.numberValue();
+            case VALUE_BOOLEAN:
+                return parser.booleanValue();
+            case VALUE_EMBEDDED_OBJECT:
+                return parser.binaryValue();
+            default:
+                return null;
+            }
+        }
+    }
+
+    /** Converts a value from a document's source into the representation
+     * that Calcite uses for a field of the given class. Dates arrive as ISO
+     * strings and become milliseconds (or days, for {@code int} fields);
+     * binary values arrive as base64 strings. */
+    static Object convert(Object o, Class<?> clazz) {
+        if (o == null) {
+            return null;
+        }
+        Primitive primitive = Primitive.of(clazz);
+        if (primitive != null) {
+            clazz = primitive.boxClass;
+        } else {
+            primitive = Primitive.ofBox(clazz);
+        }
+        if (clazz.isInstance(o)) {
+            return o;
+        }
+        if (clazz == String.class) {
+            return o.toString();
+        }
+        if (clazz == ByteString.class) {
+            // Binary values are stored in the source as base64 strings.
+            return o instanceof byte[]
+                    ? new ByteString((byte[]) o)
+                    : ByteString.ofBase64(o.toString());
+        }
+        if (o instanceof String && primitive == Primitive.BOOLEAN) {
+            // Terms aggregations return boolean keys as "T" and "F".
+            return o.equals("T") || Boolean.valueOf((String) o);
+        }
+        if (o instanceof String && primitive != null) {
+            final String s = (String) o;
+            try {
+                return primitive.number(Double.valueOf(s));
+            } catch (NumberFormatException e) {
+                o = new Date(DATE_PARSER.parseMillis(s));
+            }
+        }
+        if (o instanceof Date && primitive != null) {
+            final long millis = ((Date) o).getTime();
+            o = primitive == Primitive.INT
+                    ? millis / DateTimeUtils.MILLIS_PER_DAY
+                    : millis;
+        }
+        if (o instanceof Number && primitive != null) {
+            return primitive.number((Number) o);
+        }
+        return o;
+    }
 }
@@ -0,0 +1,510 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.avatica.util.DateTimeUtils;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeFilterBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implementation of a {@link org.apache.calcite.rel.core.Filter}
+ * relational expression in Elasticsearch.
+ */
+public class ElasticsearchFilter extends Filter implements ElasticsearchRel {
+    public ElasticsearchFilter(
+            RelOptCluster cluster,
+            RelTraitSet traitSet,
+            RelNode child,
+            RexNode condition) {
+        super(cluster, traitSet, child, condition);
+        assert getConvention() == ElasticsearchRel.CONVENTION;
+        assert getConvention() == child.getConvention();
+    }
+
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner) {
+        return super.computeSelfCost(planner).multiplyBy(0.1);
+    }
+
+    public ElasticsearchFilter copy(RelTraitSet traitSet, RelNode input,
+            RexNode condition) {
+        return new ElasticsearchFilter(getCluster(), traitSet, input, condition);
+    }
+
+    public void implement(Implementor implementor) {
+        implementor.visitChild(0, getInput());
+        final Translator translator = new Translator(implementor.fieldNames,
+                implementor.elasticsearchTable.analyzedFields);
+        final ElasticsearchPartitioning partitioning =
+                implementor.elasticsearchTable.partitioning;
+        for (RexNode node : RelOptUtil.conjunctions(condition)) {
+            if (partitioning != null) {
+                translator.bound(node, partitioning.field, implementor);
+            }
+            // Full-text conditions at the top level rank the documents;
+            // elsewhere, they only select them.
+            final QueryBuilder query = translator.translateQuery(node);
+            if (query != null) {
+                implementor.addQuery(query);
+                continue;
+            }
+            final FilterBuilder filter = translator.translate(node);
+            assert filter != null : "cannot translate " + node;
+            implementor.addFilter(filter);
+        }
+    }
+
+    /** Translates {@link RexNode} expressions into Elasticsearch filters.
+     *
+     * <p>Every method returns null if the expression cannot be translated;
+     * {@link ElasticsearchRules} uses this to decide which conjunctions of a
+     * condition can be pushed down.</p>
+     *
+     * <p>Analyzed fields are indexed as words, not values, so only
+     * full-text functions and null tests are translated on them.</p>
+     */
+    static class Translator {
+        private final List<String> fieldNames;
+        private final Set<String> analyzedFields;
+
+        Translator(List<String> fieldNames, Set<String> analyzedFields) {
+            this.fieldNames = fieldNames;
+            this.analyzedFields = analyzedFields;
+        }
+
+        FilterBuilder translate(RexNode node) {
+            switch (node.getKind()) {
+            case AND:
+                return translateAnd(RelOptUtil.conjunctions(node));
+            case OR:
+                return translateOr(RelOptUtil.disjunctions(node));
+            case NOT:
+                return translateNot(((RexCall) node).getOperands().get(0));
+            case EQUALS:
+            case NOT_EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+                return translateBinary((RexCall) node);
+            case LIKE:
+                return translateLike((RexCall) node);
+            case IS_NULL:
+                return translateNull((RexCall) node, true);
+            case IS_NOT_NULL:
+                return translateNull((RexCall) node, false);
+            default:
+                final QueryBuilder query = translateQuery(node);
+                return query == null ? null : FilterBuilders.queryFilter(query);
+            }
+        }
+
+        /** Translates a call to a full-text function of
+         * {@link ElasticsearchFunctions} into a query; returns null if the
+         * expression is not such a call, or cannot be translated. */
+        QueryBuilder translateQuery(RexNode node) {
+            final String method = ElasticsearchFunctions.methodName(node);
+            if (method == null) {
+                return null;
+            }
+            final List<RexNode> operands = ((RexCall) node).getOperands();
+            if (method.equals("match")) {
+                final String name = fieldName(operands.get(0));
+                if (name == null
+                        || ElasticsearchEnumerator.ID_FIELD.equals(name)
+                        || !isLiteral(operands.get(1))) {
+                    return null;
+                }
+                return QueryBuilders.matchQuery(name,
+                        ((RexLiteral) operands.get(1)).getValue2());
+            } else if (method.equals("queryString")) {
+                if (!isLiteral(operands.get(0))) {
+                    return null;
+                }
+                return QueryBuilders.queryString(
+                        (String) ((RexLiteral) operands.get(0)).getValue2());
+            }
+            return null;
+        }
+
+        private FilterBuilder translateAnd(List<RexNode> nodes) {
+            final List<FilterBuilder> list = new ArrayList<FilterBuilder>();
+            for (RexNode node : nodes) {
+                final FilterBuilder filter = translate(node);
+                if (filter == null) {
+                    return null;
+                }
+                list.add(filter);
+            }
+            return FilterBuilders.boolFilter().must(toArray(list));
+        }
+
+        /** Translates a disjunction. "x = 1 OR x = 2 OR x = 3", which is how
+         * Calcite represents "x IN (1, 2, 3)", becomes a single
+         * {@code terms} filter. */
+        private FilterBuilder translateOr(List<RexNode> nodes) {
+            final FilterBuilder terms = translateIn(nodes);
+            if (terms != null) {
+                return terms;
+            }
+            final List<FilterBuilder> list = new ArrayList<FilterBuilder>();
+            for (RexNode node : nodes) {
+                final FilterBuilder filter = translate(node);
+                if (filter == null) {
+                    return null;
+                }
+                list.add(filter);
+            }
+            return FilterBuilders.boolFilter().should(toArray(list));
+        }
+
+        /** Translates "NOT condition". Only comparisons, LIKE and IN are
+         * negated. Where a field is null, SQL evaluates the negation as
+         * unknown, whereas {@code must_not} would match the document; so
+         * every field that the condition references must also exist. */
+        private FilterBuilder translateNot(RexNode node) {
+            switch (node.getKind()) {
+            case EQUALS:
+            case NOT_EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+            case LIKE:
+                break;
+            case OR:
+                if (translateIn(RelOptUtil.disjunctions(node)) == null) {
+                    return null;
+                }
+                break;
+            default:
+                return null;
+            }
+            final FilterBuilder filter = translate(node);
+            if (filter == null) {
+                return null;
+            }
+            final BoolFilterBuilder bool = FilterBuilders.boolFilter();
+            for (int i : RelOptUtil.InputFinder.bits(node)) {
+                final String name = fieldNames.get(i);
+                if (!ElasticsearchEnumerator.ID_FIELD.equals(name)) {
+                    bool.must(FilterBuilders.existsFilter(name));
+                }
+            }
+            return bool.mustNot(filter);
+        }
+
+        private FilterBuilder translateIn(List<RexNode> nodes) {
+            String name = null;
+            final List<Object> values = new ArrayList<Object>();
+            for (RexNode node : nodes) {
+                if (node.getKind() != SqlKind.EQUALS) {
+                    return null;
+                }
+                final RexCall call = (RexCall) node;
+                String name2 = fieldName(call.getOperands().get(0));
+                RexNode right = call.getOperands().get(1);
+                if (name2 == null) {
+                    name2 = fieldName(call.getOperands().get(1));
+                    right = call.getOperands().get(0);
+                }
+                if (name2 == null
+                        || name != null && !name.equals(name2)
+                        || analyzedFields.contains(name2)
+                        || !isLiteral(right)) {
+                    return null;
+                }
+                name = name2;
+                values.add(literalValue((RexLiteral) right));
+            }
+            if (ElasticsearchEnumerator.ID_FIELD.equals(name)) {
+                final String[] ids = new String[values.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = String.valueOf(values.get(i));
+                }
+                return FilterBuilders.idsFilter().addIds(ids);
+            }
+            return FilterBuilders.termsFilter(name, values);
+        }
+
+        /** Translates a comparison between a field and a literal, reversing
+         * the operator if the literal is on the left. */
+        private FilterBuilder translateBinary(RexCall call) {
+            final RexNode left = call.getOperands().get(0);
+            final RexNode right = call.getOperands().get(1);
+            SqlKind kind = call.getKind();
+            String name = fieldName(left);
+            RexNode literal = right;
+            if (name == null) {
+                name = fieldName(right);
+                literal = left;
+                kind = kind.reverse();
+            }
+            if (name == null
+                    || analyzedFields.contains(name)
+                    || !isLiteral(literal)) {
+                return null;
+            }
+            final Object value = literalValue((RexLiteral) literal);
+            final RangeFilterBuilder range;
+            if (ElasticsearchEnumerator.ID_FIELD.equals(name)) {
+                // The document id is not indexed; it can only be looked up.
+                switch (kind) {
+                case EQUALS:
+                    return term(name, value);
+                case NOT_EQUALS:
+                    return FilterBuilders.boolFilter()
+                            .mustNot(term(name, value));
+                default:
+                    return null;
+                }
+            }
+            switch (kind) {
+            case EQUALS:
+                return term(name, value);
+            case NOT_EQUALS:
+                // SQL "<>" never matches a null, so the field must exist
+                return FilterBuilders.boolFilter()
+                        .must(FilterBuilders.existsFilter(name))
+                        .mustNot(term(name, value));
+            case LESS_THAN:
+                range = FilterBuilders.rangeFilter(name).lt(value);
+                break;
+            case LESS_THAN_OR_EQUAL:
+                range = FilterBuilders.rangeFilter(name).lte(value);
+                break;
+            case GREATER_THAN:
+                range = FilterBuilders.rangeFilter(name).gt(value);
+                break;
+            case GREATER_THAN_OR_EQUAL:
+                range = FilterBuilders.rangeFilter(name).gte(value);
+                break;
+            default:
+                return null;
+            }
+            return range;
+        }
+
+        /** If a condition compares a field with a timestamp literal, narrows
+         * the range of the field in an implementor accordingly. Only the
+         * partitioning field is of interest; see
+         * {@link ElasticsearchPartitioning}. */
+        void bound(RexNode node, String field, Implementor implementor) {
+            switch (node.getKind()) {
+            case EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+                break;
+            default:
+                return;
+            }
+            final List<RexNode> operands = ((RexCall) node).getOperands();
+            SqlKind kind = node.getKind();
+            RexNode literal = operands.get(1);
+            if (!isRef(operands.get(0), field)) {
+                if (!isRef(operands.get(1), field)) {
+                    return;
+                }
+                kind = kind.reverse();
+                literal = operands.get(0);
+            }
+            // A cast, such as to DATE, would change the value compared.
+            if (isLiteral(literal)
+                    && literal.getType().getSqlTypeName()
+                            == SqlTypeName.TIMESTAMP) {
+                implementor.addTimeBound(kind,
+                        (Long) ((RexLiteral) literal).getValue2());
+            }
+        }
+
+        private boolean isRef(RexNode node, String field) {
+            return node instanceof RexInputRef
+                    && field.equals(fieldName(node));
+        }
+
+        private FilterBuilder term(String name, Object value) {
+            if (ElasticsearchEnumerator.ID_FIELD.equals(name)) {
+                return FilterBuilders.idsFilter().addIds(String.valueOf(value));
+            }
+            return FilterBuilders.termFilter(name, value);
+        }
+
+        /** Translates "field LIKE 'pattern'" into a {@code term},
+         * {@code prefix} or {@code wildcard} filter, whichever is cheapest.
+         * Patterns with an ESCAPE clause are not pushed down. */
+        private FilterBuilder translateLike(RexCall call) {
+            if (call.getOperands().size() != 2) {
+                return null;
+            }
+            final String name = fieldName(call.getOperands().get(0));
+            final RexNode pattern = call.getOperands().get(1);
+            if (name == null
+                    || analyzedFields.contains(name)
+                    || !isLiteral(pattern)) {
+                return null;
+            }
+            final String s = (String) ((RexLiteral) pattern).getValue2();
+            final StringBuilder buf = new StringBuilder();
+            int wildcards = 0;
+            for (int i = 0; i < s.length(); i++) {
+                final char c = s.charAt(i);
+                switch (c) {
+                case '%':
+                    buf.append('*');
+                    ++wildcards;
+                    break;
+                case '_':
+                    buf.append('?');
+                    ++wildcards;
+                    break;
+                case '*':
+                case '?':
+                case '\\':
+                    buf.append('\\').append(c);
+                    break;
+                default:
+                    buf.append(c);
+                }
+            }
+            if (wildcards == 0) {
+                return term(name, s);
+            }
+            if (ElasticsearchEnumerator.ID_FIELD.equals(name)) {
+                return null;
+            }
+            if (wildcards == 1 && s.endsWith("%")) {
+                return FilterBuilders.prefixFilter(name,
+                        s.substring(0, s.length() - 1));
+            }
+            return FilterBuilders.queryFilter(
+                    QueryBuilders.wildcardQuery(name, buf.toString()));
+        }
+
+        private FilterBuilder translateNull(RexCall call, boolean isNull) {
+            final String name = fieldName(call.getOperands().get(0));
+            if (name == null
+                    || ElasticsearchEnumerator.ID_FIELD.equals(name)) {
+                return null;
+            }
+            return isNull
+                    ? FilterBuilders.missingFilter(name)
+                    : FilterBuilders.existsFilter(name);
+        }
+
+        /** Returns the name of the field that an expression references, or
+         * null if it is not a field reference. Looks through casts that
+         * preserve every value, such as from INTEGER to BIGINT; other casts,
+         * such as from TIMESTAMP to DATE, change the value compared. */
+        private String fieldName(RexNode node) {
+            switch (node.getKind()) {
+            case INPUT_REF:
+                return fieldNames.get(((RexInputRef) node).getIndex());
+            case CAST:
+                final RexNode operand = ((RexCall) node).getOperands().get(0);
+                return preservesValues(operand.getType(), node.getType())
+                        ? fieldName(operand)
+                        : null;
+            default:
+                return null;
+            }
+        }
+
+        /** Returns whether a cast from one type to another returns each
+         * value unchanged. */
+        private static boolean preservesValues(RelDataType fromType,
+                RelDataType toType) {
+            final SqlTypeName from = fromType.getSqlTypeName();
+            final SqlTypeName to = toType.getSqlTypeName();
+            if (to == SqlTypeName.ANY) {
+                return true;
+            }
+            if (SqlTypeName.INT_TYPES.contains(from)
+                    && SqlTypeName.INT_TYPES.contains(to)) {
+                return SqlTypeName.INT_TYPES.indexOf(to)
+                        >= SqlTypeName.INT_TYPES.indexOf(from);
+            }
+            if (SqlTypeName.APPROX_TYPES.contains(from)) {
+                return to == SqlTypeName.DOUBLE || to == from;
+            }
+            if (SqlTypeName.CHAR_TYPES.contains(from)
+                    && SqlTypeName.CHAR_TYPES.contains(to)) {
+                return toType.getPrecision() >= fromType.getPrecision();
+            }
+            return from == to
+                    && toType.getPrecision() >= fromType.getPrecision()
+                    && toType.getScale() >= fromType.getScale();
+        }
+
+        private static boolean isLiteral(RexNode node) {
+            return node instanceof RexLiteral
+                    && ((RexLiteral) node).getValue() != null;
+        }
+
+        /** Converts a literal into the value that Elasticsearch expects in
+         * a query: numbers as longs or doubles, dates and timestamps as
+         * milliseconds since the epoch. */
+        static Object literalValue(RexLiteral literal) {
+            switch (literal.getTypeName()) {
+            case DATE:
+                return ((Number) literal.getValue2()).longValue()
+                        * DateTimeUtils.MILLIS_PER_DAY;
+            default:
+                final Object value = literal.getValue();
+                if (value instanceof BigDecimal) {
+                    final BigDecimal decimal = (BigDecimal) value;
+                    return decimal.scale() <= 0
+                            || decimal.stripTrailingZeros().scale() <= 0
+                            ? (Object) decimal.longValue()
+                            : (Object) decimal.doubleValue();
+                }
+                return literal.getValue2();
+            }
+        }
+
+        private static FilterBuilder[] toArray(List<FilterBuilder> list) {
+            return list.toArray(new FilterBuilder[list.size()]);
+        }
+    }
+}
+
+// End ElasticsearchFilter.java
@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.linq4j.function.NonDeterministic;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexVisitor;
+import org.apache.calcite.rex.RexVisitorImpl;
+import org.apache.calcite.schema.Function;
+import org.apache.calcite.schema.impl.AggregateFunctionImpl;
+import org.apache.calcite.schema.impl.ReflectiveFunctionBase;
+import org.apache.calcite.schema.impl.ScalarFunctionImpl;
+import org.apache.calcite.sql.SqlAggFunction;
+import org.apache.calcite.sql.validate.SqlUserDefinedAggFunction;
+import org.apache.calcite.sql.validate.SqlUserDefinedFunction;
+
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus;
+import org.elasticsearch.search.aggregations.metrics.percentiles.tdigest.TDigestState;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+
+import java.util.List;
+
+/**
+ * Full-text search and approximate aggregate functions of an Elasticsearch
+ * schema.
+ *
+ * <ul>
+ * <li>{@code MATCH(field, text)} is true if the analyzed field matches the
+ * text, as in a {@code match} query;</li>
+ * <li>{@code QUERY_STRING(text)} is true if the document matches the query
+ * in Lucene syntax, as in a {@code query_string} query;</li>
+ * <li>{@code SCORE()} is the relevance of the current document to the
+ * full-text conditions of the query;</li>
+ * <li>{@code APPROX_COUNT_DISTINCT(value [, precisionThreshold])} is an
+ * estimate of the number of distinct values, as computed by a
+ * {@code cardinality} aggregation;</li>
+ * <li>{@code APPROX_PERCENTILE(value, fraction [, compression])} is an
+ * estimate of the value below which a fraction (between 0 and 1) of the
+ * values fall, as computed by a {@code percentiles} aggregation.</li>
+ * </ul>
+ *
+ * <p>For example,</p>
+ *
+ * <blockquote><pre>SELECT "msg", SCORE() FROM "event"
+ * WHERE "MATCH"("msg", 'disk full')
+ * ORDER BY SCORE() DESC LIMIT 10</pre></blockquote>
+ *
+ * <p>{@code MATCH} is a reserved word in SQL, so the function name must be
+ * quoted.</p>
+ *
+ * <p>Only Elasticsearch can evaluate these functions; there is no
+ * implementation in Calcite. A condition that uses them must be pushed
+ * down, so the text argument must be a literal, and {@code MATCH} must be
+ * applied to a field of the table.</p>
+ *
+ * <p>The aggregate functions are computed by the cluster if their input is
+ * a field of an Elasticsearch table and their other arguments are literals;
+ * otherwise Calcite computes the same kind of estimate. Either way, each
+ * group holds a sketch of bounded size: a HyperLogLog++ sketch whose size
+ * grows with the precision threshold (the count below which estimates are
+ * close to exact, at most 40,000), or a t-digest whose size grows with the
+ * compression.</p>
+ */
+public class ElasticsearchFunctions {
+    private ElasticsearchFunctions() {}
+
+    /** Precision threshold of {@code APPROX_COUNT_DISTINCT} if the call
+     * does not specify one. */
+    static final int DEFAULT_PRECISION_THRESHOLD = 3000;
+
+    /** Compression of {@code APPROX_PERCENTILE} if the call does not specify
+     * one. */
+    static final double DEFAULT_COMPRESSION = 100;
+
+    /** Functions, by name, that each Elasticsearch schema contains. */
+    static final Multimap<String, Function> FUNCTIONS =
+            ImmutableMultimap.<String, Function>builder()
+                    .put("MATCH", ScalarFunctionImpl.create(
+                            ElasticsearchFunctions.class, "match"))
+                    .put("QUERY_STRING", ScalarFunctionImpl.create(
+                            ElasticsearchFunctions.class, "queryString"))
+                    .put("SCORE", ScalarFunctionImpl.create(
+                            ElasticsearchFunctions.class, "score"))
+                    .put("APPROX_COUNT_DISTINCT", AggregateFunctionImpl.create(
+                            ApproxCountDistinct.class))
+                    .put("APPROX_COUNT_DISTINCT", AggregateFunctionImpl.create(
+                            ApproxCountDistinctWithThreshold.class))
+                    .put("APPROX_PERCENTILE", AggregateFunctionImpl.create(
+                            ApproxPercentile.class))
+                    .put("APPROX_PERCENTILE", AggregateFunctionImpl.create(
+                            ApproxPercentileWithCompression.class))
+                    .build();
+
+    /** Implements {@code MATCH(field, text)}. */
+    public static boolean match(Object field, String text) {
+        throw notPushed("MATCH");
+    }
+
+    /** Implements {@code QUERY_STRING(text)}. Not deterministic, so that
+     * the planner does not try to reduce a call to a constant. */
+    @NonDeterministic
+    public static boolean queryString(String text) {
+        throw notPushed("QUERY_STRING");
+    }
+
+    /** Implements {@code SCORE()}. */
+    @NonDeterministic
+    public static double score() {
+        throw notPushed("SCORE");
+    }
+
+    private static UnsupportedOperationException notPushed(String name) {
+        return new UnsupportedOperationException(name
+                + " can only be evaluated by Elasticsearch; it must be "
+                + "applied to a field of an Elasticsearch table, with a "
+                + "literal argument");
+    }
+
+    /** Returns the name of the method that implements a call, if it is a
+     * call to one of these functions, otherwise null. */
+    static String methodName(RexNode node) {
+        if (!(node instanceof RexCall)
+                || !(((RexCall) node).getOperator()
+                        instanceof SqlUserDefinedFunction)) {
+            return null;
+        }
+        final Function function =
+                ((SqlUserDefinedFunction) ((RexCall) node).getOperator())
+                        .getFunction();
+        if (function instanceof ReflectiveFunctionBase
+                && ((ReflectiveFunctionBase) function).method
+                        .getDeclaringClass() == ElasticsearchFunctions.class) {
+            return ((ReflectiveFunctionBase) function).method.getName();
+        }
+        return null;
+    }
+
+    /** Returns the Elasticsearch metric that computes an aggregate function,
+     * {@code CARDINALITY} or {@code PERCENTILE}, if it is one of these
+     * functions, otherwise null. */
+    static String metric(SqlAggFunction aggregation) {
+        if (!(aggregation instanceof SqlUserDefinedAggFunction)
+                || !(((SqlUserDefinedAggFunction) aggregation).function
+                        instanceof AggregateFunctionImpl)) {
+            return null;
+        }
+        final Class<?> clazz =
+                ((AggregateFunctionImpl)
+                        ((SqlUserDefinedAggFunction) aggregation).function)
+                        .declaringClass;
+        if (clazz == ApproxCountDistinct.class
+                || clazz == ApproxCountDistinctWithThreshold.class) {
+            return "CARDINALITY";
+        } else if (clazz == ApproxPercentile.class
+                || clazz == ApproxPercentileWithCompression.class) {
+            return "PERCENTILE";
+        }
+        return null;
+    }
+
+    /** Returns whether an expression is a call to {@code SCORE()}. */
+    static boolean isScore(RexNode node) {
+        return "score".equals(methodName(node));
+    }
+
+    /** Returns whether any of a list of expressions calls {@code SCORE()}. */
+    static boolean containsScore(List<RexNode> nodes) {
+        final boolean[] found = {false};
+        final RexVisitor<Void> visitor = new RexVisitorImpl<Void>(true) {
+            @Override public Void visitCall(RexCall call) {
+                found[0] |= isScore(call);
+                return super.visitCall(call);
+            }
+        };
+        for (RexNode node : nodes) {
+            node.accept(visitor);
+        }
+        return found[0];
+    }
+
+    /** Implements {@code APPROX_COUNT_DISTINCT(value)} in Calcite. */
+    public static class ApproxCountDistinct {
+        private ApproxCountDistinct() {}
+
+        public static CardinalitySketch init() {
+            return new CardinalitySketch();
+        }
+
+        public static CardinalitySketch add(CardinalitySketch sketch,
+                Object value) {
+            sketch.add(value, DEFAULT_PRECISION_THRESHOLD);
+            return sketch;
+        }
+
+        public static long result(CardinalitySketch sketch) {
+            return sketch.count();
+        }
+    }
+
+    /** Implements {@code APPROX_COUNT_DISTINCT(value, precisionThreshold)}
+     * in Calcite. */
+    public static class ApproxCountDistinctWithThreshold {
+        private ApproxCountDistinctWithThreshold() {}
+
+        public static CardinalitySketch init() {
+            return new CardinalitySketch();
+        }
+
+        public static CardinalitySketch add(CardinalitySketch sketch,
+                Object value, Number precisionThreshold) {
+            sketch.add(value, precisionThreshold.intValue());
+            return sketch;
+        }
+
+        public static long result(CardinalitySketch sketch) {
+            return sketch.count();
+        }
+    }
+
+    /** Implements {@code APPROX_PERCENTILE(value, fraction)} in Calcite. */
+    public static class ApproxPercentile {
+        private ApproxPercentile() {}
+
+        public static PercentileSketch init() {
+            return new PercentileSketch();
+        }
+
+        public static PercentileSketch add(PercentileSketch sketch,
+                Object value, Number fraction) {
+            sketch.add(value, fraction.doubleValue(), DEFAULT_COMPRESSION);
+            return sketch;
+        }
+
+        public static Double result(PercentileSketch sketch) {
+            return sketch.percentile();
+        }
+    }
+
+    /** Implements {@code APPROX_PERCENTILE(value, fraction, compression)} in
+     * Calcite. */
+    public static class ApproxPercentileWithCompression {
+        private ApproxPercentileWithCompression() {}
+
+        public static PercentileSketch init() {
+            return new PercentileSketch();
+        }
+
+        public static PercentileSketch add(PercentileSketch sketch,
+                Object value, Number fraction, Number compression) {
+            sketch.add(value, fraction.doubleValue(),
+                    compression.doubleValue());
+            return sketch;
+        }
+
+        public static Double result(PercentileSketch sketch) {
+            return sketch.percentile();
+        }
+    }
+
+    /** State of {@code APPROX_COUNT_DISTINCT} for a group: a HyperLogLog++
+     * sketch of the hashes of the values, as in a {@code cardinality}
+     * aggregation. */
+    public static class CardinalitySketch {
+        private final MurmurHash3.Hash128 hash = new MurmurHash3.Hash128();
+        private HyperLogLogPlusPlus hll;
+
+        void add(Object value, int precisionThreshold) {
+            if (hll == null) {
+                if (precisionThreshold < 0) {
+                    throw new IllegalArgumentException(
+                            "precision threshold must not be negative: "
+                                    + precisionThreshold);
+                }
+                hll = new HyperLogLogPlusPlus(
+                        HyperLogLogPlusPlus.precisionFromThreshold(
+                                precisionThreshold),
+                        BigArrays.NON_RECYCLING_INSTANCE, 1);
+            }
+            final byte[] bytes = value.toString().getBytes(Charsets.UTF_8);
+            MurmurHash3.hash128(bytes, 0, bytes.length, 0, hash);
+            hll.collect(0, hash.h1);
+        }
+
+        long count() {
+            return hll == null ? 0 : hll.cardinality(0);
+        }
+    }
+
+    /** State of {@code APPROX_PERCENTILE} for a group: a t-digest of the
+     * values, as in a {@code percentiles} aggregation. */
+    public static class PercentileSketch {
+        private TDigestState digest;
+        private double fraction;
+
+        void add(Object value, double fraction, double compression) {
+            if (digest == null) {
+                if (fraction < 0 || fraction > 1) {
+                    throw new IllegalArgumentException(
+                            "fraction must be between 0 and 1: " + fraction);
+                }
+                if (compression <= 0) {
+                    throw new IllegalArgumentException(
+                            "compression must be positive: " + compression);
+                }
+                digest = new TDigestState(compression);
+                this.fraction = fraction;
+            }
+            digest.add(((Number) value).doubleValue());
+        }
+
+        Double percentile() {
+            return digest == null ? null : digest.quantile(fraction);
+        }
+    }
+}
+
+// End ElasticsearchFunctions.java
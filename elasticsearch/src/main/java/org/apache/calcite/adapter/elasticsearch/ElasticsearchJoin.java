@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.core.EquiJoin;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableIntList;
+import org.apache.calcite.util.Util;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Inner equi-join whose right input is a search of an Elasticsearch type.
+ *
+ * <p>The left input, the build side, is read and hashed first. Its distinct
+ * keys are then added to the search as a {@code terms} filter on the first
+ * right key, so that the cluster returns only the documents that can join,
+ * rather than every document of the type. If the build side has more
+ * distinct keys than the schema's {@code joinFilterSize}, the search is not
+ * restricted, and the join is an ordinary hash join.</p>
+ *
+ * <p>Like {@link ElasticsearchSort}, the join produces rows in
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention} and
+ * replaces the converter of its right input.</p>
+ */
+public class ElasticsearchJoin extends EquiJoin implements EnumerableRel {
+    public ElasticsearchJoin(RelOptCluster cluster, RelTraitSet traitSet,
+            RelNode left, RelNode right, RexNode condition,
+            ImmutableIntList leftKeys, ImmutableIntList rightKeys,
+            Set<String> variablesStopped) {
+        super(cluster, traitSet, left, right, condition, leftKeys, rightKeys,
+                JoinRelType.INNER, variablesStopped);
+        assert !leftKeys.isEmpty();
+    }
+
+    @Override
+    public ElasticsearchJoin copy(RelTraitSet traitSet, RexNode condition,
+            RelNode left, RelNode right, JoinRelType joinType,
+            boolean semiJoinDone) {
+        assert joinType == JoinRelType.INNER;
+        final JoinInfo joinInfo = JoinInfo.of(left, right, condition);
+        assert joinInfo.isEqui();
+        return new ElasticsearchJoin(getCluster(), traitSet, left, right,
+                condition, joinInfo.leftKeys, joinInfo.rightKeys,
+                variablesStopped);
+    }
+
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner) {
+        // As EnumerableJoin, except that only the documents that join are
+        // read from the right input.
+        double rowCount = RelMetadataQuery.getRowCount(this);
+        final double leftRowCount = left.getRows();
+        final double rightRowCount = right.getRows();
+        if (Double.isInfinite(leftRowCount)) {
+            rowCount = leftRowCount;
+        } else {
+            rowCount += Util.nLogN(leftRowCount);
+        }
+        if (Double.isInfinite(rightRowCount)) {
+            rowCount = rightRowCount;
+        } else {
+            rowCount += Math.min(rightRowCount, rowCount);
+        }
+        return planner.getCostFactory().makeCost(rowCount, 0, 0);
+    }
+
+    @Override public RelWriter explainTerms(RelWriter pw) {
+        final ElasticsearchRel.Implementor esImplementor =
+                ElasticsearchRel.Implementor.of(right);
+        return super.explainTerms(pw)
+                .itemIf("request",
+                        esImplementor == null ? null : esImplementor.describe(),
+                        esImplementor != null);
+    }
+
+    public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+        // Generates:
+        //
+        //   final Enumerable build = Linq4j.asEnumerable(left.toList());
+        //   final Enumerable right = table.find(query, fields, sort, 0, -1,
+        //       "host", build.select(leftKey0));
+        //   return right.join(build, rightKeys, leftKeys, selector, ...);
+        final BlockBuilder builder = new BlockBuilder();
+        final Result leftResult =
+                implementor.visitChild(this, 0, (EnumerableRel) left, pref);
+        final Expression leftExpression =
+                builder.append("left", leftResult.block);
+        // The build side is read once: for its keys, and to be hashed.
+        final Expression build =
+                builder.append("build",
+                        Expressions.call(BuiltInMethod.AS_ENUMERABLE2.method,
+                                Expressions.call(leftExpression,
+                                        BuiltInMethod.ENUMERABLE_TO_LIST.method)));
+        final ElasticsearchRel.Implementor esImplementor =
+                new ElasticsearchRel.Implementor();
+        esImplementor.visitChild(0, right);
+        final Result rightResult =
+                ElasticsearchToEnumerableConverter.implement(implementor, pref,
+                        right.getRowType(), esImplementor,
+                        esImplementor.fieldNames.get(rightKeys.get(0)),
+                        Expressions.call(build, BuiltInMethod.SELECT.method,
+                                leftResult.physType.generateAccessor(
+                                        ImmutableList.of(leftKeys.get(0)))));
+        final Expression rightExpression =
+                builder.append("right", rightResult.block);
+        final PhysType physType =
+                PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(),
+                        pref.preferArray());
+        final PhysType keyPhysType =
+                leftResult.physType.project(leftKeys, JavaRowFormat.LIST);
+        // The right input is the outer of the linq4j join, so that the build
+        // side is the one that is hashed.
+        return implementor.result(physType,
+                builder.append(
+                        Expressions.call(rightExpression,
+                                BuiltInMethod.JOIN.method,
+                                Expressions.list(build,
+                                        rightResult.physType.generateAccessor(
+                                                rightKeys),
+                                        leftResult.physType.generateAccessor(
+                                                leftKeys),
+                                        selector(physType, leftResult.physType,
+                                                rightResult.physType))
+                                        .append(
+                                                Util.first(keyPhysType.comparer(),
+                                                        Expressions.constant(null)))
+                                        .append(Expressions.constant(false))
+                                        .append(Expressions.constant(false))))
+                        .toBlock());
+    }
+
+    /** Returns a function that combines a hit of the right input and a row
+     * of the build side into a row of the join, with the build side's
+     * fields first. */
+    private static Expression selector(PhysType physType, PhysType leftPhysType,
+            PhysType rightPhysType) {
+        final ParameterExpression leftRow =
+                Expressions.parameter(
+                        Primitive.box(leftPhysType.getJavaRowType()), "left");
+        final ParameterExpression rightRow =
+                Expressions.parameter(
+                        Primitive.box(rightPhysType.getJavaRowType()), "right");
+        final List<Expression> expressions = new ArrayList<Expression>();
+        for (int i = 0; i < leftPhysType.getRowType().getFieldCount(); i++) {
+            expressions.add(
+                    leftPhysType.fieldReference(leftRow, i,
+                            physType.getJavaFieldType(expressions.size())));
+        }
+        for (int i = 0; i < rightPhysType.getRowType().getFieldCount(); i++) {
+            expressions.add(
+                    rightPhysType.fieldReference(rightRow, i,
+                            physType.getJavaFieldType(expressions.size())));
+        }
+        return Expressions.lambda(physType.record(expressions), rightRow,
+                leftRow);
+    }
+}
+
+// End ElasticsearchJoin.java
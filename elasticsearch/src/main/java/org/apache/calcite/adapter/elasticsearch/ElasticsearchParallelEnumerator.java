@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.function.Function0;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enumerator that reads several {@link ElasticsearchEnumerator}s at the same
+ * time, typically one per shard, and returns their rows in the order they
+ * arrive.
+ *
+ * <p>Each input is read by a worker from a pool of bounded size. Workers put
+ * rows into a bounded queue and block when it is full, so a slow consumer
+ * slows the scans down rather than letting rows pile up in memory.</p>
+ */
+class ElasticsearchParallelEnumerator implements Enumerator<Object> {
+    /** Stands for a null row in the queue, which does not accept nulls. */
+    private static final Object NULL = new Object();
+
+    /** Put into the queue by each worker when its input is exhausted. */
+    private static final Object END = new Object();
+
+    /** How long {@link #close()} waits for the workers to close their
+     * inputs, in milliseconds. */
+    private static final long CLOSE_TIMEOUT = 10000;
+
+    /** How often a worker that is waiting for room in the queue checks
+     * whether the enumerator has been closed, in milliseconds. */
+    private static final long PUT_INTERVAL = 100;
+
+    private final ExecutorService executor;
+    private final BlockingQueue<Object> queue;
+    private volatile RuntimeException failure;
+    private volatile boolean closed;
+    private int running;
+    private Object current;
+
+    /** Creates an ElasticsearchParallelEnumerator.
+     *
+     * @param inputs Factories of the enumerators to read; each is called by
+     *               the worker that reads it, so that a scroll is not opened
+     *               before there is a thread to consume it
+     * @param parallelism Maximum number of inputs to read at the same time
+     * @param capacity Maximum number of rows waiting to be consumed
+     */
+    ElasticsearchParallelEnumerator(
+            List<Function0<ElasticsearchEnumerator>> inputs, int parallelism,
+            int capacity) {
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(parallelism, inputs.size())),
+                new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("elasticsearch-scan-%d")
+                        .build());
+        for (final Function0<ElasticsearchEnumerator> factory : inputs) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    if (closed) {
+                        return;
+                    }
+                    ElasticsearchEnumerator input = null;
+                    try {
+                        input = factory.apply();
+                        while (!closed && input.moveNext()) {
+                            final Object row = input.current();
+                            if (!put(row == null ? NULL : row)) {
+                                break;
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    } finally {
+                        if (input != null) {
+                            input.close();
+                        }
+                    }
+                    put(END);
+                }
+            });
+        }
+        this.running = inputs.size();
+    }
+
+    /** Puts an element into the queue, waiting for room, unless the
+     * enumerator is closed first. Returns whether the element was put. */
+    private boolean put(Object o) {
+        try {
+            while (!closed) {
+                if (queue.offer(o, PUT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    public Object current() {
+        return current;
+    }
+
+    public boolean moveNext() {
+        try {
+            for (;;) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (running == 0) {
+                    current = null;
+                    return false;
+                }
+                final Object o = queue.take();
+                if (o == END) {
+                    --running;
+                    continue;
+                }
+                current = o == NULL ? null : o;
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void reset() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+        // Tells the workers to close their inputs; workers that have not
+        // started never open one. Workers are not interrupted, because a
+        // worker interrupted while its search is in flight would never
+        // learn the id of the scroll it opened, and could not clear it.
+        // Waits for them, so that their scrolls are cleared before the
+        // client can be closed. A worker that is still waiting for a reply
+        // after the timeout leaves its scroll to expire.
+        closed = true;
+        executor.shutdown();
+        queue.clear();
+        try {
+            executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+// End ElasticsearchParallelEnumerator.java
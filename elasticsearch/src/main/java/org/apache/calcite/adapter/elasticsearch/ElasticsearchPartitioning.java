@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.elasticsearch.common.joda.time.format.DateTimeFormat;
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Time partitioning of the documents of a schema into one index per day (or
+ * per hour, month, ...), such as {@code logs-2026.10.14}.
+ *
+ * <p>The name of the index that holds a document is its timestamp field,
+ * in UTC, formatted with a Joda pattern such as {@code 'logs-'yyyy.MM.dd}.
+ * A search only reads the indices whose names the range of the timestamp
+ * allowed by its filters can produce; see
+ * {@link ElasticsearchRel.Implementor#indices()}.</p>
+ */
+class ElasticsearchPartitioning {
+    /** Maximum number of indices that a search names; a wider range searches
+     * all indices. */
+    static final int MAX_INDICES = 1000;
+
+    private static final long MILLIS_PER_HOUR = 60L * 60L * 1000L;
+
+    /** Name of the timestamp field. */
+    final String field;
+    private final DateTimeFormatter format;
+    /** Interval between timestamps that may fall in different indices. */
+    private final long step;
+
+    /**
+     * Creates an ElasticsearchPartitioning.
+     *
+     * @param field Name of the timestamp field
+     * @param pattern Joda pattern of index names, with literal text quoted,
+     *                e.g. {@code 'logs-'yyyy.MM.dd}
+     */
+    ElasticsearchPartitioning(String field, String pattern) {
+        this.field = field;
+        this.format = DateTimeFormat.forPattern(pattern).withZoneUTC();
+        this.step = hourly(pattern)
+                ? MILLIS_PER_HOUR
+                : 24 * MILLIS_PER_HOUR;
+    }
+
+    /** Returns whether a pattern has a field that changes every hour,
+     * ignoring quoted text. */
+    private static boolean hourly(String pattern) {
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && "HhKk".indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the name of the index that holds documents with a given
+     * timestamp. */
+    String index(long millis) {
+        return format.print(millis);
+    }
+
+    /** Returns the comma-separated names of the indices that hold documents
+     * whose timestamp is in a range, or null if the range is unbounded,
+     * empty, or spans more than {@link #MAX_INDICES} indices. Some of the
+     * indices may not exist.
+     *
+     * @param lower Lowest timestamp, inclusive, in milliseconds since the
+     *              epoch
+     * @param upper Highest timestamp, inclusive
+     */
+    String indices(long lower, long upper) {
+        if (lower == Long.MIN_VALUE || upper == Long.MAX_VALUE
+                || lower > upper) {
+            return null;
+        }
+        final Set<String> names = new LinkedHashSet<String>();
+        for (long t = lower; t < upper; t += step) {
+            names.add(index(t));
+            if (names.size() > MAX_INDICES) {
+                return null;
+            }
+        }
+        names.add(index(upper));
+        final StringBuilder buf = new StringBuilder();
+        for (String name : names) {
+            if (buf.length() > 0) {
+                buf.append(',');
+            }
+            buf.append(name);
+        }
+        return buf.toString();
+    }
+}
+
+// End ElasticsearchPartitioning.java
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of {@link org.apache.calcite.rel.core.Project}
+ * relational expression in Elasticsearch.
+ *
+ * <p>Only projections of plain field references are supported. They narrow
+ * the {@code _source} fields that the search request fetches, so a document
+ * with hundreds of fields is not deserialized just to read a few of
+ * them.</p>
+ *
+ * <p>A call to {@code SCORE()} (see {@link ElasticsearchFunctions}) is
+ * projected as the {@code _score} of each hit.</p>
+ */
+public class ElasticsearchProject extends Project implements ElasticsearchRel {
+    public ElasticsearchProject(RelOptCluster cluster, RelTraitSet traitSet,
+            RelNode input, List<? extends RexNode> projects, RelDataType rowType) {
+        super(cluster, traitSet, input, projects, rowType);
+        assert getConvention() == ElasticsearchRel.CONVENTION;
+        // The input may be in another convention; see ElasticsearchRel.
+    }
+
+    @Override
+    public Project copy(RelTraitSet traitSet, RelNode input,
+            List<RexNode> projects, RelDataType rowType) {
+        return new ElasticsearchProject(getCluster(), traitSet, input,
+                projects, rowType);
+    }
+
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner) {
+        // Nearly free; the saving shows up in the cost of the converter,
+        // which fetches fewer fields.
+        return super.computeSelfCost(planner).multiplyBy(.001);
+    }
+
+    public void implement(Implementor implementor) {
+        implementor.visitChild(0, getInput());
+        final List<String> fieldNames = new ArrayList<String>();
+        for (RexNode project : getProjects()) {
+            fieldNames.add(
+                    ElasticsearchFunctions.isScore(project)
+                            ? ElasticsearchEnumerator.SCORE_FIELD
+                            : implementor.fieldNames.get(
+                                    ((RexInputRef) project).getIndex()));
+        }
+        implementor.fieldNames = fieldNames;
+    }
+}
+
+// End ElasticsearchProject.java
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.runtime.Hook;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Statistics of the requests that one execution of a search or aggregation
+ * has sent to the cluster.
+ *
+ * <p>When the execution has finished, that is, when its rows have all been
+ * read or it has been closed, the statistics are passed to
+ * {@link Hook#QUERY_STATS} and logged at level {@code FINE}. For example,
+ * to find slow queries:</p>
+ *
+ * <blockquote><pre>Hook.QUERY_STATS.add(
+ *     new Function&lt;Object, Void&gt;() {
+ *       public Void apply(Object o) {
+ *         if (o instanceof ElasticsearchQueryStats
+ *             &amp;&amp; ((ElasticsearchQueryStats) o).getTook() &gt; 1000) {
+ *           System.out.println(o);
+ *         }
+ *         return null;
+ *       }
+ *     });</pre></blockquote>
+ *
+ * <p>An execution whose rows come from the result cache sends no requests,
+ * and has no statistics.</p>
+ */
+public class ElasticsearchQueryStats {
+    private static final Logger LOGGER =
+            Logger.getLogger(ElasticsearchQueryStats.class.getName());
+
+    private final String request;
+    private int requests;
+    private int roundTrips;
+    private int shards;
+    private int failedShards;
+    private long totalHits;
+    private long hits;
+    private long bytes;
+    private long took;
+    private boolean finished;
+
+    /**
+     * Creates an ElasticsearchQueryStats.
+     *
+     * @param request Description of the request, as shown by EXPLAIN
+     */
+    ElasticsearchQueryStats(String request) {
+        this.request = request;
+    }
+
+    /** Returns the indices and type searched, and the body of the search,
+     * e.g. "logs/event {"query":...}". */
+    public String getRequest() {
+        return request;
+    }
+
+    /** Returns the number of searches; more than one if shards are read in
+     * parallel, or if the rows of a join are restricted. */
+    public synchronized int getRequests() {
+        return requests;
+    }
+
+    /** Returns the number of responses received, including scroll
+     * pages. */
+    public synchronized int getRoundTrips() {
+        return roundTrips;
+    }
+
+    /** Returns the number of shards searched, counted once per search. */
+    public synchronized int getShards() {
+        return shards;
+    }
+
+    /** Returns the number of shards that failed to answer a search. */
+    public synchronized int getFailedShards() {
+        return failedShards;
+    }
+
+    /** Returns the number of documents that matched the searches, whether
+     * or not they were returned. */
+    public synchronized long getTotalHits() {
+        return totalHits;
+    }
+
+    /** Returns the number of documents returned. */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** Returns the number of bytes of document source returned. */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /** Returns the total time that the cluster took to answer, in
+     * milliseconds. */
+    public synchronized long getTook() {
+        return took;
+    }
+
+    /** Records the response to a search. */
+    synchronized void search(SearchResponse response) {
+        ++requests;
+        shards += response.getTotalShards();
+        failedShards += response.getFailedShards();
+        totalHits += response.getHits().getTotalHits();
+        page(response);
+    }
+
+    /** Records the response to a search or to a scroll request. */
+    synchronized void page(SearchResponse response) {
+        ++roundTrips;
+        took += response.getTookInMillis();
+        for (SearchHit hit : response.getHits().getHits()) {
+            ++hits;
+            // A search that fetches only ids returns hits without source.
+            if (!hit.isSourceEmpty()) {
+                bytes += hit.getSourceRef().length();
+            }
+        }
+    }
+
+    /** Reports the statistics, unless they have already been reported. */
+    void finish() {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(toString());
+        }
+        Hook.QUERY_STATS.run(this);
+    }
+
+    /** Returns an enumerator that returns the rows of another, and reports
+     * the statistics when it has no more rows or is closed. */
+    Enumerator<Object> report(final Enumerator<Object> enumerator) {
+        return new Enumerator<Object>() {
+            public Object current() {
+                return enumerator.current();
+            }
+
+            public boolean moveNext() {
+                if (enumerator.moveNext()) {
+                    return true;
+                }
+                finish();
+                return false;
+            }
+
+            public void reset() {
+                enumerator.reset();
+            }
+
+            public void close() {
+                enumerator.close();
+                finish();
+            }
+        };
+    }
+
+    @Override public synchronized String toString() {
+        return request
+                + ": requests=" + requests
+                + ", roundTrips=" + roundTrips
+                + ", shards=" + shards
+                + ", failedShards=" + failedShards
+                + ", totalHits=" + totalHits
+                + ", hits=" + hits
+                + ", bytes=" + bytes
+                + ", took=" + took + "ms";
+    }
+}
+
+// End ElasticsearchQueryStats.java
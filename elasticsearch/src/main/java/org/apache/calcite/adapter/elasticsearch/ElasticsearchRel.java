@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.sql.SqlKind;
+
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Relational expression that uses Elasticsearch calling convention.
+ *
+ * <p>The input of such an expression is not always in Elasticsearch
+ * convention. Generic rules such as FilterProjectTransposeRule copy an
+ * expression onto inputs in other conventions; such copies cannot be
+ * implemented, and the planner does not choose them.</p>
+ */
+public interface ElasticsearchRel extends RelNode {
+    void implement(Implementor implementor);
+
+    /** Calling convention for relational operations that occur in
+     * Elasticsearch. */
+    Convention CONVENTION =
+            new Convention.Impl("ELASTICSEARCH", ElasticsearchRel.class);
+
+    /** Callback for the implementation process that converts a tree of
+     * {@link ElasticsearchRel} nodes into an Elasticsearch search request. */
+    class Implementor {
+        final List<FilterBuilder> filters = new ArrayList<FilterBuilder>();
+
+        /** Full-text queries, which rank the documents as well as select
+         * them; see {@link ElasticsearchFunctions}. */
+        final List<QueryBuilder> queries = new ArrayList<QueryBuilder>();
+
+        /** Names, in the document source, of the fields of the current
+         * relational expression. Each {@link ElasticsearchProject} replaces
+         * this list. */
+        List<String> fieldNames;
+
+        /** Sort keys: the name of each field, and its order as returned by
+         * {@link ElasticsearchSort}. */
+        final List<Map.Entry<String, String>> sort =
+                new ArrayList<Map.Entry<String, String>>();
+
+        /** Number of rows to skip. */
+        int offset = 0;
+
+        /** Maximum number of rows to return, or -1 if there is no limit. */
+        int fetch = -1;
+
+        /** Lowest and highest timestamp, inclusive, that the filters allow
+         * in the partitioning field of the table; see
+         * {@link ElasticsearchPartitioning}. */
+        long lowerTime = Long.MIN_VALUE;
+        long upperTime = Long.MAX_VALUE;
+
+        RelOptTable table;
+        ElasticsearchTable elasticsearchTable;
+
+        public void addFilter(FilterBuilder filter) {
+            filters.add(filter);
+        }
+
+        public void addQuery(QueryBuilder query) {
+            queries.add(query);
+        }
+
+        public void visitChild(int ordinal, RelNode input) {
+            assert ordinal == 0;
+            ((ElasticsearchRel) input).implement(this);
+        }
+
+        /** Returns an implementor that has visited a tree of relational
+         * expressions, or null if the tree is not yet complete, as while it
+         * is being planned. */
+        static Implementor of(RelNode input) {
+            for (RelNode node = input;;) {
+                if (!(node instanceof ElasticsearchRel)) {
+                    return null;
+                }
+                if (node.getInputs().isEmpty()) {
+                    break;
+                }
+                node = node.getInput(0);
+            }
+            final Implementor implementor = new Implementor();
+            implementor.visitChild(0, input);
+            return implementor;
+        }
+
+        /** Returns a description of the search request gathered so far, as
+         * shown by EXPLAIN. */
+        String describe() {
+            return elasticsearchTable.describe(indices(), query(), fieldNames,
+                    sort, offset, fetch);
+        }
+
+        /** Narrows the range of the partitioning field to the timestamps
+         * that a comparison allows.
+         *
+         * @param kind Comparison operator, with the field on the left
+         * @param millis Timestamp on the right, in milliseconds since the
+         *               epoch
+         */
+        void addTimeBound(SqlKind kind, long millis) {
+            switch (kind) {
+            case EQUALS:
+                lowerTime = Math.max(lowerTime, millis);
+                upperTime = Math.min(upperTime, millis);
+                break;
+            case GREATER_THAN:
+                lowerTime = Math.max(lowerTime, millis + 1);
+                break;
+            case GREATER_THAN_OR_EQUAL:
+                lowerTime = Math.max(lowerTime, millis);
+                break;
+            case LESS_THAN:
+                upperTime = Math.min(upperTime, millis - 1);
+                break;
+            case LESS_THAN_OR_EQUAL:
+                upperTime = Math.min(upperTime, millis);
+                break;
+            default:
+                break;
+            }
+        }
+
+        /** Returns the comma-separated names of the indices to search, or
+         * null to search the schema's index. Only the indices of a
+         * partitioned table that the filters allow are searched. */
+        String indices() {
+            final ElasticsearchPartitioning partitioning =
+                    elasticsearchTable.partitioning;
+            return partitioning == null
+                    ? null
+                    : partitioning.indices(lowerTime, upperTime);
+        }
+
+        /** Returns the query DSL for the queries and filters gathered so
+         * far, or null if every document matches. Without full-text queries,
+         * filters are wrapped in a {@code constant_score} query because rows
+         * are not ranked. */
+        String query() {
+            final FilterBuilder filter;
+            switch (filters.size()) {
+            case 0:
+                filter = null;
+                break;
+            case 1:
+                filter = filters.get(0);
+                break;
+            default:
+                filter = FilterBuilders.boolFilter().must(
+                        filters.toArray(new FilterBuilder[filters.size()]));
+            }
+            final QueryBuilder query;
+            switch (queries.size()) {
+            case 0:
+                return filter == null
+                        ? null
+                        : QueryBuilders.constantScoreQuery(filter).toString();
+            case 1:
+                query = queries.get(0);
+                break;
+            default:
+                final BoolQueryBuilder bool = QueryBuilders.boolQuery();
+                for (QueryBuilder q : queries) {
+                    bool.must(q);
+                }
+                query = bool;
+            }
+            return filter == null
+                    ? query.toString()
+                    : QueryBuilders.filteredQuery(query, filter).toString();
+        }
+    }
+}
+
+// End ElasticsearchRel.java
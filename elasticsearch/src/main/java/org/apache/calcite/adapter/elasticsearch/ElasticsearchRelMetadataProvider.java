@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.volcano.RelSubset;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.metadata.ChainedRelMetadataProvider;
+import org.apache.calcite.rel.metadata.ReflectiveRelMetadataProvider;
+import org.apache.calcite.rel.metadata.RelMdUtil;
+import org.apache.calcite.rel.metadata.RelMetadataProvider;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Metadata provider that answers questions about an
+ * {@link ElasticsearchTableScan} from the statistics of its table, and
+ * delegates everything else to the provider it wraps.
+ *
+ * <p>{@link ElasticsearchTable#toRel} installs it in the cluster.</p>
+ *
+ * @see ElasticsearchStatistic
+ */
+class ElasticsearchRelMetadataProvider extends ChainedRelMetadataProvider {
+    ElasticsearchRelMetadataProvider(RelMetadataProvider provider) {
+        this(provider, new Handler());
+    }
+
+    private ElasticsearchRelMetadataProvider(RelMetadataProvider provider,
+            Handler handler) {
+        super(
+                ImmutableList.of(
+                        ReflectiveRelMetadataProvider.reflectiveSource(
+                                BuiltInMethod.DISTINCT_ROW_COUNT.method,
+                                handler),
+                        ReflectiveRelMetadataProvider.reflectiveSource(
+                                BuiltInMethod.COLUMN_UNIQUENESS.method,
+                                handler),
+                        ReflectiveRelMetadataProvider.reflectiveSource(
+                                BuiltInMethod.SELECTIVITY.method, handler),
+                        provider));
+    }
+
+    /** Metadata handlers for {@link ElasticsearchTableScan}. Public, because
+     * they are invoked via reflection.
+     *
+     * <p>The Volcano planner asks about the set of equivalent expressions
+     * that a filter or aggregate reads, rather than the scan itself; if the
+     * set contains a scan, the handlers answer for that scan, otherwise
+     * they return null, and the wrapped provider answers.</p> */
+    public static class Handler {
+        public Double getDistinctRowCount(RelSubset subset,
+                ImmutableBitSet groupKey, RexNode predicate) {
+            final ElasticsearchTableScan scan = scan(subset);
+            return scan == null
+                    ? null
+                    : getDistinctRowCount(scan, groupKey, predicate);
+        }
+
+        public Boolean areColumnsUnique(RelSubset subset,
+                ImmutableBitSet columns, boolean ignoreNulls) {
+            final ElasticsearchTableScan scan = scan(subset);
+            return scan == null
+                    ? null
+                    : areColumnsUnique(scan, columns, ignoreNulls);
+        }
+
+        public Double getSelectivity(RelSubset subset, RexNode predicate) {
+            final ElasticsearchTableScan scan = scan(subset);
+            return scan == null ? null : getSelectivity(scan, predicate);
+        }
+
+        public Double getDistinctRowCount(ElasticsearchTableScan scan,
+                ImmutableBitSet groupKey, RexNode predicate) {
+            final double rowCount = RelMetadataQuery.getRowCount(scan);
+            double distinctRowCount = 1d;
+            for (int column : groupKey) {
+                final Double n = distinctRowCount(scan, column);
+                if (n == null) {
+                    return null;
+                }
+                distinctRowCount *= n;
+            }
+            distinctRowCount = Math.min(distinctRowCount, rowCount);
+            if (predicate == null || predicate.isAlwaysTrue()) {
+                return distinctRowCount;
+            }
+            return RelMdUtil.numDistinctVals(distinctRowCount,
+                    rowCount * getSelectivity(scan, predicate));
+        }
+
+        public Boolean areColumnsUnique(ElasticsearchTableScan scan,
+                ImmutableBitSet columns, boolean ignoreNulls) {
+            final int id = idColumn(scan);
+            return id >= 0 && columns.get(id);
+        }
+
+        /** Estimates the selectivity of a predicate. A condition
+         * "field = literal" selects one value in the number of distinct
+         * values of the field; other conditions are guessed. */
+        public Double getSelectivity(ElasticsearchTableScan scan,
+                RexNode predicate) {
+            if (predicate == null) {
+                return 1d;
+            }
+            double selectivity = 1d;
+            for (RexNode node : RelOptUtil.conjunctions(predicate)) {
+                final Integer column = equalsLiteral(node);
+                final Double n =
+                        column == null ? null : distinctRowCount(scan, column);
+                selectivity *= n == null || n < 1d
+                        ? RelMdUtil.guessSelectivity(node)
+                        : 1d / n;
+            }
+            return selectivity;
+        }
+
+        private static ElasticsearchTableScan scan(RelSubset subset) {
+            for (RelNode rel : subset.getRelList()) {
+                if (rel instanceof ElasticsearchTableScan) {
+                    return (ElasticsearchTableScan) rel;
+                }
+            }
+            return null;
+        }
+
+        /** Returns the number of distinct values of a column of a scan, or
+         * null if not known. Maps and arrays, which Elasticsearch cannot
+         * count, are not known. */
+        private static Double distinctRowCount(ElasticsearchTableScan scan,
+                int column) {
+            final RelDataTypeField field =
+                    scan.getRowType().getFieldList().get(column);
+            if (field.getType().getComponentType() != null
+                    || field.getType().getKeyType() != null) {
+                return null;
+            }
+            return scan.elasticsearchTable.statistic.getDistinctRowCount(
+                    field.getName());
+        }
+
+        /** Returns the ordinal of the document id in a scan's row type, or
+         * -1. */
+        private static int idColumn(ElasticsearchTableScan scan) {
+            return scan.getRowType().getFieldNames().indexOf(
+                    ElasticsearchEnumerator.ID_FIELD);
+        }
+
+        /** Returns the column that a condition compares to a literal, if the
+         * condition is "column = literal" or "literal = column", otherwise
+         * null. */
+        private static Integer equalsLiteral(RexNode node) {
+            if (node.getKind() != SqlKind.EQUALS) {
+                return null;
+            }
+            final List<RexNode> operands = ((RexCall) node).getOperands();
+            if (operands.get(0) instanceof RexInputRef
+                    && operands.get(1) instanceof RexLiteral) {
+                return ((RexInputRef) operands.get(0)).getIndex();
+            }
+            if (operands.get(1) instanceof RexInputRef
+                    && operands.get(0) instanceof RexLiteral) {
+                return ((RexInputRef) operands.get(1)).getIndex();
+            }
+            return null;
+        }
+    }
+}
+
+// End ElasticsearchRelMetadataProvider.java
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the rows returned by searches and aggregations, shared by the
+ * tables of a schema.
+ *
+ * <p>An entry is keyed by the request (indices, type, query, fields, sort
+ * and paging) and by the number of times the indices have been refreshed.
+ * A refresh makes new writes visible, so results computed before it are
+ * not reused. Entries also expire after a fixed time.</p>
+ *
+ * <p>The number of refreshes of some indices is read from the cluster at
+ * most once per {@link #GENERATION_TTL}, so that a cache hit usually makes
+ * no round trip. A result may therefore be used for up to that long after
+ * a refresh by another client; writes of this schema's tables read the
+ * number again.</p>
+ *
+ * <p>The cache holds at most {@code maxRows} rows in total; the least
+ * recently used entries are evicted first. A result with more rows than
+ * that is returned as it streams, and not cached.</p>
+ */
+class ElasticsearchResultCache {
+    private static final Logger LOGGER =
+            Logger.getLogger(ElasticsearchResultCache.class.getName());
+
+    /** How long the number of refreshes of indices is used before it is
+     * read again, in milliseconds; the default refresh interval. */
+    static final long GENERATION_TTL = 1000;
+
+    private final Client client;
+    private final long maxRows;
+    private final Cache<List<Object>, List<Object>> cache;
+    /** Number of refreshes of indices, by their comma-separated names, read
+     * within the last {@link #GENERATION_TTL}. */
+    private final Cache<String, Long> generations;
+    /** Number of times that the number of refreshes has been read from the
+     * cluster. */
+    private final AtomicLong generationReads = new AtomicLong();
+
+    /**
+     * Creates an ElasticsearchResultCache.
+     *
+     * @param client Elasticsearch client
+     * @param maxRows Maximum number of rows held
+     * @param ttl How long an entry is used, in milliseconds
+     */
+    ElasticsearchResultCache(Client client, long maxRows, long ttl) {
+        this.client = client;
+        this.maxRows = maxRows;
+        // One segment, so that the bound applies to the whole cache rather
+        // than to each segment, and a result of up to maxRows rows fits.
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maxRows)
+                .weigher(
+                        new Weigher<List<Object>, List<Object>>() {
+                            public int weigh(List<Object> key,
+                                    List<Object> rows) {
+                                return rows.size();
+                            }
+                        })
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.generations = CacheBuilder.newBuilder()
+                .expireAfterWrite(GENERATION_TTL, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /** Returns the numbers of hits, misses and evictions so far. */
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    /** Returns the number of rows held. */
+    long rowCount() {
+        long rowCount = 0;
+        for (List<Object> rows : cache.asMap().values()) {
+            rowCount += rows.size();
+        }
+        return rowCount;
+    }
+
+    /** Returns how many times the number of refreshes of indices has been
+     * read from the cluster. */
+    long generationReads() {
+        return generationReads.get();
+    }
+
+    /** Forgets the number of refreshes of all indices, so that the next
+     * lookup reads it from the cluster; called after this schema has
+     * written and refreshed. */
+    void invalidateGenerations() {
+        generations.invalidateAll();
+    }
+
+    /**
+     * Returns the rows of a request from the cache, or, if they are not
+     * there, an enumerable that executes the request and caches its rows
+     * once they have all been read.
+     *
+     * @param indices Comma-separated names of the indices that the request
+     *                reads
+     * @param lenient Whether some of the indices may not exist
+     * @param request Description of the request, other than its indices
+     * @param enumerable Executes the request
+     */
+    Enumerable<Object> get(final String indices, final boolean lenient,
+            final List<Object> request, final Enumerable<Object> enumerable) {
+        return new AbstractEnumerable<Object>() {
+            public Enumerator<Object> enumerator() {
+                final Long generation = generation(indices, lenient);
+                if (generation == null) {
+                    return enumerable.enumerator();
+                }
+                final List<Object> key = new ArrayList<Object>();
+                key.add(indices);
+                key.add(generation);
+                key.addAll(request);
+                final List<Object> rows = cache.getIfPresent(key);
+                if (rows != null) {
+                    return Linq4j.enumerator(rows);
+                }
+                return new CachingEnumerator(key, enumerable.enumerator());
+            }
+        };
+    }
+
+    /** Returns the total number of refreshes of the shards of some indices,
+     * or null if the cluster cannot say. */
+    private Long generation(String indices, boolean lenient) {
+        Long generation = generations.getIfPresent(indices);
+        if (generation == null) {
+            generation = readGeneration(indices, lenient);
+            if (generation != null) {
+                generations.put(indices, generation);
+            }
+        }
+        return generation;
+    }
+
+    /** Reads the total number of refreshes of the shards of some indices
+     * from the cluster, or returns null if the cluster cannot say. */
+    private Long readGeneration(String indices, boolean lenient) {
+        generationReads.incrementAndGet();
+        try {
+            return client.admin().indices().prepareStats(indices.split(","))
+                    .clear()
+                    .setRefresh(true)
+                    .setIndicesOptions(lenient
+                            ? IndicesOptions.lenientExpandOpen()
+                            : IndicesOptions.strictExpandOpen())
+                    .execute().actionGet()
+                    .getTotal().getRefresh().getTotal();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Cannot read refresh stats of " + indices,
+                    e);
+            return null;
+        }
+    }
+
+    /** Enumerator that returns the rows of another enumerator, keeping a
+     * copy, and caches the copy when there are no more rows. */
+    private class CachingEnumerator implements Enumerator<Object> {
+        private final List<Object> key;
+        private final Enumerator<Object> enumerator;
+        /** Rows read so far, or null if there are too many to cache. */
+        private List<Object> rows = new ArrayList<Object>();
+
+        CachingEnumerator(List<Object> key, Enumerator<Object> enumerator) {
+            this.key = key;
+            this.enumerator = enumerator;
+        }
+
+        public Object current() {
+            return enumerator.current();
+        }
+
+        public boolean moveNext() {
+            if (enumerator.moveNext()) {
+                if (rows != null) {
+                    rows.add(enumerator.current());
+                    if (rows.size() > maxRows) {
+                        rows = null;
+                    }
+                }
+                return true;
+            }
+            if (rows != null) {
+                cache.put(key, rows);
+                rows = null;
+            }
+            return false;
+        }
+
+        public void reset() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            enumerator.close();
+        }
+    }
+}
+
+// End ElasticsearchResultCache.java
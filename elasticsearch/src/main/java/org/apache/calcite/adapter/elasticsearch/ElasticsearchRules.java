@@ -0,0 +1,577 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.RelTrait;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.plan.volcano.RelSubset;
+import org.apache.calcite.plan.volcano.VolcanoPlanner;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelFieldCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.logical.LogicalAggregate;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
+import org.apache.calcite.rel.logical.LogicalProject;
+import org.apache.calcite.rel.rules.ProjectRemoveRule;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexPermuteInputsShuttle;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.mapping.Mappings;
+import org.apache.calcite.util.trace.CalciteTrace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Rules and relational operators for
+ * {@link ElasticsearchRel#CONVENTION ELASTICSEARCH}
+ * calling convention.
+ */
+public class ElasticsearchRules {
+    private ElasticsearchRules() {}
+
+    protected static final Logger LOGGER = CalciteTrace.getPlannerTracer();
+
+    public static final RelOptRule[] RULES = {
+        ElasticsearchFilterRule.INSTANCE,
+        ElasticsearchProjectRule.INSTANCE,
+        ElasticsearchAggregateRule.INSTANCE,
+        ElasticsearchSortRule.INSTANCE,
+        ElasticsearchJoinRule.INSTANCE,
+    };
+    /** Base class for planner rules that convert a relational expression to
+     * Elasticsearch calling convention. */
+    abstract static class ElasticsearchConverterRule extends ConverterRule {
+        protected final Convention out;
+
+        public ElasticsearchConverterRule(
+                Class<? extends RelNode> clazz,
+                RelTrait in,
+                Convention out,
+                String description) {
+            super(clazz, in, out, description);
+            this.out = out;
+        }
+    }
+
+    /**
+     * Rule to push a {@link org.apache.calcite.rel.logical.LogicalFilter}
+     * into Elasticsearch as an {@link ElasticsearchFilter}.
+     *
+     * <p>Conjunctions that cannot be expressed in the query DSL stay in a
+     * {@link LogicalFilter} above the {@link ElasticsearchFilter}, so a
+     * condition such as {@code status = 500 AND f(msg)} still sends
+     * {@code status = 500} to the cluster.</p>
+     */
+    private static class ElasticsearchFilterRule extends RelOptRule {
+        private static final ElasticsearchFilterRule INSTANCE =
+                new ElasticsearchFilterRule();
+
+        private ElasticsearchFilterRule() {
+            super(operand(LogicalFilter.class, Convention.NONE, any()),
+                    "ElasticsearchFilterRule");
+        }
+
+        public void onMatch(RelOptRuleCall call) {
+            final LogicalFilter filter = call.rel(0);
+            final ElasticsearchFilter.Translator translator =
+                    new ElasticsearchFilter.Translator(
+                            filter.getInput().getRowType().getFieldNames(),
+                            analyzedFields(filter.getInput()));
+            final List<RexNode> pushed = new ArrayList<RexNode>();
+            final List<RexNode> remaining = new ArrayList<RexNode>();
+            for (RexNode node : RelOptUtil.conjunctions(filter.getCondition())) {
+                if (translator.translate(node) != null) {
+                    pushed.add(node);
+                } else {
+                    remaining.add(node);
+                }
+            }
+            if (pushed.isEmpty()) {
+                return;
+            }
+            final RelOptCluster cluster = filter.getCluster();
+            final RelTraitSet traitSet =
+                    filter.getTraitSet().replace(ElasticsearchRel.CONVENTION);
+            RelNode rel = new ElasticsearchFilter(cluster, traitSet,
+                    convert(filter.getInput(), ElasticsearchRel.CONVENTION),
+                    RexUtil.composeConjunction(cluster.getRexBuilder(),
+                            pushed, false));
+            if (!remaining.isEmpty()) {
+                rel = LogicalFilter.create(rel,
+                        RexUtil.composeConjunction(cluster.getRexBuilder(),
+                                remaining, false));
+            }
+            call.transformTo(rel);
+        }
+    }
+
+    /**
+     * Rule to push the fields referenced by a
+     * {@link org.apache.calcite.rel.logical.LogicalProject} into
+     * Elasticsearch as an {@link ElasticsearchProject}.
+     *
+     * <p>If the project computes expressions, only the fields that the
+     * expressions use are pushed, and a {@link LogicalProject} above
+     * evaluates the expressions.</p>
+     *
+     * <p>Calls to {@code SCORE()} are always pushed, because only
+     * Elasticsearch can evaluate them.</p>
+     */
+    private static class ElasticsearchProjectRule extends RelOptRule {
+        private static final ElasticsearchProjectRule INSTANCE =
+                new ElasticsearchProjectRule();
+
+        private ElasticsearchProjectRule() {
+            super(operand(LogicalProject.class, Convention.NONE, any()),
+                    "ElasticsearchProjectRule");
+        }
+
+        public void onMatch(RelOptRuleCall call) {
+            final LogicalProject project = call.rel(0);
+            final RelNode input = project.getInput();
+            final RelTraitSet traitSet =
+                    project.getTraitSet().replace(ElasticsearchRel.CONVENTION);
+            if (ProjectRemoveRule.isTrivial(project)) {
+                return;
+            }
+            boolean refsOnly = true;
+            for (RexNode node : project.getProjects()) {
+                refsOnly &= node instanceof RexInputRef
+                        || ElasticsearchFunctions.isScore(node);
+            }
+            if (refsOnly) {
+                call.transformTo(
+                        new ElasticsearchProject(project.getCluster(), traitSet,
+                                convert(input, ElasticsearchRel.CONVENTION),
+                                project.getProjects(), project.getRowType()));
+                return;
+            }
+            final ImmutableBitSet used =
+                    RelOptUtil.InputFinder.bits(project.getProjects(), null);
+            final boolean score =
+                    ElasticsearchFunctions.containsScore(project.getProjects());
+            if (used.cardinality() == input.getRowType().getFieldCount()
+                    && !score) {
+                return;
+            }
+            final RexBuilder rexBuilder = project.getCluster().getRexBuilder();
+            final List<RexNode> refs = new ArrayList<RexNode>();
+            final List<String> names = new ArrayList<String>();
+            for (int i : used) {
+                refs.add(rexBuilder.makeInputRef(input, i));
+                names.add(input.getRowType().getFieldNames().get(i));
+            }
+            // Permutes field references, and replaces calls to SCORE() with
+            // a reference to the score, which is pushed after the fields.
+            final int scoreOrdinal = refs.size();
+            final RexPermuteInputsShuttle shuttle =
+                    new RexPermuteInputsShuttle(
+                            Mappings.target(used.toList(),
+                                    input.getRowType().getFieldCount())) {
+                        @Override public RexNode visitCall(RexCall call) {
+                            if (ElasticsearchFunctions.isScore(call)) {
+                                if (refs.size() == scoreOrdinal) {
+                                    refs.add(call);
+                                    names.add(
+                                            ElasticsearchEnumerator.SCORE_FIELD);
+                                }
+                                return new RexInputRef(scoreOrdinal,
+                                        call.getType());
+                            }
+                            return super.visitCall(call);
+                        }
+                    };
+            final List<RexNode> projects = new ArrayList<RexNode>();
+            for (RexNode node : project.getProjects()) {
+                projects.add(node.accept(shuttle));
+            }
+            final RelNode esProject =
+                    new ElasticsearchProject(project.getCluster(), traitSet,
+                            convert(input, ElasticsearchRel.CONVENTION), refs,
+                            RexUtil.createStructType(
+                                    project.getCluster().getTypeFactory(),
+                                    refs, names));
+            call.transformTo(
+                    LogicalProject.create(esProject, projects,
+                            project.getRowType()));
+        }
+    }
+
+    /**
+     * Rule to convert a {@link LogicalAggregate} to an
+     * {@link ElasticsearchAggregate}.
+     *
+     * <p>Analyzed fields cannot be group keys or arguments; see
+     * {@link ElasticsearchTable#analyzedFields}.</p>
+     */
+    private static class ElasticsearchAggregateRule extends ElasticsearchConverterRule {
+        private static final ElasticsearchAggregateRule INSTANCE =
+                new ElasticsearchAggregateRule();
+
+        private ElasticsearchAggregateRule() {
+            super(LogicalAggregate.class, Convention.NONE,
+                    EnumerableConvention.INSTANCE, "ElasticsearchAggregateRule");
+        }
+
+        public RelNode convert(RelNode rel) {
+            final LogicalAggregate agg = (LogicalAggregate) rel;
+            final RelTraitSet traitSet =
+                    agg.getTraitSet().replace(out);
+            final List<Integer> fields =
+                    new ArrayList<Integer>(agg.getGroupSet().asList());
+            for (AggregateCall aggCall : agg.getAggCallList()) {
+                fields.addAll(aggCall.getArgList());
+            }
+            for (int field : fields) {
+                if (isScore(agg.getInput(), field)) {
+                    // Elasticsearch cannot aggregate relevance.
+                    return null;
+                }
+            }
+            for (int field : fields) {
+                if (isAnalyzed(agg.getInput(), field)) {
+                    // A terms aggregation would group by words, and a metric
+                    // such as cardinality would count words, not values.
+                    return null;
+                }
+            }
+            // The arguments of an approximate function after the first are
+            // parameters of its metric, and must be literals. They are
+            // replaced in the input by a reference to a field, so that the
+            // input can be pushed down.
+            final List<Integer> parameterFields = new ArrayList<Integer>();
+            for (AggregateCall aggCall : agg.getAggCallList()) {
+                if (ElasticsearchFunctions.metric(aggCall.getAggregation())
+                        != null) {
+                    parameterFields.addAll(
+                            aggCall.getArgList().subList(1,
+                                    aggCall.getArgList().size()));
+                }
+            }
+            final List<Integer> valueFields =
+                    new ArrayList<Integer>(agg.getGroupSet().asList());
+            for (AggregateCall aggCall : agg.getAggCallList()) {
+                valueFields.addAll(
+                        ElasticsearchFunctions.metric(aggCall.getAggregation())
+                                == null
+                                ? aggCall.getArgList()
+                                : aggCall.getArgList().subList(0, 1));
+            }
+            if (!Collections.disjoint(valueFields, parameterFields)) {
+                return null;
+            }
+            RelNode input = agg.getInput();
+            Project project = null;
+            if (!parameterFields.isEmpty()) {
+                project = literalProject(input, parameterFields);
+                if (project == null) {
+                    return null;
+                }
+                final List<RexNode> exprs =
+                        new ArrayList<RexNode>(project.getProjects());
+                for (int field : parameterFields) {
+                    exprs.set(field,
+                            rel.getCluster().getRexBuilder().makeInputRef(
+                                    project.getInput(), 0));
+                }
+                input = LogicalProject.create(project.getInput(), exprs,
+                        project.getRowType().getFieldNames());
+            }
+            final List<AggregateCall> aggCalls = new ArrayList<AggregateCall>();
+            for (AggregateCall aggCall : agg.getAggCallList()) {
+                if (ElasticsearchFunctions.metric(aggCall.getAggregation())
+                        == null) {
+                    aggCalls.add(aggCall);
+                    continue;
+                }
+                final List<Number> parameters = new ArrayList<Number>();
+                for (int field : aggCall.getArgList().subList(1,
+                        aggCall.getArgList().size())) {
+                    parameters.add(literalValue(project.getProjects().get(field)));
+                }
+                final AggregateCall metricCall =
+                        ElasticsearchAggregate.metricCall(aggCall, parameters);
+                if (metricCall == null) {
+                    return null;
+                }
+                aggCalls.add(metricCall);
+            }
+            try {
+                return new ElasticsearchAggregate(
+                        rel.getCluster(),
+                        traitSet,
+                        convert(input, ElasticsearchRel.CONVENTION),
+                        agg.indicator,
+                        agg.getGroupSet(),
+                        agg.getGroupSets(),
+                        aggCalls);
+            } catch (InvalidRelException e) {
+                LOGGER.fine(e.toString());
+                return null;
+            }
+        }
+    }
+
+    /** Returns whether a field of a relational expression is the score of
+     * each hit. If the expression is a set of equivalent expressions, looks
+     * at each of them. */
+    private static boolean isScore(RelNode rel, int field) {
+        if (rel instanceof RelSubset) {
+            for (RelNode rel2 : ((RelSubset) rel).getRelList()) {
+                if (isScore(rel2, field)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return rel instanceof Project
+                && ElasticsearchFunctions.isScore(
+                        ((Project) rel).getProjects().get(field));
+    }
+
+    /** Returns whether a field of a relational expression reads an analyzed
+     * field of an Elasticsearch type; see
+     * {@link ElasticsearchTable#analyzedFields}. Looks through filters, sorts
+     * and projections to the scan, and at each of a set of equivalent
+     * expressions. */
+    static boolean isAnalyzed(RelNode rel, int field) {
+        return isAnalyzed(rel, field, new HashSet<RelNode>());
+    }
+
+    private static boolean isAnalyzed(RelNode rel, int field,
+            Set<RelNode> visited) {
+        if (!visited.add(rel)) {
+            return false;
+        }
+        if (rel instanceof RelSubset) {
+            for (RelNode rel2 : ((RelSubset) rel).getRelList()) {
+                if (isAnalyzed(rel2, field, visited)) {
+                    return true;
+                }
+            }
+            // The scan is registered only in Elasticsearch convention, so
+            // until it is converted, a subset in another convention does
+            // not contain it.
+            final RelSubset subset = elasticsearchSubset(rel);
+            return subset != null && isAnalyzed(subset, field, visited);
+        }
+        if (rel instanceof ElasticsearchTableScan) {
+            final ElasticsearchTableScan scan = (ElasticsearchTableScan) rel;
+            final ElasticsearchTable table = scan.elasticsearchTable;
+            return table.analyzedFields.contains(
+                    table.columnNames.get(scan.fields[field]));
+        }
+        if (rel instanceof Filter || rel instanceof Sort) {
+            return isAnalyzed(rel.getInput(0), field, visited);
+        }
+        if (rel instanceof Project) {
+            final RexNode node = ((Project) rel).getProjects().get(field);
+            return node instanceof RexInputRef
+                    && isAnalyzed(rel.getInput(0),
+                            ((RexInputRef) node).getIndex(), visited);
+        }
+        return false;
+    }
+
+    /** Returns the subset in Elasticsearch convention that is equivalent to
+     * a subset, or null if there is none. */
+    private static RelSubset elasticsearchSubset(RelNode rel) {
+        final RelOptPlanner planner = rel.getCluster().getPlanner();
+        if (!(planner instanceof VolcanoPlanner)) {
+            return null;
+        }
+        return ((VolcanoPlanner) planner).getSubset(rel,
+                rel.getTraitSet().replace(ElasticsearchRel.CONVENTION));
+    }
+
+    /** Returns the names of the fields of a relational expression that are
+     * analyzed fields of an Elasticsearch type. */
+    static Set<String> analyzedFields(RelNode rel) {
+        final List<String> fieldNames = rel.getRowType().getFieldNames();
+        final Set<String> names = new HashSet<String>();
+        for (int i = 0; i < fieldNames.size(); i++) {
+            if (isAnalyzed(rel, i)) {
+                names.add(fieldNames.get(i));
+            }
+        }
+        return names;
+    }
+
+    /** Returns a projection, among a set of equivalent expressions, whose
+     * fields are numeric literals at the given positions, or null if there
+     * is none. */
+    private static Project literalProject(RelNode rel,
+            List<Integer> fields) {
+        if (rel instanceof RelSubset) {
+            for (RelNode rel2 : ((RelSubset) rel).getRelList()) {
+                final Project project = literalProject(rel2, fields);
+                if (project != null) {
+                    return project;
+                }
+            }
+            return null;
+        }
+        if (!(rel instanceof Project)) {
+            return null;
+        }
+        final Project project = (Project) rel;
+        for (int field : fields) {
+            if (literalValue(project.getProjects().get(field)) == null) {
+                return null;
+            }
+        }
+        return project;
+    }
+
+    /** Returns the value of a numeric literal, possibly cast, or null if an
+     * expression is not one. */
+    private static Number literalValue(RexNode node) {
+        if (node.getKind() == SqlKind.CAST) {
+            node = ((RexCall) node).getOperands().get(0);
+        }
+        if (node instanceof RexLiteral
+                && ((RexLiteral) node).getValue() instanceof Number) {
+            return (Number) ((RexLiteral) node).getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Rule to convert a {@link org.apache.calcite.rel.core.Sort} to an
+     * {@link ElasticsearchSort}.
+     *
+     * <p>The document id cannot be sorted on, and offset and fetch must be
+     * literals. Nor can an analyzed field, which the cluster would sort by
+     * one of its terms, or an object or array field.</p>
+     */
+    private static class ElasticsearchSortRule extends ElasticsearchConverterRule {
+        private static final ElasticsearchSortRule INSTANCE =
+                new ElasticsearchSortRule();
+
+        private ElasticsearchSortRule() {
+            super(Sort.class, Convention.NONE, EnumerableConvention.INSTANCE,
+                    "ElasticsearchSortRule");
+        }
+
+        public RelNode convert(RelNode rel) {
+            final Sort sort = (Sort) rel;
+            if (sort.offset != null && !(sort.offset instanceof RexLiteral)
+                    || sort.fetch != null && !(sort.fetch instanceof RexLiteral)) {
+                return null;
+            }
+            final List<RelDataTypeField> fields =
+                    sort.getInput().getRowType().getFieldList();
+            for (RelFieldCollation fieldCollation
+                    : sort.getCollation().getFieldCollations()) {
+                final int i = fieldCollation.getFieldIndex();
+                final RelDataType type = fields.get(i).getType();
+                if (ElasticsearchEnumerator.ID_FIELD.equals(
+                        fields.get(i).getName())
+                        || type.getKeyType() != null
+                        || type.getComponentType() != null
+                        || isAnalyzed(sort.getInput(), i)) {
+                    return null;
+                }
+            }
+            final RelTraitSet traitSet =
+                    sort.getTraitSet().replace(out)
+                            .replace(sort.getCollation());
+            return new ElasticsearchSort(rel.getCluster(), traitSet,
+                    convert(sort.getInput(),
+                            sort.getInput().getTraitSet()
+                                    .replace(ElasticsearchRel.CONVENTION)
+                                    .replace(RelCollations.EMPTY)),
+                    sort.getCollation(), sort.offset, sort.fetch);
+        }
+    }
+
+    /**
+     * Rule to convert an inner equi-join of a
+     * {@link org.apache.calcite.rel.logical.LogicalJoin} whose right input
+     * can be a search to an {@link ElasticsearchJoin}.
+     *
+     * <p>The right input is converted to Elasticsearch calling convention; if
+     * it is not an Elasticsearch table, the join cannot be implemented, and
+     * the planner chooses another.</p>
+     */
+    private static class ElasticsearchJoinRule extends ElasticsearchConverterRule {
+        private static final ElasticsearchJoinRule INSTANCE =
+                new ElasticsearchJoinRule();
+
+        private ElasticsearchJoinRule() {
+            super(LogicalJoin.class, Convention.NONE,
+                    EnumerableConvention.INSTANCE, "ElasticsearchJoinRule");
+        }
+
+        public RelNode convert(RelNode rel) {
+            final LogicalJoin join = (LogicalJoin) rel;
+            if (join.getJoinType() != JoinRelType.INNER) {
+                return null;
+            }
+            final JoinInfo info = join.analyzeCondition();
+            if (!info.isEqui() || info.leftKeys.isEmpty()
+                    || isScore(join.getRight(), info.rightKeys.get(0))
+                    || isAnalyzed(join.getRight(), info.rightKeys.get(0))) {
+                // The filter is on the first right key, which must be a
+                // field of the documents, indexed as its values.
+                return null;
+            }
+            final RelNode left = convert(join.getLeft(),
+                    join.getLeft().getTraitSet().replace(out));
+            final RelNode right = convert(join.getRight(),
+                    join.getRight().getTraitSet()
+                            .replace(ElasticsearchRel.CONVENTION));
+            return new ElasticsearchJoin(join.getCluster(),
+                    join.getTraitSet().replace(out), left, right,
+                    info.getEquiCondition(left, right,
+                            join.getCluster().getRexBuilder()),
+                    info.leftKeys, info.rightKeys,
+                    join.getVariablesStopped());
+        }
+    }
+}
+
+// End ElasticsearchRules.java
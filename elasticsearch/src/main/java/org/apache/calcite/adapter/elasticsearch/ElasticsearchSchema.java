@@ -1,46 +1,552 @@
 package org.apache.calcite.adapter.elasticsearch;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.apache.calcite.schema.Function;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.impl.AbstractSchema;
-import org.apache.commons.lang.exception.ExceptionUtils;
-import org.apache.metamodel.DataContextFactory;
-import org.apache.metamodel.UpdateableDataContext;
-import org.apache.metamodel.schema.Schema;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.client.transport.TransportClient;
-import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.hppc.cursors.ObjectObjectCursor;
 
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Schema mapped onto an Elasticsearch index. Each document type in the
+ * index is a table.
+ *
+ * <p>Tables are built from the index's {@code _mapping} when they are first
+ * asked for, and kept for a configurable time. After that, the cached
+ * tables are still returned while a background thread reloads the
+ * mapping.</p>
+ *
+ * <p>The schema holds a client from {@link ElasticsearchClientRegistry},
+ * shared with other schemas on the same cluster; {@link #close()} releases
+ * it. A Calcite connection closes the schemas of its model when it is
+ * closed.</p>
+ */
+public class ElasticsearchSchema extends AbstractSchema implements Closeable {
+	/** Default time for which table metadata is cached, in milliseconds. */
+	static final long METADATA_TTL = 60000;
+
+	/** Default number of times a document rejected by the cluster is
+	 * sent again. */
+	static final int BULK_RETRIES = 3;
+
+	/** Default maximum number of join keys sent to the cluster as a
+	 * filter. */
+	static final int JOIN_FILTER_SIZE = 1024;
+
+	/** Default time for which cached results are used, in milliseconds. */
+	static final long CACHE_TTL = 60000;
+
+	/** Default time between polls of a stream that has caught up, in
+	 * milliseconds. */
+	static final long STREAM_POLL_INTERVAL = 1000;
+
+	/** Default age below which documents are not read by a stream over a
+	 * date field, in milliseconds; the default refresh interval. */
+	static final long STREAM_LAG = 1000;
+
+	/** Numeric types of fields, integers from narrowest to widest, then
+	 * floating-point. */
+	private static final List<String> NUMBER_TYPES =
+			ImmutableList.of("byte", "short", "integer", "long", "float",
+					"double");
+
+	private static final Logger LOGGER =
+			Logger.getLogger(ElasticsearchSchema.class.getName());
+
+	/** Reloads the mappings of schemas whose tables have expired. */
+	private static final ExecutorService REFRESHER =
+			Executors.newSingleThreadExecutor(
+					new ThreadFactoryBuilder()
+							.setDaemon(true)
+							.setNameFormat("elasticsearch-mapping-refresh")
+							.build());
+
+	Client client;
+	String index;
+	/** Number of hits to fetch from each shard per scroll round-trip. */
+	int fetchSize;
+	/** Maximum number of shards scanned at the same time by a query. */
+	int parallelism;
+	/** How long table metadata is used before it is reloaded, in
+	 * milliseconds. */
+	final long metadataTtl;
+	/** Maximum number of documents per bulk request. */
+	final int bulkSize;
+	/** Maximum number of bulk requests in flight. */
+	final int bulkConcurrency;
+	/** How many times a document rejected by the cluster is sent again. */
+	final int bulkRetries;
+	/** Maximum number of distinct join keys with which a search is
+	 * restricted; see {@link ElasticsearchJoin}. */
+	final int joinFilterSize;
+	/** How documents are partitioned into indices by time, or null. */
+	final ElasticsearchPartitioning partitioning;
+	/** Cache of search results, or null if results are not cached. */
+	final ElasticsearchResultCache cache;
+	/** Name of the ascending field by which types are streamed, or null;
+	 * see {@link ElasticsearchStreamTable}. */
+	final String streamField;
+	/** Time between polls of a stream that has caught up, in
+	 * milliseconds. */
+	final long streamPollInterval;
+	/** Age below which documents are not read by a stream over a date
+	 * field, in milliseconds. */
+	final long streamLag;
+	/** Directory that holds the position of each stream, or null if
+	 * positions are not kept. */
+	final File streamCheckpointDir;
+	/** Whether filters, projections, sorts, aggregations and joins are
+	 * pushed down to the cluster; if false, queries only scan. */
+	final boolean pushdown;
+	private volatile Map<String, Table> tableMap;
+	private volatile long loadTime;
+	/** When the tables last changed: a type was added or removed, or its
+	 * mapping changed. */
+	private volatile long changeTime;
+	private final AtomicBoolean refreshing = new AtomicBoolean();
 
-public class ElasticsearchSchema extends AbstractSchema {
-	UpdateableDataContext esdc;
-	
 	public ElasticsearchSchema(String host, String index) {
+		this(builder(Collections.singletonList(host), index));
+	}
+
+	/** Creates an Elasticsearch schema from the options of a builder. */
+	protected ElasticsearchSchema(Builder builder) {
 		super();
-		try {
-			final Client client = new TransportClient()
-	                .addTransportAddress(new InetSocketTransportAddress(host, 9300));
-			final String indexName = index;
-			this.esdc = DataContextFactory.createElasticSearchDataContext(client, indexName);
-			
-		} catch (Exception e) {
-			e.getStackTrace();
-		}
-	}
-	
-	/* (non-Javadoc)
-	 * @see org.apache.calcite.schema.impl.AbstractSchema#getTableMap()
+		this.fetchSize = builder.fetchSize;
+		this.parallelism = builder.parallelism;
+		this.metadataTtl = builder.metadataTtl;
+		this.bulkSize = builder.bulkSize;
+		this.bulkConcurrency = builder.bulkConcurrency;
+		this.bulkRetries = builder.bulkRetries;
+		this.joinFilterSize = builder.joinFilterSize;
+		if ((builder.partitionField == null)
+				!= (builder.partitionFormat == null)) {
+			throw new IllegalArgumentException(
+					"partitionField and partitionFormat must be specified together");
+		}
+		this.partitioning = builder.partitionField == null
+				? null
+				: new ElasticsearchPartitioning(builder.partitionField,
+						builder.partitionFormat);
+		this.streamField = builder.streamField;
+		this.streamPollInterval = builder.streamPollInterval;
+		this.streamLag = builder.streamLag;
+		this.streamCheckpointDir = builder.streamCheckpointDir == null
+				? null
+				: new File(builder.streamCheckpointDir);
+		this.pushdown = builder.pushdown;
+		this.index = builder.index;
+		this.client = ElasticsearchClientRegistry.acquire(builder.hosts,
+				builder.settings);
+		this.cache = builder.cacheSize > 0
+				? new ElasticsearchResultCache(client, builder.cacheSize,
+						builder.cacheTtl)
+				: null;
+	}
+
+	/**
+	 * Creates a builder of an Elasticsearch schema, whose options have
+	 * their default values.
+	 *
+	 * @param hosts Addresses of cluster nodes, each "host" or "host:port"
+	 * @param index Index name, e.g. "logs"
 	 */
+	public static Builder builder(List<String> hosts, String index) {
+		return new Builder(hosts, index);
+	}
+
+	/** Releases the client; it is closed if no other schema uses it. */
+	public synchronized void close() {
+		if (client != null) {
+			ElasticsearchClientRegistry.release(client);
+			client = null;
+		}
+	}
+
+	/** Returns the hit and miss counts of the result cache, or null if
+	 * results are not cached. */
+	public CacheStats getCacheStats() {
+		return cache == null ? null : cache.stats();
+	}
+
+	/** Returns the full-text search functions; see
+	 * {@link ElasticsearchFunctions}. */
+	@Override
+	protected Multimap<String, Function> getFunctionMultimap() {
+		return ElasticsearchFunctions.FUNCTIONS;
+	}
+
+	/** Returns whether the tables have changed since a given time. Calcite
+	 * calls this before it uses the table names that it has cached, so that
+	 * it sees the types that a reload of the mapping has added or
+	 * removed. */
+	@Override
+	public boolean contentsHaveChangedSince(long lastCheck, long now) {
+		if (tableMap != null) {
+			reloadIfExpired();
+		}
+		return changeTime >= lastCheck;
+	}
+
 	@Override
 	protected Map<String, Table> getTableMap() {
-		// TODO Auto-generated method stub
-		final ImmutableMap.Builder<String, Table> builder = ImmutableMap.builder();
-		Schema schema = esdc.getDefaultSchema();
-		for (org.apache.metamodel.schema.Table table: schema.getTables()) {
-			builder.put(table.getName(), new ElasticsearchTable(table, esdc));
+		final Map<String, Table> map = tableMap;
+		if (map == null) {
+			synchronized (this) {
+				if (tableMap == null) {
+					load();
+				}
+				return tableMap;
+			}
+		}
+		reloadIfExpired();
+		return map;
+	}
+
+	/** Starts to reload the mapping in the background, if the tables have
+	 * expired and are not already being reloaded. */
+	private void reloadIfExpired() {
+		if (System.currentTimeMillis() - loadTime > metadataTtl
+				&& refreshing.compareAndSet(false, true)) {
+			REFRESHER.execute(new Runnable() {
+				public void run() {
+					try {
+						load();
+					} catch (RuntimeException e) {
+						// Keep the current tables; the next lookup retries.
+						LOGGER.log(Level.WARNING,
+								"Cannot reload mapping of index " + index, e);
+					} finally {
+						refreshing.set(false);
+					}
+				}
+			});
+		}
+	}
+
+	/** Reads the mapping of the index, and builds a table for each document
+	 * type, a stream table for each type that has the stream field, and
+	 * the table of cache counters if results are cached.
+	 * Tables whose mapping has not changed are kept. If the index is an
+	 * alias or pattern of several indices, the mappings of a type in each
+	 * are merged; see {@link #merge}. */
+	private synchronized void load() {
+		if (client == null) {
+			throw new IllegalStateException("schema is closed");
+		}
+		final ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>>
+				mappings = client.admin().indices().prepareGetMappings(index)
+						.execute().actionGet().getMappings();
+		final Map<String, Map<String, Object>> typeProperties =
+				new LinkedHashMap<String, Map<String, Object>>();
+		for (ObjectObjectCursor<String, ImmutableOpenMap<String, MappingMetaData>>
+				indexMappings : mappings) {
+			for (ObjectObjectCursor<String, MappingMetaData> type
+					: indexMappings.value) {
+				final Map<String, Object> properties = properties(type.value);
+				final Map<String, Object> previous =
+						typeProperties.get(type.key);
+				typeProperties.put(type.key,
+						previous == null
+								? properties
+								: merge(type.key, "", previous, properties));
+			}
+		}
+		final Map<String, Table> previous = tableMap;
+		final Map<String, Table> tables = new LinkedHashMap<String, Table>();
+		boolean changed = false;
+		for (Map.Entry<String, Map<String, Object>> entry
+				: typeProperties.entrySet()) {
+			final Map<String, Object> properties = entry.getValue();
+			final Table table = previous == null ? null : previous.get(entry.getKey());
+			if (table != null
+					&& ((ElasticsearchTable) table).properties.equals(properties)) {
+				tables.put(entry.getKey(), table);
+			} else {
+				tables.put(entry.getKey(),
+						new ElasticsearchTable(this, entry.getKey(), properties));
+				changed = true;
+			}
+		}
+		if (streamField != null) {
+			for (Table table : new ArrayList<Table>(tables.values())) {
+				final ElasticsearchTable esTable = (ElasticsearchTable) table;
+				final String name = esTable.tableName + ElasticsearchStreamTable.SUFFIX;
+				if (esTable.properties.containsKey(streamField)
+						&& !tables.containsKey(name)) {
+					tables.put(name, new ElasticsearchStreamTable(this, esTable));
+				}
+			}
+		}
+		if (cache != null) {
+			tables.put(ElasticsearchCacheStatsTable.NAME,
+					new ElasticsearchCacheStatsTable(cache));
+		}
+		tableMap = ImmutableMap.copyOf(tables);
+		loadTime = System.currentTimeMillis();
+		if (previous == null || changed
+				|| !tables.keySet().equals(previous.keySet())) {
+			changeTime = loadTime;
+		}
+	}
+
+	/** Merges the properties of a type's mapping in one index with those in
+	 * another. A field in either is in the result. A field that is a number
+	 * in both is widened to a type that holds the values of both. A field
+	 * that is analyzed, or not indexed, in either is so in the result, so
+	 * that no filter or aggregation is pushed down on it. The properties of
+	 * an object are merged. A field whose types cannot be reconciled is an
+	 * error. */
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> merge(String type, String prefix,
+			Map<String, Object> properties, Map<String, Object> properties2) {
+		final Map<String, Object> merged =
+				new LinkedHashMap<String, Object>(properties);
+		for (Map.Entry<String, Object> entry : properties2.entrySet()) {
+			final String name = entry.getKey();
+			final Object mapping = merged.get(name);
+			final Object mapping2 = entry.getValue();
+			if (mapping == null) {
+				merged.put(name, mapping2);
+			} else if (!mapping.equals(mapping2)) {
+				merged.put(name,
+						mergeField(type, prefix + name,
+								(Map<String, Object>) mapping,
+								(Map<String, Object>) mapping2));
+			}
+		}
+		return merged;
+	}
+
+	/** Merges the mappings of a field in two indices. */
+	private Map<String, Object> mergeField(String type, String field,
+			Map<String, Object> mapping, Map<String, Object> mapping2) {
+		final String fieldType = fieldType(mapping);
+		final String fieldType2 = fieldType(mapping2);
+		final Map<String, Object> merged;
+		if (fieldType.equals(fieldType2)) {
+			merged = new LinkedHashMap<String, Object>(
+					ElasticsearchTable.isAnalyzed(mapping2)
+							&& !ElasticsearchTable.isAnalyzed(mapping)
+							? mapping2
+							: mapping);
+			if (fieldType.equals("object") || fieldType.equals("nested")) {
+				merged.put("properties",
+						merge(type, field + ".",
+								properties(mapping), properties(mapping2)));
+			}
+			return merged;
+		}
+		final int i = NUMBER_TYPES.indexOf(fieldType);
+		final int i2 = NUMBER_TYPES.indexOf(fieldType2);
+		if (i < 0 || i2 < 0) {
+			throw new RuntimeException("Field '" + field + "' of type '" + type
+					+ "' is '" + fieldType + "' in one index of '" + index
+					+ "' and '" + fieldType2 + "' in another");
+		}
+		// Integers of different sizes widen to the larger, and floating-point
+		// numbers to double, as do integers mixed with floating-point.
+		final int floatIndex = NUMBER_TYPES.indexOf("float");
+		merged = new LinkedHashMap<String, Object>(mapping);
+		merged.put("type",
+				i < floatIndex && i2 < floatIndex
+						? NUMBER_TYPES.get(Math.max(i, i2))
+						: "double");
+		if (ElasticsearchTable.isAnalyzed(mapping2)) {
+			merged.put("index", "no");
+		}
+		return merged;
+	}
+
+	/** Returns the type in a field's mapping; "object" if it has none. */
+	private static String fieldType(Map<String, Object> mapping) {
+		final Object type = mapping.get("type");
+		return type == null ? "object" : String.valueOf(type);
+	}
+
+	/** Returns the properties in the mapping of an object field. */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> properties(Map<String, Object> mapping) {
+		final Object properties = mapping.get("properties");
+		return properties == null
+				? Collections.<String, Object>emptyMap()
+				: (Map<String, Object>) properties;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> properties(MappingMetaData mapping) {
+		try {
+			final Object properties = mapping.sourceAsMap().get("properties");
+			return properties == null
+					? Collections.<String, Object>emptyMap()
+					: (Map<String, Object>) properties;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Builder of an {@link ElasticsearchSchema}; see
+	 * {@link ElasticsearchSchemaFactory} for the meaning of each option. */
+	public static class Builder {
+		private final List<String> hosts;
+		private final String index;
+		private Map<String, String> settings =
+				Collections.<String, String>emptyMap();
+		private int fetchSize = ElasticsearchEnumerator.BATCH_SIZE;
+		private int parallelism = 1;
+		private long metadataTtl = METADATA_TTL;
+		private int bulkSize = ElasticsearchEnumerator.BATCH_SIZE;
+		private int bulkConcurrency = 1;
+		private int bulkRetries = BULK_RETRIES;
+		private int joinFilterSize = JOIN_FILTER_SIZE;
+		private String partitionField;
+		private String partitionFormat;
+		private long cacheSize;
+		private long cacheTtl = CACHE_TTL;
+		private String streamField;
+		private long streamPollInterval = STREAM_POLL_INTERVAL;
+		private long streamLag = STREAM_LAG;
+		private String streamCheckpointDir;
+		private boolean pushdown = true;
+
+		private Builder(List<String> hosts, String index) {
+			this.hosts = ImmutableList.copyOf(hosts);
+			this.index = index;
+		}
+
+		/** Sets the transport client settings, e.g. "cluster.name". */
+		public Builder settings(Map<String, String> settings) {
+			this.settings = ImmutableMap.copyOf(settings);
+			return this;
+		}
+
+		/** Sets the number of hits to fetch from each shard per scroll
+		 * round-trip. */
+		public Builder fetchSize(int fetchSize) {
+			this.fetchSize = fetchSize;
+			return this;
+		}
+
+		/** Sets the maximum number of shards scanned at the same time. */
+		public Builder parallelism(int parallelism) {
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		/** Sets how long table metadata is cached, in milliseconds. */
+		public Builder metadataTtl(long metadataTtl) {
+			this.metadataTtl = metadataTtl;
+			return this;
+		}
+
+		/** Sets the maximum number of documents per bulk request. */
+		public Builder bulkSize(int bulkSize) {
+			this.bulkSize = bulkSize;
+			return this;
+		}
+
+		/** Sets the maximum number of bulk requests in flight. */
+		public Builder bulkConcurrency(int bulkConcurrency) {
+			this.bulkConcurrency = bulkConcurrency;
+			return this;
+		}
+
+		/** Sets how many times a document rejected by the cluster is sent
+		 * again. */
+		public Builder bulkRetries(int bulkRetries) {
+			this.bulkRetries = bulkRetries;
+			return this;
+		}
+
+		/** Sets the maximum number of distinct join keys with which a search
+		 * is restricted. */
+		public Builder joinFilterSize(int joinFilterSize) {
+			this.joinFilterSize = joinFilterSize;
+			return this;
+		}
+
+		/** Sets the timestamp field by which documents are partitioned into
+		 * indices, and the Joda pattern of the names of those indices, e.g.
+		 * "'logs-'yyyy.MM.dd"; both or neither must be null. */
+		public Builder partitioning(String partitionField,
+				String partitionFormat) {
+			this.partitionField = partitionField;
+			this.partitionFormat = partitionFormat;
+			return this;
+		}
+
+		/** Sets the maximum number of rows of search results to cache, or 0
+		 * to not cache results. */
+		public Builder cacheSize(long cacheSize) {
+			this.cacheSize = cacheSize;
+			return this;
+		}
+
+		/** Sets how long a cached result is used, in milliseconds. */
+		public Builder cacheTtl(long cacheTtl) {
+			this.cacheTtl = cacheTtl;
+			return this;
+		}
+
+		/** Sets the ascending field, such as a timestamp, by which types that
+		 * have it are streamed, or null. */
+		public Builder streamField(String streamField) {
+			this.streamField = streamField;
+			return this;
+		}
+
+		/** Sets the time between polls of a stream that has caught up, in
+		 * milliseconds. */
+		public Builder streamPollInterval(long streamPollInterval) {
+			this.streamPollInterval = streamPollInterval;
+			return this;
+		}
+
+		/** Sets the age below which documents are not read by a stream over a
+		 * date field, in milliseconds. */
+		public Builder streamLag(long streamLag) {
+			this.streamLag = streamLag;
+			return this;
+		}
+
+		/** Sets the directory in which the position of each stream is kept,
+		 * or null. */
+		public Builder streamCheckpointDir(String streamCheckpointDir) {
+			this.streamCheckpointDir = streamCheckpointDir;
+			return this;
+		}
+
+		/** Sets whether to push relational operators down to the cluster,
+		 * rather than only scanning. */
+		public Builder pushdown(boolean pushdown) {
+			this.pushdown = pushdown;
+			return this;
+		}
+
+		/** Creates the schema, which acquires a client to the cluster. */
+		public ElasticsearchSchema build() {
+			return new ElasticsearchSchema(this);
 		}
-		return builder.build();
 	}
-}
\ No newline at end of file
+}
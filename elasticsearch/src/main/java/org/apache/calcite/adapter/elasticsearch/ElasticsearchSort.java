@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelFieldCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.Pair;
+
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.util.Map;
+
+/**
+ * Implementation of {@link org.apache.calcite.rel.core.Sort}
+ * relational expression in Elasticsearch.
+ *
+ * <p>The collation becomes the {@code sort} of the search request, so the
+ * rows arrive sorted and the planner needs no sort of its own. Offset and
+ * fetch limit the hits that are read; if they fit in a single page, one
+ * search with {@code from} and {@code size} replaces the scroll.</p>
+ *
+ * <p>Like {@link ElasticsearchAggregate}, the sort produces rows in
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention}. A
+ * search request applies its query before its limit, so a filter above an
+ * offset or fetch could not be pushed into the same request.</p>
+ */
+public class ElasticsearchSort extends Sort implements EnumerableRel {
+    public ElasticsearchSort(RelOptCluster cluster, RelTraitSet traitSet,
+            RelNode child, RelCollation collation, RexNode offset,
+            RexNode fetch) {
+        super(cluster, traitSet, child, collation, offset, fetch);
+    }
+
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner) {
+        // Replaces a converter as well as a sort.
+        return super.computeSelfCost(planner).multiplyBy(0.05);
+    }
+
+    @Override
+    public Sort copy(RelTraitSet traitSet, RelNode input,
+            RelCollation newCollation, RexNode offset, RexNode fetch) {
+        return new ElasticsearchSort(getCluster(), traitSet, input,
+                newCollation, offset, fetch);
+    }
+
+    @Override public RelWriter explainTerms(RelWriter pw) {
+        final ElasticsearchRel.Implementor esImplementor =
+                ElasticsearchRel.Implementor.of(getInput());
+        if (esImplementor != null) {
+            addSort(esImplementor);
+        }
+        return super.explainTerms(pw)
+                .itemIf("request",
+                        esImplementor == null ? null : esImplementor.describe(),
+                        esImplementor != null);
+    }
+
+    public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+        final ElasticsearchRel.Implementor esImplementor =
+                new ElasticsearchRel.Implementor();
+        esImplementor.visitChild(0, getInput());
+        addSort(esImplementor);
+        return ElasticsearchToEnumerableConverter.implement(implementor, pref,
+                getRowType(), esImplementor);
+    }
+
+    /** Adds the sort keys, offset and fetch to a search request. */
+    private void addSort(ElasticsearchRel.Implementor esImplementor) {
+        for (RelFieldCollation fieldCollation : collation.getFieldCollations()) {
+            esImplementor.sort.add(
+                    Pair.of(
+                            esImplementor.fieldNames.get(
+                                    fieldCollation.getFieldIndex()),
+                            order(fieldCollation)));
+        }
+        if (offset != null) {
+            esImplementor.offset = RexLiteral.intValue(offset);
+        }
+        if (fetch != null) {
+            esImplementor.fetch = RexLiteral.intValue(fetch);
+        }
+    }
+
+    /** Returns the order of a sort key, as {@code ASC} or {@code DESC},
+     * followed by {@code NULLS FIRST} or {@code NULLS LAST} if the null
+     * direction is not the default for the direction. */
+    private static String order(RelFieldCollation fieldCollation) {
+        final boolean descending;
+        switch (fieldCollation.getDirection()) {
+        case DESCENDING:
+        case STRICTLY_DESCENDING:
+            descending = true;
+            break;
+        default:
+            descending = false;
+        }
+        final String order = descending ? "DESC" : "ASC";
+        switch (fieldCollation.nullDirection) {
+        case FIRST:
+            return descending ? order : order + " NULLS FIRST";
+        case LAST:
+            return descending ? order + " NULLS LAST" : order;
+        default:
+            return order;
+        }
+    }
+
+    /** Converts a sort key, as produced by {@link #implement}, into a
+     * sort of a search request. Nulls sort high, as they do in Calcite,
+     * unless the key says otherwise. */
+    static FieldSortBuilder sortBuilder(Map.Entry<String, String> key) {
+        final String order = key.getValue();
+        final boolean descending = order.startsWith("DESC");
+        final boolean nullsFirst = order.endsWith("NULLS FIRST")
+                || descending && !order.endsWith("NULLS LAST");
+        return SortBuilders.fieldSort(key.getKey())
+                .order(descending ? SortOrder.DESC : SortOrder.ASC)
+                .missing(nullsFirst ? "_first" : "_last");
+    }
+}
+
+// End ElasticsearchSort.java
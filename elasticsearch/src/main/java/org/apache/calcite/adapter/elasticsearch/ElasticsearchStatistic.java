@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelDistribution;
+import org.apache.calcite.rel.RelDistributionTraitDef;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.metrics.cardinality.Cardinality;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Statistics of an Elasticsearch document type, read from the cluster.
+ *
+ * <p>The row count is the type's document count, from the {@code _count}
+ * API. The number of distinct values of a field is estimated by a
+ * {@code cardinality} aggregation, which is only run for fields that the
+ * planner asks about. Both are cached for as long as the schema caches
+ * table metadata.</p>
+ *
+ * <p>If the cluster cannot be reached, statistics are unknown, and the
+ * planner falls back to its defaults.</p>
+ */
+class ElasticsearchStatistic implements Statistic {
+    private static final Logger LOGGER =
+            Logger.getLogger(ElasticsearchStatistic.class.getName());
+
+    private final ElasticsearchSchema schema;
+    private final String type;
+    private final Map<String, Estimate> distinctCounts =
+            new HashMap<String, Estimate>();
+    private Estimate rowCount;
+
+    ElasticsearchStatistic(ElasticsearchSchema schema, String type) {
+        this.schema = schema;
+        this.type = type;
+    }
+
+    public synchronized Double getRowCount() {
+        if (rowCount == null || rowCount.isExpired()) {
+            final Client client = schema.client;
+            try {
+                rowCount = new Estimate(
+                        client.prepareCount(schema.index).setTypes(type)
+                                .execute().actionGet().getCount());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Cannot count documents of " + type, e);
+                return null;
+            }
+        }
+        return rowCount.value;
+    }
+
+    /** Returns the approximate number of distinct values of a field, or null
+     * if not known. The document id is unique. */
+    synchronized Double getDistinctRowCount(String field) {
+        if (ElasticsearchEnumerator.ID_FIELD.equals(field)) {
+            return getRowCount();
+        }
+        Estimate estimate = distinctCounts.get(field);
+        if (estimate == null || estimate.isExpired()) {
+            try {
+                final SearchResponse response =
+                        schema.client.prepareSearch(schema.index)
+                                .setTypes(type)
+                                .setSearchType(SearchType.COUNT)
+                                .addAggregation(
+                                        AggregationBuilders.cardinality("c")
+                                                .field(field))
+                                .execute().actionGet();
+                final Cardinality cardinality =
+                        response.getAggregations().get("c");
+                estimate = new Estimate(cardinality.getValue());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE,
+                        "Cannot estimate cardinality of " + type + "." + field,
+                        e);
+                return null;
+            }
+            distinctCounts.put(field, estimate);
+        }
+        return estimate.value;
+    }
+
+    public boolean isKey(ImmutableBitSet columns) {
+        // Column 0 is the document id.
+        return columns.get(0);
+    }
+
+    public List<RelCollation> getCollations() {
+        return ImmutableList.of();
+    }
+
+    public RelDistribution getDistribution() {
+        return RelDistributionTraitDef.INSTANCE.getDefault();
+    }
+
+    /** A value read from the cluster, and when. */
+    private class Estimate {
+        final double value;
+        final long time = System.currentTimeMillis();
+
+        Estimate(double value) {
+            this.value = value;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - time > schema.metadataTtl;
+        }
+    }
+}
+
+// End ElasticsearchStatistic.java
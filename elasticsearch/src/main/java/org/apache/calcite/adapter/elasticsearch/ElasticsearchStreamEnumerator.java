@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.function.Function1;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeFilterBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Enumerator that tails a document type: it returns documents in ascending
+ * order of a field, and when there are no more, polls the cluster for new
+ * ones, until it is closed.
+ *
+ * <p>Its position is the highest value of the field that it has returned,
+ * with the ids of the documents with that value that it has returned, so
+ * that each document is returned once even if a page ends among documents
+ * with equal values. If there is a checkpoint file, the position is written
+ * to it before each poll and when the enumerator is closed, and the next
+ * enumerator over the type resumes from there; otherwise, an enumerator
+ * starts after the documents that exist when it is created.</p>
+ *
+ * <p>A document becomes visible to a poll when its shard is next refreshed.
+ * Values of the field must grow as documents are indexed, as a timestamp or
+ * sequence number does: a document that becomes visible with a value below
+ * the position is not returned, nor is a document without the field. Shards
+ * refresh at different times, so if the field is a date, a poll only reads
+ * documents older than a lag, such as the refresh interval; a new document
+ * is returned within the lag plus the poll interval.</p>
+ */
+class ElasticsearchStreamEnumerator implements Enumerator<Object[]> {
+    private final Client client;
+    private final String index;
+    private final String type;
+    private final String field;
+    private final int fetchSize;
+    private final long pollInterval;
+    private final long lag;
+    private final Function1<SearchHit, Object> getter;
+    /** File that holds the position, or null. */
+    private final File checkpoint;
+
+    /** Highest value of the field returned, or null if the stream starts
+     * at the first document. */
+    private Object mark;
+    /** Whether documents whose value equals {@link #mark} are still to be
+     * returned, other than those in {@link #markIds}. */
+    private boolean inclusive;
+    /** Ids of the documents with value {@link #mark} returned so far. */
+    private final Set<String> markIds = new LinkedHashSet<String>();
+    /** Whether the position has changed since it was last written. */
+    private boolean dirty;
+
+    private SearchHit[] hits = new SearchHit[0];
+    private int hitIndex;
+    /** Whether the last poll returned a full page, so that more documents
+     * may be waiting. */
+    private boolean full = true;
+    private boolean closed;
+    private Object[] current;
+
+    /**
+     * Creates an ElasticsearchStreamEnumerator.
+     *
+     * @param client Elasticsearch client
+     * @param index Name of the index that holds the document type
+     * @param type Name of the document type
+     * @param field Name of the field by which documents are ordered
+     * @param fetchSize Maximum number of documents per poll
+     * @param pollInterval Time to wait, in milliseconds, after a poll that
+     *                     has found all new documents
+     * @param lag How old, in milliseconds, a date must be for a document to
+     *            be read; or 0 if the field is not a date
+     * @param getter Converts a hit into a row
+     * @param checkpoint File that holds the position, or null
+     */
+    ElasticsearchStreamEnumerator(Client client, String index, String type,
+            String field, int fetchSize, long pollInterval, long lag,
+            Function1<SearchHit, Object> getter, File checkpoint) {
+        this.client = client;
+        this.index = index;
+        this.type = type;
+        this.field = field;
+        this.fetchSize = fetchSize;
+        this.pollInterval = pollInterval;
+        this.lag = lag;
+        this.getter = getter;
+        this.checkpoint = checkpoint;
+        if (checkpoint == null || !load()) {
+            // Start after the last document.
+            final SearchHit[] last = client.prepareSearch(index)
+                    .setTypes(type)
+                    .setQuery(QueryBuilders.matchAllQuery())
+                    .setNoFields()
+                    .addSort(field, SortOrder.DESC)
+                    .setSize(1)
+                    .execute().actionGet().getHits().getHits();
+            this.mark = last.length == 0 ? null : sortValue(last[0]);
+            this.inclusive = false;
+            this.dirty = true;
+        }
+    }
+
+    public Object[] current() {
+        return current;
+    }
+
+    public boolean moveNext() {
+        for (;;) {
+            if (closed) {
+                current = null;
+                return false;
+            }
+            if (hitIndex < hits.length) {
+                final SearchHit hit = hits[hitIndex++];
+                advance(hit);
+                current = (Object[]) getter.apply(hit);
+                return true;
+            }
+            // Every row of the last poll has been returned.
+            save();
+            if (!full) {
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    current = null;
+                    return false;
+                }
+            }
+            poll();
+        }
+    }
+
+    /** Reads the documents after the position, up to a page. */
+    private void poll() {
+        final SearchRequestBuilder request = client.prepareSearch(index)
+                .setTypes(type)
+                .addSort(field, SortOrder.ASC)
+                .addSort("_uid", SortOrder.ASC)
+                .setSize(fetchSize);
+        final RangeFilterBuilder range = FilterBuilders.rangeFilter(field);
+        if (mark != null) {
+            range.from(mark).includeLower(inclusive);
+        }
+        if (lag > 0) {
+            range.lte(System.currentTimeMillis() - lag);
+        }
+        // If there is no bound, documents without the field would sort
+        // last, with a value beyond any other.
+        FilterBuilder filter = mark != null || lag > 0
+                ? range
+                : FilterBuilders.existsFilter(field);
+        if (!markIds.isEmpty()) {
+            filter = FilterBuilders.boolFilter()
+                    .must(filter)
+                    .mustNot(FilterBuilders.idsFilter(type)
+                            .addIds(markIds.toArray(
+                                    new String[markIds.size()])));
+        }
+        request.setQuery(
+                QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(),
+                        filter));
+        hits = request.execute().actionGet().getHits().getHits();
+        hitIndex = 0;
+        full = hits.length == fetchSize;
+    }
+
+    /** Moves the position past a document that is being returned. */
+    private void advance(SearchHit hit) {
+        final Object value = sortValue(hit);
+        if (!value.equals(mark)) {
+            mark = value;
+            inclusive = true;
+            markIds.clear();
+        }
+        markIds.add(hit.getId());
+        dirty = true;
+    }
+
+    /** Returns the value of the field by which a hit is sorted, as a number
+     * (dates are milliseconds) or a string. */
+    private static Object sortValue(SearchHit hit) {
+        final Object value = hit.getSortValues()[0];
+        return value instanceof Number ? value : String.valueOf(value);
+    }
+
+    /** Reads the position from the checkpoint file; returns false if there
+     * is no file. */
+    private boolean load() {
+        if (!checkpoint.exists()) {
+            return false;
+        }
+        final Properties properties = new Properties();
+        try {
+            final InputStream in = new FileInputStream(checkpoint);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read stream checkpoint "
+                    + checkpoint, e);
+        }
+        final String value = properties.getProperty("mark");
+        final String valueType = properties.getProperty("type");
+        if (value == null) {
+            mark = null;
+        } else if ("long".equals(valueType)) {
+            mark = Long.valueOf(value);
+        } else if ("double".equals(valueType)) {
+            mark = Double.valueOf(value);
+        } else {
+            mark = value;
+        }
+        inclusive = Boolean.valueOf(properties.getProperty("inclusive"));
+        for (int i = 0; properties.getProperty("id." + i) != null; i++) {
+            markIds.add(properties.getProperty("id." + i));
+        }
+        return true;
+    }
+
+    /** Writes the position to the checkpoint file, if there is one and the
+     * position has changed. The file is replaced as a whole, so that a
+     * crash leaves either the old position or the new one. */
+    private void save() {
+        if (checkpoint == null || !dirty) {
+            return;
+        }
+        final Properties properties = new Properties();
+        if (mark != null) {
+            properties.setProperty("mark", mark.toString());
+            properties.setProperty("type",
+                    mark instanceof Double || mark instanceof Float
+                            ? "double"
+                            : mark instanceof Number ? "long" : "string");
+        }
+        properties.setProperty("inclusive", String.valueOf(inclusive));
+        int i = 0;
+        for (String id : markIds) {
+            properties.setProperty("id." + i++, id);
+        }
+        final File temp = new File(checkpoint.getPath() + ".tmp");
+        try {
+            final OutputStream out = new FileOutputStream(temp);
+            try {
+                properties.store(out,
+                        "Position of the stream over " + index + "/" + type);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write stream checkpoint "
+                    + checkpoint, e);
+        }
+        if (!temp.renameTo(checkpoint)
+                && !(checkpoint.delete() && temp.renameTo(checkpoint))) {
+            throw new RuntimeException("Cannot write stream checkpoint "
+                    + checkpoint);
+        }
+        dirty = false;
+    }
+
+    public void reset() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+        if (!closed) {
+            closed = true;
+            save();
+        }
+    }
+}
+
+// End ElasticsearchStreamEnumerator.java
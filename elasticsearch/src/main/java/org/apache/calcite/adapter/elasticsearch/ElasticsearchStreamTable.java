@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.schema.Statistics;
+import org.apache.calcite.schema.StreamableTable;
+import org.apache.calcite.schema.Table;
+import org.apache.calcite.schema.impl.AbstractTable;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.Pair;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stream of the documents of a type, in ascending order of a field such as a
+ * timestamp or sequence number, as new documents are indexed.
+ *
+ * <p>The schema adds a stream table, named after the type with the suffix
+ * {@link #SUFFIX}, for each type that has the schema's {@code streamField}.
+ * For example,</p>
+ *
+ * <blockquote><pre>SELECT STREAM "ts", "host", "msg"
+ * FROM "event_stream"
+ * WHERE "status" = 500</pre></blockquote>
+ *
+ * <p>is a continuous query that returns each new error as it arrives. The
+ * rows are ordered by the field, so it can also be the monotonic expression
+ * of a streaming GROUP BY.</p>
+ *
+ * <p>See {@link ElasticsearchStreamEnumerator} for how the type is polled,
+ * and where a stream resumes.</p>
+ */
+public class ElasticsearchStreamTable extends AbstractTable
+        implements ScannableTable, StreamableTable {
+    /** Suffix of the name of the stream table of a type. */
+    static final String SUFFIX = "_stream";
+
+    private final ElasticsearchSchema schema;
+    private final ElasticsearchTable table;
+    /** Position of the stream field in the row type. */
+    private final int fieldOrdinal;
+
+    /**
+     * Creates an ElasticsearchStreamTable.
+     *
+     * @param schema Schema, which holds the client and the stream settings
+     * @param table Table of the document type
+     */
+    ElasticsearchStreamTable(ElasticsearchSchema schema,
+            ElasticsearchTable table) {
+        this.schema = schema;
+        this.table = table;
+        this.fieldOrdinal = table.columnNames.indexOf(schema.streamField);
+        assert fieldOrdinal >= 0;
+    }
+
+    public String toString() {
+        return "ElasticsearchStreamTable {" + table.tableName + "}";
+    }
+
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+        return table.getRowType(typeFactory);
+    }
+
+    @Override public Statistic getStatistic() {
+        return Statistics.of(table.statistic.getRowCount(),
+                ImmutableList.<ImmutableBitSet>of(),
+                ImmutableList.of(RelCollations.of(fieldOrdinal)));
+    }
+
+    /** Returns the mapping type of the stream field, such as "date". */
+    private Object fieldType() {
+        final Object mapping = table.properties.get(schema.streamField);
+        return mapping instanceof Map ? ((Map) mapping).get("type") : null;
+    }
+
+    public Table stream() {
+        return this;
+    }
+
+    public Enumerable<Object[]> scan(DataContext root) {
+        final JavaTypeFactory typeFactory = root.getTypeFactory();
+        final List<Map.Entry<String, Class<?>>> fields =
+                new ArrayList<Map.Entry<String, Class<?>>>();
+        for (RelDataTypeField field
+                : getRowType(typeFactory).getFieldList()) {
+            final Type type = typeFactory.getJavaClass(field.getType());
+            fields.add(
+                    Pair.<String, Class<?>>of(field.getName(),
+                            type instanceof Class ? (Class<?>) type : Object.class));
+        }
+        final File checkpoint = schema.streamCheckpointDir == null
+                ? null
+                : new File(schema.streamCheckpointDir,
+                        schema.index + "." + table.tableName + ".checkpoint");
+        return new AbstractEnumerable<Object[]>() {
+            public Enumerator<Object[]> enumerator() {
+                return new ElasticsearchStreamEnumerator(schema.client,
+                        schema.index, table.tableName, schema.streamField,
+                        schema.fetchSize, schema.streamPollInterval,
+                        "date".equals(fieldType()) ? schema.streamLag : 0,
+                        new ElasticsearchEnumerator.HitDecoder(fields, false),
+                        checkpoint);
+            }
+        };
+    }
+}
+
+// End ElasticsearchStreamTable.java
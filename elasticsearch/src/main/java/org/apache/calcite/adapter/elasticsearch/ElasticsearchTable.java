@@ -3,58 +3,203 @@
 
 import org.apache.calcite.adapter.java.AbstractQueryableTable;
 import org.apache.calcite.linq4j.*;
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.prepare.Prepare;
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.TableModify;
+import org.apache.calcite.rel.logical.LogicalTableModify;
+import org.apache.calcite.rel.metadata.RelMetadataProvider;
 import org.apache.calcite.rel.type.*;
+import org.apache.calcite.schema.ModifiableTable;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.Schemas;
+import org.apache.calcite.schema.Statistic;
 import org.apache.calcite.schema.TranslatableTable;
 import org.apache.calcite.schema.impl.AbstractTableQueryable;
-import org.apache.calcite.sql.type.SqlTypeFactoryImpl;
 import org.apache.calcite.sql.type.SqlTypeName;
-import org.apache.metamodel.DataContext;
-import org.apache.metamodel.schema.*;
+import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsGroup;
+import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.missing.Missing;
+import org.elasticsearch.search.aggregations.bucket.missing.MissingBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsBuilder;
+import org.elasticsearch.search.aggregations.metrics.cardinality.Cardinality;
+import org.elasticsearch.search.aggregations.metrics.percentiles.Percentiles;
+import org.elasticsearch.search.aggregations.metrics.percentiles.PercentilesBuilder;
+import org.elasticsearch.search.aggregations.metrics.stats.Stats;
+import org.elasticsearch.search.aggregations.metrics.valuecount.ValueCount;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 
-import java.sql.Types;
+import com.google.common.collect.ImmutableMap;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
+/**
+ * Table based on an Elasticsearch document type.
+ *
+ * <p>Columns come from the type's mapping: the document id, then each
+ * top-level property. Object properties are maps from field name to value;
+ * nested properties are arrays of such maps.</p>
+ *
+ * <p>Rows inserted into the table are indexed with the bulk API; see
+ * {@link ElasticsearchBulkWriter}.</p>
+ */
 public class ElasticsearchTable extends AbstractQueryableTable
-        implements TranslatableTable {
+        implements TranslatableTable, ModifiableTable {
+    /** SQL types of the Elasticsearch core field types. Other types, such
+     * as {@code geo_point}, are {@code ANY}. */
+    private static final ImmutableMap<String, SqlTypeName> TYPES =
+            ImmutableMap.<String, SqlTypeName>builder()
+                    .put("string", SqlTypeName.VARCHAR)
+                    .put("ip", SqlTypeName.VARCHAR)
+                    .put("long", SqlTypeName.BIGINT)
+                    .put("integer", SqlTypeName.INTEGER)
+                    .put("short", SqlTypeName.SMALLINT)
+                    .put("byte", SqlTypeName.TINYINT)
+                    .put("double", SqlTypeName.DOUBLE)
+                    .put("float", SqlTypeName.REAL)
+                    .put("boolean", SqlTypeName.BOOLEAN)
+                    .put("date", SqlTypeName.TIMESTAMP)
+                    .put("binary", SqlTypeName.VARBINARY)
+                    .build();
+
     protected final String tableName;
-    protected final Table table;
+    /** The {@code properties} of the type's mapping. */
+    final Map<String, Object> properties;
     private final RelProtoDataType protoRowType;
-    private final DataContext esdc;
-    int[] fields;
+    /** Names of the columns in the row type, in order. */
+    final List<String> columnNames = new ArrayList<String>();
+    /** Names of the fields whose values are not indexed as they are: strings
+     * that are analyzed into words, and fields that are not indexed at all.
+     * A {@code term} or {@code range} filter, or a {@code terms}
+     * aggregation, on such a field sees words rather than values. */
+    final Set<String> analyzedFields = new LinkedHashSet<String>();
+    final ElasticsearchSchema schema;
+    final ElasticsearchStatistic statistic;
+    /** How documents are partitioned into indices by time, or null if this
+     * table is not partitioned. */
+    final ElasticsearchPartitioning partitioning;
 
     /**
-     * Creates a ElasticsearchTable.
+     * Creates an ElasticsearchTable.
+     *
+     * @param schema Schema, whose client is used to read statistics
+     * @param tableName Name of the document type
+     * @param properties Properties of the type's mapping; the row type is
+     *                   derived from them when it is first needed
      */
-    ElasticsearchTable(Table table, DataContext esdc) {
+    ElasticsearchTable(ElasticsearchSchema schema, String tableName,
+            final Map<String, Object> properties) {
         super(Object[].class);
-        this.table = table;
-        this.tableName = table.getName();
-        this.esdc = esdc;
-
-        RelDataTypeFactory typeFactory = new SqlTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
-        RelDataTypeFactory.FieldInfoBuilder fieldInfo = typeFactory.builder();
-
-        for (Column column : table.getColumns()) {
-            String columnName = column.getName();
-            ColumnType columnType = column.getType();
-            if (ColumnType.STRING.getName().equalsIgnoreCase(columnType.getName())) {
-                columnType = ColumnTypeImpl.convertColumnType(Types.VARCHAR);
+        this.tableName = tableName;
+        this.properties = properties;
+        this.schema = schema;
+        this.statistic = new ElasticsearchStatistic(schema, tableName);
+        this.partitioning = schema.partitioning != null
+                && properties.containsKey(schema.partitioning.field)
+                ? schema.partitioning
+                : null;
+        columnNames.add(ElasticsearchEnumerator.ID_FIELD);
+        columnNames.addAll(properties.keySet());
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            if (property.getValue() instanceof Map
+                    && isAnalyzed((Map<?, ?>) property.getValue())) {
+                analyzedFields.add(property.getKey());
             }
-
-            try {
-                int jdbcType = columnType.getJdbcType();
-                SqlTypeName typeName = SqlTypeName.getNameForJdbcType(jdbcType);
-                RelDataType type = typeFactory.createSqlType(typeName);
-                fieldInfo.add(columnName, type);
-            } catch (Exception ignore) {
+        }
+        this.protoRowType = new RelProtoDataType() {
+            public RelDataType apply(RelDataTypeFactory typeFactory) {
+                final RelDataTypeFactory.FieldInfoBuilder builder =
+                        typeFactory.builder();
+                builder.add(ElasticsearchEnumerator.ID_FIELD,
+                        varchar(typeFactory));
+                for (Map.Entry<String, Object> property
+                        : properties.entrySet()) {
+                    builder.add(property.getKey(),
+                            typeFactory.createTypeWithNullability(
+                                    sqlType(typeFactory,
+                                            (Map<?, ?>) property.getValue()),
+                                    true));
+                }
+                return builder.build();
             }
+        };
+    }
+
+    /** Returns the SQL type of a field, given its mapping. */
+    private static RelDataType sqlType(RelDataTypeFactory typeFactory,
+            Map<?, ?> mapping) {
+        final Object type = mapping.get("type");
+        if (type == null || type.equals("object") || type.equals("nested")) {
+            final RelDataType map = typeFactory.createMapType(
+                    varchar(typeFactory),
+                    typeFactory.createTypeWithNullability(
+                            typeFactory.createSqlType(SqlTypeName.ANY), true));
+            return "nested".equals(type)
+                    ? typeFactory.createArrayType(map, -1)
+                    : map;
+        }
+        final SqlTypeName typeName = TYPES.get(type);
+        if (typeName == null) {
+            return typeFactory.createSqlType(SqlTypeName.ANY);
         }
-        protoRowType = RelDataTypeImpl.proto(fieldInfo.build());
+        if (typeName == SqlTypeName.VARCHAR) {
+            return varchar(typeFactory);
+        }
+        return typeFactory.createSqlType(typeName);
+    }
+
+    /** Returns whether a field, given its mapping, is not indexed as its
+     * values. Strings are analyzed unless their mapping says
+     * {@code "index": "not_analyzed"}; other types are indexed unless it says
+     * {@code "index": "no"}. Objects have no values of their own. */
+    static boolean isAnalyzed(Map<?, ?> mapping) {
+        final Object type = mapping.get("type");
+        final Object index = mapping.get("index");
+        if (type == null || type.equals("object") || type.equals("nested")) {
+            return false;
+        }
+        if (type.equals("string")) {
+            return !"not_analyzed".equals(index);
+        }
+        return "no".equals(index);
+    }
+
+    /** Returns a VARCHAR type of unlimited length. Strings in a document
+     * have no declared length. */
+    private static RelDataType varchar(RelDataTypeFactory typeFactory) {
+        return typeFactory.createSqlType(SqlTypeName.VARCHAR,
+                typeFactory.getTypeSystem().getMaxPrecision(
+                        SqlTypeName.VARCHAR));
     }
 
     public String toString() {
@@ -63,62 +208,658 @@ public String toString() {
 
     public <T> Queryable<T> asQueryable(QueryProvider queryProvider,
                                         SchemaPlus schema, String tableName) {
-        // TODO Auto-generated method stub
         return new ElasticsearchQueryable<T>(queryProvider, schema, this, tableName);
     }
 
     public RelDataType getRowType(RelDataTypeFactory typeFactory) {
-        // TODO Auto-generated method stub
         return protoRowType.apply(typeFactory);
     }
 
+    @Override public Statistic getStatistic() {
+        return statistic;
+    }
+
+    /**
+     * Executes a search on the document type that backs this table.
+     *
+     * <p>For example,
+     * <code>logsTable.find(schema, null,
+     * "{\"constant_score\": {\"filter\": {\"term\": {\"level\": \"error\"}}}}",
+     * fields, [("ts", "DESC")], 0, 100)</code></p>
+     *
+     * @param schema Schema, which holds the client, the name of the index
+     *               and the scan settings
+     * @param indices Comma-separated names of the indices to search, as
+     *                returned by {@link ElasticsearchRel.Implementor#indices()},
+     *                or null to search the schema's index
+     * @param query Query DSL string, or null to match all documents
+     * @param fields List of fields to project; or null to return every
+     *               column of the table, unconverted
+     * @param sort Sort keys: each field and its order, as produced by
+     *             {@link ElasticsearchSort}
+     * @param offset Number of rows to skip
+     * @param fetch Maximum number of rows to return, or -1 for all rows
+     * @return Enumerable of results
+     */
+    public Enumerable<Object> find(ElasticsearchSchema schema,
+            final String indices, final String query,
+            List<Map.Entry<String, Class<?>>> fields,
+            final List<Map.Entry<String, String>> sort, final int offset,
+            final int fetch) {
+        final Client client = schema.client;
+        final String index = schema.index;
+        final int fetchSize = schema.fetchSize;
+        final int parallelism = schema.parallelism;
+        final Function1<SearchHit, Object> getter;
+        final List<String> names;
+        if (fields == null) {
+            getter = ElasticsearchEnumerator.listGetter(columnNames);
+            names = columnNames;
+        } else {
+            getter = ElasticsearchEnumerator.getter(fields);
+            names = new ArrayList<String>();
+            for (Map.Entry<String, Class<?>> field : fields) {
+                names.add(field.getKey());
+            }
+        }
+        final List<String> sourceFields = sourceFields(names);
+        final boolean scored =
+                names.contains(ElasticsearchEnumerator.SCORE_FIELD);
+        final Enumerable<Object> enumerable = new AbstractEnumerable<Object>() {
+            public Enumerator<Object> enumerator() {
+                final ElasticsearchQueryStats stats =
+                        new ElasticsearchQueryStats(
+                                describe(indices, query, names, sort, offset,
+                                        fetch));
+                return stats.report(enumerator(stats));
+            }
+
+            private Enumerator<Object> enumerator(
+                    final ElasticsearchQueryStats stats) {
+                // Shards are scanned separately only if rows may arrive in
+                // any order and all of them are wanted. A scan does not
+                // compute scores.
+                final List<Integer> shards =
+                        parallelism > 1 && sort.isEmpty() && !scored
+                                && offset == 0 && fetch < 0
+                                ? shards(client, index, indices)
+                                : Collections.<Integer>emptyList();
+                if (shards.size() <= 1) {
+                    return new ElasticsearchEnumerator(client,
+                            request(client, index, indices, query,
+                                    sourceFields, sort)
+                                    .setTrackScores(scored),
+                            !sort.isEmpty() || scored, offset, fetch,
+                            fetchSize, getter, stats);
+                }
+                final List<Function0<ElasticsearchEnumerator>> inputs =
+                        new ArrayList<Function0<ElasticsearchEnumerator>>();
+                for (final Integer shard : shards) {
+                    inputs.add(new Function0<ElasticsearchEnumerator>() {
+                        public ElasticsearchEnumerator apply() {
+                            return new ElasticsearchEnumerator(client,
+                                    request(client, index, indices, query,
+                                            sourceFields, sort)
+                                            .setPreference("_shards:" + shard),
+                                    false, 0, -1, fetchSize, getter, stats);
+                        }
+                    });
+                }
+                return new ElasticsearchParallelEnumerator(inputs,
+                        parallelism, fetchSize);
+            }
+        };
+        return cached(index, indices,
+                Arrays.<Object>asList("find", tableName, query, fields, sort,
+                        offset, fetch),
+                enumerable);
+    }
 
     /**
-     * Returns an enumerable over a given projection of the fields.
-     * <p/>
-     * <p>Called from generated code.
+     * Executes a search, as
+     * {@link #find(ElasticsearchSchema, String, String, List, List, int, int)},
+     * that returns only the documents whose field has one of a set of
+     * values.
+     *
+     * <p>The values are read when the search starts. Nulls are ignored. If
+     * there are more distinct values than the schema's
+     * {@code joinFilterSize}, the search is not restricted; if there are
+     * none, it is not executed.</p>
+     *
+     * @param keyField Name of the field
+     * @param keys Values of the field, possibly with duplicates
      */
-    public Enumerable<Object> project(int[] fields) {
-        fields = this.fields;
-        final int[] finalFields = fields;
+    public Enumerable<Object> find(final ElasticsearchSchema schema,
+            final String indices, final String query,
+            final List<Map.Entry<String, Class<?>>> fields,
+            final List<Map.Entry<String, String>> sort, final int offset,
+            final int fetch, final String keyField,
+            final Enumerable<Object> keys) {
         return new AbstractEnumerable<Object>() {
             public Enumerator<Object> enumerator() {
-                return new ElasticsearchEnumerator(esdc, table, finalFields);
+                final Set<Object> values = new LinkedHashSet<Object>();
+                for (Object key : keys) {
+                    if (key != null) {
+                        values.add(key);
+                        if (values.size() > schema.joinFilterSize) {
+                            break;
+                        }
+                    }
+                }
+                if (values.isEmpty()) {
+                    return Linq4j.emptyEnumerator();
+                }
+                final String query2 = values.size() > schema.joinFilterSize
+                        ? query
+                        : restrict(query, keyField, values);
+                return find(schema, indices, query2, fields, sort, offset,
+                        fetch)
+                        .enumerator();
+            }
+        };
+    }
+
+    /** Returns a query that matches the documents that match a query and
+     * whose field has one of the given values. */
+    static String restrict(String query, String field,
+            Collection<Object> values) {
+        final FilterBuilder filter;
+        if (ElasticsearchEnumerator.ID_FIELD.equals(field)) {
+            final List<String> ids = new ArrayList<String>();
+            for (Object value : values) {
+                ids.add(String.valueOf(value));
+            }
+            filter = FilterBuilders.idsFilter()
+                    .addIds(ids.toArray(new String[ids.size()]));
+        } else {
+            filter = FilterBuilders.termsFilter(field, values);
+        }
+        // A filtered query without a query matches every document.
+        return QueryBuilders.filteredQuery(
+                query == null ? null : QueryBuilders.wrapperQuery(query),
+                filter).toString();
+    }
+
+    /** Returns an enumerable that reads the rows of a request from the
+     * schema's result cache, if it has one, and otherwise executes the
+     * request. */
+    private Enumerable<Object> cached(String index, String indices,
+            List<Object> request, Enumerable<Object> enumerable) {
+        final ElasticsearchResultCache cache = schema.cache;
+        if (cache == null) {
+            return enumerable;
+        }
+        return cache.get(indices == null ? index : indices, indices != null,
+                request, enumerable);
+    }
+
+    /** Starts a search of the documents of this table in some indices, or in
+     * the schema's index if {@code indices} is null. Indices of a partitioned
+     * table that do not exist are ignored. */
+    private SearchRequestBuilder prepareSearch(Client client, String index,
+            String indices) {
+        if (indices == null) {
+            return client.prepareSearch(index).setTypes(tableName);
+        }
+        return client.prepareSearch(indices.split(","))
+                .setTypes(tableName)
+                .setIndicesOptions(IndicesOptions.lenientExpandOpen());
+    }
+
+    /** Creates a search request for the documents of this table that match
+     * a query. */
+    private SearchRequestBuilder request(Client client, String index,
+            String indices, String query, List<String> sourceFields,
+            List<Map.Entry<String, String>> sort) {
+        final SearchRequestBuilder request =
+                prepareSearch(client, index, indices)
+                .setQuery(query == null ? "{\"match_all\": {}}" : query);
+        if (sourceFields.isEmpty()) {
+            request.setFetchSource(false);
+        } else {
+            request.setFetchSource(
+                    sourceFields.toArray(new String[sourceFields.size()]),
+                    null);
+        }
+        for (Map.Entry<String, String> key : sort) {
+            request.addSort(ElasticsearchSort.sortBuilder(key));
+        }
+        return request;
+    }
+
+    /** Returns a description of a search of this table, as shown by EXPLAIN
+     * and in {@link ElasticsearchQueryStats}: the indices and type, and the
+     * body of the request in compact JSON.
+     *
+     * @param indices Comma-separated names of the indices to search, or
+     *                null to search the schema's index
+     * @param query Query DSL string, or null to match all documents
+     * @param names Names of the fields returned
+     * @param sort Sort keys
+     * @param offset Number of rows to skip
+     * @param fetch Maximum number of rows to return, or -1 for all rows
+     */
+    String describe(String indices, String query, List<String> names,
+            List<Map.Entry<String, String>> sort, int offset, int fetch) {
+        final SearchSourceBuilder source = new SearchSourceBuilder();
+        if (query != null) {
+            source.query(query);
+        }
+        final List<String> sourceFields = sourceFields(names);
+        if (sourceFields.isEmpty()) {
+            source.fetchSource(false);
+        } else {
+            source.fetchSource(
+                    sourceFields.toArray(new String[sourceFields.size()]),
+                    null);
+        }
+        for (Map.Entry<String, String> key : sort) {
+            source.sort(ElasticsearchSort.sortBuilder(key));
+        }
+        if (offset > 0) {
+            source.from(offset);
+        }
+        if (fetch >= 0) {
+            source.size(fetch);
+        }
+        return describe(indices, source);
+    }
+
+    /** Returns a description of a search of this table that computes
+     * aggregations, as
+     * {@link #describe(String, String, List, List, int, int)}. */
+    String describe(String indices, String query,
+            List<AbstractAggregationBuilder> aggregations) {
+        final SearchSourceBuilder source = new SearchSourceBuilder();
+        if (query != null) {
+            source.query(query);
+        }
+        for (AbstractAggregationBuilder aggregation : aggregations) {
+            source.aggregation(aggregation);
+        }
+        return describe(indices, source);
+    }
+
+    private String describe(String indices, SearchSourceBuilder source) {
+        String body;
+        try {
+            body = XContentHelper.convertToJson(
+                    source.buildAsBytes(XContentType.JSON), true, false);
+        } catch (IOException e) {
+            body = source.toString();
+        }
+        return (indices == null ? schema.index : indices) + "/" + tableName
+                + " " + body;
+    }
+
+    /** Returns the ids of the shards of an index, or of some indices if
+     * {@code indices} is not null. If there are several indices, shards with
+     * the same number are read together. */
+    private static List<Integer> shards(Client client, String index,
+            String indices) {
+        final ClusterSearchShardsResponse response =
+                (indices == null
+                        ? client.admin().cluster().prepareSearchShards(index)
+                        : client.admin().cluster()
+                                .prepareSearchShards(indices.split(","))
+                                .setIndicesOptions(
+                                        IndicesOptions.lenientExpandOpen()))
+                        .execute().actionGet();
+        final SortedSet<Integer> shards = new TreeSet<Integer>();
+        for (ClusterSearchShardsGroup group : response.getGroups()) {
+            shards.add(group.getShardId());
+        }
+        return new ArrayList<Integer>(shards);
+    }
+
+    /** Returns the fields to request from each document's {@code _source}:
+     * the given fields, without duplicates and without the document id and
+     * score, which are not part of the source. */
+    private static List<String> sourceFields(List<String> names) {
+        final List<String> list = new ArrayList<String>();
+        for (String name : names) {
+            if (!ElasticsearchEnumerator.ID_FIELD.equals(name)
+                    && !ElasticsearchEnumerator.SCORE_FIELD.equals(name)
+                    && !list.contains(name)) {
+                list.add(name);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Executes a search that groups and aggregates the matching documents in
+     * the cluster. Each group field becomes a {@code terms} aggregation, with
+     * a sibling {@code missing} aggregation for documents that have no value,
+     * and the aggregation for the next group field nested inside both.
+     *
+     * <p>For example,
+     * <code>logsTable.aggregate(client, "logs", null, null, ["status"],
+     * [("COUNT", null), ("SUM", "bytes"), ("PERCENTILE:0.95:100.0",
+     * "bytes")], fields)</code></p>
+     *
+     * @param client Elasticsearch client
+     * @param index Name of the index that holds the document type
+     * @param indices Comma-separated names of the indices to search, or null
+     *                to search {@code index}
+     * @param query Query DSL string, or null to match all documents
+     * @param groupFields Names of the fields to group by
+     * @param aggregations Function and argument of each aggregate call, as
+     *                     returned by {@link ElasticsearchAggregate#function}
+     * @param fields Name and Java class of each output field; group fields
+     *               first, then aggregate calls
+     * @return Enumerable of results
+     */
+    public Enumerable<Object> aggregate(final Client client, final String index,
+            final String indices, final String query, final List<String> groupFields,
+            final List<Map.Entry<String, String>> aggregations,
+            final List<Map.Entry<String, Class<?>>> fields) {
+        final List<AbstractAggregationBuilder> builders =
+                aggregationBuilders(groupFields, aggregations);
+        final Enumerable<Object> enumerable = new AbstractEnumerable<Object>() {
+            public Enumerator<Object> enumerator() {
+                final SearchRequestBuilder request =
+                        prepareSearch(client, index, indices)
+                        .setSearchType(SearchType.COUNT)
+                        .setQuery(query == null ? "{\"match_all\": {}}" : query);
+                for (AbstractAggregationBuilder builder : builders) {
+                    request.addAggregation(builder);
+                }
+                final ElasticsearchQueryStats stats =
+                        new ElasticsearchQueryStats(
+                                describe(indices, query, builders));
+                final SearchResponse response = request.execute().actionGet();
+                stats.search(response);
+                stats.finish();
+                final List<Object> rows = new ArrayList<Object>();
+                flatten(response.getAggregations(),
+                        response.getHits().getTotalHits(), groupFields.size(),
+                        aggregations, fields, new Object[groupFields.size()], 0,
+                        rows);
+                return Linq4j.enumerator(rows);
             }
         };
+        return cached(index, indices,
+                Arrays.<Object>asList("aggregate", tableName, query,
+                        groupFields, aggregations, fields),
+                enumerable);
+    }
+
+    /** Returns the aggregations that compute aggregate calls for each group
+     * of documents: nested {@code terms} and {@code missing} aggregations
+     * for the group fields, and metric aggregations inside them.
+     *
+     * @param groupFields Names of the fields to group by
+     * @param aggregations Function and argument of each aggregate call, as
+     *                     returned by {@link ElasticsearchAggregate#function}
+     */
+    static List<AbstractAggregationBuilder> aggregationBuilders(
+            List<String> groupFields,
+            List<Map.Entry<String, String>> aggregations) {
+        final Map<String, AbstractAggregationBuilder> metrics =
+                new LinkedHashMap<String, AbstractAggregationBuilder>();
+        final Map<String, List<Double>> percents =
+                new LinkedHashMap<String, List<Double>>();
+        for (Map.Entry<String, String> aggregation : aggregations) {
+            final String field = aggregation.getValue();
+            if (field == null) {
+                continue;
+            }
+            final String name = metricName(aggregation);
+            final String[] function = aggregation.getKey().split(":");
+            if (function[0].equals("PERCENTILE")) {
+                // Percentiles of a field with the same compression are
+                // computed by one aggregation.
+                PercentilesBuilder builder =
+                        (PercentilesBuilder) metrics.get(name);
+                if (builder == null) {
+                    builder = AggregationBuilders.percentiles(name)
+                            .field(field)
+                            .compression(Double.parseDouble(function[2]));
+                    metrics.put(name, builder);
+                    percents.put(name, new ArrayList<Double>());
+                }
+                percents.get(name).add(
+                        Double.parseDouble(function[1]) * 100);
+            } else if (metrics.containsKey(name)) {
+                continue;
+            } else if (function[0].equals("VALUE_COUNT")) {
+                metrics.put(name, AggregationBuilders.count(name).field(field));
+            } else if (function[0].equals("CARDINALITY")) {
+                metrics.put(name,
+                        AggregationBuilders.cardinality(name).field(field)
+                                .precisionThreshold(
+                                        Long.parseLong(function[1])));
+            } else {
+                metrics.put(name, AggregationBuilders.stats(name).field(field));
+            }
+        }
+        for (Map.Entry<String, List<Double>> entry : percents.entrySet()) {
+            final double[] values = new double[entry.getValue().size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = entry.getValue().get(i);
+            }
+            ((PercentilesBuilder) metrics.get(entry.getKey()))
+                    .percentiles(values);
+        }
+        return bucketAggregations(groupFields, 0, metrics.values());
+    }
+
+    /** Returns the name of the metric aggregation that computes an aggregate
+     * call; calls on the same field share a {@code stats} aggregation, and
+     * percentiles with the same compression share a {@code percentiles}
+     * aggregation. */
+    private static String metricName(Map.Entry<String, String> aggregation) {
+        final String[] function = aggregation.getKey().split(":");
+        if (function[0].equals("VALUE_COUNT")) {
+            return "count_" + aggregation.getValue();
+        } else if (function[0].equals("CARDINALITY")) {
+            return "cardinality_" + function[1] + "_" + aggregation.getValue();
+        } else if (function[0].equals("PERCENTILE")) {
+            return "percentiles_" + function[2] + "_" + aggregation.getValue();
+        }
+        return "stats_" + aggregation.getValue();
+    }
+
+    /** Returns the aggregations that group by the fields from {@code level}
+     * onwards, with the metric aggregations at the innermost level. */
+    private static List<AbstractAggregationBuilder> bucketAggregations(
+            List<String> groupFields, int level,
+            Collection<AbstractAggregationBuilder> metrics) {
+        if (level == groupFields.size()) {
+            return new ArrayList<AbstractAggregationBuilder>(metrics);
+        }
+        final String field = groupFields.get(level);
+        // Size 0 returns every bucket, so that no group is lost.
+        final TermsBuilder terms =
+                AggregationBuilders.terms("g" + level).field(field).size(0);
+        final MissingBuilder missing =
+                AggregationBuilders.missing("m" + level).field(field);
+        for (AbstractAggregationBuilder child
+                : bucketAggregations(groupFields, level + 1, metrics)) {
+            terms.subAggregation(child);
+            missing.subAggregation(child);
+        }
+        final List<AbstractAggregationBuilder> list =
+                new ArrayList<AbstractAggregationBuilder>();
+        list.add(terms);
+        list.add(missing);
+        return list;
+    }
+
+    /** Converts the buckets of an aggregation response into rows, one per
+     * innermost bucket. */
+    private static void flatten(Aggregations aggs, long docCount,
+            int groupCount, List<Map.Entry<String, String>> aggregations,
+            List<Map.Entry<String, Class<?>>> fields, Object[] keys, int level,
+            List<Object> rows) {
+        if (level == groupCount) {
+            final Object[] row = new Object[fields.size()];
+            for (int i = 0; i < groupCount; i++) {
+                row[i] = ElasticsearchEnumerator.convert(keys[i],
+                        fields.get(i).getValue());
+            }
+            for (int i = 0; i < aggregations.size(); i++) {
+                row[groupCount + i] = ElasticsearchEnumerator.convert(
+                        metric(aggs, docCount, aggregations.get(i)),
+                        fields.get(groupCount + i).getValue());
+            }
+            rows.add(row.length == 1 ? row[0] : row);
+            return;
+        }
+        final Terms terms = aggs.get("g" + level);
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            keys[level] = bucket.getKey();
+            flatten(bucket.getAggregations(), bucket.getDocCount(), groupCount,
+                    aggregations, fields, keys, level + 1, rows);
+        }
+        final Missing missing = aggs.get("m" + level);
+        if (missing.getDocCount() > 0) {
+            keys[level] = null;
+            flatten(missing.getAggregations(), missing.getDocCount(),
+                    groupCount, aggregations, fields, keys, level + 1, rows);
+        }
+    }
+
+    /** Returns the value of an aggregate call within a bucket. */
+    private static Object metric(Aggregations aggs, long docCount,
+            Map.Entry<String, String> aggregation) {
+        final String function = aggregation.getKey();
+        if (function.equals("COUNT")) {
+            return docCount;
+        }
+        if (function.equals("VALUE_COUNT")) {
+            final ValueCount count = aggs.get(metricName(aggregation));
+            return count.getValue();
+        }
+        if (function.startsWith("CARDINALITY:")) {
+            final Cardinality cardinality = aggs.get(metricName(aggregation));
+            return cardinality.getValue();
+        }
+        if (function.startsWith("PERCENTILE:")) {
+            final Percentiles percentiles = aggs.get(metricName(aggregation));
+            final double value = percentiles.percentile(
+                    Double.parseDouble(function.split(":")[1]) * 100);
+            return Double.isNaN(value) ? null : value;
+        }
+        final Stats stats = aggs.get(metricName(aggregation));
+        if (function.equals("SUM0")) {
+            return stats.getSum();
+        }
+        if (stats.getCount() == 0) {
+            return null;
+        }
+        if (function.equals("SUM")) {
+            return stats.getSum();
+        } else if (function.equals("MIN")) {
+            return stats.getMin();
+        } else if (function.equals("MAX")) {
+            return stats.getMax();
+        } else if (function.equals("AVG")) {
+            return stats.getAvg();
+        }
+        throw new AssertionError("unknown function " + function);
     }
 
     public RelNode toRel(
             RelOptTable.ToRelContext context,
             RelOptTable relOptTable) {
+        final RelOptCluster cluster = context.getCluster();
+        final RelMetadataProvider provider = cluster.getMetadataProvider();
+        if (!(provider instanceof ElasticsearchRelMetadataProvider)) {
+            cluster.setMetadataProvider(
+                    new ElasticsearchRelMetadataProvider(provider));
+        }
         // Request all fields.
         final int fieldCount = relOptTable.getRowType().getFieldCount();
-        fields = ElasticsearchEnumerator.identityList(fieldCount);
-        return new ElasticsearchTableScan(context.getCluster(), relOptTable, this, fields);
+        final int[] fields = ElasticsearchEnumerator.identityList(fieldCount);
+        return new ElasticsearchTableScan(cluster,
+                cluster.traitSetOf(ElasticsearchRel.CONVENTION), relOptTable,
+                this, fields);
+    }
+
+    public Collection<Object> getModifiableCollection() {
+        return new ElasticsearchBulkWriter(schema.client, schema.index,
+                tableName, columnNames, partitioning, schema.bulkSize,
+                schema.bulkConcurrency, schema.bulkRetries, schema.cache);
+    }
+
+    public TableModify toModificationRel(RelOptCluster cluster,
+            RelOptTable table, Prepare.CatalogReader catalogReader,
+            RelNode child, TableModify.Operation operation,
+            List<String> updateColumnList, boolean flattened) {
+        return LogicalTableModify.create(table, catalogReader, child,
+                operation, updateColumnList, flattened);
     }
 
+    @SuppressWarnings("rawtypes")
     public Expression getExpression(SchemaPlus schema, String tableName,
                                     Class clazz) {
         return Schemas.tableExpression(schema, getElementType(), tableName, clazz);
     }
 
 
+    /** Implementation of {@link org.apache.calcite.linq4j.Queryable} based on
+     * a {@link ElasticsearchTable}. */
     public static class ElasticsearchQueryable<T> extends AbstractTableQueryable<T> {
         public ElasticsearchQueryable(QueryProvider queryProvider, SchemaPlus schema,
                                       ElasticsearchTable table, String tableName) {
             super(queryProvider, schema, table, tableName);
         }
 
+        @SuppressWarnings("unchecked")
         public Enumerator<T> enumerator() {
-            //noinspection unchecked
             final Enumerable<T> enumerable =
-                    (Enumerable<T>) getTable().project(null);
+                    (Enumerable<T>) getTable().find(getSchema(), null, null, null,
+                            Collections.<Map.Entry<String, String>>emptyList(),
+                            0, -1);
             return enumerable.enumerator();
         }
 
+        private ElasticsearchSchema getSchema() {
+            return schema.unwrap(ElasticsearchSchema.class);
+        }
+
         private ElasticsearchTable getTable() {
             return (ElasticsearchTable) table;
         }
 
+        /** Called via code-generation.
+         *
+         * @see ElasticsearchMethod#ELASTICSEARCH_QUERYABLE_FIND
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        public Enumerable<Object> find(String indices, String query,
+                List<Map.Entry<String, Class<?>>> fields,
+                List<Map.Entry<String, String>> sort, int offset, int fetch) {
+            return getTable().find(getSchema(), indices, query, fields, sort,
+                    offset, fetch);
+        }
+
+        /** Called via code-generation.
+         *
+         * @see ElasticsearchMethod#ELASTICSEARCH_QUERYABLE_FIND_KEYS
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        public Enumerable<Object> find(String indices, String query,
+                List<Map.Entry<String, Class<?>>> fields,
+                List<Map.Entry<String, String>> sort, int offset, int fetch,
+                String keyField, Enumerable<Object> keys) {
+            return getTable().find(getSchema(), indices, query, fields, sort,
+                    offset, fetch, keyField, keys);
+        }
+
+        /** Called via code-generation.
+         *
+         * @see ElasticsearchMethod#ELASTICSEARCH_QUERYABLE_AGGREGATE
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        public Enumerable<Object> aggregate(String indices, String query,
+                List<String> groupFields,
+                List<Map.Entry<String, String>> aggregations,
+                List<Map.Entry<String, Class<?>>> fields) {
+            return getTable().aggregate(getSchema().client, getSchema().index,
+                    indices, query, groupFields, aggregations, fields);
+        }
     }
 }
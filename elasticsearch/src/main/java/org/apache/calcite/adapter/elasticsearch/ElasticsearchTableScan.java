@@ -1,43 +1,50 @@
 package org.apache.calcite.adapter.elasticsearch;
 
-import java.util.AbstractList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
-import com.google.common.collect.ImmutableMap;
-import org.apache.calcite.adapter.enumerable.*;
-import org.apache.calcite.linq4j.tree.BlockBuilder;
-import org.apache.calcite.linq4j.tree.Blocks;
-import org.apache.calcite.linq4j.tree.Expression;
-import org.apache.calcite.linq4j.tree.Expressions;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptCost;
 import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptRule;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.plan.RelTraitSet;
-import org.apache.calcite.prepare.CalcitePrepareImpl;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelDataTypeField;
-import org.apache.calcite.runtime.Hook;
-import org.apache.calcite.util.Util;
 
-public class ElasticsearchTableScan extends TableScan implements EnumerableRel {
+/**
+ * Relational expression representing a scan of an Elasticsearch document
+ * type.
+ *
+ * <p>Additional operations might be applied by pushing them into the search
+ * request; see {@link ElasticsearchRules}.</p>
+ */
+public class ElasticsearchTableScan extends TableScan implements ElasticsearchRel {
     final ElasticsearchTable elasticsearchTable;
-//    final RelDataType projectRowType;
     final int[] fields;
 
-
-    protected ElasticsearchTableScan(RelOptCluster cluster, RelOptTable table,
-                                     ElasticsearchTable elasticsearchTable, int[] fields) {
-        super(cluster, cluster.traitSetOf(EnumerableConvention.INSTANCE), table);
+    /**
+     * Creates an ElasticsearchTableScan.
+     *
+     * @param cluster            Cluster
+     * @param traitSet           Traits
+     * @param table              Table
+     * @param elasticsearchTable Elasticsearch table
+     * @param fields             Fields to project
+     */
+    protected ElasticsearchTableScan(RelOptCluster cluster, RelTraitSet traitSet,
+                                     RelOptTable table,
+                                     ElasticsearchTable elasticsearchTable,
+                                     int[] fields) {
+        super(cluster, traitSet, table);
         this.elasticsearchTable = elasticsearchTable;
         this.fields = fields;
-    }
 
+        assert elasticsearchTable != null;
+        assert getConvention() == ElasticsearchRel.CONVENTION;
+    }
 
     @Override
     public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
@@ -45,11 +52,6 @@ public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
         return this;
     }
 
-//    @Override
-//    public RelDataType deriveRowType() {
-//        return projectRowType != null ? projectRowType : super.deriveRowType();
-//    }
-
     @Override public RelDataType deriveRowType() {
         final List<RelDataTypeField> fieldList = table.getRowType().getFieldList();
         final RelDataTypeFactory.FieldInfoBuilder builder =
@@ -60,21 +62,25 @@ public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
         return builder.build();
     }
 
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner) {
+        return super.computeSelfCost(planner).multiplyBy(.1);
+    }
+
     @Override
     public void register(RelOptPlanner planner) {
-        //Add elasticsearch rule
+        planner.addRule(ElasticsearchToEnumerableConverterRule.INSTANCE);
+        if (!elasticsearchTable.schema.pushdown) {
+            return;
+        }
+        for (RelOptRule rule : ElasticsearchRules.RULES) {
+            planner.addRule(rule);
+        }
     }
 
-    public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
-        final PhysType physType =
-                PhysTypeImpl.of(
-                        implementor.getTypeFactory(),
-                        getRowType(),
-                        pref.preferArray());
-        return implementor.result(
-                physType,
-                Blocks.toBlock(
-                        Expressions.call(table.getExpression(ElasticsearchTable.class),
-                                "project", Expressions.constant(fields))));
+    public void implement(Implementor implementor) {
+        implementor.elasticsearchTable = elasticsearchTable;
+        implementor.table = table;
+        implementor.fieldNames = getRowType().getFieldNames();
     }
 }
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.MethodCallExpression;
+import org.apache.calcite.plan.ConventionTraitDef;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.prepare.CalcitePrepareImpl;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.convert.ConverterImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.Pair;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Relational expression representing a scan of a table in an Elasticsearch
+ * data source.
+ */
+public class ElasticsearchToEnumerableConverter
+        extends ConverterImpl
+        implements EnumerableRel {
+    protected ElasticsearchToEnumerableConverter(
+            RelOptCluster cluster,
+            RelTraitSet traits,
+            RelNode input) {
+        super(cluster, ConventionTraitDef.INSTANCE, traits, input);
+    }
+
+    @Override
+    public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+        return new ElasticsearchToEnumerableConverter(
+                getCluster(), traitSet, sole(inputs));
+    }
+
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner) {
+        // fetching fewer fields is cheaper
+        final float f = (float) (getRowType().getFieldCount() + 1) / 100f;
+        return super.computeSelfCost(planner).multiplyBy(.1 * f);
+    }
+
+    @Override public RelWriter explainTerms(RelWriter pw) {
+        final ElasticsearchRel.Implementor esImplementor =
+                ElasticsearchRel.Implementor.of(getInput());
+        return super.explainTerms(pw)
+                .itemIf("request",
+                        esImplementor == null ? null : esImplementor.describe(),
+                        esImplementor != null);
+    }
+
+    public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+        final ElasticsearchRel.Implementor esImplementor =
+                new ElasticsearchRel.Implementor();
+        esImplementor.visitChild(0, getInput());
+        return implement(implementor, pref, getRowType(), esImplementor);
+    }
+
+    /** Generates code that executes the search request gathered by an
+     * {@link ElasticsearchRel.Implementor}, and returns rows of a given
+     * type. */
+    static Result implement(EnumerableRelImplementor implementor, Prefer pref,
+            RelDataType rowType, ElasticsearchRel.Implementor esImplementor) {
+        return implement(implementor, pref, rowType, esImplementor, null, null);
+    }
+
+    /** Generates code that executes the search request gathered by an
+     * {@link ElasticsearchRel.Implementor}, restricted at run time to the
+     * documents whose field {@code keyField} has one of the values of
+     * {@code keys}; see {@link ElasticsearchJoin}.
+     *
+     * @param keyField Name of the field to restrict, or null
+     * @param keys Expression that yields an enumerable of values, or null
+     */
+    static Result implement(EnumerableRelImplementor implementor, Prefer pref,
+            final RelDataType rowType,
+            ElasticsearchRel.Implementor esImplementor, String keyField,
+            Expression keys) {
+        // Generates a call to "find":
+        //
+        //   ((ElasticsearchTable.ElasticsearchQueryable) schema.getTable("logs"))
+        //       .find(null, "{\"constant_score\": {...}}", fields, sort, 0, 100)
+        final BlockBuilder list = new BlockBuilder();
+        final PhysType physType =
+                PhysTypeImpl.of(
+                        implementor.getTypeFactory(), rowType,
+                        pref.prefer(JavaRowFormat.ARRAY));
+        final Expression fields =
+                list.append("fields",
+                        constantArrayList(
+                                Pair.zip(esImplementor.fieldNames,
+                                        new AbstractList<Class<?>>() {
+                                            @Override
+                                            public Class<?> get(int index) {
+                                                return physType.fieldClass(index);
+                                            }
+
+                                            @Override
+                                            public int size() {
+                                                return rowType.getFieldCount();
+                                            }
+                                        }),
+                                Pair.class));
+        final Expression table =
+                list.append("table",
+                        esImplementor.table.getExpression(
+                                ElasticsearchTable.ElasticsearchQueryable.class));
+        final String query = esImplementor.query();
+        final List<Expression> arguments =
+                Expressions.list(
+                        Expressions.constant(esImplementor.indices(),
+                                String.class),
+                        Expressions.constant(query, String.class),
+                        fields,
+                        constantArrayList(esImplementor.sort, Pair.class),
+                        Expressions.constant(esImplementor.offset),
+                        Expressions.constant(esImplementor.fetch));
+        if (keys != null) {
+            arguments.add(Expressions.constant(keyField, String.class));
+            arguments.add(keys);
+        }
+        Expression enumerable =
+                list.append("enumerable",
+                        Expressions.call(table,
+                                keys == null
+                                        ? ElasticsearchMethod.ELASTICSEARCH_QUERYABLE_FIND.method
+                                        : ElasticsearchMethod.ELASTICSEARCH_QUERYABLE_FIND_KEYS.method,
+                                arguments));
+        if (CalcitePrepareImpl.DEBUG) {
+            System.out.println("Elasticsearch: " + query);
+        }
+        Hook.QUERY_PLAN.run(query);
+        list.add(
+                Expressions.return_(null, enumerable));
+        return implementor.result(physType, list.toBlock());
+    }
+
+    /** E.g. {@code constantArrayList("x", "y")} returns
+     * "Arrays.asList('x', 'y')". */
+    static <T> MethodCallExpression constantArrayList(List<T> values,
+            Class<?> clazz) {
+        return Expressions.call(
+                BuiltInMethod.ARRAYS_AS_LIST.method,
+                Expressions.newArrayInit(clazz, constantList(values)));
+    }
+
+    /** E.g. {@code constantList("x", "y")} returns
+     * {@code {ConstantExpression("x"), ConstantExpression("y")}}. */
+    static <T> List<Expression> constantList(List<T> values) {
+        return Lists.transform(values,
+                new Function<T, Expression>() {
+                    public Expression apply(T a0) {
+                        return Expressions.constant(a0);
+                    }
+                });
+    }
+}
+
+// End ElasticsearchToEnumerableConverter.java
@@ -16,33 +16,992 @@
  */
 package org.apache.calcite.adapter.elasticsearch;
 
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.runtime.Hook;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+import com.google.common.base.Function;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
-import java.sql.*;
-import java.util.Arrays;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.CoreMatchers.anyOf;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 /**
- * Tests for using Calcite with Spark as an internal engine, as implemented by
- * the {@link org.apache.calcite.adapter.spark} package.
+ * Tests for the Elasticsearch adapter, against the corpus of an
+ * {@link ElasticsearchFixture}. Each query is run with and without pushdown,
+ * and both must return the same rows.
  */
 public class ElasticsearchAdapterTest {
+    private static final int DOC_COUNT = 1000;
+
+    private static ElasticsearchFixture fixture;
+
+    @BeforeClass public static void setUp() throws Exception {
+        fixture = ElasticsearchFixture.start(DOC_COUNT, 2);
+    }
+
+    @AfterClass public static void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+            fixture = null;
+        }
+    }
+
+    /** Runs a query and returns its rows, each as a string. */
+    private static List<String> query(boolean pushdown, String sql)
+            throws SQLException {
+        return query(ElasticsearchFixture.INDEX, null, pushdown, sql);
+    }
+
+    /** Runs a query on the schema of an index, with extra operands or
+     * null, and returns its rows, each as a string. */
+    private static List<String> query(String index, String operands,
+            boolean pushdown, String sql) throws SQLException {
+        final Connection connection =
+                fixture.connect(index,
+                        (operands == null ? "" : operands + ", ")
+                                + "pushdown: " + pushdown);
+        try {
+            return query(connection, sql);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /** Runs a query on a connection and returns its rows, each as a
+     * string. */
+    private static List<String> query(Connection connection, String sql)
+            throws SQLException {
+        final Statement statement = connection.createStatement();
+        final ResultSet resultSet = statement.executeQuery(sql);
+        final int columnCount = resultSet.getMetaData().getColumnCount();
+        final List<String> rows = new ArrayList<String>();
+        while (resultSet.next()) {
+            final StringBuilder buf = new StringBuilder();
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1) {
+                    buf.append("; ");
+                }
+                buf.append(resultSet.getMetaData().getColumnLabel(i))
+                        .append("=")
+                        .append(resultSet.getString(i));
+            }
+            rows.add(buf.toString());
+        }
+        statement.close();
+        return rows;
+    }
+
+    /** Returns the plan of a query. */
+    private static String explain(boolean pushdown, String sql)
+            throws SQLException {
+        return explain(ElasticsearchFixture.INDEX, null, pushdown, sql);
+    }
+
+    /** Returns the plan of a query on the schema of an index, with extra
+     * operands or null. */
+    private static String explain(String index, String operands,
+            boolean pushdown, String sql) throws SQLException {
+        final List<String> rows =
+                query(index, operands, pushdown, "explain plan for " + sql);
+        assertThat(rows.size(), is(1));
+        return rows.get(0);
+    }
+
+    /** Checks that a query, which must have an ORDER BY or a single row,
+     * returns the same rows with and without pushdown, and returns them. */
+    private static List<String> check(String sql) throws SQLException {
+        return check(ElasticsearchFixture.INDEX, null, sql);
+    }
+
+    /** As {@link #check(String)}, on the schema of an index, with extra
+     * operands or null. */
+    private static List<String> check(String index, String operands,
+            String sql) throws SQLException {
+        final List<String> rows = query(index, operands, true, sql);
+        assertThat(query(index, operands, false, sql), equalTo(rows));
+        return rows;
+    }
+
+    @Test public void testScan() throws SQLException {
+        // Without ORDER BY, the order of rows depends on the shards.
+        final String sql =
+                "select \"_id\", \"host\", \"status\" from \"event\"";
+        assertThat(query(true, sql).size(), is(DOC_COUNT));
+        assertThat(query(false, sql).size(), is(DOC_COUNT));
+    }
+
+    @Test public void testFilter() throws SQLException {
+        final String sql =
+                "select count(*) as c from \"event\" where \"status\" = 500";
+        assertThat(check(sql).toString(),
+                equalTo("[C=" + DOC_COUNT / 20 + "]"));
+        assertThat(explain(true, sql), containsString("ElasticsearchFilter"));
+        assertThat(explain(false, sql),
+                not(containsString("ElasticsearchFilter")));
+    }
+
+    /** Tests that a negated condition does not match the documents that
+     * lack the field, because for them the condition is unknown. */
+    @Test public void testNotOnMissingField() throws SQLException {
+        final String sql = "select count(*) as c from \"event\"\n"
+                + "where not (\"status\" >= 404)";
+        assertThat(check(sql).toString(),
+                equalTo("[C=" + (DOC_COUNT - DOC_COUNT / 10 - 5) + "]"));
+        assertThat(explain(true, sql), containsString("\"must_not\""));
+        final String sql2 = "select count(*) as c from \"event\"\n"
+                + "where \"status\" is null";
+        assertThat(check(sql2).toString(), equalTo("[C=5]"));
+    }
+
+    /** Tests that comparisons on an analyzed field, which is indexed as
+     * words, are not pushed down. */
+    @Test public void testFilterOnAnalyzedField() throws SQLException {
+        final String sql = "select count(*) as c from \"event\"\n"
+                + "where \"msg\" = 'disk error'";
+        assertThat(check(sql).toString(), equalTo("[C=194]"));
+        assertThat(explain(true, sql),
+                not(containsString("ElasticsearchFilter")));
+        final String sql2 = "select count(*) as c from \"event\"\n"
+                + "where \"msg\" >= 'request' and \"msg\" < 's'";
+        assertThat(check(sql2).toString(), equalTo("[C=399]"));
+        assertThat(explain(true, sql2),
+                not(containsString("ElasticsearchFilter")));
+        // Only the comparison on the field that is not analyzed is pushed.
+        final String sql3 = "select count(*) as c from \"event\"\n"
+                + "where \"host\" = 'web1' and \"msg\" = 'disk error'";
+        assertThat(check(sql3).toString(), equalTo("[C=18]"));
+        assertThat(explain(true, sql3),
+                containsString(
+                        "ElasticsearchFilter(condition=[=($2, 'web1')])"));
+    }
+
+    /** Tests that a comparison of a field cast to a narrower type, which
+     * changes its values, is not pushed down. */
+    @Test public void testFilterOnCast() throws SQLException {
+        final String sql = "select count(*) as c from \"event\"\n"
+                + "where cast(\"ts\" as date) = date '2026-10-01'";
+        assertThat(check(sql).toString(), equalTo("[C=" + DOC_COUNT + "]"));
+        assertThat(explain(true, sql),
+                not(containsString("ElasticsearchFilter")));
+    }
+
+    @Test public void testAggregate() throws SQLException {
+        final String sql = "select \"host\", count(*) as c from \"event\"\n"
+                + "where \"host\" in ('web0', 'web15')\n"
+                + "group by \"host\" order by \"host\"";
+        assertThat(check(sql).toString(),
+                equalTo("[host=web0; C=63, host=web15; C=62]"));
+        assertThat(explain(true, sql),
+                containsString("ElasticsearchAggregate"));
+        assertThat(explain(false, sql),
+                not(containsString("ElasticsearchAggregate")));
+    }
+
+    /** Tests that a GROUP BY on an analyzed field, which a terms
+     * aggregation would split into words, is not pushed down. */
+    @Test public void testAggregateOnAnalyzedField() throws SQLException {
+        final String sql = "select \"msg\", count(*) as c from \"event\"\n"
+                + "group by \"msg\" order by \"msg\"";
+        assertThat(check(sql).toString(),
+                equalTo("[msg=connection reset by peer; C=193,"
+                        + " msg=disk error; C=194, msg=request ok; C=194,"
+                        + " msg=request ok from cache; C=205,"
+                        + " msg=slow request; C=214]"));
+        assertThat(explain(true, sql),
+                not(containsString("ElasticsearchAggregate")));
+    }
+
+    /** Tests that an approximate distinct count is pushed down as a
+     * cardinality metric, except on an analyzed field, whose words it
+     * would count. */
+    @Test public void testApproxCountDistinct() throws SQLException {
+        final String sql =
+                "select approx_count_distinct(\"host\") as c from \"event\"";
+        assertThat(check(sql).toString(),
+                equalTo("[C=" + ElasticsearchFixture.HOST_COUNT + "]"));
+        assertThat(explain(true, sql), containsString("\"cardinality\""));
+        final String sql2 =
+                "select approx_count_distinct(\"msg\") as c from \"event\"";
+        assertThat(check(sql2).toString(), equalTo("[C=5]"));
+        assertThat(explain(true, sql2),
+                not(containsString("ElasticsearchAggregate")));
+    }
+
+    /** Tests that a scan fetches from {@code _source} only the fields that
+     * the query uses. Fields used only by a filter that runs on the server
+     * need not be fetched. */
+    @Test public void testProject() throws SQLException {
+        final String sql =
+                "select \"_id\", \"host\", \"status\" + 1 as s from \"event\"\n"
+                + "where \"_id\" in ('1', '20') order by \"_id\"";
+        assertThat(check(sql).toString(),
+                equalTo("[_id=1; host=web1; S=201,"
+                        + " _id=20; host=web4; S=501]"));
+        assertThat(explain(true, sql), containsString("ElasticsearchProject"));
+        assertThat(explain(true, sql),
+                containsString("\"_source\":{\"includes\":"
+                        + "[\"host\",\"status\"],\"excludes\":[]}"));
+        assertThat(explain(false, sql),
+                containsString("\"_source\":{\"includes\":"
+                        + "[\"bytes\",\"host\",\"msg\",\"status\",\"ts\"],"));
+        final String sql2 = "select \"_id\", \"msg\" from \"event\"\n"
+                + "where \"status\" = 404 and \"host\" = 'web10'\n"
+                + "order by \"ts\" limit 2";
+        assertThat(check(sql2).toString(),
+                equalTo("[_id=10; msg=request ok from cache,"
+                        + " _id=90; msg=request ok from cache]"));
+        assertThat(explain(true, sql2),
+                containsString("\"_source\":{\"includes\":"
+                        + "[\"msg\",\"ts\"],\"excludes\":[]}"));
+    }
+
+    @Test public void testSortLimit() throws SQLException {
+        final String sql = "select \"_id\", \"status\" from \"event\"\n"
+                + "order by \"ts\" desc limit 3";
+        assertThat(check(sql).toString(),
+                equalTo("[_id=999; status=200, _id=998; status=200,"
+                        + " _id=997; status=200]"));
+        assertThat(explain(true, sql), containsString("ElasticsearchSort"));
+        assertThat(explain(false, sql),
+                not(containsString("ElasticsearchSort")));
+    }
+
+    /** Tests that a sort on an analyzed field is not pushed down, because
+     * the cluster would sort each document by one of the field's terms. */
+    @Test public void testSortOnAnalyzedField() throws SQLException {
+        final String sql = "select \"msg\" from \"event\"\n"
+                + "order by \"msg\" desc limit 2";
+        assertThat(check(sql).toString(),
+                equalTo("[msg=slow request, msg=slow request]"));
+        final String plan = explain(true, sql);
+        assertThat(plan, containsString("EnumerableSort"));
+        assertThat(plan, not(containsString("ElasticsearchSort")));
+        final String sql2 = "select \"msg\" from \"event\"\n"
+                + "order by \"msg\" limit 1";
+        assertThat(check(sql2).toString(),
+                equalTo("[msg=connection reset by peer]"));
+    }
+
+    /** Tests a join whose right input is restricted to the keys of the left
+     * input; and that a join on an analyzed field is not, because its terms
+     * are words. */
+    @Test public void testJoin() throws SQLException {
+        final String sql = "select count(*) as c\n"
+                + "from (values (cast('web3' as varchar(20)))) as t(h)\n"
+                + "join \"event\" as e on t.h = e.\"host\"";
+        assertThat(check(sql).toString(), equalTo("[C=63]"));
+        assertThat(explain(true, sql), containsString("ElasticsearchJoin"));
+        final String sql2 = "select count(*) as c\n"
+                + "from (values (cast('disk error' as varchar(20)))) as t(m)\n"
+                + "join \"event\" as e on t.m = e.\"msg\"";
+        assertThat(check(sql2).toString(), equalTo("[C=194]"));
+        assertThat(explain(true, sql2),
+                not(containsString("ElasticsearchJoin")));
+    }
+
+    @Test public void testExplainShowsRequest() throws SQLException {
+        final String sql = "select \"_id\" from \"event\"\n"
+                + "where \"status\" = 404 order by \"ts\" limit 2";
+        final String plan = explain(true, sql);
+        assertThat(plan,
+                containsString("request=[logs/event {\"size\":2,"
+                        + "\"query\":{\"constant_score\":{\"filter\":"
+                        + "{\"term\":{\"status\":404}}}},"));
+        assertThat(plan,
+                containsString("\"sort\":[{\"ts\":{\"order\":\"asc\","
+                        + "\"missing\":\"_last\"}}]"));
+    }
+
+    /** Creates a document type, with no documents, in an index, creating
+     * the index if it does not exist. Its "ts" is a date, its "host" is not
+     * analyzed, and its "status" is an integer. */
+    private static void createType(String index, String type)
+            throws IOException {
+        createType(index, type, "ts:date", "host:string:not_analyzed",
+                "status:integer");
+    }
+
+    /** Creates a document type, with no documents, in an index, creating
+     * the index if it does not exist. Each field is "name:type", or
+     * "name:type:index" to set how it is indexed. */
+    private static void createType(String index, String type,
+            String... fields) throws IOException {
+        final Client client = fixture.client();
+        if (!client.admin().indices().prepareExists(index).execute()
+                .actionGet().isExists()) {
+            client.admin().indices().prepareCreate(index).execute()
+                    .actionGet();
+        }
+        final XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                .startObject(type)
+                .startObject("properties");
+        for (String field : fields) {
+            final String[] parts = field.split(":");
+            mapping.startObject(parts[0]).field("type", parts[1]);
+            if (parts.length > 2) {
+                mapping.field("index", parts[2]);
+            }
+            mapping.endObject();
+        }
+        mapping.endObject().endObject().endObject();
+        client.admin().indices().preparePutMapping(index).setType(type)
+                .setSource(mapping).execute().actionGet();
+    }
+
+    /** Executes a statement on the schema of an index, with extra operands
+     * or null, and returns its update count. */
+    private static int update(String index, String operands, String sql)
+            throws SQLException {
+        final Connection connection = fixture.connect(index, operands);
+        try {
+            return connection.createStatement().executeUpdate(sql);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /** Tests that INSERT writes documents in bulk requests, that they can
+     * be read at once, and that a row with an existing id replaces its
+     * document. */
+    @Test public void testInsert() throws IOException, SQLException {
+        createType(ElasticsearchFixture.INDEX, "audit");
+        final String select = "select \"_id\", \"host\", \"status\"\n"
+                + "from \"event\" where \"status\" = 500";
+        assertThat(
+                update(ElasticsearchFixture.INDEX, "bulkSize: 7",
+                        "insert into \"audit\" (\"_id\", \"host\", \"status\")\n"
+                                + select),
+                is(DOC_COUNT / 20));
+        assertThat(check("select count(*) as c, min(\"status\") as s\n"
+                        + "from \"audit\"").toString(),
+                equalTo("[C=" + DOC_COUNT / 20 + "; S=500]"));
+        assertThat(
+                update(ElasticsearchFixture.INDEX, null,
+                        "insert into \"audit\" (\"_id\", \"host\", \"status\")\n"
+                                + "values ('20', 'web4', 503),\n"
+                                + " ('x', 'web9', cast(null as integer))"),
+                is(2));
+        assertThat(check("select count(*) as c from \"audit\"").toString(),
+                equalTo("[C=" + (DOC_COUNT / 20 + 1) + "]"));
+        assertThat(check("select \"_id\", \"host\", \"status\"\n"
+                        + "from \"audit\" where \"_id\" in ('0', '20', 'x')\n"
+                        + "order by \"_id\"").toString(),
+                equalTo("[_id=0; host=web0; status=500,"
+                        + " _id=20; host=web4; status=503,"
+                        + " _id=x; host=web9; status=null]"));
+    }
+
+    /** Returns the number of search contexts, such as scrolls, that are
+     * open on the corpus's index. */
+    private static long openSearchContexts() {
+        return fixture.client().admin().indices()
+                .prepareStats(ElasticsearchFixture.INDEX).clear()
+                .setSearch(true).execute().actionGet()
+                .getTotal().getSearch().getOpenContexts();
+    }
+
+    /** Waits until no search context is open on the corpus's index; a
+     * scroll is cleared asynchronously. */
+    private static void assertNoOpenSearchContexts()
+            throws InterruptedException {
+        for (int i = 0; i < 100 && openSearchContexts() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(openSearchContexts(), is(0L));
+    }
+
+    /** Tests that a scan reads every document in pages, and that its scroll
+     * is cleared whether it is read to the end or closed early. */
+    @Test public void testScroll() throws InterruptedException, SQLException {
+        final String sql = "select \"_id\" from \"event\"";
+        final List<ElasticsearchQueryStats> statsList =
+                new ArrayList<ElasticsearchQueryStats>();
+        final Hook.Closeable hook = Hook.QUERY_STATS.addThread(
+                new Function<Object, Void>() {
+                    public Void apply(Object o) {
+                        statsList.add((ElasticsearchQueryStats) o);
+                        return null;
+                    }
+                });
+        final List<String> rows;
+        try {
+            rows = query(ElasticsearchFixture.INDEX, "fetchSize: 7", true,
+                    sql);
+        } finally {
+            hook.close();
+        }
+        assertThat(rows.size(), is(DOC_COUNT));
+        assertThat(new HashSet<String>(rows).size(), is(DOC_COUNT));
+        assertThat(statsList.size(), is(1));
+        // Each page holds up to 7 hits from each of the 2 shards.
+        assertThat(statsList.get(0).getRoundTrips() > DOC_COUNT / 14,
+                is(true));
+        assertNoOpenSearchContexts();
 
-    @Test
-    public void testElasticSearch() {
+        final Connection connection = fixture.connect("fetchSize: 7");
         try {
-            Class.forName("org.apache.calcite.jdbc.Driver");
-            Connection conn = DriverManager.getConnection("jdbc:calcite:model=/home/bylee/calcite-elasticsearch/elasticsearch/src/test/resources/elasticsearch-model.json");
-            Statement stmt = conn.createStatement();
+            final ResultSet resultSet =
+                    connection.createStatement().executeQuery(sql);
+            for (int i = 0; i < 10; i++) {
+                assertThat(resultSet.next(), is(true));
+            }
+            assertThat(openSearchContexts() > 0, is(true));
+            resultSet.close();
+        } finally {
+            connection.close();
+        }
+        assertNoOpenSearchContexts();
+    }
+
+    /** Returns the number of live workers of parallel scans. */
+    private static int scanWorkerCount() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("elasticsearch-scan-")
+                    && thread.isAlive()) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /** Tests that a scan of each shard in parallel returns the same rows as
+     * a single scan, and that closing it early stops its workers and clears
+     * their scrolls. */
+    @Test public void testParallelScan()
+            throws InterruptedException, SQLException {
+        final String operands = "parallelism: 2, fetchSize: 7";
+        final String sql = "select \"_id\", \"host\" from \"event\"\n"
+                + "where \"status\" = 200";
+        final List<String> rows =
+                query(ElasticsearchFixture.INDEX, operands, true, sql);
+        final List<String> expected = query(true, sql);
+        assertThat(rows.size(), is(DOC_COUNT * 9 / 10 - 5));
+        Collections.sort(rows);
+        Collections.sort(expected);
+        assertThat(rows, equalTo(expected));
 
-            ResultSet rs = stmt.executeQuery("select * from \"testcreatetable\"");
-            while (rs.next()) {
-                System.out.println("Row: " + rs.getString(2));
+        final Connection connection = fixture.connect(operands);
+        try {
+            final ResultSet resultSet =
+                    connection.createStatement().executeQuery(sql);
+            for (int i = 0; i < 10; i++) {
+                assertThat(resultSet.next(), is(true));
             }
+            // Both shards are being read, and their workers wait for the
+            // consumer.
+            assertThat(scanWorkerCount(), is(2));
+            resultSet.close();
+        } finally {
+            connection.close();
+        }
+        assertThat(scanWorkerCount(), is(0));
+        assertNoOpenSearchContexts();
+    }
+
+    /** Tests that a query on a time-partitioned index pattern searches only
+     * the indices of the days that its filter on the timestamp allows, and
+     * that INSERT writes each row to the index of its day. */
+    @Test public void testPartitionPruning() throws IOException, SQLException {
+        final Client client = fixture.client();
+        final String[] days = {"2026.10.01", "2026.10.02", "2026.10.03"};
+        for (int d = 0; d < days.length; d++) {
+            createType("plogs-" + days[d], "event");
+            for (int i = 0; i < 10; i++) {
+                client.prepareIndex("plogs-" + days[d], "event", d + "." + i)
+                        .setSource(
+                                XContentFactory.jsonBuilder().startObject()
+                                        .field("ts",
+                                                ElasticsearchFixture.START
+                                                        + (d * 24L + i)
+                                                        * 3600000L)
+                                        .field("host", "web" + i)
+                                        .field("status", 200)
+                                        .endObject())
+                        .execute().actionGet();
+            }
+        }
+        client.admin().indices().prepareRefresh("plogs-*").execute()
+                .actionGet();
+        final String index = "plogs-*";
+        final String operands = "partitionField: 'ts',\n"
+                + "        partitionFormat: \"'plogs-'yyyy.MM.dd\"";
+
+        final String sql = "select count(*) as c from \"event\"\n"
+                + "where \"ts\" >= timestamp '2026-10-02 00:00:00'\n"
+                + "and \"ts\" < timestamp '2026-10-03 00:00:00'";
+        assertThat(check(index, operands, sql).toString(), equalTo("[C=10]"));
+        assertThat(explain(index, operands, true, sql),
+                containsString("request=[plogs-2026.10.02/event {"));
+        final String sql2 = "select count(*) as c from \"event\"\n"
+                + "where \"ts\" between timestamp '2026-10-01 05:00:00'\n"
+                + "and timestamp '2026-10-02 05:00:00'";
+        assertThat(check(index, operands, sql2).toString(),
+                equalTo("[C=11]"));
+        assertThat(explain(index, operands, true, sql2),
+                containsString(
+                        "request=[plogs-2026.10.01,plogs-2026.10.02/event {"));
+        final String sql3 = "select count(*) as c from \"event\"";
+        assertThat(check(index, operands, sql3).toString(),
+                equalTo("[C=30]"));
+        assertThat(explain(index, operands, true, sql3),
+                containsString("request=[plogs-*/event {"));
+
+        assertThat(
+                update(index, operands,
+                        "insert into \"event\" (\"_id\", \"ts\", \"host\")\n"
+                                + "values ('n', timestamp '2026-10-03 12:00:00',"
+                                + " 'web1'),\n"
+                                + " ('m', timestamp '2026-10-01 12:00:00',"
+                                + " 'web3'),\n"
+                                + " ('o', timestamp '2026-10-03 13:00:00',"
+                                + " 'web2')"),
+                is(3));
+        final long[] counts = {11, 10, 12};
+        for (int d = 0; d < days.length; d++) {
+            assertThat(
+                    client.prepareCount("plogs-" + days[d]).execute()
+                            .actionGet().getCount(),
+                    is(counts[d]));
+        }
+    }
+
+    /** Tests that a repeated query is answered from the result cache
+     * without a round trip, that a write through the schema makes the cache
+     * read the index again, and that results expire. */
+    @Test public void testResultCache()
+            throws IOException, InterruptedException, SQLException {
+        createType(ElasticsearchFixture.INDEX, "cached");
+        final String stats = "select \"hits\", \"misses\", \"rows\",\n"
+                + "\"stats_requests\" from \"_cache_stats\"";
+        final String sql = "select count(*) as c from \"event\"\n"
+                + "where \"status\" = 500";
+        final String sql2 = "select count(*) as c from \"cached\"";
+        final Connection connection =
+                fixture.connect("cacheSize: 100, cacheTtl: '1m'");
+        try {
+            assertThat(query(connection, stats).toString(),
+                    equalTo("[hits=0; misses=0; rows=0; stats_requests=0]"));
+            assertThat(query(connection, sql).toString(),
+                    equalTo("[C=" + DOC_COUNT / 20 + "]"));
+            assertThat(query(connection, sql).toString(),
+                    equalTo("[C=" + DOC_COUNT / 20 + "]"));
+            assertThat(query(connection, stats).toString(),
+                    equalTo("[hits=1; misses=1; rows=1; stats_requests=1]"));
+
+            assertThat(query(connection, sql2).toString(), equalTo("[C=0]"));
+            assertThat(
+                    connection.createStatement().executeUpdate(
+                            "insert into \"cached\" (\"_id\", \"host\")\n"
+                                    + "select \"_id\", \"host\" from \"event\"\n"
+                                    + "where \"status\" = 404"),
+                    is(DOC_COUNT / 20));
+            assertThat(query(connection, sql2).toString(),
+                    equalTo("[C=" + DOC_COUNT / 20 + "]"));
+            // The rows read by INSERT are cached too; the old count of
+            // "cached" stays until it is evicted.
+            assertThat(query(connection, stats).toString(),
+                    equalTo("[hits=1; misses=4; rows=" + (DOC_COUNT / 20 + 3)
+                            + "; stats_requests=2]"));
+        } finally {
+            connection.close();
+        }
+
+        final Connection connection2 =
+                fixture.connect("cacheSize: 100, cacheTtl: '50ms'");
+        try {
+            assertThat(query(connection2, sql).toString(),
+                    equalTo("[C=" + DOC_COUNT / 20 + "]"));
+            Thread.sleep(100);
+            assertThat(query(connection2, sql).toString(),
+                    equalTo("[C=" + DOC_COUNT / 20 + "]"));
+            assertThat(query(connection2, stats).toString(),
+                    equalTo("[hits=0; misses=2; rows=1; stats_requests=1]"));
+        } finally {
+            connection2.close();
+        }
+    }
+
+    /** Returns the number of rows that the planner estimates a query
+     * returns, from the plan that it converts the query to. */
+    private static double estimateRowCount(String sql) throws SQLException {
+        final List<Double> rowCounts = new ArrayList<Double>();
+        final Hook.Closeable hook = Hook.CONVERTED.addThread(
+                new Function<RelNode, Void>() {
+                    public Void apply(RelNode rel) {
+                        rowCounts.add(RelMetadataQuery.getRowCount(rel));
+                        return null;
+                    }
+                });
+        try {
+            query(true, sql);
+        } finally {
+            hook.close();
+        }
+        assertThat(rowCounts.size(), is(1));
+        return rowCounts.get(0);
+    }
+
+    /** Tests that the planner estimates row counts from the number of
+     * documents and the numbers of distinct values of fields. */
+    @Test public void testStatistics() throws SQLException {
+        assertThat(estimateRowCount("select * from \"event\""),
+                is((double) DOC_COUNT));
+        assertThat(
+                estimateRowCount("select \"_id\" from \"event\"\n"
+                        + "where \"host\" = 'web3'"),
+                is((double) DOC_COUNT / ElasticsearchFixture.HOST_COUNT));
+        assertThat(
+                estimateRowCount("select \"_id\" from \"event\"\n"
+                        + "where \"status\" = 500 and \"host\" = 'web0'"),
+                is((double) DOC_COUNT / 3 / ElasticsearchFixture.HOST_COUNT));
+        assertThat(
+                estimateRowCount("select \"host\", count(*) from \"event\"\n"
+                        + "group by \"host\""),
+                is((double) ElasticsearchFixture.HOST_COUNT));
+        assertThat(
+                estimateRowCount("select * from \"event\"\n"
+                        + "where \"_id\" = '7'"),
+                is(1d));
+    }
+
+    /** Tests that the values in documents' sources are decoded into the SQL
+     * types of their fields: numbers of each size, booleans, dates given as
+     * strings or as milliseconds, numbers given as strings, binary values,
+     * and objects. */
+    @Test public void testDecode() throws IOException, SQLException {
+        createType(ElasticsearchFixture.INDEX, "typed", "b:byte",
+                "sh:short", "i:integer", "l:long", "f:float", "d:double",
+                "flag:boolean", "t:date", "bin:binary", "addr:ip",
+                "obj:object");
+        final Client client = fixture.client();
+        client.prepareIndex(ElasticsearchFixture.INDEX, "typed", "1")
+                .setSource(
+                        XContentFactory.jsonBuilder().startObject()
+                                .field("b", 1).field("sh", 2).field("i", 3)
+                                .field("l", 4000000000L).field("f", 1.5f)
+                                .field("d", 2.25d).field("flag", true)
+                                .field("t", "2026-10-01T12:00:00Z")
+                                .field("bin", new byte[] {1, 2})
+                                .field("addr", "10.0.0.1")
+                                .startObject("obj").field("k", "v")
+                                .endObject()
+                                .endObject())
+                .execute().actionGet();
+        client.prepareIndex(ElasticsearchFixture.INDEX, "typed", "2")
+                .setSource(
+                        XContentFactory.jsonBuilder().startObject()
+                                .field("i", "7").field("flag", false)
+                                .field("t", ElasticsearchFixture.START)
+                                .endObject())
+                .execute().actionGet();
+        client.admin().indices().prepareRefresh(ElasticsearchFixture.INDEX)
+                .execute().actionGet();
+        assertThat(
+                check("select \"_id\", \"b\", \"sh\", \"i\", \"l\", \"f\",\n"
+                        + " \"d\", \"flag\", \"t\", \"bin\", \"addr\"\n"
+                        + "from \"typed\" order by \"_id\"").toString(),
+                equalTo("[_id=1; b=1; sh=2; i=3; l=4000000000; f=1.5; d=2.25;"
+                        + " flag=true; t=2026-10-01 12:00:00; bin=0102;"
+                        + " addr=10.0.0.1,"
+                        + " _id=2; b=null; sh=null; i=7; l=null; f=null;"
+                        + " d=null; flag=false; t=2026-10-01 00:00:00;"
+                        + " bin=null; addr=null]"));
+        assertThat(
+                check("select cast(\"obj\"['k'] as varchar(10)) as k\n"
+                        + "from \"typed\" where \"_id\" = '1'").toString(),
+                equalTo("[K=v]"));
+        assertThat(
+                check("select \"_id\", \"l\" + 1 as l1\n"
+                        + "from \"typed\" where \"i\" > 5").toString(),
+                equalTo("[_id=2; L1=null]"));
+    }
+
+    /** Tests that the mappings of a type in the indices of a pattern are
+     * merged: every field is a column, numbers are widened, and a field that
+     * is analyzed in any index is treated as analyzed. */
+    @Test public void testMergeMappings() throws IOException, SQLException {
+        createType("mlogs-1", "event", "host:string:not_analyzed",
+                "status:integer");
+        createType("mlogs-2", "event", "host:string", "status:long",
+                "region:string:not_analyzed");
+        final Client client = fixture.client();
+        client.prepareIndex("mlogs-1", "event", "a")
+                .setSource("host", "web1", "status", 200)
+                .execute().actionGet();
+        client.prepareIndex("mlogs-2", "event", "b")
+                .setSource("host", "web1", "status", 5000000000L,
+                        "region", "eu")
+                .execute().actionGet();
+        client.admin().indices().prepareRefresh("mlogs-*").execute()
+                .actionGet();
+        final String index = "mlogs-*";
+        assertThat(
+                check(index, null,
+                        "select * from \"event\" order by \"_id\"")
+                        .toString(),
+                equalTo("[_id=a; host=web1; status=200; region=null,"
+                        + " _id=b; host=web1; status=5000000000; region=eu]"));
+        final String sql = "select \"_id\" from \"event\"\n"
+                + "where \"host\" = 'web1' order by \"_id\"";
+        assertThat(check(index, null, sql).toString(),
+                equalTo("[_id=a, _id=b]"));
+        assertThat(explain(index, null, true, sql),
+                not(containsString("ElasticsearchFilter")));
+
+        // A string in one index and a number in another cannot be merged.
+        createType("clogs-1", "event", "status:integer");
+        createType("clogs-2", "event", "status:string");
+        try {
+            query("clogs-*", null, true, "select * from \"event\"");
+            fail("expected error");
+        } catch (SQLException e) {
+            // The order of the indices is not defined.
+            assertThat(e.getMessage(),
+                    anyOf(
+                            containsString("Field 'status' of type 'event' is"
+                                    + " 'integer' in one index of 'clogs-*'"
+                                    + " and 'string' in another"),
+                            containsString("Field 'status' of type 'event' is"
+                                    + " 'string' in one index of 'clogs-*'"
+                                    + " and 'integer' in another")));
+        }
+    }
+
+    /** Tests that a schema keeps its tables for the metadata TTL, and then
+     * reloads the mapping in the background, so that a new type becomes a
+     * table. */
+    @Test public void testMetadataReload()
+            throws InterruptedException, IOException, SQLException {
+        final String sql = "select count(*) as c from \"late\"";
+        final Connection connection = fixture.connect("metadataTtl: '200ms'");
+        try {
+            assertThat(query(connection, "select count(*) as c from \"event\"")
+                            .toString(),
+                    equalTo("[C=" + DOC_COUNT + "]"));
+            createType(ElasticsearchFixture.INDEX, "late");
+            try {
+                query(connection, sql);
+                fail("expected error");
+            } catch (SQLException e) {
+                assertThat(e.getMessage(),
+                        containsString("Table 'late' not found"));
+            }
+            List<String> rows = null;
+            for (int i = 0; i < 100 && rows == null; i++) {
+                Thread.sleep(50);
+                try {
+                    rows = query(connection, sql);
+                } catch (SQLException e) {
+                    // Not reloaded yet.
+                }
+            }
+            assertThat(String.valueOf(rows), equalTo("[C=0]"));
+        } finally {
+            connection.close();
+        }
+    }
+
+    /** Returns the client that the schema of a connection holds. */
+    private static TransportClient client(Connection connection)
+            throws SQLException {
+        return (TransportClient) connection.unwrap(CalciteConnection.class)
+                .getRootSchema().getSubSchema("es")
+                .unwrap(ElasticsearchSchema.class).client;
+    }
+
+    /** Tests that connections to the same cluster share a client, and that
+     * it is closed when the last of them is closed. */
+    @Test public void testClientClosedWithLastConnection()
+            throws SQLException {
+        final Connection connection1 = fixture.connect(null);
+        final Connection connection2 = fixture.connect(null);
+        final TransportClient client = client(connection1);
+        assertThat(client(connection2) == client, is(true));
+        connection1.close();
+        assertThat(client.connectedNodes().isEmpty(), is(false));
+        connection2.close();
+        assertThat(client.connectedNodes().isEmpty(), is(true));
+    }
+
+    /** Runs a query, and returns the statistics of the one search that it
+     * makes. */
+    private static ElasticsearchQueryStats queryStats(String sql,
+            int rowCount) throws SQLException {
+        final List<ElasticsearchQueryStats> statsList =
+                new ArrayList<ElasticsearchQueryStats>();
+        final Hook.Closeable hook = Hook.QUERY_STATS.addThread(
+                new Function<Object, Void>() {
+                    public Void apply(Object o) {
+                        statsList.add((ElasticsearchQueryStats) o);
+                        return null;
+                    }
+                });
+        try {
+            assertThat(query(true, sql).size(), is(rowCount));
+        } finally {
+            hook.close();
+        }
+        assertThat(statsList.size(), is(1));
+        return statsList.get(0);
+    }
+
+    @Test public void testQueryStats() throws SQLException {
+        final ElasticsearchQueryStats stats =
+                queryStats("select \"_id\", \"msg\" from \"event\"\n"
+                        + "where \"status\" = 500", DOC_COUNT / 20);
+        assertThat(stats.getRequest(), containsString("logs/event"));
+        assertThat(stats.getRequests(), is(1));
+        assertThat(stats.getRoundTrips() >= 1, is(true));
+        assertThat(stats.getShards(), is(2));
+        assertThat(stats.getTotalHits(), is((long) DOC_COUNT / 20));
+        assertThat(stats.getHits(), is((long) DOC_COUNT / 20));
+        assertThat(stats.getBytes() > 0, is(true));
+    }
+
+    /** Tests the statistics of a search that fetches only ids, whose hits
+     * have no source. */
+    @Test public void testQueryStatsWithoutSource() throws SQLException {
+        final ElasticsearchQueryStats stats =
+                queryStats("select \"_id\" from \"event\"\n"
+                        + "where \"status\" = 500", DOC_COUNT / 20);
+        assertThat(stats.getHits(), is((long) DOC_COUNT / 20));
+        assertThat(stats.getBytes(), is(0L));
+    }
+
+    /** Indexes documents of type "tick", whose "ts" is a long, and makes
+     * them visible. */
+    private static void indexTicks(String... idTs) throws IOException {
+        final Client client = fixture.client();
+        for (int i = 0; i < idTs.length; i += 2) {
+            client.prepareIndex(ElasticsearchFixture.INDEX, "tick", idTs[i])
+                    .setSource(
+                            XContentFactory.jsonBuilder().startObject()
+                                    .field("ts", Long.parseLong(idTs[i + 1]))
+                                    .endObject())
+                    .execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh(ElasticsearchFixture.INDEX)
+                .execute().actionGet();
+    }
+
+    /** Reads the first rows of the stream of type "tick", and returns their
+     * ids. It does not read further, because the stream would wait for new
+     * documents. */
+    private static List<String> readTicks(File checkpointDir, int count)
+            throws SQLException {
+        final Connection connection =
+                fixture.connect("streamField: 'ts', fetchSize: 2,\n"
+                        + "        streamPollInterval: '10ms',\n"
+                        + "        streamCheckpointDir: '"
+                        + checkpointDir.getPath().replace("\\", "\\\\") + "'");
+        try {
+            final ResultSet resultSet = connection.createStatement()
+                    .executeQuery("select stream \"_id\" from \"tick_stream\"");
+            final List<String> ids = new ArrayList<String>();
+            while (ids.size() < count && resultSet.next()) {
+                ids.add(resultSet.getString(1));
+            }
+            resultSet.close();
+            return ids;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static Properties load(File file) throws IOException {
+        final Properties properties = new Properties();
+        final InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    /** Tests that a stream writes its position to a checkpoint when it is
+     * closed, and that the next stream resumes from there, returning each
+     * document once even if the position is among documents whose stream
+     * field has the same value. */
+    @Test public void testStreamCheckpoint() throws IOException, SQLException {
+        final File checkpointDir = File.createTempFile("checkpoint", "");
+        assertThat(checkpointDir.delete() && checkpointDir.mkdir(), is(true));
+        final File checkpoint = new File(checkpointDir,
+                ElasticsearchFixture.INDEX + ".tick.checkpoint");
+        try {
+            indexTicks("a", "1", "b", "2", "c", "2", "d", "2", "e", "3");
+
+            // Start after "a", as if a stream had returned it.
+            final Properties properties = new Properties();
+            properties.setProperty("mark", "1");
+            properties.setProperty("type", "long");
+            properties.setProperty("inclusive", "true");
+            properties.setProperty("id.0", "a");
+            final OutputStream out = new FileOutputStream(checkpoint);
+            try {
+                properties.store(out, null);
+            } finally {
+                out.close();
+            }
+
+            assertThat(readTicks(checkpointDir, 2).toString(),
+                    equalTo("[b, c]"));
+            final Properties mark = load(checkpoint);
+            assertThat(mark.getProperty("mark"), equalTo("2"));
+            assertThat(mark.getProperty("type"), equalTo("long"));
+            assertThat(mark.getProperty("inclusive"), equalTo("true"));
+            assertThat(mark.getProperty("id.0"), equalTo("b"));
+            assertThat(mark.getProperty("id.1"), equalTo("c"));
+
+            // "d" has the same value as the mark, and is not yet returned.
+            assertThat(readTicks(checkpointDir, 2).toString(),
+                    equalTo("[d, e]"));
+            assertThat(load(checkpoint).getProperty("mark"), equalTo("3"));
 
-        } catch (Exception e) {
-            e.printStackTrace();
+            indexTicks("f", "4");
+            assertThat(readTicks(checkpointDir, 1).toString(),
+                    equalTo("[f]"));
+            assertThat(load(checkpoint).getProperty("mark"), equalTo("4"));
+            assertThat(load(checkpoint).getProperty("id.0"), equalTo("f"));
+            assertThat(load(checkpoint).getProperty("id.1"), equalTo(null));
+        } finally {
+            checkpoint.delete();
+            checkpointDir.delete();
         }
     }
 }
 
-// End SparkAdapterTest.java
+// End ElasticsearchAdapterTest.java
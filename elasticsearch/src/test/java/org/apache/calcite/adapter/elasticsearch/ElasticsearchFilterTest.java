@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlIdentifier;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.parser.SqlParserPos;
+import org.apache.calcite.sql.type.ReturnTypes;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.sql.validate.SqlUserDefinedFunction;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Unit tests for {@link ElasticsearchFilter.Translator}, which converts
+ * Calcite conditions into Elasticsearch filters. Does not need a cluster.
+ */
+public class ElasticsearchFilterTest {
+    private final RelDataTypeFactory typeFactory = new JavaTypeFactoryImpl();
+    private final RexBuilder rexBuilder = new RexBuilder(typeFactory);
+    private final RelDataType rowType = typeFactory.builder()
+            .add("_id", SqlTypeName.VARCHAR)
+            .add("status", SqlTypeName.INTEGER)
+            .add("host", SqlTypeName.VARCHAR)
+            .add("msg", SqlTypeName.VARCHAR)
+            .add("ts", SqlTypeName.TIMESTAMP)
+            .build();
+    private final ElasticsearchFilter.Translator translator =
+            new ElasticsearchFilter.Translator(rowType.getFieldNames(),
+                    ImmutableSet.of("msg"));
+
+    private RexNode ref(int i) {
+        return rexBuilder.makeInputRef(
+                rowType.getFieldList().get(i).getType(), i);
+    }
+
+    private RexNode number(int n) {
+        return rexBuilder.makeExactLiteral(BigDecimal.valueOf(n));
+    }
+
+    private String translate(RexNode node) {
+        return String.valueOf(translator.translate(node));
+    }
+
+    @Test public void testComparisonWithLiteralOnLeft() {
+        final RexNode node = rexBuilder.makeCall(
+                SqlStdOperatorTable.LESS_THAN, number(500), ref(1));
+        final String s = translate(node);
+        assertThat(s, containsString("\"range\""));
+        assertThat(s, containsString("\"from\" : 500"));
+        assertThat(s, containsString("\"include_lower\" : false"));
+    }
+
+    @Test public void testInBecomesTerms() {
+        final RexNode node = rexBuilder.makeCall(SqlStdOperatorTable.OR,
+                rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, ref(1),
+                        number(404)),
+                rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, ref(1),
+                        number(500)));
+        final String s = translate(node);
+        assertThat(s, containsString("\"terms\""));
+        assertThat(s, not(containsString("\"should\"")));
+    }
+
+    @Test public void testEqualsOnIdBecomesIds() {
+        final RexNode node = rexBuilder.makeCall(SqlStdOperatorTable.EQUALS,
+                ref(0), rexBuilder.makeLiteral("abc"));
+        assertThat(translate(node), containsString("\"ids\""));
+        // the id is not indexed, so it cannot be compared
+        final RexNode range = rexBuilder.makeCall(
+                SqlStdOperatorTable.GREATER_THAN, ref(0),
+                rexBuilder.makeLiteral("abc"));
+        assertThat(translator.translate(range), nullValue());
+    }
+
+    @Test public void testLike() {
+        final RexNode prefix = rexBuilder.makeCall(SqlStdOperatorTable.LIKE,
+                ref(2), rexBuilder.makeLiteral("web%"));
+        assertThat(translate(prefix), containsString("\"prefix\""));
+        final RexNode wildcard = rexBuilder.makeCall(SqlStdOperatorTable.LIKE,
+                ref(2), rexBuilder.makeLiteral("%web_1*"));
+        assertThat(translate(wildcard), containsString("*web?1\\\\*"));
+    }
+
+    @Test public void testNotRequiresField() {
+        final RexNode node = rexBuilder.makeCall(SqlStdOperatorTable.NOT,
+                rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, ref(1),
+                        number(500)));
+        final String s = translate(node);
+        assertThat(s, containsString("\"must_not\""));
+        assertThat(s, containsString("\"exists\""));
+        // only simple conditions are negated
+        final RexNode not = rexBuilder.makeCall(SqlStdOperatorTable.NOT,
+                rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL, ref(2)));
+        assertThat(translator.translate(not), nullValue());
+    }
+
+    @Test public void testAnalyzedField() {
+        // an analyzed field is indexed as words, which a term, range or
+        // wildcard would compare with the whole value
+        final RexNode equals = rexBuilder.makeCall(SqlStdOperatorTable.EQUALS,
+                ref(3), rexBuilder.makeLiteral("disk error"));
+        assertThat(translator.translate(equals), nullValue());
+        final RexNode range = rexBuilder.makeCall(
+                SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, ref(3),
+                rexBuilder.makeLiteral("request"));
+        assertThat(translator.translate(range), nullValue());
+        final RexNode like = rexBuilder.makeCall(SqlStdOperatorTable.LIKE,
+                ref(3), rexBuilder.makeLiteral("disk%"));
+        assertThat(translator.translate(like), nullValue());
+        assertThat(
+                translator.translate(
+                        rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL,
+                                ref(3))),
+                notNullValue());
+    }
+
+    @Test public void testCast() {
+        // a cast to a wider type compares the field's own values
+        final RexNode wider = rexBuilder.makeCall(SqlStdOperatorTable.EQUALS,
+                rexBuilder.makeCast(
+                        typeFactory.createSqlType(SqlTypeName.BIGINT), ref(1)),
+                number(500));
+        assertThat(translate(wider), containsString("\"term\""));
+        // a cast to DATE truncates the timestamp, so cannot be pushed down
+        final RexNode date = rexBuilder.makeCall(SqlStdOperatorTable.EQUALS,
+                rexBuilder.makeCast(
+                        typeFactory.createSqlType(SqlTypeName.DATE), ref(4)),
+                rexBuilder.makeDateLiteral(Calendar.getInstance()));
+        assertThat(translator.translate(date), nullValue());
+    }
+
+    @Test public void testIsNull() {
+        final RexNode node = rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL,
+                ref(2));
+        assertThat(translate(node), containsString("\"missing\""));
+    }
+
+    @Test public void testMatch() {
+        final SqlUserDefinedFunction match = new SqlUserDefinedFunction(
+                new SqlIdentifier("MATCH", SqlParserPos.ZERO),
+                ReturnTypes.BOOLEAN, null, null,
+                ImmutableList.of(typeFactory.createSqlType(SqlTypeName.ANY),
+                        typeFactory.createSqlType(SqlTypeName.VARCHAR)),
+                ElasticsearchFunctions.FUNCTIONS.get("MATCH").iterator()
+                        .next());
+        final RexNode node = rexBuilder.makeCall(match, ref(2),
+                rexBuilder.makeLiteral("web server"));
+        assertThat(String.valueOf(translator.translateQuery(node)),
+                containsString("\"match\""));
+        // in a disjunction, it is a filter, and does not rank documents
+        final RexNode or = rexBuilder.makeCall(SqlStdOperatorTable.OR, node,
+                rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL, ref(2)));
+        assertThat(translator.translateQuery(or), nullValue());
+        assertThat(translate(or), containsString("\"query\""));
+        // the text must be a literal
+        assertThat(
+                translator.translate(
+                        rexBuilder.makeCall(match, ref(2), ref(0))),
+                nullValue());
+    }
+
+    @Test public void testUntranslatable() {
+        // comparing two fields cannot be expressed as a filter
+        final RexNode node = rexBuilder.makeCall(SqlStdOperatorTable.EQUALS,
+                ref(0), ref(2));
+        assertThat(translator.translate(node), nullValue());
+        final RexNode and = rexBuilder.makeCall(SqlStdOperatorTable.AND,
+                node,
+                rexBuilder.makeCall(SqlStdOperatorTable.IS_NOT_NULL, ref(2)));
+        assertThat(translator.translate(and), nullValue());
+        assertThat(
+                translator.translate(
+                        rexBuilder.makeCall(SqlStdOperatorTable.IS_NOT_NULL,
+                                ref(2))),
+                notNullValue());
+    }
+}
+
+// End ElasticsearchFilterTest.java
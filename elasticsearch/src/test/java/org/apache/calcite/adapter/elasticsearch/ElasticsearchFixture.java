@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.elasticsearch;
+
+import org.elasticsearch.action.admin.cluster.node.info.NodeInfo;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Elasticsearch node that runs inside the JVM, holding a generated corpus of
+ * log events, so that tests and benchmarks do not need an external cluster.
+ *
+ * <p>The node has its own cluster name, data directory and transport port,
+ * so several fixtures can run at once, and all are removed by
+ * {@link #close()}.</p>
+ *
+ * <p>The corpus is index {@link #INDEX}, type {@link #TYPE}, and is the
+ * same for the same number of documents. Document {@code i} has:</p>
+ * <ul>
+ * <li>"ts", a date, {@link #START} plus {@code i} seconds;</li>
+ * <li>"host", "web0" to "web15", {@code i % 16};</li>
+ * <li>"status", 500 if {@code i % 20 == 0}, 404 if {@code i % 20 == 10},
+ *     missing if {@code i % 200 == 101}, otherwise 200;</li>
+ * <li>"bytes", a pseudo-random size below 100,000;</li>
+ * <li>"msg", a pseudo-random analyzed message.</li>
+ * </ul>
+ */
+public class ElasticsearchFixture implements Closeable {
+    /** Name of the index that holds the corpus. */
+    public static final String INDEX = "logs";
+
+    /** Name of the document type of the corpus. */
+    public static final String TYPE = "event";
+
+    /** Timestamp of the first document, 2026-10-01 00:00:00 UTC. */
+    public static final long START = 1790812800000L;
+
+    /** Number of distinct hosts. */
+    public static final int HOST_COUNT = 16;
+
+    private static final String[] MESSAGES = {
+        "request ok",
+        "request ok from cache",
+        "slow request",
+        "disk error",
+        "connection reset by peer",
+    };
+
+    /** Number of documents in the corpus. */
+    public final int docCount;
+    private final File dataDir;
+    private final String clusterName;
+    private final Node node;
+    private final String address;
+
+    private ElasticsearchFixture(int docCount, int shardCount)
+            throws IOException {
+        this.docCount = docCount;
+        this.dataDir = File.createTempFile("elasticsearch", "");
+        if (!dataDir.delete() || !dataDir.mkdir()) {
+            throw new IOException("Cannot create directory " + dataDir);
+        }
+        this.clusterName = "calcite-" + UUID.randomUUID();
+        this.node = NodeBuilder.nodeBuilder()
+                .settings(
+                        ImmutableSettings.settingsBuilder()
+                                .put("cluster.name", clusterName)
+                                .put("path.data", dataDir.getPath())
+                                .put("network.host", "127.0.0.1")
+                                .put("transport.tcp.port", "9500-9600")
+                                .put("http.enabled", false)
+                                .put("discovery.zen.ping.multicast.enabled",
+                                        false)
+                                .put("index.number_of_shards", shardCount)
+                                .put("index.number_of_replicas", 0))
+                .node();
+        final NodeInfo info = node.client().admin().cluster()
+                .prepareNodesInfo("_local").setTransport(true)
+                .execute().actionGet().getNodes()[0];
+        final InetSocketTransportAddress transportAddress =
+                (InetSocketTransportAddress)
+                        info.getTransport().getAddress().publishAddress();
+        this.address = transportAddress.address().getAddress()
+                .getHostAddress() + ":" + transportAddress.address().getPort();
+    }
+
+    /**
+     * Starts a node and loads a corpus into it.
+     *
+     * @param docCount Number of documents
+     * @param shardCount Number of shards of the index
+     */
+    public static ElasticsearchFixture start(int docCount, int shardCount)
+            throws IOException {
+        final ElasticsearchFixture fixture =
+                new ElasticsearchFixture(docCount, shardCount);
+        try {
+            fixture.load();
+        } catch (IOException e) {
+            fixture.close();
+            throw e;
+        } catch (RuntimeException e) {
+            fixture.close();
+            throw e;
+        }
+        return fixture;
+    }
+
+    /** Returns a client of the node. */
+    public Client client() {
+        return node.client();
+    }
+
+    private void load() throws IOException {
+        final Client client = node.client();
+        client.admin().indices().prepareCreate(INDEX)
+                .addMapping(TYPE,
+                        XContentFactory.jsonBuilder().startObject()
+                                .startObject(TYPE)
+                                .startObject("properties")
+                                .startObject("ts").field("type", "date")
+                                .endObject()
+                                .startObject("host").field("type", "string")
+                                .field("index", "not_analyzed").endObject()
+                                .startObject("status").field("type", "integer")
+                                .endObject()
+                                .startObject("bytes").field("type", "long")
+                                .endObject()
+                                .startObject("msg").field("type", "string")
+                                .endObject()
+                                .endObject()
+                                .endObject()
+                                .endObject())
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth(INDEX)
+                .setWaitForYellowStatus().execute().actionGet();
+        final Random random = new Random(docCount);
+        BulkRequestBuilder bulk = client.prepareBulk();
+        for (int i = 0; i < docCount; i++) {
+            final XContentBuilder document = XContentFactory.jsonBuilder()
+                    .startObject()
+                    .field("ts", START + i * 1000L)
+                    .field("host", "web" + i % HOST_COUNT);
+            if (status(i) != null) {
+                document.field("status", status(i));
+            }
+            document.field("bytes", random.nextInt(100000))
+                    .field("msg", MESSAGES[random.nextInt(MESSAGES.length)])
+                    .endObject();
+            bulk.add(
+                    client.prepareIndex(INDEX, TYPE, String.valueOf(i))
+                            .setSource(document));
+            if (bulk.numberOfActions() == 1000 || i == docCount - 1) {
+                final BulkResponse response = bulk.execute().actionGet();
+                if (response.hasFailures()) {
+                    throw new IOException(response.buildFailureMessage());
+                }
+                bulk = client.prepareBulk();
+            }
+        }
+        client.admin().indices().prepareRefresh(INDEX).execute().actionGet();
+    }
+
+    /** Returns the "status" of document {@code i}, or null if the document
+     * has none. */
+    public static Integer status(int i) {
+        if (i % 200 == 101) {
+            return null;
+        }
+        switch (i % 20) {
+        case 0:
+            return 500;
+        case 10:
+            return 404;
+        default:
+            return 200;
+        }
+    }
+
+    /**
+     * Returns a JSON model whose default schema, "es", is the corpus's
+     * index.
+     *
+     * @param operands Extra operands of the schema, such as
+     *                 {@code "pushdown: false"}, or null
+     */
+    public String model(String operands) {
+        return model(INDEX, operands);
+    }
+
+    /**
+     * Returns a JSON model whose default schema, "es", is an index of the
+     * node.
+     *
+     * @param index Name or pattern of the index, e.g. "logs-*"
+     * @param operands Extra operands of the schema, such as
+     *                 {@code "pushdown: false"}, or null
+     */
+    public String model(String index, String operands) {
+        return "{\n"
+                + "  version: '1.0',\n"
+                + "  defaultSchema: 'es',\n"
+                + "  schemas: [\n"
+                + "    {\n"
+                + "      type: 'custom',\n"
+                + "      name: 'es',\n"
+                + "      factory: '"
+                + ElasticsearchSchemaFactory.class.getName() + "',\n"
+                + "      operand: {\n"
+                + "        host: '" + address + "',\n"
+                + "        clusterName: '" + clusterName + "',\n"
+                + "        index: '" + index + "'"
+                + (operands == null ? "" : ",\n        " + operands) + "\n"
+                + "      }\n"
+                + "    }\n"
+                + "  ]\n"
+                + "}";
+    }
+
+    /** Opens a Calcite connection to the {@link #model(String) model}. */
+    public Connection connect(String operands) throws SQLException {
+        return connect(INDEX, operands);
+    }
+
+    /** Opens a Calcite connection to the
+     * {@link #model(String, String) model} of an index. */
+    public Connection connect(String index, String operands)
+            throws SQLException {
+        return DriverManager.getConnection(
+                "jdbc:calcite:model=inline:" + model(index, operands));
+    }
+
+    /** Stops the node and deletes its data. */
+    public void close() {
+        node.close();
+        delete(dataDir);
+    }
+
+    private static void delete(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
+
+// End ElasticsearchFixture.java
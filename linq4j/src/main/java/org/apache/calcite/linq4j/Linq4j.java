@@ -689,21 +689,31 @@ public void close() {
   /** Iterator that reads from an underlying {@link Enumerator}. */
   private static class EnumeratorIterator<T> implements Iterator<T>, Closeable {
     private final Enumerator<T> enumerator;
+    /** Whether the enumerator has been advanced since the last call to
+     * {@link #next()}. It is advanced only when the caller asks, so that an
+     * enumerator over a stream, which blocks until the next row arrives,
+     * does not hold back the current row. */
+    private boolean advanced;
     boolean hasNext;
 
     public EnumeratorIterator(Enumerator<T> enumerator) {
       this.enumerator = enumerator;
-      hasNext = enumerator.moveNext();
     }
 
     public boolean hasNext() {
+      if (!advanced) {
+        hasNext = enumerator.moveNext();
+        advanced = true;
+      }
       return hasNext;
     }
 
     public T next() {
-      T t = enumerator.current();
-      hasNext = enumerator.moveNext();
-      return t;
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      advanced = false;
+      return enumerator.current();
     }
 
     public void remove() {
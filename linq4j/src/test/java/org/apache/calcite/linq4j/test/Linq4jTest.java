@@ -1749,6 +1749,50 @@ public Object apply(Map.Entry<Employee, Department> entry) {
     assertThat(count(iterableEnumerator), equalTo(3));
   }
 
+  /** Tests that the iterator over an enumerator does not read ahead: it
+   * moves the enumerator only when asked whether there is another element,
+   * so that an enumerator over a stream does not hold back the current
+   * element while it waits for the next. */
+  @Test public void testEnumeratorIterator() {
+    final Enumerator<String> list =
+        Linq4j.enumerator(Arrays.asList("jimi", "mitch"));
+    final int[] moves = {0};
+    final Enumerator<String> enumerator = new Enumerator<String>() {
+      public String current() {
+        return list.current();
+      }
+
+      public boolean moveNext() {
+        ++moves[0];
+        return list.moveNext();
+      }
+
+      public void reset() {
+        list.reset();
+      }
+
+      public void close() {
+        list.close();
+      }
+    };
+    final Iterator<String> iterator = Linq4j.enumeratorIterator(enumerator);
+    assertThat(moves[0], is(0));
+    assertThat(iterator.next(), is("jimi"));
+    assertThat(moves[0], is(1));
+    assertThat(iterator.hasNext(), is(true));
+    assertThat(iterator.hasNext(), is(true));
+    assertThat(moves[0], is(2));
+    assertThat(iterator.next(), is("mitch"));
+    assertThat(moves[0], is(2));
+    assertThat(iterator.hasNext(), is(false));
+    try {
+      final String s = iterator.next();
+      fail("expected exception, got " + s);
+    } catch (NoSuchElementException e) {
+      // ok
+    }
+  }
+
   @Test public void testDefaultIfEmpty() {
     final List<String> experience = Arrays.asList("jimi", "mitch", "noel");
     final Enumerable<String> notEmptyEnumerable = Linq4j.asEnumerable(experience).defaultIfEmpty();
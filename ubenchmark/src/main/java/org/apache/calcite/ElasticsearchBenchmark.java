@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite;
+
+import org.apache.calcite.adapter.elasticsearch.ElasticsearchFixture;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures queries on an Elasticsearch index through Calcite's JDBC driver,
+ * with and without pushdown.
+ *
+ * <p>The index is the corpus of an {@link ElasticsearchFixture}, in a node
+ * that runs inside the benchmark's JVM, so the numbers include the node's
+ * work but no network. Each query is run with the adapter pushing filters,
+ * aggregations and sorts down to the node, and with the adapter only
+ * scanning, so that a regression in either shows up.
+ *
+ * <p>Besides queries per second, the results include two counters: "rows",
+ * the rate at which the query returns rows, and "allocatedBytes", the rate
+ * at which the benchmark thread allocates memory, which includes Calcite's
+ * work but not the node's. At the end of each iteration, the bytes
+ * allocated per row are printed.
+ *
+ * <p>To run:
+ *
+ * <blockquote>
+ *   <code>mvn package &amp;&amp;
+ *   java -jar ./target/ubenchmarks.jar ElasticsearchBenchmark
+ *     -wi 5 -i 5 -f 1</code>
+ * </blockquote>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ElasticsearchBenchmark {
+
+  /**
+   * Node with a corpus, and a connection to it.
+   */
+  @State(Scope.Benchmark)
+  public static class Cluster {
+    /** Number of documents in the corpus. */
+    @Param("100000")
+    public int docCount;
+
+    /** Whether the adapter pushes operators down to the node. */
+    @Param({"true", "false"})
+    public boolean pushdown;
+
+    ElasticsearchFixture fixture;
+    Connection connection;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException, SQLException {
+      fixture = ElasticsearchFixture.start(docCount, 4);
+      connection = fixture.connect("pushdown: " + pushdown);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws SQLException {
+      if (connection != null) {
+        connection.close();
+        connection = null;
+      }
+      if (fixture != null) {
+        fixture.close();
+        fixture = null;
+      }
+    }
+  }
+
+  /**
+   * Rows returned and bytes allocated by the benchmark thread. JMH reports
+   * each as a rate.
+   */
+  @AuxCounters
+  @State(Scope.Thread)
+  public static class Counters {
+    private static final ThreadMXBean THREAD_MX_BEAN =
+        ManagementFactory.getThreadMXBean();
+
+    public long rows;
+    public long allocatedBytes;
+
+    @Setup(Level.Iteration)
+    public void clean() {
+      rows = 0;
+      allocatedBytes = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void print() {
+      if (rows > 0 && allocatedBytes > 0) {
+        System.out.println("\n" + allocatedBytes / rows
+            + " bytes allocated per row");
+      }
+    }
+
+    /** Returns the number of bytes allocated by the current thread so far,
+     * or 0 if the JVM cannot say. */
+    static long allocated() {
+      if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+        final com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+        if (bean.isThreadAllocatedMemorySupported()
+            && bean.isThreadAllocatedMemoryEnabled()) {
+          return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+      }
+      return 0;
+    }
+  }
+
+  /** Executes a query, reads every column of every row, and adds to the
+   * counters. Returns the number of rows. */
+  private static long run(Cluster cluster, Counters counters, String sql)
+      throws SQLException {
+    final long start = Counters.allocated();
+    long rowCount = 0;
+    final Statement statement = cluster.connection.createStatement();
+    try {
+      final ResultSet resultSet = statement.executeQuery(sql);
+      final int columnCount = resultSet.getMetaData().getColumnCount();
+      while (resultSet.next()) {
+        for (int i = 1; i <= columnCount; i++) {
+          resultSet.getObject(i);
+        }
+        ++rowCount;
+      }
+      resultSet.close();
+    } finally {
+      statement.close();
+    }
+    counters.rows += rowCount;
+    counters.allocatedBytes += Counters.allocated() - start;
+    return rowCount;
+  }
+
+  /** Reads every document. */
+  @GenerateMicroBenchmark
+  public long scan(Cluster cluster, Counters counters) throws SQLException {
+    return run(cluster, counters,
+        "select \"ts\", \"host\", \"status\", \"bytes\" from \"event\"");
+  }
+
+  /** Reads the 5% of documents that are errors. */
+  @GenerateMicroBenchmark
+  public long filter(Cluster cluster, Counters counters) throws SQLException {
+    return run(cluster, counters,
+        "select \"ts\", \"host\", \"bytes\" from \"event\"\n"
+        + "where \"status\" = 500");
+  }
+
+  /** Totals the documents of each host. */
+  @GenerateMicroBenchmark
+  public long aggregate(Cluster cluster, Counters counters)
+      throws SQLException {
+    return run(cluster, counters,
+        "select \"host\", count(*), sum(\"bytes\") from \"event\"\n"
+        + "group by \"host\"");
+  }
+
+  /** Reads the 10 largest documents. */
+  @GenerateMicroBenchmark
+  public long sortLimit(Cluster cluster, Counters counters)
+      throws SQLException {
+    return run(cluster, counters,
+        "select \"ts\", \"host\", \"bytes\" from \"event\"\n"
+        + "order by \"bytes\" desc limit 10");
+  }
+}
+
+// End ElasticsearchBenchmark.java
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite;
+
+import org.apache.calcite.adapter.clone.CloneSchema;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Table;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.Holder;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures queries on a table that has been cloned into arrays, with and
+ * without the rules of the vector convention.
+ *
+ * <p>With the rules, the table is read by a
+ * {@link org.apache.calcite.adapter.vector.VectorTableScan}, filters by a
+ * {@link org.apache.calcite.adapter.vector.VectorCalc} and aggregates by a
+ * {@link org.apache.calcite.adapter.vector.VectorAggregate}; without them,
+ * by the enumerable equivalents, one boxed row at a time.
+ *
+ * <p>To run:
+ *
+ * <blockquote>
+ *   <code>mvn package &amp;&amp;
+ *   java -jar ./target/ubenchmarks.jar VectorBenchmark
+ *     -wi 5 -i 5 -f 1</code>
+ * </blockquote>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VectorBenchmark {
+
+  /**
+   * Table of numbers, and a connection that can see it.
+   */
+  @State(Scope.Benchmark)
+  public static class Numbers {
+    /** Number of rows in the table. */
+    @Param("1000000")
+    public int rowCount;
+
+    /** Whether the planner may use the vector convention. */
+    @Param({"true", "false"})
+    public boolean vector;
+
+    Hook.Closeable hook;
+    Connection connection;
+
+    @Setup(Level.Trial)
+    public void start() throws SQLException {
+      hook = Hook.ENABLE_VECTOR.add(
+          new Function<Holder<Boolean>, Void>() {
+            public Void apply(Holder<Boolean> enable) {
+              enable.set(vector);
+              return null;
+            }
+          });
+      connection = DriverManager.getConnection("jdbc:calcite:");
+      final SchemaPlus rootSchema =
+          connection.unwrap(CalciteConnection.class).getRootSchema();
+      rootSchema.add("numbers", table(rowCount));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws SQLException {
+      if (connection != null) {
+        connection.close();
+        connection = null;
+      }
+      if (hook != null) {
+        hook.close();
+        hook = null;
+      }
+    }
+
+    /** Creates a table whose rows are {@code (id, grp, qty, amount)}, with
+     * 100 distinct values of {@code grp} and 1,000 of {@code qty}, loaded
+     * into arrays as {@link CloneSchema} would load them. */
+    static Table table(int rowCount) {
+      final List<Object[]> rows = new ArrayList<Object[]>();
+      for (int k = 0; k < rowCount; k++) {
+        rows.add(new Object[] {k, k % 100, (long) (k % 1000), k / 8d});
+      }
+      final RelProtoDataType protoRowType =
+          new RelProtoDataType() {
+            public RelDataType apply(RelDataTypeFactory typeFactory) {
+              return typeFactory.builder()
+                  .add("id", SqlTypeName.INTEGER)
+                  .add("grp", SqlTypeName.INTEGER)
+                  .add("qty", SqlTypeName.BIGINT)
+                  .add("amount", SqlTypeName.DOUBLE)
+                  .build();
+            }
+          };
+      return CloneSchema.createCloneTable(new JavaTypeFactoryImpl(),
+          protoRowType, ImmutableList.<RelCollation>of(), null,
+          Linq4j.asEnumerable(rows));
+    }
+  }
+
+  /** Executes a query, reads every column of every row, and returns the
+   * number of rows. */
+  private static long run(Numbers numbers, String sql) throws SQLException {
+    long rowCount = 0;
+    final Statement statement = numbers.connection.createStatement();
+    try {
+      final ResultSet resultSet = statement.executeQuery(sql);
+      final int columnCount = resultSet.getMetaData().getColumnCount();
+      while (resultSet.next()) {
+        for (int i = 1; i <= columnCount; i++) {
+          resultSet.getObject(i);
+        }
+        ++rowCount;
+      }
+      resultSet.close();
+    } finally {
+      statement.close();
+    }
+    return rowCount;
+  }
+
+  /** Reads the 1% of rows that have the smallest quantities. */
+  @GenerateMicroBenchmark
+  public long filter(Numbers numbers) throws SQLException {
+    return run(numbers,
+        "select \"id\", \"amount\" from \"numbers\"\n"
+        + "where \"qty\" < 10");
+  }
+
+  /** Totals the rows of each group. */
+  @GenerateMicroBenchmark
+  public long aggregate(Numbers numbers) throws SQLException {
+    return run(numbers,
+        "select \"grp\", count(*), sum(\"amount\"), max(\"qty\")\n"
+        + "from \"numbers\"\n"
+        + "group by \"grp\"");
+  }
+
+  /** Totals all rows. */
+  @GenerateMicroBenchmark
+  public long total(Numbers numbers) throws SQLException {
+    return run(numbers,
+        "select count(*), sum(\"qty\"), min(\"amount\") from \"numbers\"");
+  }
+}
+
+// End VectorBenchmark.java